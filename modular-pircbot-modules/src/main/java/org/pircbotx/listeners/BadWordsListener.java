@@ -7,16 +7,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.util.ArrayList;
-import java.util.List;
 
+import org.pircbotx.ExtendedPircBotX;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ConnectEvent;
 import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.util.ResourceWatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 
 /**
  * Loads a list of words that are forbidden on any public chat on which the bot is connected. If any
@@ -40,15 +42,30 @@ import com.google.common.base.Strings;
  * #stupid
  * </pre>
  *
+ * If the file is not packaged in a jar, it is watched: changes are applied as soon as it is saved,
+ * without restarting the bot. The file is read when the listener is warmed up by an
+ * {@link ExtendedPircBotX}, or when a plain bot connects; until then, messages are not checked.
+ *
  * @author Emmanuel Cron
  */
-public class BadWordsListener extends ListenerAdapter<PircBotX> {
+public class BadWordsListener extends ListenerAdapter<PircBotX> implements StoppableListener,
+    WarmUpListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(BadWordsListener.class);
 
-  private static final List<String> BADWORDS = new ArrayList<String>();
+  private final String badwordsPath;
+
+  private final String encoding;
 
   private String kickReason;
 
+  // Replaced at once when the file is reloaded; null until first loaded
+  private volatile ImmutableList<String> badwords;
+
+  private volatile boolean warmedUp;
+
+  // Guarded by this
+  private ResourceWatcher.Watch watch;
+
   /**
    * Creates a new badwords listener.
    *
@@ -61,9 +78,39 @@ public class BadWordsListener extends ListenerAdapter<PircBotX> {
     checkArgument(!Strings.isNullOrEmpty(badwordsPath), "No path to badwords file given");
     checkArgument(!Strings.isNullOrEmpty(encoding), "Badwords file encoding not specified");
     checkArgument(!Strings.isNullOrEmpty(kickReason), "No kick reason given");
+    checkArgument(ClassLoader.getSystemResource(badwordsPath) != null,
+        "Badwords file not found: %s", badwordsPath);
 
+    this.badwordsPath = badwordsPath;
+    this.encoding = encoding;
     this.kickReason = kickReason;
-    loadBadWords(badwordsPath, encoding);
+  }
+
+  @Override
+  public void warmUp() {
+    warmedUp = true;
+    loadBadWords();
+    synchronized (this) {
+      // Warmed up again after being removed and added back
+      stop();
+      watch = ResourceWatcher.watch(badwordsPath, this::loadBadWords);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (watch != null) {
+      watch.close();
+      watch = null;
+    }
+  }
+
+  @Override
+  public void onConnect(ConnectEvent<PircBotX> event) {
+    if (!warmedUp && !(event.getBot() instanceof ExtendedPircBotX)) {
+      // Plain bots don't warm their listeners up
+      warmUp();
+    }
   }
 
   @Override
@@ -73,13 +120,20 @@ public class BadWordsListener extends ListenerAdapter<PircBotX> {
       return;
     }
 
-    if (event.getChannel().getOps().contains(event.getUser())) {
+    if (event.getChannel().isOp(event.getUser())) {
       // Avoid kicking ops
       return;
     }
 
+    ImmutableList<String> currentBadwords = badwords;
+    if (currentBadwords == null) {
+      LOGGER.debug("Badwords not loaded yet, message of {} not checked",
+          event.getUser().getNick());
+      return;
+    }
+
     String lowerMessage = " " + event.getMessage().toLowerCase() + " ";
-    for (String badword : BADWORDS) {
+    for (String badword : currentBadwords) {
       if (lowerMessage.contains(badword)) {
         event.getChannel().send().kick(event.getUser(), kickReason);
       }
@@ -88,7 +142,8 @@ public class BadWordsListener extends ListenerAdapter<PircBotX> {
 
   // internal helpers
 
-  private void loadBadWords(String badwordsPath, String encoding) {
+  private void loadBadWords() {
+    ImmutableList.Builder<String> loadedBadwords = ImmutableList.builder();
     try (InputStream input = ClassLoader.getSystemResourceAsStream(badwordsPath)) {
       Reader reader = new InputStreamReader(input, encoding);
       BufferedReader bufferedReader = new BufferedReader(reader);
@@ -99,11 +154,14 @@ public class BadWordsListener extends ListenerAdapter<PircBotX> {
         line = line.trim();
         if (!line.isEmpty() && !line.startsWith("#")) {
           // Put everything small case for easier comparison
-          BADWORDS.add(" " + line.toLowerCase() + " ");
+          loadedBadwords.add(" " + line.toLowerCase() + " ");
         }
       }
     } catch (IOException ioe) {
-      LOGGER.error("Could not read badwords file, ignoring", ioe);
+      LOGGER.error("Could not read badwords file, keeping previous badwords", ioe);
+      return;
     }
+    badwords = loadedBadwords.build();
+    LOGGER.info("Loaded {} badwords", badwords.size());
   }
 }
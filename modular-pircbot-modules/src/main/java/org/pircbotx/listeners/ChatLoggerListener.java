@@ -17,27 +17,18 @@ import static org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent.TOPIC_CH
 import static org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent.TOPIC_SET_BY;
 import static org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent.USER_MODE;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 import org.pircbotx.Channel;
 import org.pircbotx.PircBotX;
 import org.pircbotx.User;
@@ -53,6 +44,14 @@ import org.pircbotx.hooks.events.PartEvent;
 import org.pircbotx.hooks.events.QuitEvent;
 import org.pircbotx.hooks.events.TopicEvent;
 import org.pircbotx.hooks.events.UserModeEvent;
+import org.pircbotx.listeners.chatlogger.AsyncChatLogWriter;
+import org.pircbotx.listeners.chatlogger.AsyncLoggingPolicy;
+import org.pircbotx.listeners.chatlogger.BinaryChatLogSink;
+import org.pircbotx.listeners.chatlogger.ChatLogLine;
+import org.pircbotx.listeners.chatlogger.ChatLogSink;
+import org.pircbotx.listeners.chatlogger.ChatLogTemplate;
+import org.pircbotx.listeners.chatlogger.RotationPolicy;
+import org.pircbotx.listeners.chatlogger.TextChatLogSink;
 import org.pircbotx.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,7 +61,10 @@ import com.google.common.collect.ImmutableMap;
 
 /**
  * A listener that logs everything that the bot sees (or almost...) into log files on the machine it
- * is running. Files are automatically renamed each day to keep one file name per day.
+ * is running. Each channel has its own log file, and files are automatically renamed each day to
+ * keep one file name per channel and per day. When the bot is in many channels, the number of files
+ * kept open can be limited with {@link #setMaxOpenFiles(int)}, and files can be rotated, compressed
+ * and deleted with {@link #setRotationPolicy(RotationPolicy)}.
  * <p>
  * Chat events (= things the bot sees) all have a default log format that can be overridden if
  * needed. All supported events are described in the {@link ChatLoggerEvent} enumeration.
@@ -70,6 +72,13 @@ import com.google.common.collect.ImmutableMap;
  * If you want to override a chat event log format, use
  * {@link #setEventFormat(ChatLoggerEvent, String)}. If you want to add timestamps to your log
  * files, use {@link #setTimestampFormat(String)}.
+ * <p>
+ * By default, each line is written and flushed by the thread that received the event. On busy
+ * channels, use {@link #setAsyncLogging(AsyncLoggingPolicy)} to have lines written in batches by a
+ * dedicated thread instead.
+ * <p>
+ * Lines can also be written in a compact binary format that can be searched by time, using
+ * {@link #setSink(ChatLogSink)} with a {@link BinaryChatLogSink}.
  *
  * @author Emmanuel Cron
  */
@@ -210,10 +219,13 @@ public class ChatLoggerListener extends ListenerAdapter<PircBotX> implements
 
     private String defaultFormat;
 
+    private ChatLogTemplate defaultTemplate;
+
     private int requiredReplacements;
 
     private ChatLoggerEvent(String defaultFormat) {
       this.defaultFormat = defaultFormat;
+      this.defaultTemplate = ChatLogTemplate.compile(defaultFormat);
       this.requiredReplacements = StringUtils.countMatches(defaultFormat, "%s");
     }
 
@@ -234,23 +246,27 @@ public class ChatLoggerListener extends ListenerAdapter<PircBotX> implements
     public String getDefaultFormat() {
       return defaultFormat;
     }
-  }
 
-  private Map<ChatLoggerEvent, String> eventFormats = new HashMap<ChatLoggerEvent, String>();
-
-  private Path logsPath;
-
-  private DateTime logFileDate;
+    /**
+     * The default log format of this chat event, compiled.
+     *
+     * @return the default log template
+     */
+    public ChatLogTemplate getDefaultTemplate() {
+      return defaultTemplate;
+    }
+  }
 
-  private File logFile;
+  private Map<ChatLoggerEvent, ChatLogTemplate> eventTemplates =
+      new EnumMap<ChatLoggerEvent, ChatLogTemplate>(ChatLoggerEvent.class);
 
-  private BufferedWriter logFileWriter;
+  private final TextChatLogSink textSink;
 
-  private String charset;
+  private volatile ChatLogSink sink;
 
-  private DateTimeFormatter timestampFormat;
+  private volatile AsyncChatLogWriter asyncWriter;
 
-  private boolean checkedFormats;
+  private volatile boolean checkedFormats;
 
   /**
    * Creates a new chat logger listener.
@@ -264,8 +280,8 @@ public class ChatLoggerListener extends ListenerAdapter<PircBotX> implements
         logsPath.toString());
     checkArgument(!Strings.isNullOrEmpty(charset), "No chat logs file encoding specified");
 
-    this.logsPath = logsPath;
-    this.charset = charset;
+    this.textSink = new TextChatLogSink(logsPath, charset);
+    this.sink = textSink;
   }
 
   /**
@@ -283,20 +299,25 @@ public class ChatLoggerListener extends ListenerAdapter<PircBotX> implements
    * <p>
    * You may get all default formats by calling {@link ChatLoggerEvent#getDefaultFormat()} on each
    * chat event.
+   * <p>
+   * Formats are compiled once by this method into a {@link ChatLogTemplate}: only {@code %s}
+   * replacements are supported, and {@code %%} stands for a single {@code %}.
    *
    * @param event the event for which set a new format
    * @param format the format; it may be empty or <tt>null</tt> if you wish to disable logging for
    *        this event
+   * @throws IllegalArgumentException if the format uses any other specifier
    */
   public void setEventFormat(ChatLoggerEvent event, String format) {
     checkNotNull(event);
 
     if (Strings.isNullOrEmpty(format)) {
-      eventFormats.put(event, null);
+      eventTemplates.put(event, null);
       return;
     }
 
-    int countMatches = StringUtils.countMatches(format, "%s");
+    ChatLogTemplate template = ChatLogTemplate.compile(format);
+    int countMatches = template.getReplacementCount();
     if (countMatches < event.getRequiredReplacements()) {
       LOGGER.warn("Number of replacements strings is fewer than the expected count,"
           + " some data may not be logged; event: {}, expected: {}, format: '{}'", new Object[] {
@@ -310,7 +331,7 @@ public class ChatLoggerListener extends ListenerAdapter<PircBotX> implements
       // Not inserting anything in map to use default format
       return;
     }
-    eventFormats.put(event, format);
+    eventTemplates.put(event, template);
   }
 
   /**
@@ -324,18 +345,86 @@ public class ChatLoggerListener extends ListenerAdapter<PircBotX> implements
    * @throws IllegalArgumentException if the pattern is invalid
    */
   public void setTimestampFormat(String pattern) {
-    if (Strings.isNullOrEmpty(pattern)) {
-      timestampFormat = null;
-    } else {
-      timestampFormat = DateTimeFormat.forPattern(pattern);
+    textSink.setTimestampFormat(pattern);
+  }
+
+  /**
+   * Sets the maximum number of log files kept open at the same time, {@value
+   * TextChatLogSink#DEFAULT_MAX_OPEN_FILES} by default. Files of the channels that logged least
+   * recently are closed first, and reopened when their channel logs again. Must be called before
+   * the bot is started.
+   *
+   * @param maxOpenFiles the maximum number of open files, at least 1
+   */
+  public void setMaxOpenFiles(int maxOpenFiles) {
+    textSink.setMaxOpenFiles(maxOpenFiles);
+  }
+
+  /**
+   * Sets when new log files are started, and whether finished files are compressed and deleted
+   * after a while. By default, a new file is started each day and files are kept as they are. Must
+   * be called before the bot is started.
+   *
+   * @param policy the rotation policy
+   */
+  public void setRotationPolicy(RotationPolicy policy) {
+    textSink.setRotationPolicy(policy);
+  }
+
+  /**
+   * Sets where lines are written, instead of the text files of this listener. The timestamp format,
+   * maximum number of open files and rotation policy of this listener only apply to its text files.
+   * Must be called before the bot is started.
+   *
+   * @param sink where to write the lines
+   */
+  public synchronized void setSink(ChatLogSink sink) {
+    checkNotNull(sink, "No sink specified");
+    this.sink = sink;
+    if (asyncWriter != null) {
+      // Writer must now write to the new sink
+      AsyncLoggingPolicy policy = asyncWriter.getPolicy();
+      asyncWriter.stop();
+      asyncWriter = new AsyncChatLogWriter(sink, policy);
+    }
+  }
+
+  /**
+   * Makes this listener write lines asynchronously: events only put their line in a buffer, and a
+   * dedicated thread writes the waiting lines in batches, with one write and one flush per batch.
+   * Must be called before the bot is started.
+   *
+   * @param policy how lines are batched, or {@code null} to write each line when it is logged
+   */
+  public synchronized void setAsyncLogging(AsyncLoggingPolicy policy) {
+    if (asyncWriter != null) {
+      asyncWriter.stop();
     }
+    asyncWriter = policy == null ? null : new AsyncChatLogWriter(sink, policy);
+  }
+
+  /**
+   * Returns the asynchronous writer of this listener, for monitoring purposes.
+   *
+   * @return the writer, or {@code null} if lines are written when they are logged
+   */
+  public AsyncChatLogWriter getAsyncWriter() {
+    return asyncWriter;
   }
 
   @Override
   public void stop() {
-    if (logFileWriter != null) {
+    AsyncChatLogWriter writer = asyncWriter;
+    if (writer != null) {
+      // Writes waiting lines, then closes the sink
+      writer.stop();
+      return;
+    }
+
+    ChatLogSink sink = this.sink;
+    synchronized (sink) {
       try {
-        logFileWriter.close();
+        sink.close();
       } catch (IOException ioe) {
         LOGGER.error("Could not close chat log file writer, will be done when Java system exists",
             ioe);
@@ -424,10 +513,10 @@ public class ChatLoggerListener extends ListenerAdapter<PircBotX> implements
 
   // internal helpers
 
-  private synchronized void log(Channel channel, ChatLoggerEvent event, Object... args) {
+  private void log(Channel channel, ChatLoggerEvent event, String... args) {
     if (!checkedFormats) {
       for (ChatLoggerEvent checkEvent : ChatLoggerEvent.values()) {
-        if (eventFormats.containsKey(checkEvent) && eventFormats.get(checkEvent) == null) {
+        if (eventTemplates.containsKey(checkEvent) && eventTemplates.get(checkEvent) == null) {
           LOGGER
               .info("Format of event {} has been forced to nothing; it will not be logged", event);
         }
@@ -435,58 +524,35 @@ public class ChatLoggerListener extends ListenerAdapter<PircBotX> implements
       checkedFormats = true;
     }
 
-    // Get custom format (may be blank) or default if not set
-    String format =
-        eventFormats.containsKey(event) ? eventFormats.get(event) : event.getDefaultFormat();
+    // Get custom template (may be blank) or default if not set
+    ChatLogTemplate template =
+        eventTemplates.containsKey(event) ? eventTemplates.get(event) : event.defaultTemplate;
 
     // Cannot be blank here, check is done in setEventFormat()
-    if (format == null) {
+    if (template == null) {
       // Means a key was found but it was set to nothing (= wishing not to log these events)
       return;
     }
 
-    String message = String.format(format, args);
-    if (timestampFormat != null) {
-      message = "[" + timestampFormat.print(System.currentTimeMillis()) + "] " + message;
-    }
-
-    // Create new file when date changes or if none exist
-    if (logFileDate == null || new DateTime().withTimeAtStartOfDay().isAfter(logFileDate)) {
-      // First close old writer if it exists
-      if (logFileWriter != null) {
-        try {
-          logFileWriter.close();
-        } catch (IOException ioe) {
-          LOGGER.warn("Could not close writer to previous chat log file", ioe);
-        }
-      }
-      logFileWriter = null;
-
-      logFileDate = new DateTime().withTimeAtStartOfDay();
-      String logFileDateStr = DateTimeFormat.forPattern("yyyy_MM_dd").print(logFileDate);
-      logFile =
-          logsPath.resolve(
-              Paths.get(channel.getName().toLowerCase() + "-" + logFileDateStr + ".log")).toFile();
+    // Rendered by the sink, along with the timestamp
+    ChatLogLine line =
+        new ChatLogLine(System.currentTimeMillis(), channel.getName(), event, template, args);
 
-      try {
-        OutputStream outputStream = new FileOutputStream(logFile, true);
-        Writer writer = new OutputStreamWriter(outputStream, charset);
-        logFileWriter = new BufferedWriter(writer);
-      } catch (IOException ioe) {
-        LOGGER.error("LOGGING DISABLED: Could not create writer to chat log file", ioe);
-        return;
-      }
+    AsyncChatLogWriter writer = asyncWriter;
+    if (writer != null) {
+      writer.submit(line);
+      return;
     }
 
     // Now log it, baby!
-    try {
-      if (logFile.length() > 0L) {
-        logFileWriter.append("\n");
+    ChatLogSink sink = this.sink;
+    synchronized (sink) {
+      try {
+        sink.write(line);
+        sink.flush();
+      } catch (IOException ioe) {
+        LOGGER.error("Could not write message to chat log file: " + line.getText(), ioe);
       }
-      logFileWriter.append(message);
-      logFileWriter.flush();
-    } catch (IOException ioe) {
-      LOGGER.error("Could not write message to chat log file: " + message, ioe);
     }
   }
 
@@ -0,0 +1,206 @@
+package org.pircbotx.listeners;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.pircbotx.Channel;
+import org.pircbotx.ExtendedPircBotX;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ActionEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.pircbotx.hooks.events.TopicEvent;
+import org.pircbotx.listeners.chatlogger.ChatSearchHit;
+import org.pircbotx.listeners.chatlogger.ChatSearchIndex;
+import org.pircbotx.listeners.chatlogger.ChatSearchQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * Indexes the messages said on the channels of the bot, and lets admins search them in private
+ * chat, e.g. {@code !grep nick:someone #channel since:2014-01-01 some words}. See
+ * {@link ChatSearchQuery} for the syntax of the search and {@link ChatSearchIndex} for how
+ * messages are indexed.
+ * <p>
+ * Messages, actions and topic changes are indexed; the most recent matches are sent back, newest
+ * first. Only messages said on the channels where the admin searching is currently op are sent
+ * back, so that an op of one channel cannot read the messages of another one.
+ *
+ * @author Emmanuel Cron
+ */
+public class ChatSearchListener extends ListenerAdapter<PircBotX> implements PrivateListener,
+    StoppableListener, WarmUpListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChatSearchListener.class);
+
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormat
+      .forPattern("yyyy-MM-dd HH:mm");
+
+  private static final int DEFAULT_MAX_RESULTS = 5;
+
+  private final ChatSearchIndex index;
+
+  private final String trigger;
+
+  private String helpMessage;
+
+  private int maxResults = DEFAULT_MAX_RESULTS;
+
+  /**
+   * Creates a new chat search listener.
+   *
+   * @param indexPath the folder where to store the index files
+   * @param trigger the message that an admin needs to send to the bot to search
+   */
+  public ChatSearchListener(Path indexPath, String trigger) {
+    checkArgument(!Strings.isNullOrEmpty(trigger));
+
+    this.index = new ChatSearchIndex(indexPath);
+    this.trigger = trigger;
+  }
+
+  /**
+   * Sets the number of postings buffered in memory before being written to disk. See
+   * {@link ChatSearchIndex#setMaxBufferedPostings(int)}.
+   */
+  public void setMaxBufferedPostings(int maxBufferedPostings) {
+    index.setMaxBufferedPostings(maxBufferedPostings);
+  }
+
+  /**
+   * Sets the maximum number of messages sent back for a search. Defaults to
+   * {@value #DEFAULT_MAX_RESULTS}.
+   */
+  public void setMaxResults(int maxResults) {
+    checkArgument(maxResults > 0, "Maximum results must be > 0");
+    this.maxResults = maxResults;
+  }
+
+  /**
+   * Returns the index of this listener, e.g. to monitor it.
+   */
+  public ChatSearchIndex getIndex() {
+    return index;
+  }
+
+  @Override
+  public void warmUp() {
+    try {
+      index.open();
+    } catch (IOException ioe) {
+      LOGGER.error("Could not open chat search index", ioe);
+    }
+  }
+
+  @Override
+  public String getPrivateTriggerMessage() {
+    return trigger;
+  }
+
+  public void setHelp(String helpMessage) {
+    this.helpMessage = helpMessage;
+  }
+
+  @Override
+  public String getHelpText() {
+    return helpMessage;
+  }
+
+  @Override
+  public boolean isOpRequired() {
+    return true;
+  }
+
+  @Override
+  public void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event) {
+    event.getUser().send().message("Usage: " + trigger
+        + " [nick:<nick>] [#channel] [since:yyyy-MM-dd] [until:yyyy-MM-dd] [date:yyyy-MM-dd]"
+        + " [words...]");
+  }
+
+  @Override
+  public void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event,
+      List<String> arguments) {
+    ChatSearchQuery query;
+    try {
+      query = ChatSearchQuery.parse(arguments);
+    } catch (IllegalArgumentException iae) {
+      event.getUser().send().message(iae.getMessage());
+      onTriggerPrivateMessage(event);
+      return;
+    }
+
+    List<String> allowedChannels = new ArrayList<String>();
+    for (Channel channel : event.getUser().getChannelsOpIn()) {
+      allowedChannels.add(channel.getName());
+    }
+    query = query.restrictTo(allowedChannels);
+
+    long start = System.nanoTime();
+    List<ChatSearchHit> hits;
+    try {
+      hits = index.search(query, maxResults);
+    } catch (IOException ioe) {
+      LOGGER.error("Could not search chat messages for " + query, ioe);
+      event.getUser().send().message("Search failed, see the logs of the bot");
+      return;
+    }
+    long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+    for (ChatSearchHit hit : hits) {
+      event.getUser().send().message(String.format("[%s] %s <%s> %s",
+          DATE_FORMAT.print(hit.getTimestamp()), hit.getChannel(), hit.getNick(), hit.getText()));
+    }
+    event.getUser().send().message(
+        (hits.isEmpty() ? "No message found" : hits.size() + " most recent message(s)") + " in "
+            + elapsedMillis + " ms");
+  }
+
+  @Override
+  public void onMessage(MessageEvent<PircBotX> event) {
+    add(event.getTimestamp(), event.getChannel().getName(), event.getUser().getNick(),
+        event.getMessage());
+  }
+
+  @Override
+  public void onAction(ActionEvent<PircBotX> event) {
+    add(event.getTimestamp(), event.getChannel().getName(), event.getUser().getNick(),
+        event.getAction());
+  }
+
+  @Override
+  public void onTopic(TopicEvent<PircBotX> event) {
+    if (event.isChanged()) {
+      add(event.getTimestamp(), event.getChannel().getName(), event.getUser().getNick(),
+          event.getTopic());
+    }
+  }
+
+  @Override
+  public void stop() {
+    try {
+      index.close();
+    } catch (IOException ioe) {
+      LOGGER.error("Could not close chat search index", ioe);
+    }
+  }
+
+  // internal helpers
+
+  private void add(long timestamp, String channel, String nick, String text) {
+    try {
+      index.add(timestamp, channel, nick, text);
+    } catch (IOException ioe) {
+      LOGGER.error("Could not index chat message", ioe);
+    }
+  }
+}
@@ -3,6 +3,8 @@ package org.pircbotx.listeners;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Random;
 
@@ -11,8 +13,11 @@ import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.listeners.facts.FactsReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 
 /**
  * Displays random facts on user request. This listener loads a list of facts on startup and then
@@ -22,11 +27,15 @@ import com.google.common.base.Strings;
  * order to load the facts into memory. You should check which readers are available in the
  * {@code org.pircbotx.listeners.facts.*} package before developing your own.
  * <p>
- * This listener can only be triggered on a public chat.
+ * This listener can only be triggered on a public chat. Facts spanning several lines can be packed
+ * into as few lines as possible by calling {@link #setPackLines(boolean)}.
  *
  * @author Emmanuel Cron
  */
-public class FactsListener extends ListenerAdapter<PircBotX> implements PublicListener {
+public class FactsListener extends ListenerAdapter<PircBotX> implements PublicListener,
+    StoppableListener, WarmUpListener {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FactsListener.class);
+
   private static final Random RANDOM = new Random();
 
   private String trigger;
@@ -35,21 +44,49 @@ public class FactsListener extends ListenerAdapter<PircBotX> implements PublicLi
 
   private FactsReader factsReader;
 
-  private List<List<String>> facts;
+  // Replaced at once when the facts are read again
+  private volatile List<List<String>> facts;
+
+  private boolean packLines;
+
+  // Guarded by this
+  private Closeable watch;
 
   /**
    * Creates a new facts listener.
    *
    * @param trigger the word to say in a public chat to trigger the display of a fact; note that
    *        this word must be prefixed by "{@code !}"
-   * @param factsReader a facts reader that will be used to load the facts into memory at startup
+   * @param factsReader a facts reader that will be used to load the facts into memory when the
+   *        listener is warmed up, and again each time it notifies that they have changed
    */
   public FactsListener(String trigger, FactsReader factsReader) {
     checkArgument(!Strings.isNullOrEmpty(trigger));
 
     this.trigger = trigger;
     this.factsReader = checkNotNull(factsReader);
+  }
+
+  @Override
+  public void warmUp() {
     loadFacts();
+    synchronized (this) {
+      // Warmed up again after being removed and added back
+      stop();
+      watch = factsReader.watch(this::loadFacts);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (watch != null) {
+      try {
+        watch.close();
+      } catch (IOException ioe) {
+        LOGGER.warn("Could not stop watching facts", ioe);
+      }
+      watch = null;
+    }
   }
 
   @Override
@@ -66,11 +103,25 @@ public class FactsListener extends ListenerAdapter<PircBotX> implements PublicLi
     return helpMessage;
   }
 
+  /**
+   * Sets whether the lines of a fact are packed into as few lines as possible, separated by
+   * "{@code  | }", instead of being sent one by one. Lines are not packed by default.
+   */
+  public void setPackLines(boolean packLines) {
+    this.packLines = packLines;
+  }
+
   @Override
   public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
-    if (facts != null) {
-      int fact = RANDOM.nextInt(facts.size());
-      for (String line : facts.get(fact)) {
+    List<List<String>> currentFacts = facts;
+    if (currentFacts != null) {
+      int fact = RANDOM.nextInt(currentFacts.size());
+      if (packLines) {
+        event.getBot().sendBatched().packedMessage(event.getChannel().getName(),
+            currentFacts.get(fact));
+        return;
+      }
+      for (String line : currentFacts.get(fact)) {
         event.getChannel().send().message(line);
       }
     }
@@ -81,7 +132,7 @@ public class FactsListener extends ListenerAdapter<PircBotX> implements PublicLi
   private void loadFacts() {
     List<List<String>> factsRead = factsReader.readFacts();
     if (factsRead.size() > 0) {
-      facts = factsRead;
+      facts = ImmutableList.copyOf(factsRead);
     }
   }
 }
@@ -0,0 +1,288 @@
+package org.pircbotx.listeners;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.pircbotx.Channel;
+import org.pircbotx.ExtendedPircBotX;
+import org.pircbotx.PircBotX;
+import org.pircbotx.User;
+import org.pircbotx.UserChannelDao;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ActionEvent;
+import org.pircbotx.hooks.events.JoinEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.NickChangeEvent;
+import org.pircbotx.hooks.events.PartEvent;
+import org.pircbotx.hooks.events.QuitEvent;
+import org.pircbotx.listeners.seen.LastSeenEntry;
+import org.pircbotx.listeners.seen.LastSeenTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * Remembers the last event of each nick seen by the bot and tells users about it on request, e.g.
+ * "{@code !seen someone}".
+ * <p>
+ * Joins, parts, quits, messages, actions and nick changes are recorded in a {@link LastSeenTable},
+ * a memory-mapped file that holds hundreds of thousands of nicks without using the heap and is
+ * used as is when the bot restarts.
+ * <p>
+ * The channel of the event and what was said are only told when the event happened on the channel
+ * asking, or on a channel of the bot that is neither secret nor private; otherwise only the time
+ * and the kind of event are told, so that nothing said on a secret channel leaks to another one.
+ *
+ * @author Emmanuel Cron
+ */
+public class LastSeenListener extends ListenerAdapter<PircBotX> implements PublicListener,
+    StoppableListener, WarmUpListener {
+  /**
+   * Events recorded by this listener, along with the way they are told to users.
+   * <p>
+   * Ordinals are stored in the table file, so new events must only be added at the end.
+   *
+   * @author Emmanuel Cron
+   */
+  public enum LastSeenEvent {
+    JOIN("joining %s", "joining a channel"),
+    PART("leaving %s", "leaving a channel"),
+    QUIT("quitting (%s)", "quitting"),
+    MESSAGE("saying \"%s\" on %s", "talking on a channel"),
+    ACTION("acting \"%s\" on %s", "acting on a channel"),
+    NICK_CHANGED_TO("changing nick to %s", "changing nick"),
+    NICK_CHANGED_FROM("changing nick from %s", "changing nick");
+
+    private final String format;
+
+    private final String kind;
+
+    LastSeenEvent(String format, String kind) {
+      this.format = format;
+      this.kind = kind;
+    }
+
+    /**
+     * Describes this event without its channel nor detail, e.g. {@code leaving a channel}.
+     */
+    public String describeKind() {
+      return kind;
+    }
+
+    /**
+     * Describes an entry of this event, e.g. {@code leaving #channel}.
+     */
+    public String describe(LastSeenEntry entry) {
+      switch (this) {
+        case JOIN:
+        case PART:
+          return String.format(format, entry.getChannel());
+        case MESSAGE:
+        case ACTION:
+          return String.format(format, Strings.nullToEmpty(entry.getDetail()),
+              entry.getChannel());
+        default:
+          return String.format(format, Strings.nullToEmpty(entry.getDetail()));
+      }
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LastSeenListener.class);
+
+  private final LastSeenTable table;
+
+  private final String trigger;
+
+  private String helpMessage;
+
+  /**
+   * Creates a new last seen listener.
+   *
+   * @param trigger the word to say in a public chat, followed by a nick, to know when this nick
+   *        was last seen; note that this word must be prefixed by "{@code !}"
+   * @param tableFile the file storing the last event of each nick; it is created if it does not
+   *        exist
+   */
+  public LastSeenListener(String trigger, Path tableFile) {
+    checkArgument(!Strings.isNullOrEmpty(trigger));
+
+    this.trigger = trigger;
+    this.table = new LastSeenTable(tableFile);
+  }
+
+  /**
+   * Sets the number of slots of the table when its file is created. See
+   * {@link LastSeenTable#setInitialCapacity(int)}.
+   */
+  public void setInitialCapacity(int initialCapacity) {
+    table.setInitialCapacity(initialCapacity);
+  }
+
+  /**
+   * Returns the table of this listener, e.g. to monitor it.
+   */
+  public LastSeenTable getTable() {
+    return table;
+  }
+
+  @Override
+  public void warmUp() {
+    try {
+      table.open();
+    } catch (IOException ioe) {
+      LOGGER.error("Could not open last seen table", ioe);
+    }
+  }
+
+  @Override
+  public String getTriggerMessage() {
+    return trigger;
+  }
+
+  public void setHelp(String helpMessage) {
+    this.helpMessage = helpMessage;
+  }
+
+  @Override
+  public String getHelpText() {
+    return helpMessage;
+  }
+
+  @Override
+  public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+    event.respond("Usage: !" + trigger + " <nick>");
+  }
+
+  @Override
+  public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event, List<String> arguments) {
+    if (arguments.isEmpty()) {
+      onTriggerMessage(event);
+      return;
+    }
+
+    String nick = arguments.get(0);
+    LastSeenEntry entry;
+    try {
+      entry = table.get(nick);
+    } catch (IOException ioe) {
+      LOGGER.error("Could not read last seen table", ioe);
+      return;
+    }
+
+    if (entry == null) {
+      event.getChannel().send().message("I have never seen " + nick);
+    } else {
+      LastSeenEvent lastEvent = entry.getEvent();
+      event.getChannel().send().message(entry.getNick() + " was last seen "
+          + formatElapsed(System.currentTimeMillis() - entry.getTimestamp()) + " ago, "
+          + (isDisclosable(event, entry) ? lastEvent.describe(entry) : lastEvent.describeKind()));
+    }
+  }
+
+  @Override
+  public void onJoin(JoinEvent<PircBotX> event) {
+    record(event.getUser().getNick(), event.getTimestamp(), LastSeenEvent.JOIN,
+        event.getChannel(), null);
+  }
+
+  @Override
+  public void onPart(PartEvent<PircBotX> event) {
+    record(event.getUser().getNick(), event.getTimestamp(), LastSeenEvent.PART,
+        event.getChannel(), null);
+  }
+
+  @Override
+  public void onQuit(QuitEvent<PircBotX> event) {
+    record(event.getUser().getNick(), event.getTimestamp(), LastSeenEvent.QUIT, null,
+        event.getReason());
+  }
+
+  @Override
+  public void onMessage(MessageEvent<PircBotX> event) {
+    record(event.getUser().getNick(), event.getTimestamp(), LastSeenEvent.MESSAGE,
+        event.getChannel(), event.getMessage());
+  }
+
+  @Override
+  public void onAction(ActionEvent<PircBotX> event) {
+    if (event.getChannel() != null) {
+      record(event.getUser().getNick(), event.getTimestamp(), LastSeenEvent.ACTION,
+          event.getChannel(), event.getAction());
+    }
+  }
+
+  @Override
+  public void onNickChange(NickChangeEvent<PircBotX> event) {
+    record(event.getOldNick(), event.getTimestamp(), LastSeenEvent.NICK_CHANGED_TO, null,
+        event.getNewNick());
+    record(event.getNewNick(), event.getTimestamp(), LastSeenEvent.NICK_CHANGED_FROM, null,
+        event.getOldNick());
+  }
+
+  @Override
+  public void stop() {
+    table.close();
+  }
+
+  // internal helpers
+
+  private void record(String nick, long timestamp, LastSeenEvent event, Channel channel,
+      String detail) {
+    try {
+      table.record(nick, timestamp, event, channel == null ? null : channel.getName(), detail);
+    } catch (IOException ioe) {
+      LOGGER.error("Could not record last event of " + nick, ioe);
+    }
+  }
+
+  /**
+   * Returns whether the channel and detail of the given entry can be told on the channel of the
+   * event, i.e. whether the entry has no channel, is for this channel, or is for a channel of the
+   * bot that is neither secret nor private.
+   */
+  private static boolean isDisclosable(MessageEvent<ExtendedPircBotX> event,
+      LastSeenEntry entry) {
+    String channelName = entry.getChannel();
+    if (channelName == null || channelName.equalsIgnoreCase(event.getChannel().getName())) {
+      return true;
+    }
+
+    UserChannelDao<User, Channel> userChannelDao = event.getBot().getUserChannelDao();
+    if (!userChannelDao.channelExists(channelName)) {
+      // Left since, so no way to know whether it is secret
+      return false;
+    }
+    Channel channel = userChannelDao.getChannel(channelName);
+    return !channel.isSecret() && !channel.isChannelPrivate();
+  }
+
+  /**
+   * Formats a duration with its two largest units, e.g. {@code 3 days 2 hours}.
+   */
+  private static String formatElapsed(long millis) {
+    long seconds = TimeUnit.MILLISECONDS.toSeconds(Math.max(millis, 0));
+    long[] amounts = {seconds / 86400, seconds / 3600 % 24, seconds / 60 % 60, seconds % 60};
+    String[] units = {"day", "hour", "minute", "second"};
+
+    StringBuilder elapsed = new StringBuilder();
+    int printed = 0;
+    for (int i = 0; i < amounts.length && printed < 2; i++) {
+      if (amounts[i] > 0 || (printed == 0 && i == amounts.length - 1)) {
+        if (printed > 0) {
+          elapsed.append(' ');
+        }
+        elapsed.append(amounts[i]).append(' ').append(units[i]).append(amounts[i] == 1 ? "" : "s");
+        printed++;
+      } else if (printed > 0) {
+        // Keeps the two units adjacent, e.g. no "2 days 5 seconds"
+        break;
+      }
+    }
+    return elapsed.toString();
+  }
+}
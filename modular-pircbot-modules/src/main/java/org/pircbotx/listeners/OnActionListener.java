@@ -1,5 +1,6 @@
 package org.pircbotx.listeners;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
@@ -7,13 +8,14 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Random;
 
+import org.pircbotx.ExtendedPircBotX;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.ActionEvent;
@@ -25,9 +27,12 @@ import org.pircbotx.listeners.onaction.OnActionAnswers;
 import org.pircbotx.listeners.onaction.OnActionPattern;
 import org.pircbotx.listeners.onaction.OnActionPatternFactory;
 import org.pircbotx.util.PropertiesUtils;
+import org.pircbotx.util.ResourceWatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableMap;
+
 /**
  * Sends bot replies or actions in a public channel when someone does an action matching one of a
  * list of provided regular expression. These expressions and replies must be provided in a
@@ -91,15 +96,33 @@ import org.slf4j.LoggerFactory;
  * poke.possibleanswers.action.2=pokes {sender} harder!
  * </pre>
  *
+ * If the file is not packaged in a jar, it is watched: changes are applied as soon as it is saved,
+ * without restarting the bot. The file is read, and its regular expressions compiled, when the
+ * listener is warmed up by an {@link ExtendedPircBotX}, or when a plain bot connects.
+ *
  * @author Emmanuel Cron
  */
-public class OnActionListener extends ListenerAdapter<PircBotX> {
+public class OnActionListener extends ListenerAdapter<PircBotX> implements StoppableListener,
+    WarmUpListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(OnActionListener.class);
 
   private static final Random RANDOM = new Random();
 
-  private static final Map<OnActionPattern, OnActionAnswers> TRIGGER_ACTIONS =
-      new HashMap<OnActionPattern, OnActionAnswers>();
+  private final String actionsPath;
+
+  private final String encoding;
+
+  // Replaced at once when the file is reloaded
+  private volatile ImmutableMap<OnActionPattern, OnActionAnswers> triggerActions =
+      ImmutableMap.of();
+
+  // Used to build the dynamic patterns of reloaded actions; guarded by this
+  private String botname;
+
+  private volatile boolean warmedUp;
+
+  // Guarded by this
+  private ResourceWatcher.Watch watch;
 
   /**
    * Creates a new on action listener.
@@ -108,11 +131,38 @@ public class OnActionListener extends ListenerAdapter<PircBotX> {
    * @param encoding encoding in which the action file is saved
    */
   public OnActionListener(String actionsPath, String encoding) {
-    loadActions(checkNotNull(actionsPath), checkNotNull(encoding));
+    this.actionsPath = checkNotNull(actionsPath);
+    this.encoding = checkNotNull(encoding);
+    checkArgument(ClassLoader.getSystemResource(actionsPath) != null,
+        "Actions file not found: %s", actionsPath);
+  }
+
+  @Override
+  public void warmUp() {
+    warmedUp = true;
+    loadActions();
+    synchronized (this) {
+      // Warmed up again after being removed and added back
+      stop();
+      watch = ResourceWatcher.watch(actionsPath, this::loadActions);
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (watch != null) {
+      watch.close();
+      watch = null;
+    }
   }
 
   @Override
   public void onConnect(ConnectEvent<PircBotX> event) {
+    if (!warmedUp && !(event.getBot() instanceof ExtendedPircBotX)) {
+      // Plain bots don't warm their listeners up
+      warmUp();
+    }
+
     // We now know the name of the bot, update dynamic patterns
     updateDynamicOnActionPatterns(event.getBot().getNick());
   }
@@ -128,7 +178,7 @@ public class OnActionListener extends ListenerAdapter<PircBotX> {
   @Override
   public void onAction(ActionEvent<PircBotX> event) {
     // Check if action can trigger a reply
-    for (Entry<OnActionPattern, OnActionAnswers> entry : TRIGGER_ACTIONS.entrySet()) {
+    for (Entry<OnActionPattern, OnActionAnswers> entry : triggerActions.entrySet()) {
       if (entry.getKey().matches(event.getAction())) {
         // Found one!
         OnActionAnswers onActionAnswers = entry.getValue();
@@ -152,24 +202,33 @@ public class OnActionListener extends ListenerAdapter<PircBotX> {
 
   // internal helpers
 
-  private void updateDynamicOnActionPatterns(String botname) {
-    for (OnActionPattern onActionPattern : TRIGGER_ACTIONS.keySet()) {
+  private synchronized void updateDynamicOnActionPatterns(String botname) {
+    this.botname = botname;
+    updateDynamicOnActionPatterns(triggerActions.keySet(), botname);
+  }
+
+  private static void updateDynamicOnActionPatterns(Iterable<OnActionPattern> onActionPatterns,
+      String botname) {
+    for (OnActionPattern onActionPattern : onActionPatterns) {
       if (onActionPattern instanceof DynamicOnActionPattern) {
         ((DynamicOnActionPattern) onActionPattern).updatePattern(botname);
       }
     }
   }
 
-  private void loadActions(String actionsPath, String encoding) {
+  private synchronized void loadActions() {
     Properties properties = new Properties();
     try (InputStream input = ClassLoader.getSystemResourceAsStream(actionsPath)) {
       Reader reader = new InputStreamReader(input, encoding);
       properties.load(reader);
     } catch (IOException ioe) {
-      LOGGER.error("Could not load actions file, they will not be available", ioe);
+      LOGGER.error("Could not load actions file, keeping previous actions", ioe);
       return;
     }
 
+    Map<OnActionPattern, OnActionAnswers> loadedTriggerActions =
+        new LinkedHashMap<OnActionPattern, OnActionAnswers>();
+
     List<String> processedProperties = new ArrayList<String>();
 
     for (String rawProperty : properties.stringPropertyNames()) {
@@ -190,9 +249,16 @@ public class OnActionListener extends ListenerAdapter<PircBotX> {
 
         for (String triggerMessage : triggerMessages) {
           OnActionPattern pattern = OnActionPatternFactory.build(triggerMessage);
-          TRIGGER_ACTIONS.put(pattern, onActionAnswers);
+          loadedTriggerActions.put(pattern, onActionAnswers);
         }
       }
     }
+
+    if (botname != null) {
+      // Already connected, patterns can't wait for the next nick change
+      updateDynamicOnActionPatterns(loadedTriggerActions.keySet(), botname);
+    }
+    triggerActions = ImmutableMap.copyOf(loadedTriggerActions);
+    LOGGER.info("Loaded {} action patterns", triggerActions.size());
   }
 }
@@ -4,13 +4,20 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.pircbotx.Channel;
 import org.pircbotx.ExtendedPircBotX;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.ListenerAdapter;
@@ -26,6 +33,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sun.syndication.feed.synd.SyndEntry;
 import com.sun.syndication.feed.synd.SyndFeed;
 import com.sun.syndication.io.FeedException;
@@ -33,7 +43,8 @@ import com.sun.syndication.io.FeedException;
 /**
  * Displays any new item of a given RSS feed in all public channels the bot has joined. Users can
  * also ask the bot to send the last 3 entries (amount is customizable) as {@code NOTICE} when in a
- * public channel or as a normal message when talking privately to the bot.
+ * public channel or as a normal message when talking privately to the bot. Users may request a
+ * different amount of entries by giving it after the trigger (e.g. "{@code !news 5}").
  * <p>
  * This listener supports the use of an URL shortener service to display smaller messages when
  * announcing new RSS news. If you want to use such a service, call the
@@ -42,10 +53,14 @@ import com.sun.syndication.io.FeedException;
  * Feeds retrieved from the web are automatically cached in a flat file by the underlying feed
  * fetcher. Additionally, the listener is limited to one fetch attempt every given interval
  * (interval set when creating the bot) to avoid spamming the server that hosts it.
+ * <p>
+ * Feeds are fetched in a thread of the listener, with connect and read timeouts, so that a slow
+ * server never holds up the scheduler shared by the other listeners of the bot. A fetch is skipped
+ * if the previous one is still running.
  *
  * @author Emmanuel Cron
  */
-public class RSSReaderListener extends ListenerAdapter<PircBotX> implements RunnableListener,
+public class RSSReaderListener extends ListenerAdapter<PircBotX> implements ScheduledListener,
     PublicListener, PrivateListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(RSSReaderListener.class);
 
@@ -57,9 +72,18 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
 
   private URL feedURL;
 
-  private SyndFeed lastFeedRetrieved;
+  private int connectTimeoutMillis = 10000;
+
+  private int readTimeoutMillis = 30000;
+
+  // Single thread, stopped when idle
+  private final ThreadPoolExecutor fetchExecutor;
 
-  private int checkIntervalMillis;
+  private final AtomicBoolean fetching = new AtomicBoolean();
+
+  private volatile SyndFeed lastFeedRetrieved;
+
+  private int checkInterval;
 
   private URLShortener urlShortener;
 
@@ -67,9 +91,9 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
 
   private int defaultToDisplay = 3;
 
-  private PircBotX bot;
+  private int maxToDisplay = 10;
 
-  private boolean run;
+  private PircBotX bot;
 
   /**
    * Creates a new RSS reader listener.
@@ -96,8 +120,27 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
 
     this.trigger = trigger;
     this.feedFetcherCache = new DiskFeedInfoCache(cachePath.toString());
-    this.feedURL = checkNotNull(feedURL);
-    this.checkIntervalMillis = checkInterval * 1000;
+    this.feedURL = withTimeouts(checkNotNull(feedURL));
+    this.checkInterval = checkInterval;
+
+    fetchExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setNameFormat("rss-reader-%d").setDaemon(true).build());
+    fetchExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Sets how long to wait for the server of the feed. By default, connecting may take up to 10
+   * seconds and reading the feed up to 30 seconds.
+   *
+   * @param connectTimeoutMillis millis after which the connection attempt is abandoned
+   * @param readTimeoutMillis millis after which the read attempt is abandoned
+   */
+  public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+    checkArgument(connectTimeoutMillis > 0, "Connect timeout must be > 0");
+    checkArgument(readTimeoutMillis > 0, "Read timeout must be > 0");
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
   }
 
   /**
@@ -110,6 +153,17 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
     this.defaultToDisplay = defaultToDisplay;
   }
 
+  /**
+   * Sets how many news users can request at most when giving an amount after the trigger command
+   * (e.g. "{@code !news 5}").
+   *
+   * @param maxToDisplay maximum number of news to display
+   */
+  public void setMaxToDisplay(int maxToDisplay) {
+    checkArgument(maxToDisplay > 0, "Maximum number of news to display must be > 0");
+    this.maxToDisplay = maxToDisplay;
+  }
+
   /**
    * Sets a service to shorten URLs of the items contained in the RSS feed, if they have one.
    *
@@ -151,37 +205,43 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
   }
 
   @Override
-  public void run() {
-    run = true;
-    long nextCheck = 0L;
-    do {
-      // Either retrieve or sleep; don't do both on the same loop
-      if (System.currentTimeMillis() > nextCheck) {
-        SyndFeed feed = retrieveFeed();
-        if (feed != null) {
-          lastFeedRetrieved = feed;
-          announceUndisplayedNews(bot, lastFeedRetrieved);
-        }
-        nextCheck = System.currentTimeMillis() + checkIntervalMillis;
-      } else {
+  public Schedule getSchedule() {
+    return Schedule.every(checkInterval, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void onSchedule() {
+    if (!fetching.compareAndSet(false, true)) {
+      LOGGER.warn("Previous fetch of {} is still running, skipping this one", feedURL);
+      return;
+    }
+
+    try {
+      fetchExecutor.execute(() -> {
         try {
-          Thread.sleep(500);
-        } catch (InterruptedException ie) {
-          LOGGER.error(
-              "Couldn't put thread to sleep; to avoid CPU overheat, thread will be killed", ie);
-          run = false;
+          SyndFeed feed = retrieveFeed();
+          if (feed != null) {
+            lastFeedRetrieved = feed;
+            // Scheduled listeners are only run by extended bots
+            announceUndisplayedNews((ExtendedPircBotX) bot, feed);
+          }
+        } finally {
+          fetching.set(false);
         }
-      }
-    } while (run);
+      });
+    } catch (RejectedExecutionException ree) {
+      fetching.set(false);
+      LOGGER.error("Could not start fetching " + feedURL, ree);
+    }
   }
 
   @Override
-  public void stop() {
-    run = false;
+  public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+    onTriggerMessage(event, ImmutableList.<String>of());
   }
 
   @Override
-  public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+  public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event, List<String> arguments) {
     if (lastFeedRetrieved == null) {
       event.getUser().send()
           .notice("I am currently retrieving the news, please retry in a few seconds!");
@@ -191,13 +251,20 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
     // Now send info to the user
     @SuppressWarnings("unchecked")
     List<SyndEntry> entries = lastFeedRetrieved.getEntries();
-    for (int i = 0; i < defaultToDisplay && i < entries.size(); i++) {
+    int toDisplay = getAmountToDisplay(arguments);
+    for (int i = 0; i < toDisplay && i < entries.size(); i++) {
       event.getUser().send().notice(buildMessageFromNewsEntry(entries.get(i)));
     }
   }
 
   @Override
   public void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event) {
+    onTriggerPrivateMessage(event, ImmutableList.<String>of());
+  }
+
+  @Override
+  public void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event,
+      List<String> arguments) {
     if (lastFeedRetrieved == null) {
       event.getUser().send()
           .message("I am currently retrieving the news, please retry in a few seconds!");
@@ -207,13 +274,27 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
     // Now send info to the user
     @SuppressWarnings("unchecked")
     List<SyndEntry> entries = lastFeedRetrieved.getEntries();
-    for (int i = 0; i < defaultToDisplay && i < entries.size(); i++) {
+    int toDisplay = getAmountToDisplay(arguments);
+    for (int i = 0; i < toDisplay && i < entries.size(); i++) {
       event.getUser().send().message(buildMessageFromNewsEntry(entries.get(i)));
     }
   }
 
   // internal helpers
 
+  private int getAmountToDisplay(List<String> arguments) {
+    if (arguments.isEmpty()) {
+      return defaultToDisplay;
+    }
+
+    Integer amount = Ints.tryParse(arguments.get(0));
+    if (amount == null || amount <= 0) {
+      // Not an amount, ignore it
+      return defaultToDisplay;
+    }
+    return Math.min(amount, maxToDisplay);
+  }
+
   private String buildMessageFromNewsEntry(SyndEntry entry) {
     String url = entry.getLink();
     if (urlShortener != null) {
@@ -227,7 +308,7 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
     return "[\u0002News\u0002] " + entry.getTitle() + " - " + url;
   }
 
-  private void announceUndisplayedNews(PircBotX bot, SyndFeed feed) {
+  private void announceUndisplayedNews(ExtendedPircBotX bot, SyndFeed feed) {
     // Safety check
     if (feed == null) {
       return;
@@ -253,10 +334,8 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
       }
 
       if (entry.getPublishedDate().after(lastAnnouncedPublishDate)) {
-        // Announce the latest news
-        for (Channel channel : bot.getUserBot().getChannels()) {
-          channel.send().message(buildMessageFromNewsEntry(entry));
-        }
+        // Announce the latest news; kept until channels are joined again if disconnected
+        bot.announce(buildMessageFromNewsEntry(entry));
         displayed++;
       } else {
         // Stop as soon as we encounter news older than the last
@@ -267,6 +346,26 @@ public class RSSReaderListener extends ListenerAdapter<PircBotX> implements Runn
     lastAnnouncedPublishDate = mostRecentPublishDate;
   }
 
+  /**
+   * Returns an URL equal to the given one whose connections time out.
+   */
+  private URL withTimeouts(URL url) {
+    URLStreamHandler handler = new URLStreamHandler() {
+      @Override
+      protected URLConnection openConnection(URL connectionURL) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        return connection;
+      }
+    };
+    try {
+      return URL.of(url.toURI(), handler);
+    } catch (URISyntaxException | IOException e) {
+      throw new IllegalArgumentException("Invalid feed URL: " + url, e);
+    }
+  }
+
   private SyndFeed retrieveFeed() {
     FeedFetcher feedFetcher = new HttpURLFeedFetcher(feedFetcherCache);
     SyndFeed feed = null;
@@ -2,9 +2,11 @@ package org.pircbotx.listeners;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.pircbotx.ExtendedPircBotX;
+import org.pircbotx.MessagePriority;
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.JoinEvent;
 
@@ -25,7 +27,9 @@ import com.google.common.collect.ImmutableList;
  * <dd>Command to send in private chat with the bot to display the help.</dd>
  * </dl>
  * Beware that sending notices to all users when there is a spike in number of joins to the channel
- * may disconnect the bot because of flood.
+ * may disconnect the bot because of flood, unless flood control is enabled on the bot (see
+ * {@link ExtendedPircBotX#setFloodControl(org.pircbotx.FloodControlPolicy)}). Notices are sent as
+ * announcements so that they never delay replies to other users.
  *
  * @author Emmanuel Cron
  */
@@ -62,12 +66,19 @@ public class WelcomeNoticesListener extends ListenerAdapter<ExtendedPircBotX> {
       helpPrivateTrigger = event.getBot().getHelpTrigger();
     }
 
+    List<String> notices = new ArrayList<String>();
     for (String welcomeNotice : welcomeNotices) {
       welcomeNotice = welcomeNotice.replace("{botname}", event.getBot().getNick());
       welcomeNotice = welcomeNotice.replace("{channel}", event.getChannel().getName());
       welcomeNotice = welcomeNotice.replace("{helptrigger}", helpTrigger);
       welcomeNotice = welcomeNotice.replace("{helpprivatetrigger}", helpPrivateTrigger);
-      event.getUser().send().notice(welcomeNotice);
+      notices.add(welcomeNotice);
     }
+
+    event.getBot().sendWithPriority(MessagePriority.ANNOUNCEMENT, () -> {
+      for (String notice : notices) {
+        event.getUser().send().notice(notice);
+      }
+    });
   }
 }
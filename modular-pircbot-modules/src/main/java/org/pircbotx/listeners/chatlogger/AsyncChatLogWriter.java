@@ -0,0 +1,257 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pircbotx.listeners.chatlogger.AsyncLoggingPolicy.OverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes chat log lines to a {@link ChatLogSink} from a dedicated thread, so that the threads
+ * logging them never wait on the disk.
+ * <p>
+ * Lines are put in a lock-free ring buffer. The writer thread wakes up each time the maximum
+ * latency of its {@link AsyncLoggingPolicy} has elapsed, or earlier if the buffer is half full, and
+ * writes all waiting lines as one batch, flushing the sink once per batch. The thread is started
+ * with the first line and stopped by {@link #stop()}; it is started again if more lines come
+ * afterwards.
+ * <p>
+ * This class is exposed for monitoring purposes.
+ *
+ * @author Emmanuel Cron
+ */
+public final class AsyncChatLogWriter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncChatLogWriter.class);
+
+  // How long a blocked thread waits before trying again to log its line
+  private static final long BLOCKED_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static final long STOP_TIMEOUT_MILLIS = 2000;
+
+  private final ChatLogSink sink;
+
+  private final AsyncLoggingPolicy policy;
+
+  private final MpscRingBuffer<ChatLogLine> buffer;
+
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  private volatile Thread thread;
+
+  private volatile boolean stopped;
+
+  // Metrics below are only written by the writer thread
+
+  private volatile long batchCount;
+
+  private volatile long lineCount;
+
+  private volatile int lastBatchSize;
+
+  private volatile int maxBatchSize;
+
+  /**
+   * Creates a new asynchronous writer.
+   *
+   * @param sink where to write the lines; only used by the writer thread from now on
+   * @param policy how lines are batched
+   */
+  public AsyncChatLogWriter(ChatLogSink sink, AsyncLoggingPolicy policy) {
+    this.sink = checkNotNull(sink, "No sink specified");
+    this.policy = checkNotNull(policy, "No asynchronous logging policy specified");
+    this.buffer = new MpscRingBuffer<ChatLogLine>(policy.getCapacity());
+  }
+
+  public AsyncLoggingPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Returns the number of lines waiting to be written.
+   */
+  public int getQueueDepth() {
+    return buffer.size();
+  }
+
+  /**
+   * Returns the number of lines dropped because the buffer was full.
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * Returns the number of batches written so far.
+   */
+  public long getBatchCount() {
+    return batchCount;
+  }
+
+  /**
+   * Returns the number of lines written so far.
+   */
+  public long getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * Returns the number of lines of the last batch written.
+   */
+  public int getLastBatchSize() {
+    return lastBatchSize;
+  }
+
+  /**
+   * Returns the largest number of lines written in one batch.
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Returns the average number of lines written per batch.
+   */
+  public double getAverageBatchSize() {
+    long batches = batchCount;
+    return batches == 0 ? 0 : (double) lineCount / batches;
+  }
+
+  /**
+   * Queues the given line to be written by the writer thread. If the buffer is full, the line is
+   * dropped or the current thread waits, depending on the overflow policy.
+   */
+  public void submit(ChatLogLine line) {
+    Thread writer = start();
+    if (buffer.offer(line)) {
+      if (buffer.size() >= buffer.capacity() / 2) {
+        LockSupport.unpark(writer);
+      }
+      return;
+    }
+
+    if (policy.getOverflowPolicy() == OverflowPolicy.DROP_NEWEST) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+
+    do {
+      if (stopped) {
+        droppedCount.incrementAndGet();
+        return;
+      }
+      LockSupport.unpark(writer);
+      LockSupport.parkNanos(this, BLOCKED_RETRY_NANOS);
+    } while (!buffer.offer(line));
+  }
+
+  /**
+   * Writes all waiting lines, closes the sink and stops the writer thread. If the writer does not
+   * stop in time, no other writer is started before it has closed the sink.
+   */
+  public synchronized void stop() {
+    Thread writer = thread;
+    if (writer == null) {
+      return;
+    }
+
+    stopped = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(STOP_TIMEOUT_MILLIS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    if (writer.isAlive()) {
+      // Kept so that no other writer uses the sink before this one has closed it
+      LOGGER.warn("Chat log writer did not stop within {}ms, {} line(s) may be lost",
+          STOP_TIMEOUT_MILLIS, buffer.size());
+      return;
+    }
+    thread = null;
+
+    if (buffer.size() > 0) {
+      // Submitted while the previous writer was closing the sink
+      start();
+      stop();
+    }
+  }
+
+  // internal helpers
+
+  private Thread start() {
+    Thread writer = thread;
+    if (writer != null && !stopped) {
+      return writer;
+    }
+
+    synchronized (this) {
+      if (thread != null && stopped) {
+        if (thread.isAlive()) {
+          // Still closing the sink: lines wait in the buffer until it has finished
+          return thread;
+        }
+        thread = null;
+      }
+      if (thread == null) {
+        stopped = false;
+        Thread newThread = new Thread(this::run, "chat-logger");
+        newThread.setDaemon(true);
+        newThread.start();
+        thread = newThread;
+      }
+      return thread;
+    }
+  }
+
+  private void run() {
+    while (true) {
+      boolean stopping = stopped;
+      if (!stopping) {
+        LockSupport.parkNanos(this, policy.getMaxLatencyNanos());
+      }
+
+      writeBatch();
+
+      if (stopping && buffer.size() == 0) {
+        break;
+      }
+    }
+
+    try {
+      sink.close();
+    } catch (IOException ioe) {
+      LOGGER.error("Could not close chat log sink", ioe);
+    }
+  }
+
+  private void writeBatch() {
+    int written = buffer.drain(line -> {
+      try {
+        sink.write(line);
+      } catch (IOException ioe) {
+        LOGGER.error("Could not write message to chat log file: " + line.getText(), ioe);
+      }
+    }, buffer.capacity());
+    if (written == 0) {
+      return;
+    }
+
+    try {
+      sink.flush();
+    } catch (IOException ioe) {
+      LOGGER.error("Could not flush chat log file, " + written + " line(s) may be lost", ioe);
+    }
+
+    batchCount++;
+    lineCount += written;
+    lastBatchSize = written;
+    if (written > maxBatchSize) {
+      maxBatchSize = written;
+    }
+  }
+}
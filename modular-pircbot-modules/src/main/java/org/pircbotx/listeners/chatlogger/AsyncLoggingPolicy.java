@@ -0,0 +1,84 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how an {@link AsyncChatLogWriter} batches the lines it writes.
+ * <p>
+ * Lines wait in a bounded buffer for at most the maximum latency, then all waiting lines are
+ * written together and flushed once. The writer also starts writing early when the buffer is half
+ * full.
+ *
+ * @author Emmanuel Cron
+ */
+public final class AsyncLoggingPolicy {
+  /**
+   * What to do with a line when the buffer is full.
+   *
+   * @author Emmanuel Cron
+   */
+  public enum OverflowPolicy {
+    /**
+     * The thread logging the line waits until there is room in the buffer. No line is lost, but
+     * the bot slows down to the pace of the disk.
+     */
+    BLOCK,
+    /**
+     * The new line is dropped. The bot is never slowed down, but lines may be missing from the
+     * logs.
+     */
+    DROP_NEWEST
+  }
+
+  /**
+   * A policy keeping up to 8192 lines, written at least every 200 milliseconds, never dropping any
+   * line.
+   */
+  public static final AsyncLoggingPolicy DEFAULT =
+      new AsyncLoggingPolicy(8192, 200, TimeUnit.MILLISECONDS, OverflowPolicy.BLOCK);
+
+  private final int capacity;
+
+  private final long maxLatencyNanos;
+
+  private final OverflowPolicy overflowPolicy;
+
+  /**
+   * Creates a new asynchronous logging policy.
+   *
+   * @param capacity maximum number of lines waiting to be written; rounded up to a power of two
+   * @param maxLatency maximum time a line waits before being written
+   * @param unit unit of the maximum latency
+   * @param overflowPolicy what to do with lines exceeding the capacity
+   */
+  public AsyncLoggingPolicy(int capacity, long maxLatency, TimeUnit unit,
+      OverflowPolicy overflowPolicy) {
+    checkArgument(capacity > 1 && capacity <= 1 << 30, "Capacity must be > 1 and <= 2^30");
+    checkArgument(maxLatency > 0, "Maximum latency must be > 0");
+
+    this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+    this.maxLatencyNanos = unit.toNanos(maxLatency);
+    this.overflowPolicy = checkNotNull(overflowPolicy, "No overflow policy specified");
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public long getMaxLatencyNanos() {
+    return maxLatencyNanos;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncLoggingPolicy[capacity=" + capacity + ", maxLatency=" + maxLatencyNanos
+        + "ns, overflow=" + overflowPolicy + "]";
+  }
+}
@@ -0,0 +1,73 @@
+package org.pircbotx.listeners.chatlogger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+
+/**
+ * Renders binary chat logs as the text files the {@link TextChatLogSink} would have written, so
+ * that tools reading text logs keep working when the bot logs in binary.
+ * <p>
+ * It can also be run from the command line to convert one day of logs:
+ *
+ * <pre>
+ * java org.pircbotx.listeners.chatlogger.BinaryChatLogConverter binaryLogsPath textLogsPath
+ *     yyyy_MM_dd [charset] [timestampPattern]
+ * </pre>
+ *
+ * @author Emmanuel Cron
+ */
+public final class BinaryChatLogConverter {
+  private BinaryChatLogConverter() {
+    // Only static methods
+  }
+
+  /**
+   * Writes the lines of all channels logged during the given period into the given text sink, then
+   * closes it. Lines are appended to existing text files.
+   *
+   * @param binaryLogsPath the folder where the binary log files are stored
+   * @param from start of the period, inclusive, in milliseconds since the epoch
+   * @param to end of the period, inclusive, in milliseconds since the epoch
+   * @param sink the sink writing the text files, configured as the listener would configure it
+   * @throws IOException if the binary logs could not be read or the text files written
+   */
+  public static void convert(Path binaryLogsPath, long from, long to, TextChatLogSink sink)
+      throws IOException {
+    try {
+      new BinaryChatLogReader(binaryLogsPath).read(null, from, to, line -> {
+        try {
+          sink.write(line);
+        } catch (IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+      });
+      sink.flush();
+    } catch (UncheckedIOException uioe) {
+      throw uioe.getCause();
+    } finally {
+      sink.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println("Usage: BinaryChatLogConverter binaryLogsPath textLogsPath yyyy_MM_dd"
+          + " [charset] [timestampPattern]");
+      System.exit(1);
+    }
+
+    TextChatLogSink sink =
+        new TextChatLogSink(Paths.get(args[1]), args.length > 3 ? args[3] : "UTF-8");
+    if (args.length > 4) {
+      sink.setTimestampFormat(args[4]);
+    }
+    DateTime day = DateTimeFormat.forPattern("yyyy_MM_dd").parseDateTime(args[2]);
+    convert(Paths.get(args[0]), day.getMillis(),
+        day.plusDays(1).withTimeAtStartOfDay().getMillis() - 1, sink);
+  }
+}
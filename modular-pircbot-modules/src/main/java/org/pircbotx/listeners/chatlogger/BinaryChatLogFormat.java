@@ -0,0 +1,108 @@
+package org.pircbotx.listeners.chatlogger;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent;
+
+/**
+ * Layout of the binary chat logs written by {@link BinaryChatLogSink} and read by
+ * {@link BinaryChatLogReader}.
+ * <p>
+ * The logs folder holds one data file and one index file per day, for all channels, and a single
+ * names file interning channel names and nicks. The names file is a sequence of strings, the id of
+ * a name being its position. A data file is a sequence of records:
+ *
+ * <pre>
+ * int    length of the rest of the record
+ * long   timestamp, never lower than the one of the previous record
+ * byte   ordinal of the ChatLoggerEvent
+ * int    id of the lowercase channel name
+ * int    id of the nick of the event, or -1 if it has none
+ * byte   number of other arguments
+ * string each other argument, in order
+ * </pre>
+ *
+ * Strings are stored as an unsigned short length followed by as many UTF-8 bytes. The index file
+ * is a sequence of (long timestamp, long offset) entries pointing to a record of the data file,
+ * written about every {@value #INDEX_INTERVAL_BYTES} bytes of data.
+ * <p>
+ * Ordinals of events are stored as is, so new events must only be added at the end of
+ * {@link ChatLoggerEvent}.
+ *
+ * @author Emmanuel Cron
+ */
+final class BinaryChatLogFormat {
+  static final String NAMES_FILE = "names.dict";
+
+  static final String DATA_EXTENSION = ".bin";
+
+  static final String INDEX_EXTENSION = ".idx";
+
+  static final int INDEX_INTERVAL_BYTES = 16 * 1024;
+
+  static final int INDEX_ENTRY_BYTES = 16;
+
+  static final int NO_NAME = -1;
+
+  static final int MAX_STRING_BYTES = 0xFFFF;
+
+  // Argument holding the nick of each event, interned instead of being stored as is
+  private static final Map<ChatLoggerEvent, Integer> NICK_ARGUMENTS =
+      new EnumMap<ChatLoggerEvent, Integer>(ChatLoggerEvent.class);
+
+  static {
+    NICK_ARGUMENTS.put(ChatLoggerEvent.TOPIC_SET_BY, 0);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.TOPIC_CHANGED, 0);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.MESSAGE, 1);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.JOIN, 0);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.PART, 0);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.KICK, 0);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.KICK_YOU, 1);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.QUIT, 0);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.MODE, 0);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.USER_MODE, 0);
+    NICK_ARGUMENTS.put(ChatLoggerEvent.ACTION, 1);
+  }
+
+  private BinaryChatLogFormat() {
+    // Only static methods
+  }
+
+  /**
+   * Returns the position of the nick in the arguments of the given event, or {@link #NO_NAME} if
+   * the event has no nick.
+   */
+  static int getNickArgument(ChatLoggerEvent event) {
+    Integer argument = NICK_ARGUMENTS.get(event);
+    return argument == null ? NO_NAME : argument;
+  }
+
+  /**
+   * Returns the name of the data and index files of the given day, without extension.
+   */
+  static String getBaseName(DateTime day) {
+    return "chatlog-" + DateTimeFormat.forPattern("yyyy_MM_dd").print(day);
+  }
+
+  static void writeString(DataOutput out, String string) throws IOException {
+    byte[] bytes = (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAX_STRING_BYTES) {
+      throw new IOException("String is too long to be logged: " + bytes.length + " bytes");
+    }
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort() & MAX_STRING_BYTES];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
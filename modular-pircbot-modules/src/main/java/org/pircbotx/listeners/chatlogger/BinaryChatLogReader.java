@@ -0,0 +1,185 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.DATA_EXTENSION;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.INDEX_ENTRY_BYTES;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.INDEX_EXTENSION;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.NAMES_FILE;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.NO_NAME;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.joda.time.DateTime;
+import org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent;
+
+/**
+ * Reads the binary chat logs written by a {@link BinaryChatLogSink}.
+ * <p>
+ * Files are memory-mapped, and the index of each day is searched to start reading at the first
+ * record of the requested period, so that reading half an hour of logs does not scan the whole
+ * day. Logs can be read while they are written; records written after a day has been mapped are
+ * only seen by the next read.
+ *
+ * @author Emmanuel Cron
+ */
+public final class BinaryChatLogReader {
+  private static final ChatLoggerEvent[] EVENTS = ChatLoggerEvent.values();
+
+  private final Path logsPath;
+
+  // Names by id, reloaded when a record refers to a name written since
+  private final List<String> names = new ArrayList<String>();
+
+  /**
+   * Creates a new reader.
+   *
+   * @param logsPath the folder where the binary log files are stored
+   */
+  public BinaryChatLogReader(Path logsPath) {
+    checkNotNull(logsPath, "No chat logs path specified");
+    checkArgument(Files.isDirectory(logsPath), "Logs path is not a directory: %s",
+        logsPath.toString());
+
+    this.logsPath = logsPath;
+  }
+
+  /**
+   * Reads the lines logged during the given period, in the order they were logged. Lines are
+   * rendered with the default format of their event.
+   *
+   * @param channel the channel of the lines to read, or {@code null} for all channels
+   * @param from start of the period, inclusive, in milliseconds since the epoch
+   * @param to end of the period, inclusive, in milliseconds since the epoch
+   * @param consumer receives each line read
+   * @throws IOException if the logs could not be read
+   */
+  public synchronized void read(String channel, long from, long to,
+      Consumer<? super ChatLogLine> consumer) throws IOException {
+    int channelId = NO_NAME;
+    if (channel != null) {
+      loadNames();
+      channelId = names.indexOf(channel.toLowerCase());
+      if (channelId == NO_NAME) {
+        // Never logged
+        return;
+      }
+    }
+
+    for (DateTime day = new DateTime(from).withTimeAtStartOfDay(); day.getMillis() <= to;
+        day = day.plusDays(1).withTimeAtStartOfDay()) {
+      readDay(BinaryChatLogFormat.getBaseName(day), channelId, from, to, consumer);
+    }
+  }
+
+  // internal helpers
+
+  private void readDay(String baseName, int channelId, long from, long to,
+      Consumer<? super ChatLogLine> consumer) throws IOException {
+    Path dataFile = logsPath.resolve(baseName + DATA_EXTENSION);
+    if (!Files.exists(dataFile)) {
+      return;
+    }
+
+    ByteBuffer data = map(dataFile);
+    data.position((int) findStart(logsPath.resolve(baseName + INDEX_EXTENSION), from));
+    while (data.remaining() >= 4) {
+      int length = data.getInt();
+      if (length > data.remaining()) {
+        // Record being written
+        break;
+      }
+      int next = data.position() + length;
+
+      long timestamp = data.getLong();
+      if (timestamp > to) {
+        break;
+      }
+      ChatLoggerEvent event = EVENTS[data.get()];
+      int recordChannelId = data.getInt();
+      if (timestamp < from || (channelId != NO_NAME && recordChannelId != channelId)) {
+        data.position(next);
+        continue;
+      }
+
+      int nickId = data.getInt();
+      int otherArgumentCount = data.get();
+      int nickArgument = nickId == NO_NAME ? NO_NAME : BinaryChatLogFormat.getNickArgument(event);
+      String[] args = new String[otherArgumentCount + (nickArgument == NO_NAME ? 0 : 1)];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = i == nickArgument ? getName(nickId) : BinaryChatLogFormat.readString(data);
+      }
+
+      consumer.accept(new ChatLogLine(timestamp, getName(recordChannelId), event,
+          event.getDefaultTemplate(), args));
+      data.position(next);
+    }
+  }
+
+  /**
+   * Returns the offset of the last indexed record logged before the given time, from which all
+   * records logged since can be read.
+   */
+  private long findStart(Path indexFile, long from) throws IOException {
+    if (!Files.exists(indexFile)) {
+      return 0;
+    }
+
+    ByteBuffer index = map(indexFile);
+    int low = 0;
+    int high = index.limit() / INDEX_ENTRY_BYTES - 1;
+    long start = 0;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long timestamp = index.getLong(middle * INDEX_ENTRY_BYTES);
+      if (timestamp < from) {
+        start = index.getLong(middle * INDEX_ENTRY_BYTES + 8);
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return start;
+  }
+
+  private String getName(int id) throws IOException {
+    if (id >= names.size()) {
+      loadNames();
+    }
+    return id < names.size() ? names.get(id) : null;
+  }
+
+  private void loadNames() throws IOException {
+    Path file = logsPath.resolve(NAMES_FILE);
+    if (!Files.exists(file)) {
+      return;
+    }
+
+    ByteBuffer buffer = map(file);
+    names.clear();
+    while (buffer.remaining() >= 2
+        && buffer.remaining() >= 2 + (buffer.getShort(buffer.position()) & 0xFFFF)) {
+      names.add(BinaryChatLogFormat.readString(buffer));
+    }
+  }
+
+  private static ByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      checkArgument(size <= Integer.MAX_VALUE, "File is too large to be mapped: %s", file);
+      // Mapping stays valid once the channel is closed
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+      return buffer;
+    }
+  }
+}
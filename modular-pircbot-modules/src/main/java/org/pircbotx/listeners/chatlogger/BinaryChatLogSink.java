@@ -0,0 +1,292 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.DATA_EXTENSION;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.INDEX_ENTRY_BYTES;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.INDEX_EXTENSION;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.INDEX_INTERVAL_BYTES;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.NAMES_FILE;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.NO_NAME;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sink writing compact binary records instead of text, one file per day for all channels, along
+ * with a sparse index of the time of the records. Channel names and nicks are interned in a names
+ * file shared by all days. See {@link BinaryChatLogFormat} for the layout of the files.
+ * <p>
+ * Binary logs are read with a {@link BinaryChatLogReader}, which can seek directly to a given time,
+ * and can be rendered as text files with the {@link BinaryChatLogConverter}.
+ * <p>
+ * If the bot stopped while writing, the incomplete record at the end of a file is discarded when
+ * the file is opened again.
+ *
+ * @author Emmanuel Cron
+ */
+public class BinaryChatLogSink implements ChatLogSink {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BinaryChatLogSink.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path logsPath;
+
+  private final Map<String, Integer> nameIds = new HashMap<String, Integer>();
+
+  private DataOutputStream namesOutput;
+
+  private DataOutputStream dataOutput;
+
+  private DataOutputStream indexOutput;
+
+  private long dayEndMillis;
+
+  private long dataOffset;
+
+  private long lastIndexedOffset;
+
+  private long lastTimestamp = Long.MIN_VALUE;
+
+  // Reused for each record, whose length must be known before writing it
+  private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+
+  private final DataOutputStream recordOutput = new DataOutputStream(record);
+
+  /**
+   * Creates a new binary sink.
+   *
+   * @param logsPath the folder where to store the binary log files
+   */
+  public BinaryChatLogSink(Path logsPath) {
+    checkNotNull(logsPath, "No chat logs path specified");
+    checkArgument(Files.isDirectory(logsPath), "Logs path is not a directory: %s",
+        logsPath.toString());
+
+    this.logsPath = logsPath;
+  }
+
+  @Override
+  public void write(ChatLogLine line) throws IOException {
+    if (namesOutput == null) {
+      openNames();
+    }
+
+    // Keeps records sorted even if lines were logged by several threads
+    long timestamp = Math.max(line.getTimestamp(), lastTimestamp);
+    if (dataOutput == null || timestamp >= dayEndMillis) {
+      openDay(timestamp);
+    }
+    lastTimestamp = timestamp;
+
+    ChatLoggerEvent event = line.getEvent();
+    int nickArgument = BinaryChatLogFormat.getNickArgument(event);
+    boolean hasNick = nickArgument != NO_NAME && nickArgument < line.getArgumentCount();
+
+    record.reset();
+    recordOutput.writeLong(timestamp);
+    recordOutput.writeByte(event.ordinal());
+    recordOutput.writeInt(getNameId(line.getChannel().toLowerCase()));
+    recordOutput.writeInt(hasNick ? getNameId(line.getArgument(nickArgument)) : NO_NAME);
+    recordOutput.writeByte(line.getArgumentCount() - (hasNick ? 1 : 0));
+    for (int i = 0; i < line.getArgumentCount(); i++) {
+      if (!hasNick || i != nickArgument) {
+        BinaryChatLogFormat.writeString(recordOutput, line.getArgument(i));
+      }
+    }
+
+    if (dataOffset - lastIndexedOffset >= INDEX_INTERVAL_BYTES) {
+      indexOutput.writeLong(timestamp);
+      indexOutput.writeLong(dataOffset);
+      lastIndexedOffset = dataOffset;
+    }
+    dataOutput.writeInt(record.size());
+    record.writeTo(dataOutput);
+    dataOffset += 4 + record.size();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    // Names first, so that stored records never refer to unknown names
+    if (namesOutput != null) {
+      namesOutput.flush();
+    }
+    if (dataOutput != null) {
+      dataOutput.flush();
+      indexOutput.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeDay();
+    if (namesOutput != null) {
+      try {
+        namesOutput.close();
+      } finally {
+        namesOutput = null;
+        nameIds.clear();
+      }
+    }
+  }
+
+  // internal helpers
+
+  private int getNameId(String name) throws IOException {
+    String key = name == null ? "" : name;
+    Integer id = nameIds.get(key);
+    if (id == null) {
+      try {
+        BinaryChatLogFormat.writeString(namesOutput, key);
+        // Stored before the record using it, so that records never refer to an unknown name
+        namesOutput.flush();
+      } catch (IOException ioe) {
+        // Names are read again from the file with the next line, whatever part of it was written
+        try {
+          namesOutput.close();
+        } catch (IOException closeException) {
+          ioe.addSuppressed(closeException);
+        }
+        namesOutput = null;
+        throw ioe;
+      }
+      id = nameIds.size();
+      nameIds.put(key, id);
+    }
+    return id;
+  }
+
+  private void openNames() throws IOException {
+    nameIds.clear();
+    Path file = logsPath.resolve(NAMES_FILE);
+    if (Files.exists(file)) {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+      int validLength = 0;
+      while (buffer.remaining() >= 2
+          && buffer.remaining() >= 2 + (buffer.getShort(buffer.position()) & 0xFFFF)) {
+        nameIds.put(BinaryChatLogFormat.readString(buffer), nameIds.size());
+        validLength = buffer.position();
+      }
+      truncate(file, validLength);
+    }
+
+    namesOutput = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file.toFile(), true)));
+  }
+
+  private void openDay(long timestamp) throws IOException {
+    closeDay();
+
+    DateTime day = new DateTime(timestamp).withTimeAtStartOfDay();
+    String baseName = BinaryChatLogFormat.getBaseName(day);
+    Path dataFile = logsPath.resolve(baseName + DATA_EXTENSION);
+    Path indexFile = logsPath.resolve(baseName + INDEX_EXTENSION);
+
+    dataOffset = recover(dataFile, indexFile);
+    dataOutput = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(dataFile.toFile(), true), BUFFER_SIZE));
+    indexOutput = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(indexFile.toFile(), true)));
+    // First record of the session is always indexed
+    lastIndexedOffset = dataOffset - INDEX_INTERVAL_BYTES;
+    dayEndMillis = day.plusDays(1).withTimeAtStartOfDay().getMillis();
+  }
+
+  private void closeDay() throws IOException {
+    if (dataOutput != null) {
+      try {
+        dataOutput.close();
+      } finally {
+        indexOutput.close();
+        dataOutput = null;
+        indexOutput = null;
+      }
+    }
+  }
+
+  /**
+   * Discards the incomplete record and index entry that may end the given files.
+   *
+   * @return the length of the data file
+   */
+  private long recover(Path dataFile, Path indexFile) throws IOException {
+    if (!Files.exists(dataFile)) {
+      Files.deleteIfExists(indexFile);
+      return 0;
+    }
+    long dataLength = Files.size(dataFile);
+
+    // Last index entry pointing into the data
+    long scanFrom = 0;
+    if (Files.exists(indexFile)) {
+      long indexLength = Files.size(indexFile) / INDEX_ENTRY_BYTES * INDEX_ENTRY_BYTES;
+      try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        while (indexLength > 0) {
+          entry.clear();
+          index.read(entry, indexLength - INDEX_ENTRY_BYTES);
+          long offset = entry.getLong(8);
+          if (offset < dataLength) {
+            scanFrom = offset;
+            break;
+          }
+          indexLength -= INDEX_ENTRY_BYTES;
+        }
+        index.truncate(indexLength);
+      }
+    }
+
+    // Complete records from there
+    long validLength = scanFrom;
+    try (FileChannel data = FileChannel.open(dataFile, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) (dataLength - scanFrom));
+      int read = 0;
+      while (buffer.hasRemaining() && read >= 0) {
+        read = data.read(buffer, scanFrom + buffer.position());
+      }
+      buffer.flip();
+      while (buffer.remaining() >= 4) {
+        int length = buffer.getInt();
+        if (length < 8 || length > buffer.remaining()) {
+          break;
+        }
+        lastTimestamp = Math.max(lastTimestamp, buffer.getLong(buffer.position()));
+        buffer.position(buffer.position() + length);
+        validLength = scanFrom + buffer.position();
+      }
+
+      if (validLength < dataLength) {
+        LOGGER.warn("Discarding {} byte(s) of incomplete record at the end of {}",
+            dataLength - validLength, dataFile);
+        data.truncate(validLength);
+      }
+    }
+    return validLength;
+  }
+
+  private static void truncate(Path file, long length) throws IOException {
+    if (Files.size(file) > length) {
+      LOGGER.warn("Discarding incomplete name at the end of {}", file);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.truncate(length);
+      }
+    }
+  }
+}
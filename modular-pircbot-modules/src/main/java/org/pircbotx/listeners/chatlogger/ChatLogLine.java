@@ -0,0 +1,85 @@
+package org.pircbotx.listeners.chatlogger;
+
+import java.io.IOException;
+
+import org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent;
+
+/**
+ * A line logged by the {@link org.pircbotx.listeners.ChatLoggerListener}, waiting to be written by
+ * a {@link ChatLogSink}. The line keeps the template of its event and its arguments, and is only
+ * rendered by the sink, directly into its output.
+ *
+ * @author Emmanuel Cron
+ */
+public final class ChatLogLine {
+  private final long timestamp;
+
+  private final String channel;
+
+  private final ChatLoggerEvent event;
+
+  private final ChatLogTemplate template;
+
+  private final String[] args;
+
+  /**
+   * Creates a new chat log line.
+   *
+   * @param timestamp when the event was seen, in milliseconds since the epoch
+   * @param channel the name of the channel where the event was seen
+   * @param event the kind of event
+   * @param template the template of the line, without timestamp
+   * @param args the arguments of the template; not copied, must not be modified afterwards
+   */
+  public ChatLogLine(long timestamp, String channel, ChatLoggerEvent event,
+      ChatLogTemplate template, String... args) {
+    this.timestamp = timestamp;
+    this.channel = channel;
+    this.event = event;
+    this.template = template;
+    this.args = args;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  public ChatLoggerEvent getEvent() {
+    return event;
+  }
+
+  public ChatLogTemplate getTemplate() {
+    return template;
+  }
+
+  public int getArgumentCount() {
+    return args.length;
+  }
+
+  public String getArgument(int index) {
+    return args[index];
+  }
+
+  /**
+   * Renders this line, without timestamp, directly into the given output.
+   */
+  public void appendTo(Appendable out) throws IOException {
+    template.appendTo(out, args);
+  }
+
+  /**
+   * Renders this line, without timestamp, into a new string.
+   */
+  public String getText() {
+    return template.render(args);
+  }
+
+  @Override
+  public String toString() {
+    return "ChatLogLine[" + channel + ", " + event + ", " + getText() + "]";
+  }
+}
@@ -0,0 +1,23 @@
+package org.pircbotx.listeners.chatlogger;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Where the {@link org.pircbotx.listeners.ChatLoggerListener} writes its lines.
+ * <p>
+ * Lines may be buffered by {@link #write(ChatLogLine)}; they are only guaranteed to be stored once
+ * {@link #flush()} has been called. A sink is never used by two threads at the same time. Once
+ * closed, a sink reopens its files as needed when lines are written again.
+ *
+ * @author Emmanuel Cron
+ */
+public interface ChatLogSink extends Closeable, Flushable {
+  /**
+   * Writes the given line.
+   *
+   * @throws IOException if the line could not be written
+   */
+  void write(ChatLogLine line) throws IOException;
+}
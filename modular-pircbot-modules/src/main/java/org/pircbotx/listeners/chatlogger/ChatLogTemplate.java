@@ -0,0 +1,109 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A log format compiled once into the literal segments found between its {@code %s} replacements,
+ * so that lines can be rendered without parsing the format again.
+ * <p>
+ * Only {@code %s} replacements are supported and {@code %%} stands for a single {@code %}; formats
+ * using any other specifier, such as {@code %-10s}, are rejected when compiled rather than rendered
+ * differently from {@link String#format(String, Object...)}.
+ *
+ * @author Emmanuel Cron
+ */
+public final class ChatLogTemplate {
+  private final String format;
+
+  // Segments around the replacements; there is one more segment than there are replacements
+  private final String[] segments;
+
+  private ChatLogTemplate(String format, String[] segments) {
+    this.format = format;
+    this.segments = segments;
+  }
+
+  /**
+   * Compiles the given format.
+   *
+   * @throws IllegalArgumentException if the format uses a specifier other than {@code %s} and
+   *         {@code %%}
+   */
+  public static ChatLogTemplate compile(String format) {
+    checkNotNull(format, "No format specified");
+
+    List<String> segments = new ArrayList<String>();
+    StringBuilder segment = new StringBuilder();
+    for (int i = 0; i < format.length(); i++) {
+      char c = format.charAt(i);
+      if (c != '%') {
+        segment.append(c);
+        continue;
+      }
+
+      checkArgument(i + 1 < format.length(), "Format ends with a single percent sign: %s",
+          format);
+      char next = format.charAt(++i);
+      if (next == 's') {
+        segments.add(segment.toString());
+        segment.setLength(0);
+      } else {
+        checkArgument(next == '%', "Unsupported format specifier at index %s: %s", i - 1, format);
+        segment.append('%');
+      }
+    }
+    segments.add(segment.toString());
+
+    return new ChatLogTemplate(format, segments.toArray(new String[segments.size()]));
+  }
+
+  /**
+   * Returns the format this template was compiled from.
+   */
+  public String getFormat() {
+    return format;
+  }
+
+  /**
+   * Returns the number of {@code %s} replacements of this template.
+   */
+  public int getReplacementCount() {
+    return segments.length - 1;
+  }
+
+  /**
+   * Renders this template with the given arguments directly into the given output. Missing
+   * arguments are rendered as {@code null} and extra arguments are ignored.
+   */
+  public void appendTo(Appendable out, String[] args) throws IOException {
+    out.append(segments[0]);
+    for (int i = 1; i < segments.length; i++) {
+      out.append(i <= args.length ? args[i - 1] : null);
+      out.append(segments[i]);
+    }
+  }
+
+  /**
+   * Renders this template with the given arguments into a new string.
+   */
+  public String render(String[] args) {
+    StringBuilder builder = new StringBuilder(format.length() + 32);
+    try {
+      appendTo(builder, args);
+    } catch (IOException ioe) {
+      // Never thrown by a StringBuilder
+      throw new IllegalStateException(ioe);
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "ChatLogTemplate[" + format + "]";
+  }
+}
@@ -0,0 +1,48 @@
+package org.pircbotx.listeners.chatlogger;
+
+/**
+ * A message found by a {@link ChatSearchIndex}.
+ *
+ * @author Emmanuel Cron
+ */
+public final class ChatSearchHit {
+  private final long timestamp;
+
+  private final String channel;
+
+  private final String nick;
+
+  private final String text;
+
+  ChatSearchHit(long timestamp, String channel, String nick, String text) {
+    this.timestamp = timestamp;
+    this.channel = channel;
+    this.nick = nick;
+    this.text = text;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Returns the lowercase name of the channel the message was said on.
+   */
+  public String getChannel() {
+    return channel;
+  }
+
+  public String getNick() {
+    return nick;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  @Override
+  public String toString() {
+    return "ChatSearchHit[timestamp=" + timestamp + ", channel=" + channel + ", nick=" + nick
+        + ", text=" + text + "]";
+  }
+}
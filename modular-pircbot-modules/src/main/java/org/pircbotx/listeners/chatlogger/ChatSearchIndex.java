@@ -0,0 +1,1008 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.pircbotx.listeners.chatlogger.BinaryChatLogFormat.INDEX_ENTRY_BYTES;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A full-text index of chat messages, kept on disk so that years of logs can be searched in a few
+ * milliseconds with bounded memory.
+ * <p>
+ * Messages are appended to a message store, along with a sparse index of their time. The offset of
+ * each message in the store is added to the postings of its words, of its nick and of its channel
+ * in an in-memory buffer. When the buffer holds enough postings, it is written by a background
+ * thread to an immutable {@link SearchSegment}, and small adjacent segments are merged into larger
+ * ones by the same thread, so that a search only reads a handful of files.
+ * <p>
+ * A search walks the postings of its terms backwards, newest segment first, jumping from one
+ * message they all contain to the next, and reads the matching messages from the store until enough
+ * were found; it never decodes more postings than needed. A search restricted to some channels
+ * walks the postings of these channels along, so that messages of other channels are not read. Its
+ * period is turned into a range of offsets through the time index, so that whole segments are
+ * skipped without being read.
+ * <p>
+ * The buffer is not written when the index is closed: messages stored after the last segment are
+ * indexed again from the store when the index is next opened, which also discards an incomplete
+ * message at the end of the store.
+ * <p>
+ * Segments are always written in order, so that they cover the store without gaps. A segment that
+ * cannot be written stays searchable from memory and is tried again when the next buffer is full;
+ * later buffers wait behind it. If writes keep failing, new messages are no longer indexed, which
+ * bounds memory; they are only stored, and indexed when the index is next opened.
+ *
+ * @author Emmanuel Cron
+ */
+public final class ChatSearchIndex implements Closeable {
+  /**
+   * Default number of postings buffered in memory before being written to a segment.
+   */
+  public static final int DEFAULT_MAX_BUFFERED_POSTINGS = 200000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChatSearchIndex.class);
+
+  private static final String STORE_FILE = "messages.dat";
+
+  private static final String TIME_INDEX_FILE = "messages.idx";
+
+  private static final int TIME_INDEX_INTERVAL_BYTES = 64 * 1024;
+
+  private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("segment-(\\d+)-(\\d+)\\.seg");
+
+  // Segments are merged by groups of MERGE_FACTOR once there are more than MAX_SEGMENTS
+  private static final int MAX_SEGMENTS = 8;
+
+  private static final int MERGE_FACTOR = 4;
+
+  // Buffers waiting to be written after a failed write beyond which new messages are not indexed
+  private static final int MAX_FROZEN_BUFFERS = 4;
+
+  // Keeps segments mappable
+  private static final long MAX_MERGED_SEGMENT_BYTES = 1L << 30;
+
+  private static final int MIN_TERM_LENGTH = 2;
+
+  private static final int MAX_TERM_LENGTH = 40;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Timestamp, channel, nick and text
+  private static final int MAX_MESSAGE_BYTES = 8 + 3 * (2 + BinaryChatLogFormat.MAX_STRING_BYTES);
+
+  private final Path indexPath;
+
+  private int maxBufferedPostings = DEFAULT_MAX_BUFFERED_POSTINGS;
+
+  // Runs segment writes and merges; null when the index is closed
+  private ExecutorService executor;
+
+  private DataOutputStream storeOutput;
+
+  private DataOutputStream timeIndexOutput;
+
+  private long storeLength;
+
+  private long lastIndexedOffset;
+
+  private long lastTimestamp = Long.MIN_VALUE;
+
+  private final LongList timeIndexTimestamps = new LongList();
+
+  private final LongList timeIndexOffsets = new LongList();
+
+  private TreeMap<String, LongList> buffer = new TreeMap<String, LongList>();
+
+  private int bufferedPostings;
+
+  // Buffers being written to segments, still searched from memory until then
+  private final List<FrozenBuffer> frozenBuffers = new ArrayList<FrozenBuffer>();
+
+  // Oldest first, replaced as a whole when it changes so that searches can use it unlocked
+  private List<SearchSegment> segments = Collections.emptyList();
+
+  private int nextSegment;
+
+  private boolean mergePending;
+
+  // Set when the last segment write failed
+  private boolean segmentWriteFailed;
+
+  // Set when too many segments could not be written, until the index is opened again
+  private boolean indexingSuspended;
+
+  // Reused for each message, whose length must be known before storing it
+  private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+
+  private final DataOutputStream recordOutput = new DataOutputStream(record);
+
+  /**
+   * Creates a new index. Files are only opened when the index is first used.
+   *
+   * @param indexPath the folder where to store the index files
+   */
+  public ChatSearchIndex(Path indexPath) {
+    checkNotNull(indexPath, "No index path specified");
+    checkArgument(Files.isDirectory(indexPath), "Index path is not a directory: %s",
+        indexPath.toString());
+
+    this.indexPath = indexPath;
+  }
+
+  /**
+   * Sets the number of postings buffered in memory before being written to a segment, bounding the
+   * memory used to index new messages. Defaults to {@value #DEFAULT_MAX_BUFFERED_POSTINGS}.
+   */
+  public synchronized void setMaxBufferedPostings(int maxBufferedPostings) {
+    checkArgument(maxBufferedPostings > 0, "Maximum buffered postings must be > 0");
+    this.maxBufferedPostings = maxBufferedPostings;
+  }
+
+  /**
+   * Opens the index files, indexing again the messages stored since the last segment. Does nothing
+   * if the index is already open.
+   *
+   * @throws IOException if the index files could not be read
+   */
+  public synchronized void open() throws IOException {
+    if (executor != null) {
+      return;
+    }
+
+    executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("chat-search-indexer").setDaemon(true)
+            .setPriority(Thread.MIN_PRIORITY).build());
+    try {
+      loadSegments();
+      recoverStore();
+      loadTimeIndex();
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Stores and indexes a message.
+   *
+   * @param timestamp time the message was said, in milliseconds since the epoch
+   * @param channel the channel the message was said on
+   * @param nick the nick that said the message
+   * @param text the message
+   * @throws IOException if the message could not be stored
+   */
+  public synchronized void add(long timestamp, String channel, String nick, String text)
+      throws IOException {
+    open();
+
+    // Keeps messages sorted even if they were added by several threads
+    long sortedTimestamp = Math.max(timestamp, lastTimestamp);
+    lastTimestamp = sortedTimestamp;
+    String lowerChannel = channel.toLowerCase(Locale.ROOT);
+
+    record.reset();
+    recordOutput.writeLong(sortedTimestamp);
+    BinaryChatLogFormat.writeString(recordOutput, lowerChannel);
+    BinaryChatLogFormat.writeString(recordOutput, nick);
+    BinaryChatLogFormat.writeString(recordOutput, text);
+
+    long offset = storeLength;
+    if (offset - lastIndexedOffset >= TIME_INDEX_INTERVAL_BYTES) {
+      timeIndexOutput.writeLong(sortedTimestamp);
+      timeIndexOutput.writeLong(offset);
+      timeIndexTimestamps.add(sortedTimestamp);
+      timeIndexOffsets.add(offset);
+      lastIndexedOffset = offset;
+    }
+    storeOutput.writeInt(record.size());
+    record.writeTo(storeOutput);
+    storeLength += 4 + record.size();
+
+    index(offset, lowerChannel, nick, text);
+  }
+
+  /**
+   * Returns the most recent messages matching the given query, newest first.
+   *
+   * @param query the query
+   * @param limit maximum number of messages to return
+   * @throws IOException if the index files could not be read
+   */
+  public List<ChatSearchHit> search(ChatSearchQuery query, int limit) throws IOException {
+    checkNotNull(query, "No query specified");
+    checkArgument(limit > 0, "Limit must be > 0");
+    if (query.getChannels() != null && query.getChannels().isEmpty()) {
+      return new ArrayList<ChatSearchHit>();
+    }
+
+    List<String> terms = query.getTerms();
+    Set<String> channels = query.getChannels();
+    List<List<PostingsCursor>> memoryPostings = new ArrayList<List<PostingsCursor>>();
+    List<SearchSegment> searchedSegments;
+    long lowOffset;
+    long highOffset;
+    synchronized (this) {
+      open();
+      storeOutput.flush();
+
+      lowOffset = findLowOffset(query.getFrom());
+      highOffset = findHighOffset(query.getTo());
+      // Cursors only see the postings added so far, they can be walked without the lock
+      TreeMap<String, LongList> current = buffer;
+      memoryPostings.add(getPostings(term -> getCursor(current, term), terms, channels));
+      for (int i = frozenBuffers.size() - 1; i >= 0; i--) {
+        TreeMap<String, LongList> frozen = frozenBuffers.get(i).postings;
+        memoryPostings.add(getPostings(term -> getCursor(frozen, term), terms, channels));
+      }
+      searchedSegments = segments;
+    }
+
+    List<ChatSearchHit> hits = new ArrayList<ChatSearchHit>();
+    try (FileChannel store = FileChannel.open(indexPath.resolve(STORE_FILE),
+        StandardOpenOption.READ)) {
+      for (List<PostingsCursor> postings : memoryPostings) {
+        if (collect(store, postings, query, lowOffset, highOffset, limit, hits)) {
+          return hits;
+        }
+      }
+
+      for (int i = searchedSegments.size() - 1; i >= 0; i--) {
+        SearchSegment segment = searchedSegments.get(i);
+        long startOffset = i == 0 ? 0 : searchedSegments.get(i - 1).getEndOffset();
+        if (segment.getEndOffset() <= lowOffset) {
+          break;
+        } else if (startOffset >= highOffset) {
+          continue;
+        }
+
+        List<PostingsCursor> postings = getPostings(segment::getPostings, terms, channels);
+        if (collect(store, postings, query, lowOffset, highOffset, limit, hits)) {
+          return hits;
+        }
+      }
+    }
+    return hits;
+  }
+
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  public synchronized int getBufferedPostingCount() {
+    return bufferedPostings;
+  }
+
+  /**
+   * Returns whether the last segment could not be written; it is tried again when the next buffer
+   * is full.
+   */
+  public synchronized boolean isSegmentWriteFailing() {
+    return segmentWriteFailed;
+  }
+
+  /**
+   * Returns whether new messages are no longer indexed because segments could not be written. They
+   * are still stored, and indexed when the index is next opened.
+   */
+  public synchronized boolean isIndexingSuspended() {
+    return indexingSuspended;
+  }
+
+  /**
+   * Returns the size of the message store, in bytes.
+   */
+  public synchronized long getStoreSize() {
+    return storeLength;
+  }
+
+  /**
+   * Closes the index files. Buffered postings are dropped, they are rebuilt from the message store
+   * when the index is opened again. Waits for the segment being written, if any.
+   */
+  @Override
+  public void close() throws IOException {
+    ExecutorService closing;
+    synchronized (this) {
+      if (executor == null) {
+        return;
+      }
+      closing = executor;
+      executor = null;
+
+      try {
+        if (storeOutput != null) {
+          storeOutput.close();
+        }
+      } finally {
+        if (timeIndexOutput != null) {
+          timeIndexOutput.close();
+        }
+        storeOutput = null;
+        timeIndexOutput = null;
+        buffer = new TreeMap<String, LongList>();
+        bufferedPostings = 0;
+        frozenBuffers.clear();
+        segments = Collections.emptyList();
+        timeIndexTimestamps.clear();
+        timeIndexOffsets.clear();
+        lastTimestamp = Long.MIN_VALUE;
+        mergePending = false;
+        segmentWriteFailed = false;
+        indexingSuspended = false;
+      }
+    }
+
+    // Segments written from now on are loaded when the index is opened again
+    closing.shutdown();
+    try {
+      closing.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Adds the words of the given text to the given terms: lowercase runs of letters and digits, too
+   * short or too long runs being ignored.
+   */
+  static void tokenize(String text, Set<String> terms) {
+    if (text == null) {
+      return;
+    }
+
+    String lowerText = text.toLowerCase(Locale.ROOT);
+    int start = -1;
+    for (int i = 0; i <= lowerText.length(); i++) {
+      boolean wordChar = i < lowerText.length() && Character.isLetterOrDigit(lowerText.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        int length = i - start;
+        if (length >= MIN_TERM_LENGTH && length <= MAX_TERM_LENGTH) {
+          terms.add(lowerText.substring(start, i));
+        }
+        start = -1;
+      }
+    }
+  }
+
+  /**
+   * Returns the term of messages said by the given nick. It cannot be confused with a word, since
+   * words never contain colons.
+   */
+  static String getNickTerm(String nick) {
+    return "nick:" + nick.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Returns the term of messages said on the given channel.
+   */
+  static String getChannelTerm(String channel) {
+    return "chan:" + channel.toLowerCase(Locale.ROOT);
+  }
+
+  // internal helpers
+
+  private void index(long offset, String lowerChannel, String nick, String text) {
+    if (indexingSuspended) {
+      return;
+    }
+
+    Set<String> terms = new HashSet<String>();
+    tokenize(text, terms);
+    if (nick != null) {
+      terms.add(getNickTerm(nick));
+    }
+    terms.add(getChannelTerm(lowerChannel));
+
+    for (String term : terms) {
+      LongList postings = buffer.get(term);
+      if (postings == null) {
+        postings = new LongList();
+        buffer.put(term, postings);
+      }
+      postings.add(offset);
+    }
+    bufferedPostings += terms.size();
+
+    if (bufferedPostings >= maxBufferedPostings) {
+      freezeBuffer();
+    }
+  }
+
+  /**
+   * Hands the buffer to the background thread to be written to a new segment, or suspends indexing
+   * if too many buffers are already waiting to be written.
+   */
+  private void freezeBuffer() {
+    if (segmentWriteFailed && frozenBuffers.size() >= MAX_FROZEN_BUFFERS) {
+      // Keeps the buffer searchable; a later segment would skip the messages not indexed from now
+      LOGGER.error("Chat search segments cannot be written, {} buffer(s) waiting; new messages are"
+          + " only indexed when the index is opened again", frozenBuffers.size());
+      indexingSuspended = true;
+      return;
+    }
+
+    if (storeOutput != null) {
+      // Segments never refer to messages that are not stored
+      try {
+        storeOutput.flush();
+      } catch (IOException ioe) {
+        LOGGER.error("Could not flush chat search message store", ioe);
+      }
+    }
+
+    FrozenBuffer frozen = new FrozenBuffer(buffer, storeLength, nextSegment++);
+    frozenBuffers.add(frozen);
+    buffer = new TreeMap<String, LongList>();
+    bufferedPostings = 0;
+
+    ExecutorService owner = executor;
+    owner.execute(() -> writeSegments(owner));
+  }
+
+  /**
+   * Writes the frozen buffers to segments, oldest first, stopping at the first one that cannot be
+   * written. It is tried again when the next buffer is frozen: writing a later segment first would
+   * make the messages of the failed one be skipped when the index is opened again.
+   */
+  private void writeSegments(ExecutorService owner) {
+    while (true) {
+      FrozenBuffer frozen;
+      synchronized (this) {
+        if (executor != owner || frozenBuffers.isEmpty()) {
+          return;
+        }
+        frozen = frozenBuffers.get(0);
+      }
+      if (!writeSegment(owner, frozen)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Writes the given buffer to a segment.
+   *
+   * @return whether the segment was written
+   */
+  private boolean writeSegment(ExecutorService owner, FrozenBuffer frozen) {
+    Path file = indexPath.resolve(SearchSegment.getFileName(frozen.number, frozen.number));
+    try {
+      try (SearchSegment.Writer writer = new SearchSegment.Writer(file)) {
+        for (Map.Entry<String, LongList> entry : frozen.postings.entrySet()) {
+          writer.startTerm(entry.getKey());
+          LongList postings = entry.getValue();
+          for (int i = 0; i < postings.size(); i++) {
+            writer.addPosting(postings.get(i));
+          }
+        }
+        writer.finish(frozen.endOffset);
+      }
+      SearchSegment segment = SearchSegment.open(file, frozen.number, frozen.number);
+
+      synchronized (this) {
+        if (executor != owner) {
+          return false;
+        }
+        List<SearchSegment> newSegments = new ArrayList<SearchSegment>(segments);
+        newSegments.add(segment);
+        segments = Collections.unmodifiableList(newSegments);
+        frozenBuffers.remove(frozen);
+        segmentWriteFailed = false;
+        scheduleMerge();
+      }
+      return true;
+    } catch (IOException | RuntimeException e) {
+      // Messages stay searchable from memory until the segment is written
+      LOGGER.error("Could not write chat search segment " + file + ", trying again later", e);
+      synchronized (this) {
+        segmentWriteFailed = executor == owner;
+      }
+      return false;
+    }
+  }
+
+  private void scheduleMerge() {
+    if (!mergePending && segments.size() > MAX_SEGMENTS) {
+      mergePending = true;
+      ExecutorService owner = executor;
+      owner.execute(() -> mergeSegments(owner));
+    }
+  }
+
+  /**
+   * Merges segments until there are few enough of them, so that merging keeps up with the segments
+   * written in between.
+   */
+  private void mergeSegments(ExecutorService owner) {
+    synchronized (this) {
+      mergePending = false;
+    }
+
+    List<SearchSegment> window;
+    while ((window = pickMergeWindow(owner)) != null) {
+      if (!mergeSegments(owner, window)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Merges the given adjacent segments into one.
+   *
+   * @return whether the segments were merged
+   */
+  private boolean mergeSegments(ExecutorService owner, List<SearchSegment> window) {
+    int first = window.get(0).getFirst();
+    int last = window.get(window.size() - 1).getLast();
+    Path file = indexPath.resolve(SearchSegment.getFileName(first, last));
+    try {
+      SearchSegment.merge(window, file);
+      SearchSegment merged = SearchSegment.open(file, first, last);
+
+      synchronized (this) {
+        if (executor != owner) {
+          // Supersedes the merged segments when the index is opened again
+          return false;
+        }
+        // Only this thread changes segments while the index is open, so the window is still there
+        List<SearchSegment> newSegments = new ArrayList<SearchSegment>(segments);
+        int start = newSegments.indexOf(window.get(0));
+        newSegments.subList(start, start + window.size()).clear();
+        newSegments.add(start, merged);
+        segments = Collections.unmodifiableList(newSegments);
+      }
+
+      for (SearchSegment segment : window) {
+        deleteSegment(segment.getFile());
+      }
+      return true;
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Could not merge chat search segments into " + file, e);
+      return false;
+    }
+  }
+
+  /**
+   * Returns the adjacent segments that are the smallest to merge, or {@code null} if there are few
+   * enough segments or if merging any of them would make a segment too large.
+   */
+  private synchronized List<SearchSegment> pickMergeWindow(ExecutorService owner) {
+    if (executor != owner || segments.size() <= MAX_SEGMENTS) {
+      return null;
+    }
+
+    List<SearchSegment> window = null;
+    long windowSize = MAX_MERGED_SEGMENT_BYTES;
+    for (int i = 0; i + MERGE_FACTOR <= segments.size(); i++) {
+      long size = 0;
+      for (int j = i; j < i + MERGE_FACTOR; j++) {
+        size += segments.get(j).getSize();
+      }
+      if (size <= windowSize) {
+        window = segments.subList(i, i + MERGE_FACTOR);
+        windowSize = size;
+      }
+    }
+    return window == null ? null : new ArrayList<SearchSegment>(window);
+  }
+
+  private static void deleteSegment(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ioe) {
+      // May still be mapped on some systems; ignored when the index is opened again
+      LOGGER.warn("Could not delete merged chat search segment {}", file);
+    }
+  }
+
+  /**
+   * Opens the complete segments, ignoring those superseded by a merged segment. Segments after a
+   * missing or unreadable one are deleted, so that the messages after the last contiguous segment
+   * are indexed again from the store.
+   */
+  private void loadSegments() throws IOException {
+    List<int[]> numbers = new ArrayList<int[]>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(indexPath)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        Matcher matcher = SEGMENT_FILE_NAME.matcher(name);
+        if (name.endsWith(".tmp")) {
+          Files.delete(file);
+        } else if (matcher.matches()) {
+          numbers.add(new int[] {Integer.parseInt(matcher.group(1)),
+              Integer.parseInt(matcher.group(2))});
+        }
+      }
+    }
+    // Widest segment first among those starting with the same number
+    numbers.sort(Comparator.<int[]>comparingInt(range -> range[0])
+        .thenComparing(Comparator.<int[]>comparingInt(range -> range[1]).reversed()));
+
+    List<SearchSegment> loaded = new ArrayList<SearchSegment>();
+    int lastLoaded = -1;
+    boolean broken = false;
+    for (int[] range : numbers) {
+      Path file = indexPath.resolve(SearchSegment.getFileName(range[0], range[1]));
+      if (range[1] <= lastLoaded) {
+        deleteSegment(file);
+        continue;
+      } else if (range[0] != lastLoaded + 1 && !broken) {
+        LOGGER.warn("Chat search segment {} is missing, indexing its messages again",
+            lastLoaded + 1);
+        broken = true;
+      }
+      if (broken) {
+        // Messages of a broken segment and of later ones are indexed again from the store
+        deleteSegment(file);
+        continue;
+      }
+      try {
+        loaded.add(SearchSegment.open(file, range[0], range[1]));
+        lastLoaded = range[1];
+      } catch (IOException ioe) {
+        LOGGER.warn("Discarding unreadable chat search segment " + file, ioe);
+        broken = true;
+        deleteSegment(file);
+      }
+    }
+
+    segments = Collections.unmodifiableList(loaded);
+    nextSegment = lastLoaded + 1;
+  }
+
+  /**
+   * Indexes the messages stored after the last segment, and discards the incomplete message that
+   * may end the store.
+   */
+  private void recoverStore() throws IOException {
+    Path file = indexPath.resolve(STORE_FILE);
+    long indexedLength = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).getEndOffset();
+
+    try (FileChannel store = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long length = store.size();
+      if (length < indexedLength) {
+        // Messages lost by the system; keeps offsets of later messages past the indexed ones
+        LOGGER.warn("Chat search message store {} is shorter than its index, padding it", file);
+        store.write(ByteBuffer.wrap(new byte[1]), indexedLength - 1);
+        length = indexedLength;
+      }
+
+      long validLength = indexedLength;
+      int recovered = 0;
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+          Channels.newInputStream(store.position(indexedLength)), BUFFER_SIZE));
+      try {
+        while (validLength + 4 <= length) {
+          int recordLength = in.readInt();
+          if (recordLength < 8 || validLength + 4 + recordLength > length) {
+            break;
+          }
+          byte[] bytes = new byte[recordLength];
+          in.readFully(bytes);
+          ByteBuffer message = ByteBuffer.wrap(bytes);
+          lastTimestamp = Math.max(lastTimestamp, message.getLong());
+          String channel = BinaryChatLogFormat.readString(message);
+          String nick = BinaryChatLogFormat.readString(message);
+          String text = BinaryChatLogFormat.readString(message);
+
+          long offset = validLength;
+          validLength += 4 + recordLength;
+          storeLength = validLength;
+          index(offset, channel, nick, text);
+          recovered++;
+        }
+      } catch (EOFException eofe) {
+        // Incomplete message, discarded below
+      }
+
+      if (validLength < length) {
+        LOGGER.warn("Discarding {} byte(s) of incomplete message at the end of {}",
+            length - validLength, file);
+        store.truncate(validLength);
+      }
+      if (recovered > 0) {
+        LOGGER.info("Indexed {} message(s) stored after the last chat search segment", recovered);
+      }
+      storeLength = validLength;
+    }
+
+    storeOutput = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file.toFile(), true), BUFFER_SIZE));
+  }
+
+  /**
+   * Loads the time index, discarding entries pointing past the store.
+   */
+  private void loadTimeIndex() throws IOException {
+    Path file = indexPath.resolve(TIME_INDEX_FILE);
+    if (Files.exists(file)) {
+      ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(file));
+      while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+        long timestamp = entries.getLong();
+        long offset = entries.getLong();
+        if (offset >= storeLength) {
+          break;
+        }
+        timeIndexTimestamps.add(timestamp);
+        timeIndexOffsets.add(offset);
+      }
+      if (Files.size(file) > timeIndexOffsets.size() * (long) INDEX_ENTRY_BYTES) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+          channel.truncate(timeIndexOffsets.size() * (long) INDEX_ENTRY_BYTES);
+        }
+      }
+    }
+
+    if (timeIndexOffsets.size() > 0) {
+      lastIndexedOffset = timeIndexOffsets.get(timeIndexOffsets.size() - 1);
+      lastTimestamp = Math.max(lastTimestamp,
+          timeIndexTimestamps.get(timeIndexTimestamps.size() - 1));
+    } else {
+      lastIndexedOffset = -TIME_INDEX_INTERVAL_BYTES;
+    }
+    timeIndexOutput = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file.toFile(), true)));
+  }
+
+  /**
+   * Returns an offset before which all messages were said before the given time.
+   */
+  private long findLowOffset(long from) {
+    int low = 0;
+    int high = timeIndexTimestamps.size() - 1;
+    long offset = 0;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (timeIndexTimestamps.get(middle) < from) {
+        offset = timeIndexOffsets.get(middle);
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Returns an offset from which all messages were said after the given time.
+   */
+  private long findHighOffset(long to) {
+    int low = 0;
+    int high = timeIndexTimestamps.size() - 1;
+    long offset = Long.MAX_VALUE;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (timeIndexTimestamps.get(middle) > to) {
+        offset = timeIndexOffsets.get(middle);
+        high = middle - 1;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Returns the postings a message must all be in to match a query: those of its terms and, if it
+   * is restricted to some channels, those of any of these channels.
+   */
+  private static List<PostingsCursor> getPostings(
+      Function<String, PostingsCursor> postingsByTerm, List<String> terms, Set<String> channels) {
+    List<PostingsCursor> postings = new ArrayList<PostingsCursor>(terms.size() + 1);
+    for (String term : terms) {
+      postings.add(postingsByTerm.apply(term));
+    }
+    if (channels != null) {
+      List<PostingsCursor> channelPostings = new ArrayList<PostingsCursor>(channels.size());
+      for (String channel : channels) {
+        channelPostings.add(postingsByTerm.apply(getChannelTerm(channel)));
+      }
+      postings.add(new AnyPostingsCursor(channelPostings));
+    }
+    return postings;
+  }
+
+  private static PostingsCursor getCursor(Map<String, LongList> postingsByTerm, String term) {
+    LongList postings = postingsByTerm.get(term);
+    return postings == null ? PostingsCursor.EMPTY : postings.cursor();
+  }
+
+  /**
+   * Reads the messages present in all the given postings, newest first, and adds those in the
+   * period of the query to the hits.
+   *
+   * @return whether the search is over, either because enough messages were found or because the
+   *         remaining ones are too old
+   */
+  private static boolean collect(FileChannel store, List<PostingsCursor> postings,
+      ChatSearchQuery query, long lowOffset, long highOffset, int limit, List<ChatSearchHit> hits)
+      throws IOException {
+    long offset = highOffset == Long.MAX_VALUE ? Long.MAX_VALUE : highOffset - 1;
+    while (true) {
+      // Lowered each time one of the postings does not contain it, until they all do
+      int agreeing = 0;
+      for (int i = 0; agreeing < postings.size(); i = (i + 1) % postings.size()) {
+        long found = postings.get(i).advance(offset);
+        if (found == PostingsCursor.NONE) {
+          return false;
+        } else if (found < lowOffset) {
+          return true;
+        } else if (found == offset) {
+          agreeing++;
+        } else {
+          offset = found;
+          agreeing = 1;
+        }
+      }
+
+      ChatSearchHit hit = readMessage(store, offset);
+      if (hit != null && hit.getTimestamp() <= query.getTo()) {
+        if (hit.getTimestamp() < query.getFrom()) {
+          return true;
+        }
+        hits.add(hit);
+        if (hits.size() >= limit) {
+          return true;
+        }
+      }
+
+      if (offset == 0) {
+        return false;
+      }
+      offset--;
+    }
+  }
+
+  private static ChatSearchHit readMessage(FileChannel store, long offset) throws IOException {
+    ByteBuffer length = ByteBuffer.allocate(4);
+    readFully(store, length, offset);
+    if (length.hasRemaining() || length.getInt(0) < 8 || length.getInt(0) > MAX_MESSAGE_BYTES) {
+      // Lost by the system
+      return null;
+    }
+
+    ByteBuffer message = ByteBuffer.allocate(length.getInt(0));
+    readFully(store, message, offset + 4);
+    if (message.hasRemaining()) {
+      return null;
+    }
+    message.flip();
+    long timestamp = message.getLong();
+    String channel = BinaryChatLogFormat.readString(message);
+    String nick = BinaryChatLogFormat.readString(message);
+    return new ChatSearchHit(timestamp, channel, nick, BinaryChatLogFormat.readString(message));
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    int read = 0;
+    while (buffer.hasRemaining() && read >= 0) {
+      read = channel.read(buffer, position + buffer.position());
+    }
+  }
+
+  /**
+   * A buffer handed to the background thread, with the offset of the store it indexes up to and
+   * the number of the segment it will become.
+   */
+  private static final class FrozenBuffer {
+    private final TreeMap<String, LongList> postings;
+
+    private final long endOffset;
+
+    private final int number;
+
+    FrozenBuffer(TreeMap<String, LongList> postings, long endOffset, int number) {
+      this.postings = postings;
+      this.endOffset = endOffset;
+      this.number = number;
+    }
+  }
+
+  /**
+   * Walks the postings of several terms as one, e.g. those of the channels a search is restricted
+   * to.
+   */
+  private static final class AnyPostingsCursor implements PostingsCursor {
+    private final List<PostingsCursor> cursors;
+
+    AnyPostingsCursor(List<PostingsCursor> cursors) {
+      this.cursors = cursors;
+    }
+
+    @Override
+    public long advance(long offset) {
+      long greatest = NONE;
+      for (PostingsCursor cursor : cursors) {
+        greatest = Math.max(greatest, cursor.advance(offset));
+      }
+      return greatest;
+    }
+  }
+
+  /**
+   * A growable list of primitive longs.
+   */
+  private static final class LongList {
+    private long[] values = new long[4];
+
+    private int size;
+
+    void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    long get(int index) {
+      return values[index];
+    }
+
+    int size() {
+      return size;
+    }
+
+    void clear() {
+      size = 0;
+    }
+
+    /**
+     * Returns a cursor over the values added so far, which must be sorted. Values added later are
+     * not seen, so that the cursor can be walked without holding the lock guarding this list.
+     */
+    PostingsCursor cursor() {
+      long[] sortedValues = values;
+      int end = size;
+      return new PostingsCursor() {
+        private int remaining = end;
+
+        @Override
+        public long advance(long offset) {
+          int found = Arrays.binarySearch(sortedValues, 0, remaining, offset);
+          remaining = found >= 0 ? found + 1 : -found - 1;
+          return remaining == 0 ? NONE : sortedValues[remaining - 1];
+        }
+      };
+    }
+  }
+}
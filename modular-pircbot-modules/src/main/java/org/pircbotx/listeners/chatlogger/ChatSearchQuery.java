@@ -0,0 +1,168 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * A search in a {@link ChatSearchIndex}: messages containing all the given keywords, optionally
+ * said by a given nick, on a given channel and during a given period.
+ * <p>
+ * Queries are parsed from the arguments of a trigger; each argument is either a keyword or one of:
+ * <ul>
+ * <li>{@code nick:<nick>}: messages said by this nick</li>
+ * <li>{@code #channel}: messages said on this channel</li>
+ * <li>{@code since:yyyy-MM-dd}: messages said on this day or later</li>
+ * <li>{@code until:yyyy-MM-dd}: messages said on this day or earlier</li>
+ * <li>{@code date:yyyy-MM-dd}: messages said on this day</li>
+ * </ul>
+ *
+ * @author Emmanuel Cron
+ */
+public final class ChatSearchQuery {
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd");
+
+  private final List<String> terms;
+
+  private final long from;
+
+  private final long to;
+
+  private final Set<String> channels;
+
+  /**
+   * Creates a new query.
+   *
+   * @param keywords words the messages must all contain; they are split and lowercased as the
+   *        messages are
+   * @param nick the nick that said the messages, or {@code null} for any nick
+   * @param channel the channel of the messages, or {@code null} for any channel
+   * @param from start of the period, inclusive, in milliseconds since the epoch
+   * @param to end of the period, inclusive, in milliseconds since the epoch
+   */
+  public ChatSearchQuery(List<String> keywords, String nick, String channel, long from, long to) {
+    checkArgument(from <= to, "Start of the period must not be after its end");
+
+    Set<String> allTerms = new LinkedHashSet<String>();
+    for (String keyword : keywords) {
+      ChatSearchIndex.tokenize(keyword, allTerms);
+    }
+    if (nick != null) {
+      allTerms.add(ChatSearchIndex.getNickTerm(nick));
+    }
+    if (channel != null) {
+      allTerms.add(ChatSearchIndex.getChannelTerm(channel));
+    }
+    checkArgument(!allTerms.isEmpty(), "No keyword, nick or channel to search for");
+
+    this.terms = Collections.unmodifiableList(new ArrayList<String>(allTerms));
+    this.from = from;
+    this.to = to;
+    this.channels = null;
+  }
+
+  private ChatSearchQuery(ChatSearchQuery query, Set<String> channels) {
+    this.terms = query.terms;
+    this.from = query.from;
+    this.to = query.to;
+    this.channels = channels;
+  }
+
+  /**
+   * Parses a query from the arguments of a trigger.
+   *
+   * @throws IllegalArgumentException if an argument is invalid or there is nothing to search for
+   */
+  public static ChatSearchQuery parse(List<String> arguments) {
+    List<String> keywords = new ArrayList<String>();
+    String nick = null;
+    String channel = null;
+    long from = Long.MIN_VALUE;
+    long to = Long.MAX_VALUE;
+    for (String argument : arguments) {
+      if (argument.startsWith("nick:")) {
+        nick = argument.substring(5);
+      } else if (argument.startsWith("#")) {
+        channel = argument;
+      } else if (argument.startsWith("since:")) {
+        from = parseDay(argument.substring(6)).getMillis();
+      } else if (argument.startsWith("until:")) {
+        to = parseDay(argument.substring(6)).plusDays(1).withTimeAtStartOfDay().getMillis() - 1;
+      } else if (argument.startsWith("date:")) {
+        DateTime day = parseDay(argument.substring(5));
+        from = day.getMillis();
+        to = day.plusDays(1).withTimeAtStartOfDay().getMillis() - 1;
+      } else {
+        keywords.add(argument);
+      }
+    }
+    return new ChatSearchQuery(keywords, nick, channel, from, to);
+  }
+
+  /**
+   * Returns the index terms all matching messages contain.
+   */
+  public List<String> getTerms() {
+    return terms;
+  }
+
+  public long getFrom() {
+    return from;
+  }
+
+  public long getTo() {
+    return to;
+  }
+
+  /**
+   * Returns a copy of this query that only matches messages said on the given channels, e.g. the
+   * channels the user searching is allowed to read.
+   *
+   * @param allowedChannels the channels messages may have been said on
+   */
+  public ChatSearchQuery restrictTo(Collection<String> allowedChannels) {
+    Set<String> lowerChannels = new HashSet<String>();
+    for (String channel : allowedChannels) {
+      lowerChannels.add(channel.toLowerCase(Locale.ROOT));
+    }
+    if (channels != null) {
+      lowerChannels.retainAll(channels);
+    }
+    return new ChatSearchQuery(this, Collections.unmodifiableSet(lowerChannels));
+  }
+
+  /**
+   * Returns the lowercase channels messages must have been said on, or {@code null} if any channel
+   * matches.
+   */
+  public Set<String> getChannels() {
+    return channels;
+  }
+
+  @Override
+  public String toString() {
+    return "ChatSearchQuery[terms=" + terms + ", from=" + from + ", to=" + to + ", channels="
+        + channels + "]";
+  }
+
+  // internal helpers
+
+  private static DateTime parseDay(String day) {
+    try {
+      return DATE_FORMAT.parseDateTime(day).withTimeAtStartOfDay();
+    } catch (IllegalArgumentException iae) {
+      throw new IllegalArgumentException("Invalid date, expected yyyy-MM-dd: " + day, iae);
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package org.pircbotx.listeners.chatlogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.pircbotx.listeners.chatlogger.RotationPolicy.Period;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Compresses the log files a {@link TextChatLogSink} no longer writes to, and deletes the oldest
+ * compressed files according to the retention limits of its {@link RotationPolicy}.
+ * <p>
+ * All the work is done by a low priority background thread, which sweeps the logs folder each time
+ * the sink starts a new file. A file is finished when its period is over or when a later part of it
+ * exists. Each file is compressed aside, read back and compared to the original before replacing
+ * it, so that a failed compression never loses a log.
+ *
+ * @author Emmanuel Cron
+ */
+final class LogArchiver {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogArchiver.class);
+
+  // {channel}-{date}[.{part}].log, the channel may itself contain dashes and dots
+  private static final Pattern LOG_FILE_NAME =
+      Pattern.compile("(.+)-(\\d{4}_\\d{2}_\\d{2}(?:_\\d{2})?)(?:\\.(\\d+))?\\.log");
+
+  private static final String ARCHIVE_EXTENSION = ".gz";
+
+  // Lines logged late may still reach a file shortly after its period is over
+  private static final long GRACE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path logsPath;
+
+  private final RotationPolicy policy;
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("chat-log-archiver").setDaemon(true)
+          .setPriority(Thread.MIN_PRIORITY).build());
+
+  private final AtomicBoolean sweepPending = new AtomicBoolean();
+
+  LogArchiver(Path logsPath, RotationPolicy policy) {
+    this.logsPath = logsPath;
+    this.policy = policy;
+  }
+
+  /**
+   * Returns the name of the given part of a log file.
+   *
+   * @param baseName the name of the file without extension, i.e. {@code {channel}-{date}}
+   * @param part the part, 0 for the first one
+   */
+  static String getFileName(String baseName, int part) {
+    return part == 0 ? baseName + ".log" : baseName + "." + part + ".log";
+  }
+
+  /**
+   * Returns whether the given part of a log file exists, compressed or not.
+   */
+  static boolean exists(Path logsPath, String baseName, int part) {
+    Path file = logsPath.resolve(getFileName(baseName, part));
+    return Files.exists(file) || Files.exists(getArchive(file));
+  }
+
+  static Path getArchive(Path file) {
+    return file.resolveSibling(file.getFileName() + ARCHIVE_EXTENSION);
+  }
+
+  /**
+   * Compresses finished files and applies retention limits in the background, unless a sweep is
+   * already waiting to be done.
+   */
+  void sweep() {
+    if (sweepPending.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        sweepPending.set(false);
+        try {
+          compressFinishedFiles();
+          deleteOldArchives();
+        } catch (IOException | RuntimeException e) {
+          LOGGER.error("Could not archive chat log files in " + logsPath, e);
+        }
+      });
+    }
+  }
+
+  // internal helpers
+
+  private void compressFinishedFiles() throws IOException {
+    long finishedBefore = System.currentTimeMillis() - GRACE_MILLIS;
+
+    // Last part of each file, compressed or not
+    Map<String, Integer> lastParts = new HashMap<String, Integer>();
+    List<Matcher> uncompressedFiles = new ArrayList<Matcher>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(logsPath)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        boolean compressed = name.endsWith(ARCHIVE_EXTENSION);
+        if (compressed) {
+          name = name.substring(0, name.length() - ARCHIVE_EXTENSION.length());
+        }
+        Matcher matcher = LOG_FILE_NAME.matcher(name);
+        if (!matcher.matches()) {
+          continue;
+        }
+
+        lastParts.merge(getBaseName(matcher), getPart(matcher), Math::max);
+        if (!compressed) {
+          uncompressedFiles.add(matcher);
+        }
+      }
+    }
+
+    for (Matcher matcher : uncompressedFiles) {
+      boolean finished = getPart(matcher) < lastParts.get(getBaseName(matcher))
+          || getPeriodEnd(matcher.group(2)) <= finishedBefore;
+      if (finished) {
+        compress(logsPath.resolve(matcher.group()));
+      }
+    }
+  }
+
+  private void compress(Path file) throws IOException {
+    Path archive = getArchive(file);
+    Path temporaryArchive = archive.resolveSibling(archive.getFileName() + ".tmp");
+
+    CRC32 checksum = new CRC32();
+    long length = 0;
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (InputStream in = Files.newInputStream(file);
+        OutputStream out =
+            new GZIPOutputStream(Files.newOutputStream(temporaryArchive), BUFFER_SIZE)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        checksum.update(buffer, 0, read);
+        length += read;
+        out.write(buffer, 0, read);
+      }
+    }
+
+    if (!isIntact(temporaryArchive, checksum.getValue(), length)) {
+      Files.deleteIfExists(temporaryArchive);
+      LOGGER.error("Compressed chat log file does not match {}, keeping it uncompressed", file);
+      return;
+    }
+
+    // Keep the date of the original file, used by the retention limits
+    Files.setLastModifiedTime(temporaryArchive, Files.getLastModifiedTime(file));
+    Files.move(temporaryArchive, archive, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    Files.delete(file);
+    LOGGER.info("Compressed chat log file {} ({} bytes)", archive, length);
+  }
+
+  private static boolean isIntact(Path archive, long expectedChecksum, long expectedLength) {
+    CRC32 checksum = new CRC32();
+    long length = 0;
+    byte[] buffer = new byte[BUFFER_SIZE];
+    // Also checks the checksum stored in the archive itself
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(archive), BUFFER_SIZE)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        checksum.update(buffer, 0, read);
+        length += read;
+      }
+    } catch (IOException ioe) {
+      LOGGER.error("Could not read back compressed chat log file " + archive, ioe);
+      return false;
+    }
+    return checksum.getValue() == expectedChecksum && length == expectedLength;
+  }
+
+  private void deleteOldArchives() throws IOException {
+    if (policy.getRetentionMillis() == 0 && policy.getMaxArchiveBytes() == 0) {
+      return;
+    }
+
+    List<Path> archives = new ArrayList<Path>();
+    Map<Path, FileTime> modifiedTimes = new HashMap<Path, FileTime>();
+    long totalBytes = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(logsPath, "*.log.gz")) {
+      for (Path archive : files) {
+        archives.add(archive);
+        modifiedTimes.put(archive, Files.getLastModifiedTime(archive));
+        totalBytes += Files.size(archive);
+      }
+    }
+    // Oldest first
+    Collections.sort(archives, Comparator.comparing(modifiedTimes::get));
+
+    long keptAfter = System.currentTimeMillis() - policy.getRetentionMillis();
+    for (Path archive : archives) {
+      boolean expired = policy.getRetentionMillis() > 0
+          && modifiedTimes.get(archive).toMillis() < keptAfter;
+      boolean overLimit = policy.getMaxArchiveBytes() > 0
+          && totalBytes > policy.getMaxArchiveBytes();
+      if (!expired && !overLimit) {
+        break;
+      }
+
+      totalBytes -= Files.size(archive);
+      Files.delete(archive);
+      LOGGER.info("Deleted old chat log file {}", archive);
+    }
+  }
+
+  private static String getBaseName(Matcher matcher) {
+    return matcher.group(1) + "-" + matcher.group(2);
+  }
+
+  private static int getPart(Matcher matcher) {
+    return matcher.group(3) == null ? 0 : Integer.parseInt(matcher.group(3));
+  }
+
+  private static long getPeriodEnd(String date) {
+    // Hourly dates have the hour appended to the daily pattern
+    Period period =
+        date.length() == Period.DAILY.getDatePattern().length() ? Period.DAILY : Period.HOURLY;
+    DateTime start = DateTimeFormat.forPattern(period.getDatePattern()).parseDateTime(date);
+    return period.getEnd(start).getMillis();
+  }
+}
@@ -0,0 +1,115 @@
+package org.pircbotx.listeners.chatlogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded ring buffer that many threads can fill without locking, emptied by a single thread.
+ * <p>
+ * Each slot has a sequence number telling whether it is free for the producer at a given position
+ * or holds an element for the consumer. Producers claim a position by incrementing the tail, so
+ * that they only compete on a single compare-and-set.
+ *
+ * @author Emmanuel Cron
+ * @param <E> the type of elements
+ */
+final class MpscRingBuffer<E> {
+  private final int capacity;
+
+  private final int mask;
+
+  private final AtomicReferenceArray<E> elements;
+
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong tail = new AtomicLong();
+
+  // Only written by the consumer
+  private volatile long head;
+
+  /**
+   * Creates a new ring buffer.
+   *
+   * @param capacity the number of slots, a power of two
+   */
+  MpscRingBuffer(int capacity) {
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.elements = new AtomicReferenceArray<E>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds the given element, from any thread.
+   *
+   * @return {@code true} if added, {@code false} if the buffer is full
+   */
+  boolean offer(E element) {
+    long position;
+    int index;
+    while (true) {
+      position = tail.get();
+      index = (int) position & mask;
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+      } else if (difference < 0) {
+        // Slot still holds the element of the previous lap
+        return false;
+      }
+      // Else another producer claimed this position, try the next one
+    }
+
+    elements.lazySet(index, element);
+    // Publishes the element to the consumer
+    sequences.set(index, position + 1);
+    return true;
+  }
+
+  /**
+   * Removes up to the given number of elements and hands them to the given consumer, in the order
+   * they were added. Must only be called by the consumer thread.
+   *
+   * @return the number of elements removed
+   */
+  int drain(Consumer<? super E> consumer, int limit) {
+    long position = head;
+    int count = 0;
+    while (count < limit) {
+      int index = (int) position & mask;
+      if (sequences.get(index) != position + 1) {
+        // Empty, or the producer has not published its element yet
+        break;
+      }
+      E element = elements.get(index);
+      elements.lazySet(index, null);
+      // Frees the slot for the producer of the next lap
+      sequences.set(index, position + capacity);
+      position++;
+      head = position;
+      count++;
+      consumer.accept(element);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of elements waiting to be removed, approximately if producers or the
+   * consumer are running.
+   */
+  int size() {
+    long size = tail.get() - head;
+    return (int) Math.max(0, Math.min(size, capacity));
+  }
+
+  int capacity() {
+    return capacity;
+  }
+}
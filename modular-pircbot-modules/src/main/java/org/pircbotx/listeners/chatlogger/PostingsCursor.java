@@ -0,0 +1,27 @@
+package org.pircbotx.listeners.chatlogger;
+
+/**
+ * Walks the sorted postings of a term of a {@link ChatSearchIndex}, from the newest message to the
+ * oldest, without reading more of them than needed.
+ *
+ * @author Emmanuel Cron
+ */
+interface PostingsCursor {
+  /**
+   * Returned when there is no posting left.
+   */
+  long NONE = -1;
+
+  /**
+   * A cursor over a term that has no postings.
+   */
+  PostingsCursor EMPTY = offset -> NONE;
+
+  /**
+   * Moves to the greatest posting lower than or equal to the given offset. Each call must be given
+   * an offset lower than or equal to the one given to the previous call.
+   *
+   * @return the posting found, or {@link #NONE} if all remaining postings are greater
+   */
+  long advance(long offset);
+}
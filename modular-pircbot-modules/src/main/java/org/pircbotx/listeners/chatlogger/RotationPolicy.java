@@ -0,0 +1,130 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+
+/**
+ * Describes when a {@link TextChatLogSink} starts a new log file, and what becomes of the files it
+ * no longer writes to.
+ * <p>
+ * Each channel starts a new file at the beginning of each period. If a maximum file size is given,
+ * a file that reaches it is continued in a new part ({@code #channel-2014_01_31.1.log},
+ * {@code #channel-2014_01_31.2.log}...), checked when lines are written so files may exceed it by a
+ * few kilobytes.
+ * <p>
+ * When compression is enabled, finished files are compressed with gzip in the background and only
+ * kept when the compressed file has been read back successfully. Retention limits then delete the
+ * oldest compressed files; files that are not compressed are never deleted.
+ *
+ * @author Emmanuel Cron
+ */
+public final class RotationPolicy {
+  /**
+   * How often a new log file is started.
+   *
+   * @author Emmanuel Cron
+   */
+  public enum Period {
+    /**
+     * One file per hour, e.g. {@code #channel-2014_01_31_13.log}.
+     */
+    HOURLY("yyyy_MM_dd_HH"),
+    /**
+     * One file per day, e.g. {@code #channel-2014_01_31.log}.
+     */
+    DAILY("yyyy_MM_dd");
+
+    private final String datePattern;
+
+    private Period(String datePattern) {
+      this.datePattern = datePattern;
+    }
+
+    /**
+     * Returns the pattern of the date in the names of the files.
+     */
+    public String getDatePattern() {
+      return datePattern;
+    }
+
+    DateTime getStart(long millis) {
+      DateTime date = new DateTime(millis);
+      return this == HOURLY ? date.hourOfDay().roundFloorCopy() : date.withTimeAtStartOfDay();
+    }
+
+    DateTime getEnd(DateTime start) {
+      return this == HOURLY ? start.plusHours(1) : start.plusDays(1).withTimeAtStartOfDay();
+    }
+  }
+
+  /**
+   * A policy starting one file per day, without size limit nor compression.
+   */
+  public static final RotationPolicy DEFAULT = new RotationPolicy(Period.DAILY, 0, false, 0, 0);
+
+  private final Period period;
+
+  private final long maxFileBytes;
+
+  private final boolean compress;
+
+  private final long retentionMillis;
+
+  private final long maxArchiveBytes;
+
+  /**
+   * Creates a new rotation policy.
+   *
+   * @param period how often a new file is started
+   * @param maxFileBytes size after which a file is continued in a new part, or 0 for no limit
+   * @param compress whether finished files are compressed
+   * @param retentionDays number of days compressed files are kept, or 0 to keep them forever
+   * @param maxArchiveBytes total size of the compressed files above which the oldest ones are
+   *        deleted, or 0 for no limit
+   */
+  public RotationPolicy(Period period, long maxFileBytes, boolean compress, int retentionDays,
+      long maxArchiveBytes) {
+    checkArgument(maxFileBytes >= 0, "Maximum file size must be >= 0");
+    checkArgument(retentionDays >= 0, "Retention must be >= 0");
+    checkArgument(maxArchiveBytes >= 0, "Maximum archive size must be >= 0");
+    checkArgument(compress || (retentionDays == 0 && maxArchiveBytes == 0),
+        "Retention limits only apply to compressed files");
+
+    this.period = checkNotNull(period, "No period specified");
+    this.maxFileBytes = maxFileBytes;
+    this.compress = compress;
+    this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+    this.maxArchiveBytes = maxArchiveBytes;
+  }
+
+  public Period getPeriod() {
+    return period;
+  }
+
+  public long getMaxFileBytes() {
+    return maxFileBytes;
+  }
+
+  public boolean isCompress() {
+    return compress;
+  }
+
+  public long getRetentionMillis() {
+    return retentionMillis;
+  }
+
+  public long getMaxArchiveBytes() {
+    return maxArchiveBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "RotationPolicy[period=" + period + ", maxFileBytes=" + maxFileBytes + ", compress="
+        + compress + ", retention=" + retentionMillis + "ms, maxArchiveBytes=" + maxArchiveBytes
+        + "]";
+  }
+}
@@ -0,0 +1,478 @@
+package org.pircbotx.listeners.chatlogger;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * An immutable part of the inverted index of a {@link ChatSearchIndex}, stored in one file and read
+ * through a memory mapping.
+ * <p>
+ * A segment maps each term to the sorted offsets of the messages containing it in the message
+ * store. Its file holds the postings of all terms, followed by the entries of the terms in sorted
+ * order ({@code string term, int count, long postingsOffset, long skipsOffset}) and a footer. Only
+ * one term out of {@value #TERM_INDEX_INTERVAL} is kept in memory; looking a term up reads at most
+ * as many entries from the mapping.
+ * <p>
+ * The postings of a term are stored in blocks of {@value #BLOCK_SIZE} delta-encoded
+ * variable-length longs, each block starting from zero, followed by one {@code long firstPosting,
+ * long blockOffset} skip entry per block. Searches walk the postings backwards and jump to the
+ * block holding the offset they are looking for, so that they only decode the blocks they need.
+ * <p>
+ * Segments are numbered in the order they were written; a merged segment covers the numbers of all
+ * the segments it replaces.
+ *
+ * @author Emmanuel Cron
+ */
+final class SearchSegment {
+  static final String EXTENSION = ".seg";
+
+  private static final int MAGIC = 0x43534732;
+
+  // long termsOffset, int termCount, long endOffset, int magic
+  private static final int FOOTER_BYTES = 24;
+
+  private static final int TERM_INDEX_INTERVAL = 128;
+
+  // int count, long postingsOffset, long skipsOffset
+  private static final int TERM_ENTRY_BYTES = 20;
+
+  private static final int BLOCK_SIZE = 128;
+
+  // long firstPosting, long blockOffset
+  private static final int SKIP_ENTRY_BYTES = 16;
+
+  private final Path file;
+
+  private final int first;
+
+  private final int last;
+
+  private final ByteBuffer buffer;
+
+  private final int termsOffset;
+
+  private final int termCount;
+
+  private final long endOffset;
+
+  private final String[] sampledTerms;
+
+  private final int[] sampledOffsets;
+
+  private SearchSegment(Path file, int first, int last, ByteBuffer buffer) throws IOException {
+    this.file = file;
+    this.first = first;
+    this.last = last;
+    this.buffer = buffer;
+
+    int footer = buffer.limit() - FOOTER_BYTES;
+    if (footer < 0 || buffer.getInt(footer + 20) != MAGIC) {
+      throw new IOException("Not a complete search segment: " + file);
+    }
+    this.termsOffset = (int) buffer.getLong(footer);
+    this.termCount = buffer.getInt(footer + 8);
+    this.endOffset = buffer.getLong(footer + 12);
+
+    // Sample terms to find the others quickly
+    int samples = (termCount + TERM_INDEX_INTERVAL - 1) / TERM_INDEX_INTERVAL;
+    this.sampledTerms = new String[samples];
+    this.sampledOffsets = new int[samples];
+    ByteBuffer terms = buffer.duplicate();
+    terms.position(termsOffset);
+    for (int i = 0; i < termCount; i++) {
+      if (i % TERM_INDEX_INTERVAL == 0) {
+        sampledOffsets[i / TERM_INDEX_INTERVAL] = terms.position();
+        sampledTerms[i / TERM_INDEX_INTERVAL] = BinaryChatLogFormat.readString(terms);
+      } else {
+        skipString(terms);
+      }
+      terms.position(terms.position() + TERM_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Opens the given segment file.
+   *
+   * @throws IOException if the file could not be read or is not a complete segment
+   */
+  static SearchSegment open(Path file, int first, int last) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Search segment is too large: " + file);
+      }
+      return new SearchSegment(file, first, last, channel.map(MapMode.READ_ONLY, 0, size));
+    }
+  }
+
+  /**
+   * Returns the name of the file of a segment covering the given numbers.
+   */
+  static String getFileName(int first, int last) {
+    return String.format("segment-%08d-%08d%s", first, last, EXTENSION);
+  }
+
+  Path getFile() {
+    return file;
+  }
+
+  int getFirst() {
+    return first;
+  }
+
+  int getLast() {
+    return last;
+  }
+
+  /**
+   * Returns the offset in the message store up to which messages are indexed by this segment.
+   */
+  long getEndOffset() {
+    return endOffset;
+  }
+
+  long getSize() {
+    return buffer.limit();
+  }
+
+  /**
+   * Returns a cursor over the offsets of the messages containing the given term.
+   */
+  PostingsCursor getPostings(String term) {
+    int sample = Arrays.binarySearch(sampledTerms, term);
+    if (sample < 0) {
+      // Greatest sampled term lower than the term
+      sample = -sample - 2;
+      if (sample < 0) {
+        return PostingsCursor.EMPTY;
+      }
+    }
+
+    ByteBuffer terms = buffer.duplicate();
+    terms.position(sampledOffsets[sample]);
+    int end = Math.min(termCount, (sample + 1) * TERM_INDEX_INTERVAL);
+    for (int i = sample * TERM_INDEX_INTERVAL; i < end; i++) {
+      int comparison = BinaryChatLogFormat.readString(terms).compareTo(term);
+      int count = terms.getInt();
+      terms.getLong();
+      long skipsOffset = terms.getLong();
+      if (comparison == 0) {
+        return new BlockCursor(count, skipsOffset);
+      } else if (comparison > 0) {
+        break;
+      }
+    }
+    return PostingsCursor.EMPTY;
+  }
+
+  /**
+   * Merges the given segments, oldest first, into a new segment. Postings are streamed from one
+   * file to the other, so that merging does not depend on the size of the segments.
+   */
+  static void merge(List<SearchSegment> segments, Path file) throws IOException {
+    List<TermCursor> cursors = new ArrayList<TermCursor>();
+    for (SearchSegment segment : segments) {
+      TermCursor cursor = segment.new TermCursor();
+      if (cursor.next()) {
+        cursors.add(cursor);
+      }
+    }
+
+    try (Writer writer = new Writer(file)) {
+      while (!cursors.isEmpty()) {
+        String term = cursors.get(0).term;
+        for (TermCursor cursor : cursors) {
+          if (cursor.term.compareTo(term) < 0) {
+            term = cursor.term;
+          }
+        }
+
+        writer.startTerm(term);
+        // Cursors are in segment order, so postings stay sorted
+        for (int i = 0; i < cursors.size(); i++) {
+          TermCursor cursor = cursors.get(i);
+          if (cursor.term.equals(term)) {
+            cursor.copyPostings(writer);
+            if (!cursor.next()) {
+              cursors.remove(i--);
+            }
+          }
+        }
+      }
+      writer.finish(segments.get(segments.size() - 1).getEndOffset());
+    }
+  }
+
+  // internal helpers
+
+  private static void skipString(ByteBuffer buffer) {
+    int length = buffer.getShort() & BinaryChatLogFormat.MAX_STRING_BYTES;
+    buffer.position(buffer.position() + length);
+  }
+
+  private static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  private static void writeVarLong(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  /**
+   * Reads the terms of a segment in order.
+   */
+  private final class TermCursor {
+    private final ByteBuffer terms = buffer.duplicate();
+
+    private int remaining = termCount;
+
+    private String term;
+
+    private int count;
+
+    private long postingsOffset;
+
+    TermCursor() {
+      terms.position(termsOffset);
+    }
+
+    boolean next() {
+      if (remaining == 0) {
+        return false;
+      }
+      remaining--;
+      term = BinaryChatLogFormat.readString(terms);
+      count = terms.getInt();
+      postingsOffset = terms.getLong();
+      terms.getLong();
+      return true;
+    }
+
+    void copyPostings(Writer writer) throws IOException {
+      ByteBuffer postings = buffer.duplicate();
+      postings.position((int) postingsOffset);
+      long value = 0;
+      for (int i = 0; i < count; i++) {
+        if (i % BLOCK_SIZE == 0) {
+          value = 0;
+        }
+        value += readVarLong(postings);
+        writer.addPosting(value);
+      }
+    }
+  }
+
+  /**
+   * Walks the postings of a term backwards, decoding one block at a time.
+   */
+  private final class BlockCursor implements PostingsCursor {
+    private final int count;
+
+    private final int skipsOffset;
+
+    private final long[] block = new long[BLOCK_SIZE];
+
+    // Blocks after this one only hold greater postings
+    private int blockIndex;
+
+    private int loadedBlock = -1;
+
+    // Postings of the loaded block from this index are greater than the last offset asked for
+    private int blockEnd;
+
+    BlockCursor(int count, long skipsOffset) {
+      this.count = count;
+      this.skipsOffset = (int) skipsOffset;
+      this.blockIndex = (count + BLOCK_SIZE - 1) / BLOCK_SIZE - 1;
+    }
+
+    @Override
+    public long advance(long offset) {
+      if (blockIndex >= 0 && getFirstPosting(blockIndex) > offset) {
+        // Last block starting at or before the offset
+        int low = 0;
+        int high = blockIndex - 1;
+        blockIndex = -1;
+        while (low <= high) {
+          int middle = (low + high) >>> 1;
+          if (getFirstPosting(middle) <= offset) {
+            blockIndex = middle;
+            low = middle + 1;
+          } else {
+            high = middle - 1;
+          }
+        }
+      }
+      if (blockIndex < 0) {
+        return NONE;
+      }
+      if (blockIndex != loadedBlock) {
+        load(blockIndex);
+      }
+
+      int found = Arrays.binarySearch(block, 0, blockEnd, offset);
+      // First posting of the block is not greater than the offset
+      int index = found >= 0 ? found : -found - 2;
+      blockEnd = index + 1;
+      return block[index];
+    }
+
+    private long getFirstPosting(int index) {
+      if (index == loadedBlock) {
+        return block[0];
+      }
+      return buffer.getLong(skipsOffset + index * SKIP_ENTRY_BYTES);
+    }
+
+    private void load(int index) {
+      ByteBuffer postings = buffer.duplicate();
+      postings.position((int) buffer.getLong(skipsOffset + index * SKIP_ENTRY_BYTES + 8));
+      int length = Math.min(BLOCK_SIZE, count - index * BLOCK_SIZE);
+      long value = 0;
+      for (int i = 0; i < length; i++) {
+        value += readVarLong(postings);
+        block[i] = value;
+      }
+      loadedBlock = index;
+      blockEnd = length;
+    }
+  }
+
+  /**
+   * Writes a new segment, term by term in sorted order. The segment only appears under its final
+   * name once complete.
+   */
+  static final class Writer implements AutoCloseable {
+    private final Path file;
+
+    private final Path temporaryFile;
+
+    private final Path temporaryTermsFile;
+
+    private final DataOutputStream postings;
+
+    private final DataOutputStream terms;
+
+    private String term;
+
+    private int count;
+
+    private long termPostingsOffset;
+
+    private long lastPosting;
+
+    // Skip entries of the current term, written after its postings
+    private final ByteArrayOutputStream skips = new ByteArrayOutputStream();
+
+    private final DataOutputStream skipsOutput = new DataOutputStream(skips);
+
+    private int termCount;
+
+    private boolean finished;
+
+    Writer(Path file) throws IOException {
+      this.file = file;
+      this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+      this.temporaryTermsFile = file.resolveSibling(file.getFileName() + ".terms.tmp");
+      this.postings = new DataOutputStream(new BufferedOutputStream(
+          Files.newOutputStream(temporaryFile), 64 * 1024));
+      this.terms = new DataOutputStream(new BufferedOutputStream(
+          Files.newOutputStream(temporaryTermsFile), 64 * 1024));
+    }
+
+    void startTerm(String newTerm) throws IOException {
+      endTerm();
+      term = newTerm;
+      count = 0;
+      termPostingsOffset = postings.size();
+      lastPosting = 0;
+      skips.reset();
+    }
+
+    void addPosting(long posting) throws IOException {
+      if (count % BLOCK_SIZE == 0) {
+        skipsOutput.writeLong(posting);
+        skipsOutput.writeLong(postings.size());
+        lastPosting = 0;
+      }
+      writeVarLong(postings, posting - lastPosting);
+      lastPosting = posting;
+      count++;
+    }
+
+    /**
+     * Completes the segment and gives it its final name.
+     *
+     * @param endOffset offset in the message store up to which messages are indexed
+     */
+    void finish(long endOffset) throws IOException {
+      endTerm();
+      terms.close();
+
+      long termsOffset = postings.size();
+      try (InputStream in = Files.newInputStream(temporaryTermsFile)) {
+        ByteStreams.copy(in, postings);
+      }
+      postings.writeLong(termsOffset);
+      postings.writeInt(termCount);
+      postings.writeLong(endOffset);
+      postings.writeInt(MAGIC);
+      postings.close();
+
+      Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!finished) {
+        terms.close();
+        postings.close();
+        Files.deleteIfExists(temporaryFile);
+      }
+      Files.deleteIfExists(temporaryTermsFile);
+    }
+
+    private void endTerm() throws IOException {
+      if (term != null && count > 0) {
+        long skipsOffset = postings.size();
+        skips.writeTo(postings);
+        BinaryChatLogFormat.writeString(terms, term);
+        terms.writeInt(count);
+        terms.writeLong(termPostingsOffset);
+        terms.writeLong(skipsOffset);
+        termCount++;
+      }
+      term = null;
+    }
+  }
+}
@@ -0,0 +1,308 @@
+package org.pircbotx.listeners.chatlogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * A sink writing lines to plain text log files, one file per channel and per day by default. See
+ * {@link RotationPolicy} to start files more often, limit their size or compress them.
+ * <p>
+ * Each channel has its own writer, opened in append mode when the channel logs its first line of
+ * the period. To bound the number of open files when the bot is in many channels, only the most
+ * recently used writers are kept open; the others are closed and reopened when their channel logs
+ * again. Only the channels that wrote lines since the last flush are flushed.
+ * <p>
+ * Lines are rendered directly into the writer of their file. The timestamp written before each line
+ * is only formatted again when the second changes, and the end of the period of each file is
+ * computed once when the file is opened, so that writing a line allocates nothing in most cases.
+ *
+ * @author Emmanuel Cron
+ */
+public class TextChatLogSink implements ChatLogSink {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TextChatLogSink.class);
+
+  /**
+   * Default maximum number of log files kept open at the same time.
+   */
+  public static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+  private final Path logsPath;
+
+  private final String charset;
+
+  private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+
+  private RotationPolicy rotationPolicy = RotationPolicy.DEFAULT;
+
+  // Null unless files are compressed
+  private LogArchiver archiver;
+
+  // Whether files left by a previous run have been looked for
+  private boolean swept;
+
+  private DateTimeFormatter timestampFormat;
+
+  // Whether the timestamp only changes every second, so that it can be cached
+  private boolean timestampCacheable;
+
+  private long cachedTimestampSecond = Long.MIN_VALUE;
+
+  private String cachedTimestamp;
+
+  // Open files by lowercase channel name, least recently used first
+  private final Map<String, LogFile> logFiles =
+      new LinkedHashMap<String, LogFile>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, LogFile> eldest) {
+      if (size() > maxOpenFiles) {
+        eldest.getValue().close();
+        return true;
+      }
+      return false;
+    }
+  };
+
+  // Files written since the last flush
+  private final List<LogFile> unflushedFiles = new ArrayList<LogFile>();
+
+  /**
+   * Creates a new text sink.
+   *
+   * @param logsPath the folder where to store the chat log files
+   * @param charset the charset to use when writing in the log files
+   */
+  public TextChatLogSink(Path logsPath, String charset) {
+    this.logsPath = logsPath;
+    this.charset = charset;
+  }
+
+  /**
+   * Sets the maximum number of log files kept open at the same time. Files of the channels that
+   * logged least recently are closed first. Must be called before lines are written.
+   *
+   * @param maxOpenFiles the maximum number of open files, at least 1
+   */
+  public void setMaxOpenFiles(int maxOpenFiles) {
+    checkArgument(maxOpenFiles > 0, "Maximum number of open files must be > 0");
+    this.maxOpenFiles = maxOpenFiles;
+  }
+
+  /**
+   * Sets when new log files are started and what becomes of finished files. Must be called before
+   * lines are written.
+   */
+  public void setRotationPolicy(RotationPolicy rotationPolicy) {
+    this.rotationPolicy = checkNotNull(rotationPolicy, "No rotation policy specified");
+    this.archiver = rotationPolicy.isCompress() ? new LogArchiver(logsPath, rotationPolicy) : null;
+  }
+
+  /**
+   * Sets the timestamp format written before each line. Must be called before lines are written.
+   *
+   * @param pattern a {@link DateTimeFormat} pattern, or {@code null} to write no timestamp
+   * @throws IllegalArgumentException if the pattern is invalid
+   */
+  public void setTimestampFormat(String pattern) {
+    if (Strings.isNullOrEmpty(pattern)) {
+      timestampFormat = null;
+    } else {
+      timestampFormat = DateTimeFormat.forPattern(pattern);
+      // Fractions of seconds change on each line
+      timestampCacheable = pattern.indexOf('S') < 0;
+    }
+    cachedTimestampSecond = Long.MIN_VALUE;
+  }
+
+  /**
+   * Returns the number of log files currently open.
+   */
+  public int getOpenFileCount() {
+    return logFiles.size();
+  }
+
+  @Override
+  public void write(ChatLogLine line) throws IOException {
+    // Returns the same string, without allocating, when the name is already lowercase
+    String channel = line.getChannel().toLowerCase();
+
+    LogFile logFile = logFiles.get(channel);
+    boolean rotated = false;
+    // Create new file when period is over, when the file is full or if none is open
+    if (logFile != null && (line.getTimestamp() >= logFile.periodEndMillis || logFile.isFull())) {
+      // First close old writer
+      logFile.close();
+      logFiles.remove(channel);
+      logFile = null;
+      rotated = true;
+    }
+    if (logFile == null) {
+      logFile = open(channel, line.getTimestamp());
+      logFiles.put(channel, logFile);
+    }
+
+    if (archiver != null && (rotated || !swept)) {
+      archiver.sweep();
+      swept = true;
+    }
+
+    logFile.append(getTimestamp(line.getTimestamp()), line);
+    if (!logFile.unflushed) {
+      logFile.unflushed = true;
+      unflushedFiles.add(logFile);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    IOException failure = null;
+    for (LogFile logFile : unflushedFiles) {
+      logFile.unflushed = false;
+      try {
+        logFile.flush();
+      } catch (IOException ioe) {
+        failure = ioe;
+      }
+    }
+    unflushedFiles.clear();
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (LogFile logFile : logFiles.values()) {
+      logFile.close();
+    }
+    logFiles.clear();
+    unflushedFiles.clear();
+  }
+
+  // internal helpers
+
+  private LogFile open(String channel, long timestamp) throws IOException {
+    RotationPolicy.Period period = rotationPolicy.getPeriod();
+    DateTime start = period.getStart(timestamp);
+    String baseName =
+        channel + "-" + DateTimeFormat.forPattern(period.getDatePattern()).print(start);
+
+    int part = 0;
+    long maxFileBytes = rotationPolicy.getMaxFileBytes();
+    if (maxFileBytes > 0) {
+      // Continue the last part, unless it is full or already compressed
+      while (LogArchiver.exists(logsPath, baseName, part + 1)) {
+        part++;
+      }
+      Path lastPart = logsPath.resolve(LogArchiver.getFileName(baseName, part));
+      if (Files.exists(LogArchiver.getArchive(lastPart))
+          || (Files.exists(lastPart) && Files.size(lastPart) >= maxFileBytes)) {
+        part++;
+      }
+    }
+
+    return new LogFile(logsPath.resolve(LogArchiver.getFileName(baseName, part)).toFile(),
+        period.getEnd(start).getMillis(), maxFileBytes);
+  }
+
+  private String getTimestamp(long timestamp) {
+    if (timestampFormat == null) {
+      return null;
+    }
+
+    long second = Math.floorDiv(timestamp, 1000L);
+    if (!timestampCacheable || second != cachedTimestampSecond) {
+      cachedTimestamp = "[" + timestampFormat.print(timestamp) + "] ";
+      cachedTimestampSecond = second;
+    }
+    return cachedTimestamp;
+  }
+
+  /**
+   * A part of the log file of a channel for a given period.
+   */
+  private final class LogFile {
+    // Lines from this time on go to the file of the next period
+    private final long periodEndMillis;
+
+    private final long maxFileBytes;
+
+    private final long initialBytes;
+
+    private final CountingOutputStream outputStream;
+
+    private final BufferedWriter writer;
+
+    // Whether the file already has lines, known when opening it to avoid checking it on each line
+    private boolean hasLines;
+
+    private boolean unflushed;
+
+    LogFile(File file, long periodEndMillis, long maxFileBytes) throws IOException {
+      this.outputStream = new CountingOutputStream(new FileOutputStream(file, true));
+      Writer streamWriter = new OutputStreamWriter(outputStream, charset);
+      this.writer = new BufferedWriter(streamWriter);
+      this.initialBytes = file.length();
+      this.hasLines = initialBytes > 0L;
+      this.periodEndMillis = periodEndMillis;
+      this.maxFileBytes = maxFileBytes;
+    }
+
+    /**
+     * Returns whether the file has reached its maximum size. Lines still buffered by the writer are
+     * not counted.
+     */
+    boolean isFull() {
+      return maxFileBytes > 0 && initialBytes + outputStream.getCount() >= maxFileBytes;
+    }
+
+    void append(String timestamp, ChatLogLine line) throws IOException {
+      if (hasLines) {
+        writer.write('\n');
+      }
+      if (timestamp != null) {
+        writer.write(timestamp);
+      }
+      line.appendTo(writer);
+      hasLines = true;
+    }
+
+    void flush() throws IOException {
+      writer.flush();
+    }
+
+    void close() {
+      // Lines not flushed yet are written by close()
+      unflushedFiles.remove(this);
+      try {
+        writer.close();
+      } catch (IOException ioe) {
+        LOGGER.warn("Could not close writer to chat log file", ioe);
+      }
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package org.pircbotx.listeners.facts;
 
+import java.io.Closeable;
 import java.util.List;
 
 /**
@@ -17,4 +18,16 @@ public interface FactsReader {
    * @return a list of lists as described above
    */
   List<List<String>> readFacts();
+
+  /**
+   * Asks to be notified when the facts have changed and should be read again. Readers that can't
+   * detect changes don't need to implement this method.
+   *
+   * @param onChange called, possibly from another thread, when the facts have changed
+   * @return a handle to close to stop being notified, or {@code null} if changes will not be
+   *         notified
+   */
+  default Closeable watch(Runnable onChange) {
+    return null;
+  }
 }
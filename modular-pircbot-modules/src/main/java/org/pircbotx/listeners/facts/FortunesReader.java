@@ -3,6 +3,7 @@ package org.pircbotx.listeners.facts;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -10,6 +11,7 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.pircbotx.util.ResourceWatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +20,8 @@ import com.google.common.base.Strings;
 /**
  * Reads <a href="http://en.wikipedia.org/wiki/Fortune_(Unix)#Fortune_files">fortunes files</a>
  * using the single file version.
+ * <p>
+ * If the file is not packaged in a jar, changes are detected (see {@link #watch(Runnable)}).
  * 
  * @author Emmanuel Cron
  */
@@ -37,6 +41,8 @@ public class FortunesReader implements FactsReader {
   public FortunesReader(String fortunesPath, String encoding) {
     checkArgument(!Strings.isNullOrEmpty(fortunesPath), "No path to fortunes file provided");
     checkArgument(!Strings.isNullOrEmpty(encoding), "Fortunes file encoding must be specified");
+    checkArgument(ClassLoader.getSystemResource(fortunesPath) != null,
+        "Fortunes file not found: %s", fortunesPath);
 
     this.fortunesPath = fortunesPath;
     this.encoding = encoding;
@@ -78,4 +84,9 @@ public class FortunesReader implements FactsReader {
 
     return fortunes;
   }
+
+  @Override
+  public Closeable watch(Runnable onChange) {
+    return ResourceWatcher.watch(fortunesPath, onChange);
+  }
 }
@@ -0,0 +1,64 @@
+package org.pircbotx.listeners.seen;
+
+import org.pircbotx.listeners.LastSeenListener.LastSeenEvent;
+
+/**
+ * The last event of a nick, as stored in a {@link LastSeenTable}.
+ *
+ * @author Emmanuel Cron
+ */
+public final class LastSeenEntry {
+  private final String nick;
+
+  private final long timestamp;
+
+  private final LastSeenEvent event;
+
+  private final String channel;
+
+  private final String detail;
+
+  LastSeenEntry(String nick, long timestamp, LastSeenEvent event, String channel, String detail) {
+    this.nick = nick;
+    this.timestamp = timestamp;
+    this.event = event;
+    this.channel = channel;
+    this.detail = detail;
+  }
+
+  /**
+   * Returns the nick, with the case it had when the event happened.
+   */
+  public String getNick() {
+    return nick;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public LastSeenEvent getEvent() {
+    return event;
+  }
+
+  /**
+   * Returns the channel of the event, or {@code null} if it has none.
+   */
+  public String getChannel() {
+    return channel;
+  }
+
+  /**
+   * Returns the detail of the event, such as the message said, possibly truncated, or {@code null}
+   * if it has none.
+   */
+  public String getDetail() {
+    return detail;
+  }
+
+  @Override
+  public String toString() {
+    return "LastSeenEntry[nick=" + nick + ", timestamp=" + timestamp + ", event=" + event
+        + ", channel=" + channel + ", detail=" + detail + "]";
+  }
+}
@@ -0,0 +1,371 @@
+package org.pircbotx.listeners.seen;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.pircbotx.listeners.LastSeenListener.LastSeenEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A table of the last event of each nick, stored in a memory-mapped file so that it holds any
+ * number of nicks without using the heap, and survives restarts without being loaded again.
+ * <p>
+ * The file is an open-addressing hash table with linear probing. Each slot is a fixed-size record:
+ *
+ * <pre>
+ * long   hash of the lowercase nick, 0 if the slot is free
+ * long   timestamp of the event
+ * byte   ordinal of the LastSeenEvent
+ * string nick, at most 31 bytes
+ * string channel, at most 31 bytes, empty if the event has none
+ * string detail of the event, e.g. the message, at most 46 bytes
+ * </pre>
+ *
+ * Strings are stored as an unsigned byte length followed by as many UTF-8 bytes, and are truncated
+ * to fit. Looking a nick up reads a few neighbouring slots at most, as the table is doubled once it
+ * is {@value #MAX_LOAD_PERCENT}% full; doubling it rewrites the file.
+ * <p>
+ * Writes go to the mapping and are saved by the system even if the bot stops abruptly; they are
+ * forced to the disk when the table is closed.
+ *
+ * @author Emmanuel Cron
+ */
+public final class LastSeenTable implements Closeable {
+  /**
+   * Default number of slots of a new table.
+   */
+  public static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LastSeenTable.class);
+
+  private static final LastSeenEvent[] EVENTS = LastSeenEvent.values();
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final int MAGIC = 0x4C535431;
+
+  private static final int RECORD_BYTES = 128;
+
+  // int magic, int record bytes, int capacity, int size, padded to a record
+  private static final int HEADER_BYTES = RECORD_BYTES;
+
+  private static final int CAPACITY_OFFSET = 8;
+
+  private static final int SIZE_OFFSET = 12;
+
+  private static final int TIMESTAMP = 8;
+
+  private static final int EVENT = 16;
+
+  private static final int NICK = 17;
+
+  private static final int CHANNEL = 49;
+
+  private static final int DETAIL = 81;
+
+  private static final int MAX_NICK_BYTES = CHANNEL - NICK - 1;
+
+  private static final int MAX_CHANNEL_BYTES = DETAIL - CHANNEL - 1;
+
+  private static final int MAX_DETAIL_BYTES = RECORD_BYTES - DETAIL - 1;
+
+  private static final int MAX_LOAD_PERCENT = 70;
+
+  // Keeps the file mappable at once
+  private static final int MAX_CAPACITY = 1 << 23;
+
+  private final Path file;
+
+  private int initialCapacity = DEFAULT_INITIAL_CAPACITY;
+
+  private MappedByteBuffer table;
+
+  private int capacity;
+
+  private int size;
+
+  /**
+   * Creates a new table. The file is only opened when the table is first used.
+   *
+   * @param file the file storing the table; it is created if it does not exist
+   */
+  public LastSeenTable(Path file) {
+    this.file = checkNotNull(file, "No table file specified");
+  }
+
+  /**
+   * Sets the number of slots of the table when its file is created, rounded up to a power of two.
+   * Defaults to {@value #DEFAULT_INITIAL_CAPACITY}.
+   */
+  public synchronized void setInitialCapacity(int initialCapacity) {
+    checkArgument(initialCapacity > 1 && initialCapacity <= MAX_CAPACITY,
+        "Initial capacity must be > 1 and <= %s", MAX_CAPACITY);
+    this.initialCapacity = Integer.highestOneBit(initialCapacity - 1) << 1;
+  }
+
+  /**
+   * Maps the file of the table, creating it if needed. Does nothing if the table is already open.
+   *
+   * @throws IOException if the file could not be mapped or is not a table
+   */
+  public synchronized void open() throws IOException {
+    if (table != null) {
+      return;
+    }
+
+    // Left by a table being doubled
+    Files.deleteIfExists(getTemporaryFile());
+
+    if (!Files.exists(file)) {
+      table = create(file, initialCapacity);
+      capacity = initialCapacity;
+      size = 0;
+      return;
+    }
+
+    long length = Files.size(file);
+    if (length < HEADER_BYTES || length > HEADER_BYTES + (long) MAX_CAPACITY * RECORD_BYTES) {
+      throw new IOException("Not a last seen table: " + file);
+    }
+    MappedByteBuffer mapped = map(file, length);
+    int mappedCapacity = mapped.getInt(CAPACITY_OFFSET);
+    if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != RECORD_BYTES
+        || Integer.bitCount(mappedCapacity) != 1
+        || length != HEADER_BYTES + (long) mappedCapacity * RECORD_BYTES) {
+      throw new IOException("Not a last seen table: " + file);
+    }
+    table = mapped;
+    capacity = mappedCapacity;
+    size = mapped.getInt(SIZE_OFFSET);
+  }
+
+  /**
+   * Records the last event of a nick, replacing the previous one.
+   *
+   * @param nick the nick
+   * @param timestamp time of the event, in milliseconds since the epoch
+   * @param event the event
+   * @param channel the channel of the event, or {@code null} if it has none
+   * @param detail the detail of the event, such as the message said, or {@code null}
+   * @throws IOException if the table could not be opened or doubled
+   */
+  public synchronized void record(String nick, long timestamp, LastSeenEvent event,
+      String channel, String detail) throws IOException {
+    checkNotNull(nick, "No nick specified");
+    checkNotNull(event, "No event specified");
+    open();
+
+    byte[] key = getKey(nick);
+    long hash = hash(key);
+    int position = find(table, capacity, hash, key);
+    if (table.getLong(position) == 0) {
+      if ((size + 1) * 100L > capacity * (long) MAX_LOAD_PERCENT) {
+        grow();
+        position = find(table, capacity, hash, key);
+      }
+      size++;
+      table.putInt(SIZE_OFFSET, size);
+    }
+
+    table.putLong(position + TIMESTAMP, timestamp);
+    table.put(position + EVENT, (byte) event.ordinal());
+    putString(table, position + NICK, nick, MAX_NICK_BYTES);
+    putString(table, position + CHANNEL, channel, MAX_CHANNEL_BYTES);
+    putString(table, position + DETAIL, detail, MAX_DETAIL_BYTES);
+    // Hash last, so that the slot is only used once complete
+    table.putLong(position, hash);
+  }
+
+  /**
+   * Returns the last event of the given nick, regardless of its case, or {@code null} if it was
+   * never seen.
+   *
+   * @throws IOException if the table could not be opened
+   */
+  public synchronized LastSeenEntry get(String nick) throws IOException {
+    checkNotNull(nick, "No nick specified");
+    open();
+
+    byte[] key = getKey(nick);
+    int position = find(table, capacity, hash(key), key);
+    if (table.getLong(position) == 0) {
+      return null;
+    }
+
+    String channel = getString(table, position + CHANNEL);
+    String detail = getString(table, position + DETAIL);
+    return new LastSeenEntry(getString(table, position + NICK),
+        table.getLong(position + TIMESTAMP), EVENTS[table.get(position + EVENT)],
+        channel.isEmpty() ? null : channel, detail.isEmpty() ? null : detail);
+  }
+
+  /**
+   * Returns the number of nicks in the table, {@code 0} if it is not open.
+   */
+  public synchronized int size() {
+    return table == null ? 0 : size;
+  }
+
+  /**
+   * Returns the number of slots of the table, {@code 0} if it is not open.
+   */
+  public synchronized int getCapacity() {
+    return table == null ? 0 : capacity;
+  }
+
+  /**
+   * Forces the table to the disk and releases it. It is mapped again when next used.
+   */
+  @Override
+  public synchronized void close() {
+    if (table != null) {
+      table.force();
+      table = null;
+    }
+  }
+
+  // internal helpers
+
+  /**
+   * Returns the position of the slot of the given key, or of the free slot where it would go.
+   */
+  private static int find(ByteBuffer table, int capacity, long hash, byte[] key) {
+    int mask = capacity - 1;
+    for (int slot = (int) (hash ^ (hash >>> 32)) & mask;; slot = (slot + 1) & mask) {
+      int position = HEADER_BYTES + slot * RECORD_BYTES;
+      long slotHash = table.getLong(position);
+      if (slotHash == 0 || (slotHash == hash && hasKey(table, position, key))) {
+        return position;
+      }
+    }
+  }
+
+  private static boolean hasKey(ByteBuffer table, int position, byte[] key) {
+    return Arrays.equals(getKey(getString(table, position + NICK)), key);
+  }
+
+  /**
+   * Returns the lowercase nick as stored, so that truncated nicks are found again.
+   */
+  private static byte[] getKey(String nick) {
+    return truncate(nick.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8),
+        MAX_NICK_BYTES);
+  }
+
+  private static long hash(byte[] key) {
+    long hash = HASH_FUNCTION.hashBytes(key).asLong();
+    // 0 marks free slots
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * Doubles the table in a new file, which then replaces the current one.
+   */
+  private void grow() throws IOException {
+    if (capacity >= MAX_CAPACITY) {
+      if (size + 1 >= capacity) {
+        throw new IOException("Last seen table is full: " + file);
+      }
+      // Only gets slower from now on
+      return;
+    }
+
+    int newCapacity = capacity * 2;
+    LOGGER.info("Doubling last seen table {} to {} slots", file, newCapacity);
+    Path temporaryFile = getTemporaryFile();
+    MappedByteBuffer newTable = create(temporaryFile, newCapacity);
+    for (int slot = 0; slot < capacity; slot++) {
+      int position = HEADER_BYTES + slot * RECORD_BYTES;
+      long hash = table.getLong(position);
+      if (hash != 0) {
+        ByteBuffer record = table.duplicate();
+        record.limit(position + RECORD_BYTES).position(position);
+        byte[] key = getKey(getString(table, position + NICK));
+        ByteBuffer target = newTable.duplicate();
+        target.position(find(newTable, newCapacity, hash, key));
+        target.put(record);
+      }
+    }
+    newTable.putInt(SIZE_OFFSET, size);
+    newTable.force();
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+    table = newTable;
+    capacity = newCapacity;
+  }
+
+  private Path getTemporaryFile() {
+    return file.resolveSibling(file.getFileName() + ".tmp");
+  }
+
+  private static MappedByteBuffer create(Path file, int capacity) throws IOException {
+    long length = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      // Sparse on most systems, free slots are zeros
+      raf.setLength(length);
+    }
+    MappedByteBuffer mapped = map(file, length);
+    mapped.putInt(0, MAGIC);
+    mapped.putInt(4, RECORD_BYTES);
+    mapped.putInt(CAPACITY_OFFSET, capacity);
+    mapped.putInt(SIZE_OFFSET, 0);
+    return mapped;
+  }
+
+  private static MappedByteBuffer map(Path file, long length) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      // Mapping stays valid once the file is closed
+      return raf.getChannel().map(MapMode.READ_WRITE, 0, length);
+    }
+  }
+
+  private static void putString(ByteBuffer table, int position, String string, int maxBytes) {
+    byte[] bytes = string == null ? new byte[0]
+        : truncate(string.getBytes(StandardCharsets.UTF_8), maxBytes);
+    table.put(position, (byte) bytes.length);
+    ByteBuffer target = table.duplicate();
+    target.position(position + 1);
+    target.put(bytes);
+  }
+
+  private static String getString(ByteBuffer table, int position) {
+    byte[] bytes = new byte[table.get(position) & 0xFF];
+    ByteBuffer source = table.duplicate();
+    source.position(position + 1);
+    source.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Truncates UTF-8 bytes without cutting a character in two.
+   */
+  private static byte[] truncate(byte[] bytes, int maxBytes) {
+    if (bytes.length <= maxBytes) {
+      return bytes;
+    }
+    int length = maxBytes;
+    // Continuation bytes are 10xxxxxx
+    while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+      length--;
+    }
+    return Arrays.copyOf(bytes, length);
+  }
+}
@@ -0,0 +1,204 @@
+package org.pircbotx.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+
+/**
+ * Watches resources of the classpath and calls back the modules using them when they change, so
+ * that word lists, actions or facts can be edited while the bot is running.
+ * <p>
+ * Only resources that are plain files can be watched; resources packaged in a jar never change.
+ * All resources are watched by a single background thread that also runs the callbacks: modules
+ * should rebuild their data there and then replace the old data at once, so that the bot never
+ * waits for a reload.
+ * <p>
+ * Each call to {@link #watch(String, Runnable)} returns a {@link Watch} that modules must close
+ * when they stop, e.g. when they are removed from the bot, so that they are not called back twice
+ * if they are added again.
+ *
+ * @author Emmanuel Cron
+ */
+public final class ResourceWatcher {
+  /**
+   * A callback registered on a resource. Closing it stops calling the callback back.
+   *
+   * @author Emmanuel Cron
+   */
+  public static final class Watch implements Closeable {
+    private final Path file;
+
+    private final Runnable onChange;
+
+    private Watch(Path file, Runnable onChange) {
+      this.file = file;
+      this.onChange = onChange;
+    }
+
+    @Override
+    public void close() {
+      unwatch(this);
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResourceWatcher.class);
+
+  // Editors often save a file in several writes, wait until they are done
+  private static final long SETTLE_MILLIS = 200;
+
+  private static final ListMultimap<Path, Watch> CALLBACKS = ArrayListMultimap.create();
+
+  private static final Set<Path> WATCHED_DIRECTORIES = new HashSet<Path>();
+
+  private static WatchService watchService;
+
+  private ResourceWatcher() {
+    // Only static methods
+  }
+
+  /**
+   * Calls the given callback each time the given resource changes.
+   *
+   * @param resourcePath path from the root of the classpath to the resource
+   * @param onChange called, from the thread of the watcher, when the resource has changed
+   * @return the watch to close to stop calling back, or {@code null} if the resource can't be
+   *         watched because it is not a file
+   */
+  public static synchronized Watch watch(String resourcePath, Runnable onChange) {
+    checkArgument(!Strings.isNullOrEmpty(resourcePath), "No resource path given");
+    checkNotNull(onChange, "No callback given");
+
+    Path file = toFile(ClassLoader.getSystemResource(resourcePath));
+    if (file == null) {
+      LOGGER.info("Resource {} is not a file, changes will not be detected", resourcePath);
+      return null;
+    }
+
+    try {
+      if (watchService == null) {
+        watchService = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(() -> run(watchService), "resource-watcher");
+        thread.setDaemon(true);
+        thread.start();
+      }
+
+      Path directory = file.getParent();
+      if (!WATCHED_DIRECTORIES.contains(directory)) {
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        WATCHED_DIRECTORIES.add(directory);
+      }
+    } catch (IOException ioe) {
+      LOGGER.warn("Could not watch resource " + resourcePath + ", changes will not be detected",
+          ioe);
+      return null;
+    }
+
+    Watch watch = new Watch(file, onChange);
+    CALLBACKS.put(file, watch);
+    LOGGER.info("Watching {} for changes", file);
+    return watch;
+  }
+
+  // internal helpers
+
+  private static Path toFile(URL url) {
+    if (url == null || !"file".equals(url.getProtocol())) {
+      return null;
+    }
+    try {
+      return Paths.get(url.toURI()).toAbsolutePath();
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static void run(WatchService service) {
+    while (true) {
+      Set<Path> changedFiles = new LinkedHashSet<Path>();
+      try {
+        collectChanges(service.take(), changedFiles);
+
+        // Gather the other events caused by the same save
+        WatchKey key;
+        while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+          collectChanges(key, changedFiles);
+        }
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        LOGGER.info("Resource watcher stopped, changes will not be detected anymore");
+        return;
+      }
+
+      for (Path file : changedFiles) {
+        for (Watch watch : getWatches(file)) {
+          LOGGER.info("{} changed, reloading", file);
+          try {
+            watch.onChange.run();
+          } catch (RuntimeException re) {
+            // Keep watching other resources
+            LOGGER.error("Could not reload " + file, re);
+          }
+        }
+      }
+    }
+  }
+
+  private static void collectChanges(WatchKey key, Set<Path> changedFiles) {
+    Path directory = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        // Events were lost, assume every file of the directory changed
+        changedFiles.addAll(getWatchedFiles(directory));
+      } else {
+        changedFiles.add(directory.resolve((Path) event.context()));
+      }
+    }
+    key.reset();
+  }
+
+  private static synchronized void unwatch(Watch watch) {
+    if (CALLBACKS.remove(watch.file, watch)) {
+      LOGGER.info("Stopped watching {} for a module", watch.file);
+    }
+  }
+
+  private static synchronized List<Watch> getWatches(Path file) {
+    return ImmutableList.copyOf(CALLBACKS.get(file));
+  }
+
+  private static synchronized List<Path> getWatchedFiles(Path directory) {
+    ImmutableList.Builder<Path> files = ImmutableList.builder();
+    for (Path file : CALLBACKS.keySet()) {
+      if (directory.equals(file.getParent())) {
+        files.add(file);
+      }
+    }
+    return files.build();
+  }
+}
@@ -0,0 +1,125 @@
+package org.jibble.pircbot.listeners.chatlogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent;
+import org.pircbotx.listeners.chatlogger.AsyncChatLogWriter;
+import org.pircbotx.listeners.chatlogger.AsyncLoggingPolicy;
+import org.pircbotx.listeners.chatlogger.AsyncLoggingPolicy.OverflowPolicy;
+import org.pircbotx.listeners.chatlogger.ChatLogLine;
+import org.pircbotx.listeners.chatlogger.ChatLogSink;
+import org.pircbotx.listeners.chatlogger.ChatLogTemplate;
+
+public class AsyncChatLogWriterTest {
+  private static final ChatLogTemplate TEXT = ChatLogTemplate.compile("%s");
+
+  @Test
+  public void writeAllLinesInOrder() throws InterruptedException {
+    MemorySink sink = new MemorySink();
+    // Small buffer so that producers have to wait for the writer
+    AsyncChatLogWriter writer = new AsyncChatLogWriter(sink,
+        new AsyncLoggingPolicy(16, 1, TimeUnit.MILLISECONDS, OverflowPolicy.BLOCK));
+
+    List<Thread> producers = new ArrayList<Thread>();
+    for (int p = 0; p < 4; p++) {
+      String channel = "#channel" + p;
+      producers.add(new Thread(() -> {
+        for (int i = 0; i < 1000; i++) {
+          writer.submit(
+              new ChatLogLine(i, channel, ChatLoggerEvent.MESSAGE, TEXT, String.valueOf(i)));
+        }
+      }));
+    }
+    for (Thread producer : producers) {
+      producer.start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    writer.stop();
+
+    assertEquals(4000, sink.lines.size());
+    assertEquals(4000, writer.getLineCount());
+    assertEquals(0, writer.getDroppedCount());
+    assertEquals(sink.flushes, writer.getBatchCount());
+    assertEquals(true, sink.closed);
+
+    // Lines of each producer are written in the order they were submitted
+    int[] next = new int[4];
+    for (ChatLogLine line : sink.lines) {
+      int p = line.getChannel().charAt(line.getChannel().length() - 1) - '0';
+      assertEquals(next[p]++, line.getTimestamp());
+    }
+  }
+
+  @Test
+  public void restartOnceClosed() throws InterruptedException {
+    MemorySink sink = new MemorySink();
+    sink.closeGate = new CountDownLatch(1);
+    AsyncChatLogWriter writer = new AsyncChatLogWriter(sink,
+        new AsyncLoggingPolicy(16, 1, TimeUnit.MILLISECONDS, OverflowPolicy.BLOCK));
+
+    writer.submit(new ChatLogLine(0, "#channel", ChatLoggerEvent.MESSAGE, TEXT, "first"));
+    // Times out while the sink is being closed
+    writer.stop();
+    writer.submit(new ChatLogLine(1, "#channel", ChatLoggerEvent.MESSAGE, TEXT, "second"));
+    assertEquals(1, sink.lines.size());
+
+    sink.closeGate.countDown();
+    writer.stop();
+    assertEquals(2, sink.lines.size());
+    assertEquals(2, sink.closeCount);
+    assertFalse(sink.writtenWhileClosing);
+  }
+
+  // internal helpers
+
+  private static class MemorySink implements ChatLogSink {
+    private final List<ChatLogLine> lines = new ArrayList<ChatLogLine>();
+
+    private int flushes;
+
+    private boolean closed;
+
+    private volatile CountDownLatch closeGate;
+
+    private volatile boolean closing;
+
+    private volatile boolean writtenWhileClosing;
+
+    private volatile int closeCount;
+
+    @Override
+    public void write(ChatLogLine line) {
+      writtenWhileClosing |= closing;
+      lines.add(line);
+    }
+
+    @Override
+    public void flush() {
+      flushes++;
+    }
+
+    @Override
+    public void close() {
+      closing = true;
+      try {
+        if (closeGate != null) {
+          closeGate.await();
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      closed = true;
+      closeCount++;
+      closing = false;
+    }
+  }
+}
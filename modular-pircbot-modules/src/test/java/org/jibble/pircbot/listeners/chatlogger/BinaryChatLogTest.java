@@ -0,0 +1,70 @@
+package org.jibble.pircbot.listeners.chatlogger;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent;
+import org.pircbotx.listeners.chatlogger.BinaryChatLogConverter;
+import org.pircbotx.listeners.chatlogger.BinaryChatLogReader;
+import org.pircbotx.listeners.chatlogger.BinaryChatLogSink;
+import org.pircbotx.listeners.chatlogger.ChatLogLine;
+import org.pircbotx.listeners.chatlogger.TextChatLogSink;
+
+public class BinaryChatLogTest {
+  private static final long NOON = new DateTime(2014, 1, 31, 12, 0).getMillis();
+
+  @Test
+  public void readPeriod() throws IOException {
+    Path logsPath = Files.createTempDirectory("binarylogs");
+    writeMessages(logsPath, 0, 10000);
+
+    List<ChatLogLine> lines = new ArrayList<ChatLogLine>();
+    new BinaryChatLogReader(logsPath).read("#One", NOON + 2000 * 1000, NOON + 2009 * 1000,
+        lines::add);
+
+    assertEquals(5, lines.size());
+    assertEquals("<@nick1> message 2000", lines.get(0).getText());
+    assertEquals("#one", lines.get(0).getChannel());
+    assertEquals(NOON + 2008 * 1000, lines.get(4).getTimestamp());
+  }
+
+  @Test
+  public void recoverAndConvert() throws IOException {
+    Path logsPath = Files.createTempDirectory("binarylogs");
+    writeMessages(logsPath, 0, 2);
+    // Bot stopped while writing a record
+    Files.write(logsPath.resolve("chatlog-2014_01_31.bin"), new byte[] {0, 0, 0, 42, 1},
+        StandardOpenOption.APPEND);
+    writeMessages(logsPath, 2, 4);
+
+    Path textLogsPath = Files.createTempDirectory("textlogs");
+    BinaryChatLogConverter.convert(logsPath, NOON, NOON + 10000,
+        new TextChatLogSink(textLogsPath, "UTF-8"));
+
+    assertEquals("<@nick0> message 0\n<@nick1> message 2",
+        new String(Files.readAllBytes(textLogsPath.resolve("#one-2014_01_31.log")),
+            StandardCharsets.UTF_8));
+  }
+
+  // internal helpers
+
+  private static void writeMessages(Path logsPath, int from, int to) throws IOException {
+    BinaryChatLogSink sink = new BinaryChatLogSink(logsPath);
+    for (int i = from; i < to; i++) {
+      sink.write(new ChatLogLine(NOON + i * 1000L, i % 2 == 0 ? "#One" : "#two",
+          ChatLoggerEvent.MESSAGE, ChatLoggerEvent.MESSAGE.getDefaultTemplate(), "@",
+          "nick" + (i % 3 == 0 ? 0 : 1), "message " + i));
+    }
+    sink.flush();
+    sink.close();
+  }
+}
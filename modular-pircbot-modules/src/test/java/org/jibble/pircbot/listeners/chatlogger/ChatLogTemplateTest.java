@@ -0,0 +1,32 @@
+package org.jibble.pircbot.listeners.chatlogger;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.pircbotx.listeners.chatlogger.ChatLogTemplate;
+
+public class ChatLogTemplateTest {
+  @Test
+  public void render() {
+    ChatLogTemplate template = ChatLogTemplate.compile("<%s%s> %s");
+    assertEquals(3, template.getReplacementCount());
+    assertEquals("<@nick> hello", template.render(new String[] {"@", "nick", "hello"}));
+  }
+
+  @Test
+  public void renderPercents() {
+    ChatLogTemplate template = ChatLogTemplate.compile("%s is 100%%");
+    assertEquals(1, template.getReplacementCount());
+    assertEquals("it is 100%", template.render(new String[] {"it", "ignored"}));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectPaddedReplacements() {
+    ChatLogTemplate.compile("%-10s %s");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectTrailingPercent() {
+    ChatLogTemplate.compile("%s is 100%");
+  }
+}
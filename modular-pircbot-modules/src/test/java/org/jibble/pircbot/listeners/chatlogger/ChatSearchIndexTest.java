@@ -0,0 +1,165 @@
+package org.jibble.pircbot.listeners.chatlogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.pircbotx.listeners.chatlogger.ChatSearchHit;
+import org.pircbotx.listeners.chatlogger.ChatSearchIndex;
+import org.pircbotx.listeners.chatlogger.ChatSearchQuery;
+
+public class ChatSearchIndexTest {
+  private static final long NOON = new DateTime(2014, 1, 31, 12, 0).getMillis();
+
+  @Test
+  public void searchSegmentsAndBuffer() throws IOException {
+    Path indexPath = Files.createTempDirectory("chatsearch");
+    ChatSearchIndex index = new ChatSearchIndex(indexPath);
+    // Many segments, merged in the background
+    index.setMaxBufferedPostings(500);
+    addMessages(index, 0, 20000);
+
+    List<ChatSearchHit> hits = index.search(query("word7", "nick:nick1"), 3);
+    assertEquals(3, hits.size());
+    assertEquals("word7 message 19997", hits.get(0).getText());
+    assertEquals("nick1", hits.get(0).getNick());
+    assertEquals("#two", hits.get(0).getChannel());
+    assertEquals("word7 message 19987", hits.get(1).getText());
+
+    // One message a minute, 2014-02-02 starts at message 2160
+    hits = index.search(query("message", "#one", "until:2014-02-01"), 2);
+    assertEquals("word8 message 2158", hits.get(0).getText());
+    hits = index.search(query("2000", "date:2014-02-01"), 10);
+    assertEquals(1, hits.size());
+    assertEquals(NOON + 2000 * 60000L, hits.get(0).getTimestamp());
+
+    // Messages of other channels are skipped
+    hits = index.search(query("message").restrictTo(Arrays.asList("#TWO")), 2);
+    assertEquals("word9 message 19999", hits.get(0).getText());
+    assertEquals("word7 message 19997", hits.get(1).getText());
+    assertEquals(0, index.search(query("word7").restrictTo(Arrays.asList("#one")), 2).size());
+    index.close();
+  }
+
+  @Test
+  public void walkPostingBlocksOfLargeSegment() throws IOException, InterruptedException {
+    Path indexPath = Files.createTempDirectory("chatsearch");
+    ChatSearchIndex index = new ChatSearchIndex(indexPath);
+    // Five postings a message, almost all written to a single segment
+    index.setMaxBufferedPostings(49000);
+    addMessages(index, 0, 10000);
+    awaitSegments(index, 1);
+
+    List<ChatSearchHit> hits = index.search(query("word3", "nick:nick0"), 2);
+    assertEquals("word3 message 9993", hits.get(0).getText());
+    assertEquals("word3 message 9963", hits.get(1).getText());
+    hits = index.search(query("word5"), 2000);
+    assertEquals(1000, hits.size());
+    assertEquals("word5 message 5", hits.get(999).getText());
+
+    // Channel postings are walked along the terms
+    hits = index.search(query("message").restrictTo(Arrays.asList("#one", "#two")), 2);
+    assertEquals("word9 message 9999", hits.get(0).getText());
+    assertEquals("word8 message 9998", hits.get(1).getText());
+    hits = index.search(query("nick:nick0", "until:2014-02-01").restrictTo(
+        Arrays.asList("#TWO")), 1);
+    assertEquals("word7 message 2157", hits.get(0).getText());
+    index.close();
+  }
+
+  @Test
+  public void reopen() throws IOException {
+    Path indexPath = Files.createTempDirectory("chatsearch");
+    ChatSearchIndex index = new ChatSearchIndex(indexPath);
+    index.setMaxBufferedPostings(500);
+    addMessages(index, 0, 1000);
+    index.close();
+
+    // Messages of the dropped buffer are indexed again
+    index = new ChatSearchIndex(indexPath);
+    addMessages(index, 1000, 1010);
+    List<ChatSearchHit> hits = index.search(query("word5"), 1000);
+    assertEquals(101, hits.size());
+    assertEquals("word5 message 1005", hits.get(0).getText());
+    assertEquals("word5 message 5", hits.get(100).getText());
+    index.close();
+  }
+
+  @Test
+  public void retryFailedSegment() throws IOException, InterruptedException {
+    Path indexPath = Files.createTempDirectory("chatsearch");
+    ChatSearchIndex index = new ChatSearchIndex(indexPath);
+    index.setMaxBufferedPostings(500);
+    index.open();
+    // Segment 1 cannot be written where a directory is
+    Path blocker = Files.createDirectory(indexPath.resolve("segment-00000001-00000001.seg.tmp"));
+    addMessages(index, 0, 250);
+    for (int i = 0; i < 500 && !index.isSegmentWriteFailing(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(index.isSegmentWriteFailing());
+    assertEquals(1, index.getSegmentCount());
+    assertEquals(25, index.search(query("word5"), 1000).size());
+
+    // Written again with the next segment
+    Files.delete(blocker);
+    addMessages(index, 250, 400);
+    awaitSegments(index, 3);
+    assertEquals(40, index.search(query("word5"), 1000).size());
+    index.close();
+  }
+
+  @Test
+  public void suspendIndexingUntilReopen() throws IOException, InterruptedException {
+    Path indexPath = Files.createTempDirectory("chatsearch");
+    ChatSearchIndex index = new ChatSearchIndex(indexPath);
+    index.setMaxBufferedPostings(500);
+    index.open();
+    Path blocker = Files.createDirectory(indexPath.resolve("segment-00000001-00000001.seg.tmp"));
+    int count = 0;
+    while (!index.isIndexingSuspended() && count < 10000) {
+      addMessages(index, count, count + 100);
+      count += 100;
+      Thread.sleep(10);
+    }
+    assertTrue(index.isIndexingSuspended());
+    // Messages are only stored from now on
+    addMessages(index, count, count + 100);
+    count += 100;
+    assertTrue(index.search(query("word5"), 1000).size() < count / 10);
+    index.close();
+
+    // Indexed again from the last written segment
+    Files.delete(blocker);
+    index = new ChatSearchIndex(indexPath);
+    assertEquals(count / 10, index.search(query("word5"), 1000).size());
+    index.close();
+  }
+
+  // internal helpers
+
+  private static void awaitSegments(ChatSearchIndex index, int count) throws InterruptedException {
+    for (int i = 0; i < 500 && index.getSegmentCount() != count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, index.getSegmentCount());
+  }
+
+  private static ChatSearchQuery query(String... arguments) {
+    return ChatSearchQuery.parse(Arrays.asList(arguments));
+  }
+
+  private static void addMessages(ChatSearchIndex index, int from, int to) throws IOException {
+    for (int i = from; i < to; i++) {
+      index.add(NOON + i * 60000L, i % 2 == 0 ? "#One" : "#two", "nick" + (i % 3 == 0 ? 0 : 1),
+          "word" + (i % 10) + " message " + i);
+    }
+  }
+}
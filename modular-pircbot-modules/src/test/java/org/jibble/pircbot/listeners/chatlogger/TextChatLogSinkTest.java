@@ -0,0 +1,89 @@
+package org.jibble.pircbot.listeners.chatlogger;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.junit.Test;
+import org.pircbotx.listeners.ChatLoggerListener.ChatLoggerEvent;
+import org.pircbotx.listeners.chatlogger.ChatLogLine;
+import org.pircbotx.listeners.chatlogger.ChatLogTemplate;
+import org.pircbotx.listeners.chatlogger.RotationPolicy;
+import org.pircbotx.listeners.chatlogger.RotationPolicy.Period;
+import org.pircbotx.listeners.chatlogger.TextChatLogSink;
+
+import com.google.common.io.ByteStreams;
+
+public class TextChatLogSinkTest {
+  private static final ChatLogTemplate MESSAGE = ChatLogTemplate.compile("%s %s");
+
+  @Test
+  public void oneFilePerChannel() throws IOException {
+    Path logsPath = Files.createTempDirectory("chatlogs");
+    long now = System.currentTimeMillis();
+
+    TextChatLogSink sink = new TextChatLogSink(logsPath, "UTF-8");
+    sink.setMaxOpenFiles(2);
+    for (int i = 0; i < 3; i++) {
+      for (String channel : new String[] {"#one", "#Two", "#three"}) {
+        sink.write(new ChatLogLine(now, channel, ChatLoggerEvent.MESSAGE, MESSAGE, channel,
+            String.valueOf(i)));
+      }
+      assertEquals(2, sink.getOpenFileCount());
+    }
+    sink.flush();
+    sink.close();
+
+    String date = DateTimeFormat.forPattern("yyyy_MM_dd").print(new DateTime(now));
+    assertEquals("#one 0\n#one 1\n#one 2", read(logsPath.resolve("#one-" + date + ".log")));
+    assertEquals("#Two 0\n#Two 1\n#Two 2", read(logsPath.resolve("#two-" + date + ".log")));
+    assertEquals("#three 0\n#three 1\n#three 2",
+        read(logsPath.resolve("#three-" + date + ".log")));
+  }
+
+  @Test
+  public void rotateAndCompress() throws IOException, InterruptedException {
+    Path logsPath = Files.createTempDirectory("chatlogs");
+    long now = System.currentTimeMillis();
+
+    TextChatLogSink sink = new TextChatLogSink(logsPath, "UTF-8");
+    sink.setRotationPolicy(new RotationPolicy(Period.DAILY, 5, true, 0, 0));
+    for (int i = 0; i < 3; i++) {
+      sink.write(new ChatLogLine(now, "#one", ChatLoggerEvent.MESSAGE, MESSAGE, "message",
+          String.valueOf(i)));
+      sink.flush();
+    }
+    sink.close();
+
+    // Only the last part is not finished
+    String baseName = "#one-" + DateTimeFormat.forPattern("yyyy_MM_dd").print(new DateTime(now));
+    Path firstArchive = logsPath.resolve(baseName + ".log.gz");
+    Path secondArchive = logsPath.resolve(baseName + ".1.log.gz");
+    for (int i = 0; i < 100 && !(Files.exists(firstArchive) && Files.exists(secondArchive)); i++) {
+      Thread.sleep(50);
+    }
+    assertEquals("message 0", readCompressed(firstArchive));
+    assertEquals("message 1", readCompressed(secondArchive));
+    assertEquals(false, Files.exists(logsPath.resolve(baseName + ".log")));
+    assertEquals("message 2", read(logsPath.resolve(baseName + ".2.log")));
+  }
+
+  // internal helpers
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  private static String readCompressed(Path file) throws IOException {
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+      return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+  }
+}
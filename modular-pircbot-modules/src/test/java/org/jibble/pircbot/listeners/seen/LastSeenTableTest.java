@@ -0,0 +1,62 @@
+package org.jibble.pircbot.listeners.seen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.pircbotx.listeners.LastSeenListener.LastSeenEvent;
+import org.pircbotx.listeners.seen.LastSeenEntry;
+import org.pircbotx.listeners.seen.LastSeenTable;
+
+import com.google.common.base.Strings;
+
+public class LastSeenTableTest {
+  @Test
+  public void recordGrowAndReopen() throws IOException {
+    Path file = Files.createTempDirectory("lastseen").resolve("seen.table");
+    LastSeenTable table = new LastSeenTable(file);
+    table.setInitialCapacity(16);
+    for (int i = 0; i < 10000; i++) {
+      table.record("Nick" + i, i, LastSeenEvent.JOIN, "#channel", null);
+    }
+    table.record("NICK42", 20000, LastSeenEvent.MESSAGE, "#other", "hello");
+    table.close();
+
+    table = new LastSeenTable(file);
+    table.open();
+    assertEquals(10000, table.size());
+    assertEquals(16384, table.getCapacity());
+
+    LastSeenEntry entry = table.get("nick42");
+    assertEquals("NICK42", entry.getNick());
+    assertEquals(20000, entry.getTimestamp());
+    assertEquals(LastSeenEvent.MESSAGE, entry.getEvent());
+    assertEquals("#other", entry.getChannel());
+    assertEquals("hello", entry.getDetail());
+
+    entry = table.get("Nick9999");
+    assertEquals(LastSeenEvent.JOIN, entry.getEvent());
+    assertNull(entry.getDetail());
+    assertNull(table.get("nobody"));
+    table.close();
+  }
+
+  @Test
+  public void truncateLongStrings() throws IOException {
+    Path file = Files.createTempDirectory("lastseen").resolve("seen.table");
+    LastSeenTable table = new LastSeenTable(file);
+    String longNick = "a_very_long_nick_that_does_not_fit";
+    table.record(longNick, 1, LastSeenEvent.QUIT, null, Strings.repeat("é", 41));
+
+    LastSeenEntry entry = table.get(longNick.toUpperCase());
+    assertEquals(longNick.substring(0, 31), entry.getNick());
+    assertNull(entry.getChannel());
+    // Two bytes per character, never cut in two
+    assertEquals(23, entry.getDetail().length());
+    table.close();
+  }
+}
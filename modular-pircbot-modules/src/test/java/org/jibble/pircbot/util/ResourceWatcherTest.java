@@ -0,0 +1,63 @@
+package org.jibble.pircbot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pircbotx.util.ResourceWatcher;
+import org.pircbotx.util.ResourceWatcher.Watch;
+
+public class ResourceWatcherTest {
+  private static final String RESOURCE = "resourcewatcher.txt";
+
+  private Path file;
+
+  @Before
+  public void setUp() throws IOException, URISyntaxException {
+    // Created next to the other test resources, so that it is on the classpath
+    Path resources = Paths.get(ClassLoader.getSystemResource("actions.properties").toURI())
+        .getParent();
+    file = Files.write(resources.resolve(RESOURCE), "first".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void callBackOpenWatchesOnChange() throws IOException, InterruptedException {
+    AtomicInteger closedCalls = new AtomicInteger();
+    Watch closedWatch = ResourceWatcher.watch(RESOURCE, closedCalls::incrementAndGet);
+    CountDownLatch changed = new CountDownLatch(1);
+    Watch watch = ResourceWatcher.watch(RESOURCE, changed::countDown);
+    assertNotNull(watch);
+    closedWatch.close();
+
+    Files.write(file, "second".getBytes(StandardCharsets.UTF_8));
+    assertTrue(changed.await(30, TimeUnit.SECONDS));
+    // Closed watches registered first would have been called back first
+    assertEquals(0, closedCalls.get());
+    watch.close();
+  }
+
+  @Test
+  public void ignoreResourcesThatAreNotFiles() {
+    // Packaged in the JUnit jar
+    assertNull(ResourceWatcher.watch("org/junit/Test.class", () -> {}));
+  }
+}
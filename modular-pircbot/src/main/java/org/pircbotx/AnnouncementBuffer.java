@@ -0,0 +1,420 @@
+package org.pircbotx;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+
+/**
+ * The announcements of an {@link ExtendedPircBotX} waiting to be delivered, because the bot was
+ * disconnected or had not joined their channel yet when they were made. They are kept according to
+ * the {@link AnnouncementBufferPolicy} of the bot and replayed, one at a time and oldest first, on
+ * the scheduler of the bot once their channel has been joined.
+ * <p>
+ * Announcements are kept per channel. As long as announcements are waiting for a channel, new ones
+ * to the same channel are queued behind them, so that the announcements of a channel are always
+ * delivered in order; announcements to other channels are delivered right away. An announcement
+ * that could not be delivered is kept at the head of its channel until it can be.
+ * <p>
+ * This class is exposed for monitoring purposes.
+ *
+ * @author Emmanuel Cron
+ */
+public final class AnnouncementBuffer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AnnouncementBuffer.class);
+
+  // Target of announcements made to all joined channels
+  private static final String ALL_CHANNELS = "*";
+
+  private final ExtendedPircBotX bot;
+
+  private final AnnouncementBufferPolicy policy;
+
+  // Held while the file is written, never taken while holding this
+  private final Object fileLock = new Object();
+
+  // All fields below are guarded by this
+
+  // Waiting announcements of each channel, oldest first
+  private final Map<String, ArrayDeque<Announcement>> announcements =
+      new LinkedHashMap<String, ArrayDeque<Announcement>>();
+
+  private int size;
+
+  private long nextSequence;
+
+  private boolean replaying;
+
+  // Saving is skipped when nothing changed since the file was last written
+  private long changeCount;
+
+  private long savedChangeCount;
+
+  private long mergedCount;
+
+  private long expiredCount;
+
+  private long droppedCount;
+
+  private long replayedCount;
+
+  AnnouncementBuffer(ExtendedPircBotX bot, AnnouncementBufferPolicy policy) {
+    this.bot = bot;
+    this.policy = policy;
+    load();
+  }
+
+  /**
+   * Returns the policy used by this buffer.
+   */
+  public AnnouncementBufferPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Returns the number of announcements waiting to be delivered.
+   */
+  public synchronized int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the number of announcements that were merged with an identical waiting announcement.
+   */
+  public synchronized long getMergedCount() {
+    return mergedCount;
+  }
+
+  /**
+   * Returns the number of announcements discarded because they waited longer than the maximum age.
+   */
+  public synchronized long getExpiredCount() {
+    return expiredCount;
+  }
+
+  /**
+   * Returns the number of announcements dropped because the buffer was full.
+   */
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /**
+   * Returns the number of announcements delivered after having waited in the buffer.
+   */
+  public synchronized long getReplayedCount() {
+    return replayedCount;
+  }
+
+  // internal helpers
+
+  /**
+   * Delivers the given announcement right away if possible, or keeps it until it can be.
+   *
+   * @param channel the channel of the announcement, or {@code null} for all joined channels
+   * @param text the text of the announcement
+   */
+  void announce(String channel, String text) {
+    Announcement announcement;
+    boolean deliverNow;
+    synchronized (this) {
+      announcement = new Announcement(nextSequence++, System.currentTimeMillis(),
+          channel == null ? ALL_CHANNELS : channel, text);
+      boolean deliverable = isDeliverable(announcement);
+      deliverNow = deliverable && !announcements.containsKey(announcement.getKey());
+      if (!deliverNow) {
+        add(announcement, false);
+        if (deliverable) {
+          // Channel is joined, deliver the announcements waiting before this one
+          replay();
+        }
+      }
+    }
+
+    if (deliverNow && !deliver(announcement)) {
+      synchronized (this) {
+        add(announcement, true);
+      }
+    }
+    save();
+  }
+
+  /**
+   * Starts replaying waiting announcements, unless they are already being replayed. Called each
+   * time the bot joins a channel.
+   */
+  synchronized void replay() {
+    if (replaying || size == 0) {
+      return;
+    }
+    replaying = true;
+    // Give the bot time to join its other channels
+    scheduleReplay();
+  }
+
+  private void replayNext() {
+    Announcement next;
+    synchronized (this) {
+      expire();
+      next = pollOldestDeliverable();
+      if (next == null) {
+        // Nothing more can be delivered until another channel is joined
+        replaying = false;
+      }
+    }
+    if (next == null) {
+      save();
+      return;
+    }
+
+    boolean delivered = deliver(next);
+    synchronized (this) {
+      if (delivered) {
+        replayedCount++;
+      } else {
+        add(next, true);
+        // Replayed again once a channel is joined
+        replaying = false;
+      }
+
+      if (replaying) {
+        if (size == 0) {
+          replaying = false;
+        } else {
+          scheduleReplay();
+        }
+      }
+    }
+    save();
+  }
+
+  private void scheduleReplay() {
+    try {
+      bot.getScheduler().schedule(this::replayNext, policy.getReplayIntervalMillis(),
+          TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ree) {
+      // Bot is shutting down, announcements stay saved for next time
+      replaying = false;
+    }
+  }
+
+  /**
+   * Keeps an announcement, behind the other announcements of its channel or, for an announcement
+   * that could not be delivered, before them.
+   */
+  private void add(Announcement announcement, boolean first) {
+    expire();
+    ArrayDeque<Announcement> queue = announcements.get(announcement.getKey());
+    if (queue != null) {
+      for (Announcement waiting : queue) {
+        if (waiting.isSameAs(announcement)) {
+          mergedCount++;
+          return;
+        }
+      }
+    }
+    if (size >= policy.getCapacity()) {
+      remove(findOldest(false));
+      droppedCount++;
+    }
+
+    queue = announcements.get(announcement.getKey());
+    if (queue == null) {
+      queue = new ArrayDeque<Announcement>();
+      announcements.put(announcement.getKey(), queue);
+    }
+    if (first) {
+      queue.addFirst(announcement);
+    } else {
+      queue.addLast(announcement);
+    }
+    size++;
+    changeCount++;
+  }
+
+  private Announcement pollOldestDeliverable() {
+    if (!bot.isConnected()) {
+      return null;
+    }
+    ArrayDeque<Announcement> queue = findOldest(true);
+    if (queue == null) {
+      return null;
+    }
+    Announcement announcement = queue.peekFirst();
+    remove(queue);
+    return announcement;
+  }
+
+  /**
+   * Returns the channel queue whose first announcement is the oldest, only considering channels
+   * that can be delivered to if asked to.
+   */
+  private ArrayDeque<Announcement> findOldest(boolean deliverableOnly) {
+    ArrayDeque<Announcement> oldest = null;
+    for (ArrayDeque<Announcement> queue : announcements.values()) {
+      Announcement first = queue.peekFirst();
+      if ((oldest == null || first.sequence < oldest.peekFirst().sequence)
+          && (!deliverableOnly || isDeliverable(first))) {
+        oldest = queue;
+      }
+    }
+    return oldest;
+  }
+
+  private void remove(ArrayDeque<Announcement> queue) {
+    Announcement announcement = queue.removeFirst();
+    if (queue.isEmpty()) {
+      announcements.remove(announcement.getKey());
+    }
+    size--;
+    changeCount++;
+  }
+
+  private void expire() {
+    long oldestMillis = System.currentTimeMillis() - policy.getMaxAgeMillis();
+    for (Iterator<ArrayDeque<Announcement>> it = announcements.values().iterator(); it.hasNext();) {
+      ArrayDeque<Announcement> queue = it.next();
+      while (!queue.isEmpty() && queue.peekFirst().createdMillis < oldestMillis) {
+        queue.removeFirst();
+        size--;
+        changeCount++;
+        expiredCount++;
+      }
+      if (queue.isEmpty()) {
+        it.remove();
+      }
+    }
+  }
+
+  private boolean isDeliverable(Announcement announcement) {
+    if (!bot.isConnected()) {
+      return false;
+    }
+    if (ALL_CHANNELS.equals(announcement.channel)) {
+      return !bot.getUserBot().getChannels().isEmpty();
+    }
+    return bot.getUserChannelDao().channelExists(announcement.channel);
+  }
+
+  private boolean deliver(Announcement announcement) {
+    try {
+      bot.sendAnnouncement(ALL_CHANNELS.equals(announcement.channel) ? null
+          : announcement.channel, announcement.text);
+      return true;
+    } catch (RuntimeException re) {
+      LOGGER.warn("Could not deliver announcement, keeping it: " + announcement.text, re);
+      return false;
+    }
+  }
+
+  private void load() {
+    Path file = policy.getFile();
+    if (file == null || !Files.exists(file)) {
+      return;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // Text is last as it may contain tabs
+        List<String> fields = Splitter.on('\t').limit(3).splitToList(line);
+        if (fields.size() == 3) {
+          add(new Announcement(nextSequence++, Long.parseLong(fields.get(0)), fields.get(1),
+              fields.get(2)), false);
+        }
+      }
+      LOGGER.info("{} announcement(s) waiting to be delivered", size);
+    } catch (IOException | NumberFormatException e) {
+      LOGGER.error("Could not read waiting announcements from " + file + ", ignoring them", e);
+    }
+  }
+
+  /**
+   * Writes the waiting announcements to the file of the policy, if they changed since it was last
+   * written. Must not be called while holding the lock of this buffer.
+   */
+  private void save() {
+    Path file = policy.getFile();
+    if (file == null) {
+      return;
+    }
+
+    synchronized (fileLock) {
+      List<Announcement> waiting = new ArrayList<Announcement>();
+      synchronized (this) {
+        if (savedChangeCount == changeCount) {
+          // Written already
+          return;
+        }
+        savedChangeCount = changeCount;
+        for (ArrayDeque<Announcement> queue : announcements.values()) {
+          waiting.addAll(queue);
+        }
+      }
+      // Oldest first, so that they are loaded back in the same order
+      waiting.sort(Comparator.comparingLong(announcement -> announcement.sequence));
+
+      // Written aside first so that a crash never leaves a truncated file
+      Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+      try {
+        try (BufferedWriter writer =
+            Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+          for (Announcement announcement : waiting) {
+            writer.write(announcement.createdMillis + "\t" + announcement.channel + "\t"
+                + announcement.text);
+            writer.newLine();
+          }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException ioe) {
+        LOGGER.error("Could not save waiting announcements to " + file, ioe);
+      }
+    }
+  }
+
+  private static final class Announcement {
+    // Orders announcements across channels
+    private final long sequence;
+
+    private final long createdMillis;
+
+    private final String channel;
+
+    private final String text;
+
+    Announcement(long sequence, long createdMillis, String channel, String text) {
+      this.sequence = sequence;
+      this.createdMillis = createdMillis;
+      this.channel = channel;
+      this.text = text;
+    }
+
+    String getKey() {
+      return channel.toLowerCase(Locale.ENGLISH);
+    }
+
+    boolean isSameAs(Announcement other) {
+      return channel.equalsIgnoreCase(other.channel) && Objects.equal(text, other.text);
+    }
+  }
+}
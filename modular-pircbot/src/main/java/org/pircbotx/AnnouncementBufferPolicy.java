@@ -0,0 +1,78 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how an {@link ExtendedPircBotX} keeps the announcements it can't deliver because it is
+ * disconnected or has not joined their channel yet, and how it replays them afterwards.
+ * <p>
+ * At most {@code capacity} announcements are kept, the oldest being dropped first. Announcements
+ * older than the maximum age are discarded without being sent, and an announcement identical to
+ * one already waiting for the same channel is merged with it. Once the bot has joined a channel
+ * again, waiting announcements are replayed one at a time, separated by the replay interval.
+ * <p>
+ * When a file is given, waiting announcements are also saved to it so that they survive a restart
+ * of the bot.
+ *
+ * @author Emmanuel Cron
+ */
+public final class AnnouncementBufferPolicy {
+  private final int capacity;
+
+  private final long maxAgeMillis;
+
+  private final long replayIntervalMillis;
+
+  private final Path file;
+
+  /**
+   * Creates a new announcement buffer policy.
+   *
+   * @param capacity maximum number of announcements waiting to be sent
+   * @param maxAge age after which an announcement is not worth sending anymore
+   * @param maxAgeUnit unit of the maximum age
+   * @param replayInterval time between two replayed announcements
+   * @param replayIntervalUnit unit of the replay interval
+   * @param file where to save waiting announcements, or {@code null} to only keep them in memory
+   */
+  public AnnouncementBufferPolicy(int capacity, long maxAge, TimeUnit maxAgeUnit,
+      long replayInterval, TimeUnit replayIntervalUnit, Path file) {
+    checkArgument(capacity > 0, "Capacity must be > 0");
+    checkArgument(maxAge > 0, "Maximum age must be > 0");
+    checkArgument(replayInterval > 0, "Replay interval must be > 0");
+
+    this.capacity = capacity;
+    this.maxAgeMillis = maxAgeUnit.toMillis(maxAge);
+    this.replayIntervalMillis = replayIntervalUnit.toMillis(replayInterval);
+    this.file = file;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public long getMaxAgeMillis() {
+    return maxAgeMillis;
+  }
+
+  public long getReplayIntervalMillis() {
+    return replayIntervalMillis;
+  }
+
+  /**
+   * Returns the file where waiting announcements are saved, or {@code null} if they are only kept
+   * in memory.
+   */
+  public Path getFile() {
+    return file;
+  }
+
+  @Override
+  public String toString() {
+    return "AnnouncementBufferPolicy[capacity=" + capacity + ", maxAge=" + maxAgeMillis
+        + "ms, replayInterval=" + replayIntervalMillis + "ms, file=" + file + "]";
+  }
+}
@@ -0,0 +1,25 @@
+package org.pircbotx;
+
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.JoinEvent;
+
+/**
+ * A special listener that replays the announcements waiting in the {@link AnnouncementBuffer} of
+ * the bot each time the bot joins a channel.
+ *
+ * @author Emmanuel Cron
+ */
+class AnnouncementReplayListenerAdapter extends ListenerAdapter<ExtendedPircBotX> {
+  private final AnnouncementBuffer buffer;
+
+  AnnouncementReplayListenerAdapter(AnnouncementBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void onJoin(JoinEvent<ExtendedPircBotX> event) {
+    if (event.getUser().getNick().equalsIgnoreCase(event.getBot().getNick())) {
+      buffer.replay();
+    }
+  }
+}
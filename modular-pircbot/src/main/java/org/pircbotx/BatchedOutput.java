@@ -0,0 +1,309 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.pircbotx.User;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+/**
+ * Sends messages and notices using as few lines as possible, which matters when flood control
+ * counts every line:
+ * <ul>
+ * <li>the same text sent to several targets is sent in a single command for as many targets as
+ * the server allows, as advertised by the {@code TARGMAX} or {@code MAXTARGETS} parameters of its
+ * {@code ISUPPORT} reply;</li>
+ * <li>several short lines sent to the same target can be packed together, separated by
+ * "{@code  | }".</li>
+ * </ul>
+ * Lines are kept within the maximum line length, keeping room for the prefix the server adds when
+ * relaying them. Text that is too long is split between words when possible and never inside a
+ * UTF-8 character.
+ *
+ * @author Emmanuel Cron
+ * @see ExtendedPircBotX#sendBatched()
+ */
+public final class BatchedOutput {
+  /**
+   * Separator used between packed lines.
+   */
+  public static final String PACKED_LINES_SEPARATOR = " | ";
+
+  private static final String PRIVMSG = "PRIVMSG";
+
+  private static final String NOTICE = "NOTICE";
+
+  // Maximum length of a host name, used until the server tells the host of the bot
+  private static final int DEFAULT_HOST_LENGTH = 63;
+
+  private static final Joiner TARGETS_JOINER = Joiner.on(',');
+
+  private final ExtendedPircBotX bot;
+
+  BatchedOutput(ExtendedPircBotX bot) {
+    this.bot = bot;
+  }
+
+  /**
+   * Sends the same message to all the given targets, using as few lines as possible.
+   *
+   * @param targets the channels and/or nicks to send the message to
+   * @param message the message to send
+   */
+  public void message(Iterable<String> targets, String message) {
+    sendToTargets(PRIVMSG, targets, message);
+  }
+
+  /**
+   * Sends the same notice to all the given targets, using as few lines as possible.
+   *
+   * @param targets the channels and/or nicks to send the notice to
+   * @param notice the notice to send
+   */
+  public void notice(Iterable<String> targets, String notice) {
+    sendToTargets(NOTICE, targets, notice);
+  }
+
+  /**
+   * Sends the given lines to a target as messages, packing short lines together.
+   *
+   * @param target the channel or nick to send the lines to
+   * @param lines the lines to send
+   */
+  public void packedMessage(String target, List<String> lines) {
+    sendPacked(PRIVMSG, target, lines);
+  }
+
+  /**
+   * Sends the given lines to a target as notices, packing short lines together.
+   *
+   * @param target the channel or nick to send the lines to
+   * @param lines the lines to send
+   */
+  public void packedNotice(String target, List<String> lines) {
+    sendPacked(NOTICE, target, lines);
+  }
+
+  /**
+   * Returns the maximum number of targets the server accepts for the given command, as advertised
+   * in its {@code ISUPPORT} reply. Returns 1 when the server did not advertise any limit.
+   *
+   * @param command the command, such as {@code PRIVMSG}
+   */
+  public int getMaxTargets(String command) {
+    Map<String, String> isupport = bot.getServerInfo().getIsupportRaw();
+
+    String targmax = isupport.get("TARGMAX");
+    if (targmax != null) {
+      // e.g. "PRIVMSG:4,NOTICE:4,KICK:1", an empty limit meaning no limit
+      for (String limit : Splitter.on(',').omitEmptyStrings().split(targmax)) {
+        int colon = limit.indexOf(':');
+        if (colon > 0 && limit.substring(0, colon).equalsIgnoreCase(command)) {
+          String value = limit.substring(colon + 1);
+          if (value.isEmpty()) {
+            return Integer.MAX_VALUE;
+          }
+          Integer max = Ints.tryParse(value);
+          return max == null || max < 1 ? 1 : max;
+        }
+      }
+      // Commands not listed can't have several targets
+      return 1;
+    }
+
+    String maxTargets = isupport.get("MAXTARGETS");
+    if (maxTargets != null) {
+      Integer max = Ints.tryParse(maxTargets);
+      return max == null || max < 1 ? 1 : max;
+    }
+    return 1;
+  }
+
+  /**
+   * Packs the given lines into as few lines as possible, each line being at most the given number
+   * of bytes once encoded in UTF-8. Lines are joined with the given separator and never reordered;
+   * lines that are too long on their own are split (see {@link #split(String, int)}).
+   *
+   * @param lines the lines to pack
+   * @param separator the separator inserted between packed lines
+   * @param maxBytes the maximum length of a packed line, in UTF-8 bytes
+   */
+  public static ImmutableList<String> pack(List<String> lines, String separator, int maxBytes) {
+    checkNotNull(separator, "No separator given");
+    checkArgument(maxBytes > 0, "Maximum number of bytes must be > 0");
+
+    ImmutableList.Builder<String> packed = ImmutableList.builder();
+    int separatorBytes = utf8Length(separator);
+    StringBuilder current = new StringBuilder();
+    int currentBytes = 0;
+
+    for (String line : lines) {
+      if (Strings.isNullOrEmpty(line)) {
+        continue;
+      }
+
+      int lineBytes = utf8Length(line);
+      if (currentBytes > 0 && currentBytes + separatorBytes + lineBytes <= maxBytes) {
+        current.append(separator).append(line);
+        currentBytes += separatorBytes + lineBytes;
+        continue;
+      }
+
+      if (currentBytes > 0) {
+        packed.add(current.toString());
+        current.setLength(0);
+        currentBytes = 0;
+      }
+      if (lineBytes <= maxBytes) {
+        current.append(line);
+        currentBytes = lineBytes;
+      } else {
+        packed.addAll(split(line, maxBytes));
+      }
+    }
+    if (currentBytes > 0) {
+      packed.add(current.toString());
+    }
+
+    return packed.build();
+  }
+
+  /**
+   * Splits the given text into parts of at most the given number of bytes once encoded in UTF-8.
+   * Text is split on the last space that fits when there is one, otherwise between two characters;
+   * characters are never cut.
+   *
+   * @param text the text to split
+   * @param maxBytes the maximum length of a part, in UTF-8 bytes; must be at least 4 so that any
+   *        character fits
+   */
+  public static ImmutableList<String> split(String text, int maxBytes) {
+    checkNotNull(text, "No text given");
+    checkArgument(maxBytes >= 4, "Maximum number of bytes must be >= 4");
+
+    ImmutableList.Builder<String> parts = ImmutableList.builder();
+    int start = 0;
+    while (start < text.length()) {
+      int end = start;
+      int bytes = 0;
+      int lastSpace = -1;
+      while (end < text.length()) {
+        int codePoint = text.codePointAt(end);
+        int codePointBytes = utf8Length(codePoint);
+        if (bytes + codePointBytes > maxBytes) {
+          break;
+        }
+        if (codePoint == ' ') {
+          lastSpace = end;
+        }
+        bytes += codePointBytes;
+        end += Character.charCount(codePoint);
+      }
+
+      if (end == text.length()) {
+        parts.add(text.substring(start));
+        break;
+      }
+      if (lastSpace > start) {
+        // Don't cut words when possible
+        parts.add(text.substring(start, lastSpace));
+        start = lastSpace + 1;
+      } else {
+        parts.add(text.substring(start, end));
+        start = end;
+      }
+    }
+
+    return parts.build();
+  }
+
+  // internal helpers
+
+  private void sendToTargets(String command, Iterable<String> targets, String text) {
+    checkNotNull(targets, "No targets given");
+    checkNotNull(text, "No text given");
+
+    int maxTargets = getMaxTargets(command);
+    int budget = getLineBudget() - utf8Length(command + "  :");
+    int textBytes = utf8Length(text);
+
+    List<String> group = new ArrayList<String>();
+    int groupBytes = 0;
+    for (String target : targets) {
+      int targetBytes = utf8Length(target);
+      boolean fits = groupBytes + 1 + targetBytes + textBytes <= budget;
+      if (!group.isEmpty() && (group.size() >= maxTargets || !fits)) {
+        sendToGroup(command, group, text, budget - groupBytes);
+        group.clear();
+        groupBytes = 0;
+      }
+
+      groupBytes += group.isEmpty() ? targetBytes : 1 + targetBytes;
+      group.add(target);
+    }
+    if (!group.isEmpty()) {
+      sendToGroup(command, group, text, budget - groupBytes);
+    }
+  }
+
+  private void sendToGroup(String command, List<String> targets, String text, int textBudget) {
+    String targetList = TARGETS_JOINER.join(targets);
+    for (String part : split(text, Math.max(textBudget, 4))) {
+      bot.sendRaw().rawLine(command + " " + targetList + " :" + part);
+    }
+  }
+
+  private void sendPacked(String command, String target, List<String> lines) {
+    checkArgument(!Strings.isNullOrEmpty(target), "No target given");
+    checkNotNull(lines, "No lines given");
+
+    int budget = getLineBudget() - utf8Length(command + " " + target + " :");
+    for (String line : pack(lines, PACKED_LINES_SEPARATOR, Math.max(budget, 4))) {
+      bot.sendRaw().rawLine(command + " " + target + " :" + line);
+    }
+  }
+
+  /**
+   * Returns the number of bytes available for a command, keeping room for the line separator and
+   * the ":nick!login@host " prefix added by the server.
+   */
+  private int getLineBudget() {
+    User user = bot.getUserBot();
+    int hostLength = Strings.isNullOrEmpty(user.getHostmask())
+        ? DEFAULT_HOST_LENGTH : utf8Length(user.getHostmask());
+    int prefixLength =
+        utf8Length(":" + bot.getNick() + "!" + Strings.nullToEmpty(user.getLogin()) + "@ ")
+            + hostLength;
+    return bot.getConfiguration().getMaxLineLength() - 2 - prefixLength;
+  }
+
+  private static int utf8Length(String text) {
+    int length = 0;
+    for (int i = 0; i < text.length(); ) {
+      int codePoint = text.codePointAt(i);
+      length += utf8Length(codePoint);
+      i += Character.charCount(codePoint);
+    }
+    return length;
+  }
+
+  private static int utf8Length(int codePoint) {
+    if (codePoint < 0x80) {
+      return 1;
+    } else if (codePoint < 0x800) {
+      return 2;
+    } else if (codePoint < 0x10000) {
+      return 3;
+    }
+    return 4;
+  }
+}
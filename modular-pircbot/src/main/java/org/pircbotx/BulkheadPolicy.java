@@ -0,0 +1,76 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.pircbotx.listeners.TriggerableListener;
+
+/**
+ * Describes how the triggers of a {@link TriggerableListener} are executed when bulkheads are
+ * enabled on an {@link ExtendedPircBotX}: how many threads the listener gets, how many triggers
+ * can wait for a thread and what happens to the triggers that exceed this limit.
+ *
+ * @author Emmanuel Cron
+ */
+public final class BulkheadPolicy {
+  /**
+   * What to do with a trigger when all the threads of a listener are busy and its queue is full.
+   *
+   * @author Emmanuel Cron
+   */
+  public enum RejectionPolicy {
+    /**
+     * The new trigger is silently dropped.
+     */
+    DISCARD,
+    /**
+     * The oldest waiting trigger is dropped to make room for the new one.
+     */
+    DISCARD_OLDEST,
+    /**
+     * The new trigger is executed by the thread that dispatches events. This slows the bot down
+     * instead of losing triggers, so use it with care.
+     */
+    CALLER_RUNS
+  }
+
+  private final int threads;
+
+  private final int queueLimit;
+
+  private final RejectionPolicy rejectionPolicy;
+
+  /**
+   * Creates a new bulkhead policy.
+   *
+   * @param threads maximum number of threads executing the triggers of a listener at the same time
+   * @param queueLimit maximum number of triggers waiting for a thread
+   * @param rejectionPolicy what to do with triggers exceeding the queue limit
+   */
+  public BulkheadPolicy(int threads, int queueLimit, RejectionPolicy rejectionPolicy) {
+    checkArgument(threads > 0, "A bulkhead needs at least one thread");
+    checkArgument(queueLimit > 0, "Bulkhead queue limit must be > 0");
+
+    this.threads = threads;
+    this.queueLimit = queueLimit;
+    this.rejectionPolicy = checkNotNull(rejectionPolicy, "No rejection policy specified");
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public int getQueueLimit() {
+    return queueLimit;
+  }
+
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkheadPolicy[threads=" + threads + ", queueLimit=" + queueLimit + ", rejection="
+        + rejectionPolicy + "]";
+  }
+}
@@ -0,0 +1,245 @@
+package org.pircbotx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+
+import org.pircbotx.Channel;
+import org.pircbotx.PircBotX;
+import org.pircbotx.User;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.events.NickChangeEvent;
+import org.pircbotx.hooks.events.QuitEvent;
+import org.pircbotx.hooks.types.GenericChannelEvent;
+import org.pircbotx.hooks.types.GenericUserEvent;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A {@link SubscriptionListenerManager} that keeps the events of each channel in order while
+ * processing different channels in parallel.
+ * <p>
+ * Each channel has its own lane: the events of a channel are handed to the listeners one after the
+ * other, in the order they were received, and an event is only dispatched once all the listeners
+ * are done with the previous one. Lanes of different channels run concurrently in the pool. Events
+ * that concern a user but no channel, such as private messages, have a lane per user.
+ * <p>
+ * Server-wide events, i.e. {@link QuitEvent}s, {@link NickChangeEvent}s and events that have
+ * neither a channel nor a user (connection, server responses...), are ordered with respect to all
+ * lanes: they are dispatched once every event received before them has been processed, and no
+ * event received after them is processed before they are done. A listener can therefore rely on
+ * the following guarantees:
+ * <ul>
+ * <li>two events of the same channel, or of the same user in private, never run concurrently and
+ * are seen in the order they were received;</li>
+ * <li>a server-wide event is seen after all the events received before it and before all the
+ * events received after it, whatever their channel.</li>
+ * </ul>
+ * Lanes that have nothing left to process are discarded, so parted channels don't accumulate.
+ *
+ * @author Emmanuel Cron
+ * @param <B> the type of bot
+ */
+public class ChannelOrderedListenerManager<B extends PircBotX> extends
+    SubscriptionListenerManager<B> {
+  private static final ImmutableSet<Class<?>> SERVER_WIDE_EVENTS =
+      ImmutableSet.<Class<?>>of(QuitEvent.class, NickChangeEvent.class);
+
+  // Spaces are not allowed in channel names, so user lanes never clash with channel lanes
+  private static final String USER_LANE_PREFIX = "user ";
+
+  // Lanes having something to process, by key; guarded by itself, as are all lanes and barriers
+  private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+
+  // Takes part in all barriers, so that server-wide events are ordered even when no lane exists
+  private final Lane serverLane = new Lane(null);
+
+  private Barrier lastBarrier;
+
+  /**
+   * Creates a new manager dispatching events in a cached thread pool.
+   */
+  public ChannelOrderedListenerManager() {
+    super();
+  }
+
+  /**
+   * Creates a new manager dispatching events in the given thread pool.
+   */
+  public ChannelOrderedListenerManager(ExecutorService pool) {
+    super(pool);
+  }
+
+  /**
+   * Returns the number of channel and user lanes that currently have events to process.
+   */
+  public int getLaneCount() {
+    synchronized (lanes) {
+      return lanes.size();
+    }
+  }
+
+  @Override
+  void execute(Event<B> event, List<ManagedFutureTask> tasks) {
+    Runnable dispatch = () -> {
+      for (ManagedFutureTask task : tasks) {
+        task.run();
+      }
+    };
+
+    String key = getLaneKey(event);
+    synchronized (lanes) {
+      if (key == null) {
+        Barrier barrier = new Barrier(dispatch, lanes.size() + 1);
+        serverLane.enqueue(new Step(null, barrier, true));
+        for (Lane lane : lanes.values()) {
+          lane.enqueue(new Step(null, barrier, true));
+        }
+        lastBarrier = barrier;
+        return;
+      }
+
+      Lane lane = lanes.get(key);
+      if (lane == null) {
+        lane = new Lane(key);
+        lanes.put(key, lane);
+        if (lastBarrier != null && !lastBarrier.released) {
+          // Lane didn't exist when the barrier was raised, but must still wait for it
+          lane.enqueue(new Step(null, lastBarrier, false));
+        }
+      }
+      lane.enqueue(new Step(dispatch, null, false));
+    }
+  }
+
+  // internal helpers
+
+  private static String getLaneKey(Event<?> event) {
+    if (SERVER_WIDE_EVENTS.contains(event.getClass())) {
+      return null;
+    }
+    if (event instanceof GenericChannelEvent) {
+      Channel channel = ((GenericChannelEvent<?>) event).getChannel();
+      if (channel != null) {
+        return channel.getName().toLowerCase(Locale.ENGLISH);
+      }
+    }
+    if (event instanceof GenericUserEvent) {
+      User user = ((GenericUserEvent<?>) event).getUser();
+      if (user != null) {
+        return USER_LANE_PREFIX + user.getNick().toLowerCase(Locale.ENGLISH);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Something to do in a lane: either dispatch an event, or wait at a barrier.
+   */
+  private final class Step {
+    private final Runnable dispatch;
+
+    private final Barrier barrier;
+
+    // Whether the lane is one of those the barrier waits for
+    private final boolean counted;
+
+    Step(Runnable dispatch, Barrier barrier, boolean counted) {
+      this.dispatch = dispatch;
+      this.barrier = barrier;
+      this.counted = counted;
+    }
+  }
+
+  /**
+   * A server-wide event, dispatched by the last lane reaching it. Lanes reaching it before are
+   * parked until it has been dispatched.
+   */
+  private final class Barrier {
+    private final Runnable dispatch;
+
+    private final List<Lane> parked = new ArrayList<Lane>();
+
+    private int remaining;
+
+    private boolean released;
+
+    Barrier(Runnable dispatch, int lanes) {
+      this.dispatch = dispatch;
+      this.remaining = lanes;
+    }
+  }
+
+  /**
+   * A serial executor: steps are run one at a time in the pool, in the order they were enqueued.
+   */
+  private final class Lane {
+    // Null for the server lane, which is never discarded
+    private final String key;
+
+    private final Queue<Step> steps = new ArrayDeque<Step>();
+
+    // Whether the lane is being run in the pool or is parked at a barrier
+    private boolean scheduled;
+
+    Lane(String key) {
+      this.key = key;
+    }
+
+    void enqueue(Step step) {
+      // lanes lock is held
+      steps.add(step);
+      if (!scheduled) {
+        scheduled = true;
+        pool.execute(this::drain);
+      }
+    }
+
+    private void drain() {
+      while (true) {
+        Runnable dispatch;
+        Barrier releasing = null;
+        synchronized (lanes) {
+          Step step = steps.poll();
+          if (step == null) {
+            scheduled = false;
+            if (key != null) {
+              lanes.remove(key);
+            }
+            return;
+          }
+
+          if (step.barrier == null) {
+            dispatch = step.dispatch;
+          } else if (step.counted && --step.barrier.remaining == 0) {
+            // Last lane to arrive, all events received before the barrier have been processed
+            dispatch = step.barrier.dispatch;
+            releasing = step.barrier;
+          } else if (step.barrier.released) {
+            continue;
+          } else {
+            step.barrier.parked.add(this);
+            return;
+          }
+        }
+
+        dispatch.run();
+
+        if (releasing != null) {
+          synchronized (lanes) {
+            releasing.released = true;
+            for (Lane lane : releasing.parked) {
+              pool.execute(lane::drain);
+            }
+            releasing.parked.clear();
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,341 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.pircbotx.listeners.PrivateListener;
+import org.pircbotx.listeners.PublicListener;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Routes public and private messages to the {@link PublicListener}s and {@link PrivateListener}s of
+ * a bot, along with the arguments that follow the trigger.
+ * <p>
+ * Triggers and their aliases are stored in case-insensitive prefix tries built once, so routing a
+ * message only costs a walk along its command word, whatever the number of listeners. In a public
+ * channel, a command is either prefixed by "{@code !}" (e.g. "{@code !news 5}") or addressed to the
+ * bot (e.g. "{@code MyBot: news 5}"). In a private chat, the command is the first word of the
+ * message. Listeners that ignore arguments are only triggered when nothing follows their trigger or
+ * one of its aliases, as they always were, so that "{@code !fact is overrated}" does not trigger a
+ * listener that would drop the rest of the message.
+ * <p>
+ * Arguments are split on whitespace; double quotes can be used to group several words into a
+ * single argument.
+ *
+ * @author Emmanuel Cron
+ */
+final class CommandRouter {
+  private static final char PUBLIC_TRIGGER_PREFIX = '!';
+
+  private final Node<PublicListener> publicTrie;
+
+  private final Node<PrivateListener> privateTrie;
+
+  private final ImmutableSet<PublicListener> exactPublicListeners;
+
+  private final ImmutableSet<PrivateListener> exactPrivateListeners;
+
+  private CommandRouter(Node<PublicListener> publicTrie, Node<PrivateListener> privateTrie,
+      ImmutableSet<PublicListener> exactPublicListeners,
+      ImmutableSet<PrivateListener> exactPrivateListeners) {
+    this.publicTrie = publicTrie;
+    this.privateTrie = privateTrie;
+    this.exactPublicListeners = exactPublicListeners;
+    this.exactPrivateListeners = exactPrivateListeners;
+  }
+
+  /**
+   * Builds a new router from the triggers and aliases of the given public and private listeners.
+   */
+  static CommandRouter build(Iterable<PublicListener> publicListeners,
+      Iterable<PrivateListener> privateListeners) {
+    Node<PublicListener> publicTrie = new Node<PublicListener>();
+    Node<PrivateListener> privateTrie = new Node<PrivateListener>();
+    ImmutableSet.Builder<PublicListener> exactPublicListeners = ImmutableSet.builder();
+    ImmutableSet.Builder<PrivateListener> exactPrivateListeners = ImmutableSet.builder();
+
+    for (PublicListener publicListener : publicListeners) {
+      publicTrie.insert(publicListener.getTriggerMessage(), publicListener);
+      for (String alias : publicListener.getTriggerAliases()) {
+        publicTrie.insert(alias, publicListener);
+      }
+      if (!overrides(publicListener, PublicListener.class, "onTriggerMessage",
+          MessageEvent.class)) {
+        exactPublicListeners.add(publicListener);
+      }
+    }
+    for (PrivateListener privateListener : privateListeners) {
+      privateTrie.insert(privateListener.getPrivateTriggerMessage(), privateListener);
+      for (String alias : privateListener.getPrivateTriggerAliases()) {
+        privateTrie.insert(alias, privateListener);
+      }
+      if (!overrides(privateListener, PrivateListener.class, "onTriggerPrivateMessage",
+          PrivateMessageEvent.class)) {
+        exactPrivateListeners.add(privateListener);
+      }
+    }
+
+    return new CommandRouter(publicTrie, privateTrie, exactPublicListeners.build(),
+        exactPrivateListeners.build());
+  }
+
+  /**
+   * Routes a message said in a public channel.
+   *
+   * @param message the message said in the channel
+   * @param botNick the current nick of the bot, used to detect addressed commands
+   * @return the listeners to trigger and the parsed arguments, or {@code null} if the message is
+   *         not a command
+   */
+  Route<PublicListener> routePublic(String message, String botNick) {
+    int start;
+    if (message.length() > 1 && message.charAt(0) == PUBLIC_TRIGGER_PREFIX) {
+      start = 1;
+    } else {
+      start = skipAddress(message, botNick);
+      if (start < 0) {
+        // Most public messages are not commands
+        return null;
+      }
+    }
+
+    Route<PublicListener> route = route(publicTrie, message, start);
+    return keepExact(route, exactPublicListeners, isWholeMessage(route, message));
+  }
+
+  /**
+   * Routes a message sent in a private chat.
+   *
+   * @param message the message sent to the bot
+   * @return the listeners to trigger and the parsed arguments, or {@code null} if the message is
+   *         not a command
+   */
+  Route<PrivateListener> routePrivate(String message) {
+    int start = skipWhitespace(message, 0);
+    Route<PrivateListener> route = route(privateTrie, message, start);
+    return keepExact(route, exactPrivateListeners, start == 0 && isWholeMessage(route, message));
+  }
+
+  /**
+   * Splits the given text into arguments, starting at the given index. Arguments are separated by
+   * whitespace; double quotes group several words into one argument.
+   */
+  static ImmutableList<String> tokenize(String text, int start) {
+    ImmutableList.Builder<String> arguments = ImmutableList.builder();
+    StringBuilder argument = new StringBuilder();
+    boolean inArgument = false;
+    boolean quoted = false;
+
+    for (int i = start; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+        inArgument = true;
+      } else if (!quoted && Character.isWhitespace(c)) {
+        if (inArgument) {
+          arguments.add(argument.toString());
+          argument.setLength(0);
+          inArgument = false;
+        }
+      } else {
+        argument.append(c);
+        inArgument = true;
+      }
+    }
+    if (inArgument) {
+      arguments.add(argument.toString());
+    }
+
+    return arguments.build();
+  }
+
+  // internal helpers
+
+  private static <T> Route<T> route(Node<T> trie, String message, int start) {
+    if (start >= message.length()) {
+      return null;
+    }
+
+    // Walk down the trie and remember the longest trigger that ends on a word boundary
+    Node<T> node = trie;
+    Node<T> matched = null;
+    int matchEnd = -1;
+    for (int i = start; i < message.length() && node != null; i++) {
+      node = node.child(message.charAt(i));
+      if (node != null && node.listeners != null && isWordEnd(message, i + 1)) {
+        matched = node;
+        matchEnd = i + 1;
+      }
+    }
+
+    if (matched == null) {
+      return null;
+    }
+    return new Route<T>(matched.listeners, tokenize(message, matchEnd));
+  }
+
+  /**
+   * Returns whether the given listener overrides the default trigger method of the given interface
+   * that takes the arguments following the trigger, i.e. whether it handles arguments.
+   */
+  private static boolean overrides(Object listener, Class<?> listenerInterface, String methodName,
+      Class<?> eventClass) {
+    try {
+      return listener.getClass().getMethod(methodName, eventClass, List.class)
+          .getDeclaringClass() != listenerInterface;
+    } catch (NoSuchMethodException nsme) {
+      throw new IllegalStateException("Listener without trigger method: " + listener.getClass(),
+          nsme);
+    }
+  }
+
+  /**
+   * Returns whether nothing follows the trigger of the given route in the given message.
+   */
+  private static boolean isWholeMessage(Route<?> route, String message) {
+    return route != null && route.getArguments().isEmpty()
+        && !Character.isWhitespace(message.charAt(message.length() - 1));
+  }
+
+  /**
+   * Drops the listeners of the given set from the given route unless its trigger is the whole
+   * message, as they would silently ignore the rest of it.
+   */
+  private static <T> Route<T> keepExact(Route<T> route, ImmutableSet<T> exactListeners,
+      boolean wholeMessage) {
+    if (route == null || wholeMessage || exactListeners.isEmpty()) {
+      return route;
+    }
+
+    ImmutableList.Builder<T> listeners = ImmutableList.builder();
+    for (T listener : route.getListeners()) {
+      if (!exactListeners.contains(listener)) {
+        listeners.add(listener);
+      }
+    }
+    ImmutableList<T> argumentListeners = listeners.build();
+    return argumentListeners.isEmpty() ? null
+        : new Route<T>(argumentListeners, route.getArguments());
+  }
+
+  private static int skipAddress(String message, String botNick) {
+    if (Strings.isNullOrEmpty(botNick) || message.length() <= botNick.length()
+        || !message.regionMatches(true, 0, botNick, 0, botNick.length())) {
+      return -1;
+    }
+
+    char separator = message.charAt(botNick.length());
+    if (separator != ':' && separator != ',') {
+      return -1;
+    }
+
+    int start = skipWhitespace(message, botNick.length() + 1);
+    // Be lenient with users that also prefix addressed commands
+    if (start < message.length() && message.charAt(start) == PUBLIC_TRIGGER_PREFIX) {
+      start++;
+    }
+    return start;
+  }
+
+  private static int skipWhitespace(String message, int start) {
+    int i = start;
+    while (i < message.length() && Character.isWhitespace(message.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isWordEnd(String message, int index) {
+    return index == message.length() || Character.isWhitespace(message.charAt(index));
+  }
+
+  private static char fold(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  /**
+   * The result of routing a message: the listeners to trigger and the arguments given to them.
+   *
+   * @param <T> the type of listeners routed
+   */
+  static final class Route<T> {
+    private final ImmutableList<T> listeners;
+
+    private final ImmutableList<String> arguments;
+
+    private Route(ImmutableList<T> listeners, ImmutableList<String> arguments) {
+      this.listeners = listeners;
+      this.arguments = arguments;
+    }
+
+    ImmutableList<T> getListeners() {
+      return listeners;
+    }
+
+    ImmutableList<String> getArguments() {
+      return arguments;
+    }
+  }
+
+  /**
+   * A node of a trigger trie. Children are keyed by a small sorted array that is searched with a
+   * binary search, which is both compact and fast for the few characters used in triggers.
+   */
+  private static final class Node<T> {
+    private char[] keys = new char[0];
+
+    // Same order as keys
+    private final List<Node<T>> children = new ArrayList<Node<T>>(1);
+
+    private ImmutableList<T> listeners;
+
+    Node<T> child(char c) {
+      int index = Arrays.binarySearch(keys, fold(c));
+      return index >= 0 ? children.get(index) : null;
+    }
+
+    void insert(String trigger, T listener) {
+      checkArgument(!Strings.isNullOrEmpty(trigger), "Trigger can't be null or empty: %s",
+          listener.getClass().getSimpleName());
+
+      Node<T> node = this;
+      for (int i = 0; i < trigger.length(); i++) {
+        node = node.childOrCreate(fold(trigger.charAt(i)));
+      }
+
+      if (node.listeners == null) {
+        node.listeners = ImmutableList.of(listener);
+      } else if (!node.listeners.contains(listener)) {
+        List<T> listeners = node.listeners;
+        node.listeners = ImmutableList.<T>builder().addAll(listeners).add(listener).build();
+      }
+    }
+
+    private Node<T> childOrCreate(char key) {
+      int index = Arrays.binarySearch(keys, key);
+      if (index >= 0) {
+        return children.get(index);
+      }
+
+      int insertAt = -index - 1;
+      Node<T> child = new Node<T>();
+
+      char[] newKeys = new char[keys.length + 1];
+      System.arraycopy(keys, 0, newKeys, 0, insertAt);
+      System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+      newKeys[insertAt] = key;
+
+      keys = newKeys;
+      children.add(insertAt, child);
+      return child;
+    }
+  }
+}
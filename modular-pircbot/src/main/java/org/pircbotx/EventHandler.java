@@ -0,0 +1,277 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ActionEvent;
+import org.pircbotx.hooks.events.ChannelInfoEvent;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.FingerEvent;
+import org.pircbotx.hooks.events.HalfOpEvent;
+import org.pircbotx.hooks.events.IncomingChatRequestEvent;
+import org.pircbotx.hooks.events.IncomingFileTransferEvent;
+import org.pircbotx.hooks.events.InviteEvent;
+import org.pircbotx.hooks.events.JoinEvent;
+import org.pircbotx.hooks.events.KickEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.ModeEvent;
+import org.pircbotx.hooks.events.MotdEvent;
+import org.pircbotx.hooks.events.NickAlreadyInUseEvent;
+import org.pircbotx.hooks.events.NickChangeEvent;
+import org.pircbotx.hooks.events.NoticeEvent;
+import org.pircbotx.hooks.events.OpEvent;
+import org.pircbotx.hooks.events.OwnerEvent;
+import org.pircbotx.hooks.events.PartEvent;
+import org.pircbotx.hooks.events.PingEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.pircbotx.hooks.events.QuitEvent;
+import org.pircbotx.hooks.events.RemoveChannelBanEvent;
+import org.pircbotx.hooks.events.RemoveChannelKeyEvent;
+import org.pircbotx.hooks.events.RemoveChannelLimitEvent;
+import org.pircbotx.hooks.events.RemoveInviteOnlyEvent;
+import org.pircbotx.hooks.events.RemoveModeratedEvent;
+import org.pircbotx.hooks.events.RemoveNoExternalMessagesEvent;
+import org.pircbotx.hooks.events.RemovePrivateEvent;
+import org.pircbotx.hooks.events.RemoveSecretEvent;
+import org.pircbotx.hooks.events.RemoveTopicProtectionEvent;
+import org.pircbotx.hooks.events.ServerPingEvent;
+import org.pircbotx.hooks.events.ServerResponseEvent;
+import org.pircbotx.hooks.events.SetChannelBanEvent;
+import org.pircbotx.hooks.events.SetChannelKeyEvent;
+import org.pircbotx.hooks.events.SetChannelLimitEvent;
+import org.pircbotx.hooks.events.SetInviteOnlyEvent;
+import org.pircbotx.hooks.events.SetModeratedEvent;
+import org.pircbotx.hooks.events.SetNoExternalMessagesEvent;
+import org.pircbotx.hooks.events.SetPrivateEvent;
+import org.pircbotx.hooks.events.SetSecretEvent;
+import org.pircbotx.hooks.events.SetTopicProtectionEvent;
+import org.pircbotx.hooks.events.SocketConnectEvent;
+import org.pircbotx.hooks.events.SuperOpEvent;
+import org.pircbotx.hooks.events.TimeEvent;
+import org.pircbotx.hooks.events.TopicEvent;
+import org.pircbotx.hooks.events.UnknownEvent;
+import org.pircbotx.hooks.events.UserListEvent;
+import org.pircbotx.hooks.events.UserModeEvent;
+import org.pircbotx.hooks.events.VersionEvent;
+import org.pircbotx.hooks.events.VoiceEvent;
+import org.pircbotx.hooks.events.WhoisEvent;
+import org.pircbotx.hooks.types.GenericCTCPEvent;
+import org.pircbotx.hooks.types.GenericChannelEvent;
+import org.pircbotx.hooks.types.GenericChannelModeEvent;
+import org.pircbotx.hooks.types.GenericChannelUserEvent;
+import org.pircbotx.hooks.types.GenericDCCEvent;
+import org.pircbotx.hooks.types.GenericMessageEvent;
+import org.pircbotx.hooks.types.GenericUserEvent;
+import org.pircbotx.hooks.types.GenericUserModeEvent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * One of the {@code on*} methods of {@link ListenerAdapter}, along with a way to call it without
+ * reflection. Handlers are listed in the order in which {@link ListenerAdapter#onEvent(Event)}
+ * calls them: the method specific to the class of an event first, then the generic methods of the
+ * interfaces it implements.
+ *
+ * @author Emmanuel Cron
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+final class EventHandler {
+  /**
+   * Calls the {@code on*} method of a listener.
+   */
+  interface Invoker {
+    void invoke(ListenerAdapter listener, Event event) throws Exception;
+  }
+
+  /**
+   * Handlers of the specific event classes, by event class.
+   */
+  static final ImmutableMap<Class<?>, EventHandler> SPECIFIC_HANDLERS = byEventType(
+      new EventHandler("onAction", ActionEvent.class,
+          (l, e) -> l.onAction((ActionEvent) e)),
+      new EventHandler("onChannelInfo", ChannelInfoEvent.class,
+          (l, e) -> l.onChannelInfo((ChannelInfoEvent) e)),
+      new EventHandler("onConnect", ConnectEvent.class,
+          (l, e) -> l.onConnect((ConnectEvent) e)),
+      new EventHandler("onDisconnect", DisconnectEvent.class,
+          (l, e) -> l.onDisconnect((DisconnectEvent) e)),
+      new EventHandler("onFinger", FingerEvent.class,
+          (l, e) -> l.onFinger((FingerEvent) e)),
+      new EventHandler("onHalfOp", HalfOpEvent.class,
+          (l, e) -> l.onHalfOp((HalfOpEvent) e)),
+      new EventHandler("onIncomingChatRequest", IncomingChatRequestEvent.class,
+          (l, e) -> l.onIncomingChatRequest((IncomingChatRequestEvent) e)),
+      new EventHandler("onIncomingFileTransfer", IncomingFileTransferEvent.class,
+          (l, e) -> l.onIncomingFileTransfer((IncomingFileTransferEvent) e)),
+      new EventHandler("onInvite", InviteEvent.class,
+          (l, e) -> l.onInvite((InviteEvent) e)),
+      new EventHandler("onJoin", JoinEvent.class,
+          (l, e) -> l.onJoin((JoinEvent) e)),
+      new EventHandler("onKick", KickEvent.class,
+          (l, e) -> l.onKick((KickEvent) e)),
+      new EventHandler("onMessage", MessageEvent.class,
+          (l, e) -> l.onMessage((MessageEvent) e)),
+      new EventHandler("onMode", ModeEvent.class,
+          (l, e) -> l.onMode((ModeEvent) e)),
+      new EventHandler("onMotd", MotdEvent.class,
+          (l, e) -> l.onMotd((MotdEvent) e)),
+      new EventHandler("onNickAlreadyInUse", NickAlreadyInUseEvent.class,
+          (l, e) -> l.onNickAlreadyInUse((NickAlreadyInUseEvent) e)),
+      new EventHandler("onNickChange", NickChangeEvent.class,
+          (l, e) -> l.onNickChange((NickChangeEvent) e)),
+      new EventHandler("onNotice", NoticeEvent.class,
+          (l, e) -> l.onNotice((NoticeEvent) e)),
+      new EventHandler("onOp", OpEvent.class,
+          (l, e) -> l.onOp((OpEvent) e)),
+      new EventHandler("onOwner", OwnerEvent.class,
+          (l, e) -> l.onOwner((OwnerEvent) e)),
+      new EventHandler("onPart", PartEvent.class,
+          (l, e) -> l.onPart((PartEvent) e)),
+      new EventHandler("onPing", PingEvent.class,
+          (l, e) -> l.onPing((PingEvent) e)),
+      new EventHandler("onPrivateMessage", PrivateMessageEvent.class,
+          (l, e) -> l.onPrivateMessage((PrivateMessageEvent) e)),
+      new EventHandler("onQuit", QuitEvent.class,
+          (l, e) -> l.onQuit((QuitEvent) e)),
+      new EventHandler("onRemoveChannelBan", RemoveChannelBanEvent.class,
+          (l, e) -> l.onRemoveChannelBan((RemoveChannelBanEvent) e)),
+      new EventHandler("onRemoveChannelKey", RemoveChannelKeyEvent.class,
+          (l, e) -> l.onRemoveChannelKey((RemoveChannelKeyEvent) e)),
+      new EventHandler("onRemoveChannelLimit", RemoveChannelLimitEvent.class,
+          (l, e) -> l.onRemoveChannelLimit((RemoveChannelLimitEvent) e)),
+      new EventHandler("onRemoveInviteOnly", RemoveInviteOnlyEvent.class,
+          (l, e) -> l.onRemoveInviteOnly((RemoveInviteOnlyEvent) e)),
+      new EventHandler("onRemoveModerated", RemoveModeratedEvent.class,
+          (l, e) -> l.onRemoveModerated((RemoveModeratedEvent) e)),
+      new EventHandler("onRemoveNoExternalMessages", RemoveNoExternalMessagesEvent.class,
+          (l, e) -> l.onRemoveNoExternalMessages((RemoveNoExternalMessagesEvent) e)),
+      new EventHandler("onRemovePrivate", RemovePrivateEvent.class,
+          (l, e) -> l.onRemovePrivate((RemovePrivateEvent) e)),
+      new EventHandler("onRemoveSecret", RemoveSecretEvent.class,
+          (l, e) -> l.onRemoveSecret((RemoveSecretEvent) e)),
+      new EventHandler("onRemoveTopicProtection", RemoveTopicProtectionEvent.class,
+          (l, e) -> l.onRemoveTopicProtection((RemoveTopicProtectionEvent) e)),
+      new EventHandler("onServerPing", ServerPingEvent.class,
+          (l, e) -> l.onServerPing((ServerPingEvent) e)),
+      new EventHandler("onServerResponse", ServerResponseEvent.class,
+          (l, e) -> l.onServerResponse((ServerResponseEvent) e)),
+      new EventHandler("onSetChannelBan", SetChannelBanEvent.class,
+          (l, e) -> l.onSetChannelBan((SetChannelBanEvent) e)),
+      new EventHandler("onSetChannelKey", SetChannelKeyEvent.class,
+          (l, e) -> l.onSetChannelKey((SetChannelKeyEvent) e)),
+      new EventHandler("onSetChannelLimit", SetChannelLimitEvent.class,
+          (l, e) -> l.onSetChannelLimit((SetChannelLimitEvent) e)),
+      new EventHandler("onSetInviteOnly", SetInviteOnlyEvent.class,
+          (l, e) -> l.onSetInviteOnly((SetInviteOnlyEvent) e)),
+      new EventHandler("onSetModerated", SetModeratedEvent.class,
+          (l, e) -> l.onSetModerated((SetModeratedEvent) e)),
+      new EventHandler("onSetNoExternalMessages", SetNoExternalMessagesEvent.class,
+          (l, e) -> l.onSetNoExternalMessages((SetNoExternalMessagesEvent) e)),
+      new EventHandler("onSetPrivate", SetPrivateEvent.class,
+          (l, e) -> l.onSetPrivate((SetPrivateEvent) e)),
+      new EventHandler("onSetSecret", SetSecretEvent.class,
+          (l, e) -> l.onSetSecret((SetSecretEvent) e)),
+      new EventHandler("onSetTopicProtection", SetTopicProtectionEvent.class,
+          (l, e) -> l.onSetTopicProtection((SetTopicProtectionEvent) e)),
+      new EventHandler("onSocketConnect", SocketConnectEvent.class,
+          (l, e) -> l.onSocketConnect((SocketConnectEvent) e)),
+      new EventHandler("onSuperOp", SuperOpEvent.class,
+          (l, e) -> l.onSuperOp((SuperOpEvent) e)),
+      new EventHandler("onTime", TimeEvent.class,
+          (l, e) -> l.onTime((TimeEvent) e)),
+      new EventHandler("onTopic", TopicEvent.class,
+          (l, e) -> l.onTopic((TopicEvent) e)),
+      new EventHandler("onUnknown", UnknownEvent.class,
+          (l, e) -> l.onUnknown((UnknownEvent) e)),
+      new EventHandler("onUserList", UserListEvent.class,
+          (l, e) -> l.onUserList((UserListEvent) e)),
+      new EventHandler("onUserMode", UserModeEvent.class,
+          (l, e) -> l.onUserMode((UserModeEvent) e)),
+      new EventHandler("onVersion", VersionEvent.class,
+          (l, e) -> l.onVersion((VersionEvent) e)),
+      new EventHandler("onVoice", VoiceEvent.class,
+          (l, e) -> l.onVoice((VoiceEvent) e)),
+      new EventHandler("onWhois", WhoisEvent.class,
+          (l, e) -> l.onWhois((WhoisEvent) e)));
+
+  /**
+   * Handlers of the generic event interfaces.
+   */
+  static final ImmutableList<EventHandler> GENERIC_HANDLERS = ImmutableList.of(
+      new EventHandler("onGenericCTCP", GenericCTCPEvent.class,
+          (l, e) -> l.onGenericCTCP((GenericCTCPEvent) e)),
+      new EventHandler("onGenericUserMode", GenericUserModeEvent.class,
+          (l, e) -> l.onGenericUserMode((GenericUserModeEvent) e)),
+      new EventHandler("onGenericChannelMode", GenericChannelModeEvent.class,
+          (l, e) -> l.onGenericChannelMode((GenericChannelModeEvent) e)),
+      new EventHandler("onGenericDCC", GenericDCCEvent.class,
+          (l, e) -> l.onGenericDCC((GenericDCCEvent) e)),
+      new EventHandler("onGenericMessage", GenericMessageEvent.class,
+          (l, e) -> l.onGenericMessage((GenericMessageEvent) e)),
+      new EventHandler("onGenericUser", GenericUserEvent.class,
+          (l, e) -> l.onGenericUser((GenericUserEvent) e)),
+      new EventHandler("onGenericChannel", GenericChannelEvent.class,
+          (l, e) -> l.onGenericChannel((GenericChannelEvent) e)),
+      new EventHandler("onGenericChannelUser", GenericChannelUserEvent.class,
+          (l, e) -> l.onGenericChannelUser((GenericChannelUserEvent) e)));
+
+  private final String methodName;
+
+  private final Class<?> eventType;
+
+  private final Invoker invoker;
+
+  private EventHandler(String methodName, Class<?> eventType, Invoker invoker) {
+    this.methodName = methodName;
+    this.eventType = eventType;
+    this.invoker = invoker;
+  }
+
+  /**
+   * Returns whether this handler applies to events of the given class.
+   */
+  boolean handles(Class<?> eventClass) {
+    return eventType.isAssignableFrom(eventClass);
+  }
+
+  /**
+   * Returns whether the given listener class overrides the method of this handler, i.e. whether
+   * the listener cares about the events of this handler.
+   */
+  boolean isOverriddenBy(Class<?> listenerClass) {
+    try {
+      return listenerClass.getMethod(methodName, eventType).getDeclaringClass()
+          != ListenerAdapter.class;
+    } catch (NoSuchMethodException nsme) {
+      // Can't happen for subclasses of ListenerAdapter
+      return true;
+    }
+  }
+
+  /**
+   * Calls the method of this handler on the given listener.
+   */
+  void invoke(ListenerAdapter<? extends PircBotX> listener, Event<? extends PircBotX> event)
+      throws Exception {
+    invoker.invoke(checkNotNull(listener), event);
+  }
+
+  @Override
+  public String toString() {
+    return methodName;
+  }
+
+  // internal helpers
+
+  private static ImmutableMap<Class<?>, EventHandler> byEventType(EventHandler... handlers) {
+    ImmutableMap.Builder<Class<?>, EventHandler> byEventType = ImmutableMap.builder();
+    for (EventHandler handler : handlers) {
+      byEventType.put(handler.eventType, handler);
+    }
+    return byEventType.build();
+  }
+}
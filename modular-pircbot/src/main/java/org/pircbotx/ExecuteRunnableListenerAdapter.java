@@ -1,7 +1,22 @@
 package org.pircbotx;
 
-import org.pircbotx.PircBotX;
-import org.pircbotx.hooks.Listener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.ConnectEvent;
 import org.pircbotx.hooks.events.DisconnectEvent;
@@ -10,9 +25,18 @@ import org.pircbotx.listeners.StoppableListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * A special listener that starts and stop runnable listeners when the bot first connects to the
  * server and shuts them down when it completely disconnects from it.
+ * <p>
+ * Listeners are executed according to the {@link RunnableExecutionMode} of the bot. On shutdown,
+ * each listener is asked to stop and the bot waits for their completion until the shutdown timeout
+ * of the bot is reached; listeners still running at that time are interrupted.
+ * <p>
+ * Runnable listeners added to the bot once it has connected are started right away. Listeners
+ * removed from the bot are asked to stop, but are not waited for.
  *
  * @author Emmanuel Cron
  */
@@ -20,55 +44,157 @@ class ExecuteRunnableListenerAdapter extends ListenerAdapter<ExtendedPircBotX> {
   private static final Logger LOGGER = LoggerFactory
       .getLogger(ExecuteRunnableListenerAdapter.class);
 
+  // Maximum number of listeners waiting for a thread of the shared pool
+  private static final int SHARED_POOL_QUEUE_LIMIT = 32;
+
   private ThreadGroup threadGroup = new ThreadGroup(getClass().getSimpleName());
 
+  private ExecutorService executor;
+
+  private Map<RunnableListener, Future<?>> runningListeners =
+      new LinkedHashMap<RunnableListener, Future<?>>();
+
   private boolean listenersStarted;
 
+  private boolean listenersStopped;
+
   @Override
-  public void onConnect(ConnectEvent<ExtendedPircBotX> event) {
+  public synchronized void onConnect(ConnectEvent<ExtendedPircBotX> event) {
     if (!listenersStarted) {
-      for (Listener<PircBotX> listener : event.getBot().getConfiguration().getListenerManager()
-          .getListeners()) {
-        if (listener instanceof RunnableListener) {
-          RunnableListener runnableListener = (RunnableListener) listener;
-          runnableListener.setBot(event.getBot());
-          LOGGER.info("Launching listener thread: {}", runnableListener);
-          new Thread(threadGroup, runnableListener).start();
-        }
+      RunnableExecutionMode executionMode = event.getBot().getRunnableExecutionMode();
+      LOGGER.info("Runnable listeners will be executed using {}", executionMode);
+      executor = createExecutor(executionMode, event.getBot().getSharedPoolThreads());
+
+      for (RunnableListener runnableListener : event.getBot().getListenerRegistry()
+          .getRunnableListeners()) {
+        launch(event.getBot(), runnableListener);
       }
       listenersStarted = true;
     }
   }
 
   @Override
-  public void onDisconnect(DisconnectEvent<ExtendedPircBotX> event) {
+  public synchronized void onDisconnect(DisconnectEvent<ExtendedPircBotX> event) {
     if (!event.getBot().isReconnectStopped()) {
       // Not a requested quit
       return;
     }
 
     // Quit requested, stopping threads and exiting
-    for (Listener<PircBotX> listener : event.getBot().getConfiguration().getListenerManager()
-        .getListeners()) {
-      if (listener instanceof StoppableListener) {
-        StoppableListener stoppableListener = (StoppableListener) listener;
-        stoppableListener.stop();
-      }
+    listenersStopped = true;
+    for (StoppableListener stoppableListener : event.getBot().getListenerRegistry()
+        .getStoppableListeners()) {
+      stoppableListener.stop();
     }
 
-    int stopChecks = 0;
-    do {
-      stopChecks++;
-      // Wait a maximum of 15s
+    ShutdownReport report = awaitListeners(event.getBot().getShutdownTimeoutMillis());
+    event.getBot().setShutdownReport(report);
+    if (report.isClean()) {
+      LOGGER.info("All runnable listeners stopped in {}ms", report.getElapsedMillis());
+    } else {
+      LOGGER.warn("Runnable listeners did not stop within {}ms and were interrupted: {}",
+          report.getElapsedMillis(), report.getOverrunListeners());
+    }
+  }
+
+  /**
+   * Starts a runnable listener added to the bot, if the other runnable listeners have already been
+   * started. Otherwise, it will be started along with them.
+   */
+  synchronized void start(ExtendedPircBotX bot, RunnableListener runnableListener) {
+    if (listenersStarted && !listenersStopped) {
+      launch(bot, runnableListener);
+    }
+  }
+
+  /**
+   * Asks a listener removed from the bot to stop. The bot will not wait for its completion when it
+   * shuts down.
+   */
+  synchronized void stop(StoppableListener stoppableListener) {
+    stoppableListener.stop();
+    runningListeners.remove(stoppableListener);
+  }
+
+  /**
+   * Waits until all runnable listeners have completed, but no longer than the given timeout.
+   * Listeners still running after the timeout are interrupted.
+   */
+  ShutdownReport awaitListeners(long timeoutMillis) {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+    List<RunnableListener> overrunListeners = new ArrayList<RunnableListener>();
+    for (Entry<RunnableListener, Future<?>> runningListener : runningListeners.entrySet()) {
       try {
-        Thread.sleep(5000);
+        // Returns immediately for listeners that have already completed
+        runningListener.getValue().get(Math.max(0L, deadline - System.nanoTime()),
+            TimeUnit.NANOSECONDS);
+      } catch (TimeoutException te) {
+        overrunListeners.add(runningListener.getKey());
+      } catch (ExecutionException | CancellationException e) {
+        // Already logged when the listener failed, or already interrupted
       } catch (InterruptedException ie) {
-        LOGGER.error("Could not wait until threads were stopped, some might be killed", ie);
+        LOGGER.error("Interrupted while waiting for listeners to stop, interrupting them", ie);
+        Thread.currentThread().interrupt();
+        overrunListeners.add(runningListener.getKey());
       }
-    } while (stopChecks < 3 && threadGroup.activeCount() > 0);
+    }
+
+    // Stuck listeners will not stop by themselves
+    for (RunnableListener overrunListener : overrunListeners) {
+      runningListeners.get(overrunListener).cancel(true);
+    }
+    if (executor != null) {
+      executor.shutdown();
+    }
+
+    return new ShutdownReport(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+        overrunListeners);
+  }
+
+  // internal helpers
 
-    if (threadGroup.activeCount() > 0) {
-      LOGGER.warn("One or more thread are still running, they will be killed");
+  private void launch(ExtendedPircBotX bot, RunnableListener runnableListener) {
+    runnableListener.setBot(bot);
+    LOGGER.info("Launching listener thread: {}", runnableListener);
+    try {
+      runningListeners.put(runnableListener, executor.submit(() -> run(runnableListener)));
+    } catch (RejectedExecutionException ree) {
+      LOGGER.error("Shared pool is full, listener " + runnableListener + " was not started", ree);
     }
   }
+
+  private void run(RunnableListener runnableListener) {
+    try {
+      runnableListener.run();
+    } catch (RuntimeException re) {
+      // Would otherwise be silently kept in the future of the listener
+      LOGGER.error("Listener " + runnableListener + " stopped unexpectedly", re);
+    }
+  }
+
+  private ExecutorService createExecutor(RunnableExecutionMode executionMode,
+      int sharedPoolThreads) {
+    switch (executionMode) {
+      case VIRTUAL_THREADS:
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+            .name("runnable-listener-", 1).factory());
+      case SHARED_POOL:
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(sharedPoolThreads, sharedPoolThreads, 60L,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(SHARED_POOL_QUEUE_LIMIT),
+            createPlatformThreadFactory());
+        // Listeners usually run for the lifetime of the bot, don't keep idle threads around
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+      case PLATFORM_THREADS:
+      default:
+        return Executors.newThreadPerTaskExecutor(createPlatformThreadFactory());
+    }
+  }
+
+  private ThreadFactory createPlatformThreadFactory() {
+    return new ThreadFactoryBuilder().setNameFormat("runnable-listener-%d")
+        .setThreadFactory(runnable -> new Thread(threadGroup, runnable)).build();
+  }
 }
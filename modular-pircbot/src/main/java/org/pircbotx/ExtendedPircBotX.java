@@ -1,25 +1,37 @@
 package org.pircbotx;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.pircbotx.Channel;
 import org.pircbotx.Configuration;
 import org.pircbotx.PircBotX;
 import org.pircbotx.User;
+import org.pircbotx.exception.IrcException;
 import org.pircbotx.hooks.Listener;
 import org.pircbotx.listeners.HelpListener;
 import org.pircbotx.listeners.PrivateListener;
 import org.pircbotx.listeners.PublicListener;
 import org.pircbotx.listeners.RunnableListener;
+import org.pircbotx.listeners.ScheduledListener;
+import org.pircbotx.listeners.StoppableListener;
 import org.pircbotx.listeners.TriggerableListener;
+import org.pircbotx.listeners.WarmUpListener;
+import org.pircbotx.output.OutputRaw;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * An extended {@link PircBotX} that supports triggerable and runnable listeners.
@@ -28,17 +40,71 @@ import com.google.common.base.Strings;
  * some background work while the bot is running. The bot will automatically run and stop these
  * listeners when it connects to or completely quits from the IRC server.
  * <p>
+ * Listeners that only need to do some work periodically should rather implement
+ * {@link ScheduledListener}: all of them share the scheduler of the bot instead of owning a thread.
+ * Listeners that need to load data before they can work should implement {@link WarmUpListener}:
+ * they are warmed up in parallel while the bot connects.
+ * <p>
  * Listeners can be made triggerable by extending {@link PrivateListener} and/or
- * {@link PublicListener} and implementing the appropriate trigger methods. Trigger detection is
- * automatically handled by the bot.
+ * {@link PublicListener} and implementing the appropriate trigger methods. Trigger detection,
+ * including aliases, commands addressed to the bot and their arguments, is automatically handled by
+ * the bot.
  * <p>
  * You can use your listeners by adding them to the {@link Configuration} given to the constructor
  * of this class. For example, you can have help support by adding the {@link HelpListener} to this
- * bot.
+ * bot. Listeners can also be added and removed while the bot is running, with
+ * {@link #addListener(Listener)} and {@link #removeListener(Listener)}.
+ * <p>
+ * When the bot has many listeners, give it a {@link SubscriptionListenerManager} through the
+ * {@link Configuration}: events are then only dispatched to the listeners that handle them. Use a
+ * {@link ChannelOrderedListenerManager} instead if your listeners need to see the events of each
+ * channel in order.
  *
  * @author Emmanuel Cron
  */
 public class ExtendedPircBotX extends PircBotX {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExtendedPircBotX.class);
+
+  private volatile ListenerRegistry listenerRegistry;
+
+  private final ExecuteRunnableListenerAdapter executeRunnableListenerAdapter =
+      new ExecuteRunnableListenerAdapter();
+
+  private final ScheduledListenerAdapter scheduledListenerAdapter = new ScheduledListenerAdapter();
+
+  private final TriggerListenerAdapter triggerListenerAdapter;
+
+  private final ListenerWarmUp listenerWarmUp = new ListenerWarmUp();
+
+  private final TriggerRateLimiter triggerRateLimiter = new TriggerRateLimiter();
+
+  private volatile HelpCache helpCache;
+
+  private volatile OutboundQueue outboundQueue;
+
+  private volatile PrioritizedOutputRaw prioritizedOutputRaw;
+
+  private volatile AnnouncementBuffer announcementBuffer;
+
+  // Created on first use, so that this bot does not escape from its constructor
+  private volatile WriteCoalescer writeCoalescer;
+
+  // Created on first use, like the write coalescer
+  private volatile BatchedOutput batchedOutput;
+
+  private volatile RunnableExecutionMode runnableExecutionMode =
+      RunnableExecutionMode.PLATFORM_THREADS;
+
+  private volatile int sharedPoolThreads = 4;
+
+  private volatile long shutdownTimeoutMillis = TimeUnit.SECONDS.toMillis(15);
+
+  private volatile ShutdownReport shutdownReport;
+
+  private int schedulerThreads = 2;
+
+  private ScheduledExecutorService scheduler;
+
   /**
    * Creates a new extended {@link PircBotX} using the given configuration to configure the bot.
    * This method makes sure runnable and triggerable listeners are correctly detected.
@@ -46,45 +112,436 @@ public class ExtendedPircBotX extends PircBotX {
   public ExtendedPircBotX(Configuration<PircBotX> configuration) {
     super(configuration);
 
-    boolean hasRunnableListener = false;
-    boolean hasTriggerableListener = false;
-    for (Listener<PircBotX> listener : getConfiguration().getListenerManager().getListeners()) {
-      if (listener instanceof RunnableListener && !hasRunnableListener) {
-        configuration.getListenerManager().addListener(new ExecuteRunnableListenerAdapter());
-        hasRunnableListener = true;
-      }
-      if (listener instanceof TriggerableListener && !hasTriggerableListener) {
-        configuration.getListenerManager().addListener(new TriggerListenerAdapter());
-        hasTriggerableListener = true;
-      }
+    // Always added since listeners can be added later on
+    triggerListenerAdapter = new TriggerListenerAdapter(triggerRateLimiter);
+    configuration.getListenerManager().addListener(executeRunnableListenerAdapter);
+    configuration.getListenerManager().addListener(scheduledListenerAdapter);
+    configuration.getListenerManager().addListener(triggerListenerAdapter);
 
-      if (listener instanceof PublicListener) {
-        PublicListener publicListener = (PublicListener) listener;
-        checkState(!Strings.isNullOrEmpty(publicListener.getTriggerMessage()),
-            "Public listener requires a trigger message: %s", listener.getClass().getSimpleName());
-      }
-      if (listener instanceof PrivateListener) {
-        PrivateListener publicListener = (PrivateListener) listener;
-        checkState(!Strings.isNullOrEmpty(publicListener.getPrivateTriggerMessage()),
-            "Private listener requires a trigger message: %s", listener.getClass().getSimpleName());
-      }
+    // Triggers are known now, classify listeners and build their tries once for all
+    listenerRegistry = ListenerRegistry.build(configuration.getListenerManager().getListeners());
+  }
+
+  /**
+   * Adds a listener to this bot, even while it is connected. Its triggers and help are available
+   * right away; a runnable or scheduled listener is started right away if the bot has already
+   * connected to the server, or when it first connects otherwise. The same goes for the warm-up of
+   * a {@link WarmUpListener}.
+   *
+   * @param listener the listener to add
+   * @return {@code true} if the listener was added, {@code false} if it was already there
+   * @throws IllegalStateException if the listener is triggerable but has no trigger
+   */
+  public synchronized boolean addListener(Listener<?> listener) {
+    checkNotNull(listener, "No listener specified");
+    ListenerRegistry.checkTriggers(listener);
+
+    if (!getConfiguration().getListenerManager().addListener(listener)) {
+      return false;
     }
+    updateListenerRegistry();
+
+    if (listener instanceof RunnableListener) {
+      executeRunnableListenerAdapter.start(this, (RunnableListener) listener);
+    }
+    if (listener instanceof ScheduledListener) {
+      scheduledListenerAdapter.schedule(this, (ScheduledListener) listener);
+    }
+    if (listener instanceof WarmUpListener && listenerWarmUp.isStarted()) {
+      listenerWarmUp.warmUp((WarmUpListener) listener);
+    }
+    return true;
   }
 
-  public boolean isUserOpOnAnyJoinedChannel(User user) {
-    Set<Channel> channels = getUserBot().getChannels();
-    // User may be found on any channel
-    for (Channel channel : channels) {
-      Set<User> ops = channel.getOps();
-      for (User op : ops) {
-        // If the user is found
-        if (op.equals(user)) {
-          return true;
-        }
-      }
+  /**
+   * Removes a listener from this bot, even while it is connected. It can't be triggered anymore
+   * and disappears from the help; a scheduled listener is not executed anymore and a stoppable
+   * listener is asked to stop.
+   *
+   * @param listener the listener to remove
+   * @return {@code true} if the listener was removed, {@code false} if it was not a listener of
+   *         this bot
+   */
+  public synchronized boolean removeListener(Listener<?> listener) {
+    checkNotNull(listener, "No listener specified");
+    if (!getConfiguration().getListenerManager().removeListener(listener)) {
+      return false;
+    }
+    updateListenerRegistry();
+
+    if (listener instanceof ScheduledListener) {
+      scheduledListenerAdapter.cancel((ScheduledListener) listener);
+    }
+    if (listener instanceof StoppableListener) {
+      executeRunnableListenerAdapter.stop((StoppableListener) listener);
+    }
+    if (listener instanceof TriggerableListener) {
+      triggerListenerAdapter.removeBulkhead((TriggerableListener) listener);
+      triggerRateLimiter.removeListener((TriggerableListener) listener);
+    }
+    if (listener instanceof WarmUpListener) {
+      listenerWarmUp.remove((WarmUpListener) listener);
+    }
+    return true;
+  }
+
+  /**
+   * Starts warming up the {@link WarmUpListener}s of this bot in parallel, then connects to the
+   * server while they are warming up.
+   */
+  @Override
+  public void startBot() throws IOException, IrcException {
+    listenerWarmUp.start(listenerRegistry.getWarmUpListeners());
+    super.startBot();
+  }
+
+  /**
+   * Sets how many listeners can be warmed up at the same time. This must be called before the bot
+   * is started; by default, as many listeners as there are processors are warmed up at once.
+   *
+   * @param parallelism the maximum number of listeners warmed up at the same time
+   */
+  public void setWarmUpParallelism(int parallelism) {
+    checkArgument(parallelism > 0, "Warm-up parallelism must be > 0");
+    listenerWarmUp.setParallelism(parallelism);
+  }
+
+  /**
+   * Returns whether the given listener has completed its warm-up. Listeners that don't need any
+   * warm-up are always ready.
+   */
+  public boolean isWarmedUp(Listener<?> listener) {
+    if (!(listener instanceof WarmUpListener)) {
+      return true;
+    }
+    CompletableFuture<Void> warmUp = listenerWarmUp.get((WarmUpListener) listener);
+    return warmUp != null && warmUp.isDone();
+  }
+
+  /**
+   * Returns how runnable listeners are executed.
+   */
+  public RunnableExecutionMode getRunnableExecutionMode() {
+    return runnableExecutionMode;
+  }
+
+  /**
+   * Sets how runnable listeners are executed. This must be called before the bot connects to the
+   * server for the first time; by default, each listener runs in its own platform thread.
+   *
+   * @param runnableExecutionMode the execution mode to use
+   */
+  public void setRunnableExecutionMode(RunnableExecutionMode runnableExecutionMode) {
+    this.runnableExecutionMode =
+        checkNotNull(runnableExecutionMode, "No runnable execution mode specified");
+  }
+
+  /**
+   * Returns the number of threads of the pool running the runnable listeners in the
+   * {@link RunnableExecutionMode#SHARED_POOL} mode.
+   */
+  public int getSharedPoolThreads() {
+    return sharedPoolThreads;
+  }
+
+  /**
+   * Sets the number of threads of the pool running the runnable listeners in the
+   * {@link RunnableExecutionMode#SHARED_POOL} mode, i.e. the number of these listeners that can
+   * run at the same time. This must be called before the bot connects to the server for the first
+   * time; by default, 4 threads are used.
+   *
+   * @param sharedPoolThreads the number of threads of the pool
+   */
+  public void setSharedPoolThreads(int sharedPoolThreads) {
+    checkArgument(sharedPoolThreads > 0, "Shared pool needs at least one thread");
+    this.sharedPoolThreads = sharedPoolThreads;
+  }
+
+  /**
+   * Returns the scheduler shared by the scheduled listeners of this bot. Other listeners may use it
+   * for their own short periodic or delayed tasks. The scheduler is shut down when the bot
+   * completely disconnects from the server.
+   */
+  public synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(schedulerThreads, new ThreadFactoryBuilder()
+              .setNameFormat("scheduler-%d").setDaemon(true).build());
+      // Don't keep cancelled tasks around until they would have been executed
+      executor.setRemoveOnCancelPolicy(true);
+      scheduler = executor;
+    }
+    return scheduler;
+  }
+
+  /**
+   * Sets how many threads are used by the shared scheduler of this bot. This must be called before
+   * the bot connects to the server for the first time; by default, 2 threads are used.
+   *
+   * @param schedulerThreads the number of threads of the scheduler
+   */
+  public synchronized void setSchedulerThreads(int schedulerThreads) {
+    checkArgument(schedulerThreads > 0, "Scheduler needs at least one thread");
+    checkState(scheduler == null, "Scheduler has already been started");
+    this.schedulerThreads = schedulerThreads;
+  }
+
+  /**
+   * Returns the maximum time, in milliseconds, that the bot waits for runnable listeners to stop
+   * when it shuts down.
+   */
+  public long getShutdownTimeoutMillis() {
+    return shutdownTimeoutMillis;
+  }
+
+  /**
+   * Sets the maximum time that the bot waits for runnable listeners to stop when it shuts down.
+   * Listeners still running after this time are interrupted. The default timeout is 15 seconds.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   */
+  public void setShutdownTimeout(long timeout, TimeUnit unit) {
+    checkArgument(timeout >= 0, "Shutdown timeout can't be negative");
+    this.shutdownTimeoutMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns how the runnable listeners stopped the last time the bot was shut down.
+   *
+   * @return the report of the last shutdown, or {@code null} if the bot has not been shut down yet
+   */
+  public ShutdownReport getShutdownReport() {
+    return shutdownReport;
+  }
+
+  /**
+   * Makes the triggers of each triggerable listener run in its own bounded executor (or
+   * "bulkhead"), so that a slow listener cannot block the processing of other events. By default,
+   * triggers are executed directly by the thread that dispatches the events.
+   *
+   * @param policy the policy used for the bulkheads of all listeners that do not have their own
+   *        policy; {@code null} to execute their triggers directly again
+   */
+  public void setTriggerBulkheads(BulkheadPolicy policy) {
+    triggerListenerAdapter.setDefaultBulkheadPolicy(policy);
+  }
+
+  /**
+   * Makes the triggers of the given listener run in its own bounded executor, using a specific
+   * policy. This policy overrides the one given to {@link #setTriggerBulkheads(BulkheadPolicy)}.
+   *
+   * @param listener the listener that should run in a bulkhead
+   * @param policy the policy of the bulkhead of this listener
+   */
+  public void setTriggerBulkhead(TriggerableListener listener, BulkheadPolicy policy) {
+    triggerListenerAdapter.setBulkheadPolicy(listener, policy);
+  }
+
+  /**
+   * Returns the bulkhead executing the triggers of the given listener, for monitoring purposes.
+   *
+   * @return the bulkhead of the listener, or {@code null} if it has not been triggered in a
+   *         bulkhead yet
+   */
+  public ListenerBulkhead getTriggerBulkhead(TriggerableListener listener) {
+    return triggerListenerAdapter.getBulkhead(listener);
+  }
+
+  /**
+   * Limits how often the triggers of all listeners can be executed, or removes the limits if
+   * {@code null} is given. Triggers exceeding the limits are silently dropped. Listeners having
+   * their own limit, set with {@link #setTriggerRateLimit(TriggerableListener, RateLimit)}, keep
+   * it. There are no limits by default.
+   *
+   * @param limit the limit of each listener, or {@code null} to remove limits
+   */
+  public void setTriggerRateLimits(RateLimit limit) {
+    triggerRateLimiter.setDefaultLimit(limit);
+  }
+
+  /**
+   * Limits how often the triggers of the given listener can be executed. This limit overrides the
+   * one given to {@link #setTriggerRateLimits(RateLimit)}.
+   *
+   * @param listener the listener to limit
+   * @param limit the limit of the listener
+   */
+  public void setTriggerRateLimit(TriggerableListener listener, RateLimit limit) {
+    triggerRateLimiter.setLimit(listener, limit);
+  }
+
+  /**
+   * Returns the rate limiter of triggers, for monitoring purposes.
+   */
+  public TriggerRateLimiter getTriggerRateLimiter() {
+    return triggerRateLimiter;
+  }
+
+  /**
+   * Enables flood control on this bot. Lines are then queued and sent at the pace allowed by the
+   * given policy, which replaces the message delay of the configuration. Kicks, mode changes and
+   * other commands are sent first, then replies to users, then announcements (see
+   * {@link MessagePriority}).
+   * <p>
+   * Flood control is disabled by default and can only be enabled once.
+   *
+   * @param policy how lines are paced and queued
+   */
+  public synchronized void setFloodControl(FloodControlPolicy policy) {
+    checkNotNull(policy, "No flood control policy specified");
+    checkState(outboundQueue == null, "Flood control has already been enabled");
+
+    OutboundQueue queue = new OutboundQueue(this, policy);
+    prioritizedOutputRaw = new PrioritizedOutputRaw(this, queue);
+    outboundQueue = queue;
+  }
+
+  /**
+   * Returns the queue of lines waiting to be sent, for monitoring purposes.
+   *
+   * @return the queue, or {@code null} if flood control is not enabled
+   */
+  public OutboundQueue getOutboundQueue() {
+    return outboundQueue;
+  }
+
+  /**
+   * Runs the given sender so that all the lines it sends from the current thread are queued with
+   * the given priority. This is useful to send announcements or help without delaying the replies
+   * to other users. If flood control is not enabled, the sender is simply run.
+   *
+   * @param priority the priority of the lines sent
+   * @param sender the code sending the lines
+   */
+  public void sendWithPriority(MessagePriority priority, Runnable sender) {
+    checkNotNull(priority, "No priority specified");
+    OutboundQueue queue = outboundQueue;
+    if (queue == null) {
+      sender.run();
+    } else {
+      queue.runWithPriority(priority, sender);
     }
-    // User not found or not OP on any channel
-    return false;
+  }
+
+  /**
+   * Enables or disables write coalescing. When enabled, the lines sent during a short tick are
+   * written to the socket together, which saves many small writes under heavy load; a failure to
+   * write them is then thrown to the sender of the next line. When disabled, each line is written
+   * and flushed as soon as it is sent, and a failure to write it is thrown to its sender.
+   * Coalescing is disabled by default.
+   *
+   * @param enabled {@code true} to coalesce writes, {@code false} to write lines immediately
+   */
+  public void setWriteCoalescing(boolean enabled) {
+    getWriteCoalescer().setEnabled(enabled);
+  }
+
+  /**
+   * Sets the maximum time that a line waits for other lines to be written with it when write
+   * coalescing is enabled. The default tick is 5 milliseconds.
+   *
+   * @param tick the maximum time a line waits
+   * @param unit the unit of the tick
+   */
+  public void setWriteCoalescingTick(long tick, TimeUnit unit) {
+    checkArgument(tick > 0, "Tick must be > 0");
+    getWriteCoalescer().setTickNanos(unit.toNanos(tick));
+  }
+
+  /**
+   * Returns the layer that coalesces writes to the socket, for monitoring purposes.
+   */
+  public WriteCoalescer getWriteCoalescer() {
+    WriteCoalescer coalescer = writeCoalescer;
+    return coalescer != null ? coalescer : createWriteCoalescer();
+  }
+
+  /**
+   * Makes the bot keep the announcements it can't deliver, because it is disconnected or has not
+   * joined their channel yet, and replay them once it has joined their channel again. Announcements
+   * are kept and replayed as described by the given policy.
+   * <p>
+   * Announcements are dropped when they can't be delivered by default. Buffering can only be
+   * enabled once.
+   *
+   * @param policy how announcements are kept and replayed
+   * @see #announce(String, String)
+   */
+  public synchronized void setAnnouncementBuffer(AnnouncementBufferPolicy policy) {
+    checkNotNull(policy, "No announcement buffer policy specified");
+    checkState(announcementBuffer == null, "Announcement buffer has already been enabled");
+
+    AnnouncementBuffer buffer = new AnnouncementBuffer(this, policy);
+    addListener(new AnnouncementReplayListenerAdapter(buffer));
+    announcementBuffer = buffer;
+  }
+
+  /**
+   * Returns the announcements waiting to be delivered, for monitoring purposes.
+   *
+   * @return the buffer, or {@code null} if announcements are not buffered
+   */
+  public AnnouncementBuffer getAnnouncementBuffer() {
+    return announcementBuffer;
+  }
+
+  /**
+   * Announces something in all the channels joined by the bot. Announcements are messages that are
+   * not a reply to a user, such as news or scheduled posts: they are sent with the
+   * {@link MessagePriority#ANNOUNCEMENT} priority and, if an announcement buffer is enabled, kept
+   * until they can be delivered.
+   *
+   * @param text the text of the announcement
+   */
+  public void announce(String text) {
+    announce(null, text);
+  }
+
+  /**
+   * Announces something in the given channel (see {@link #announce(String)}).
+   *
+   * @param channel the channel in which to announce, or {@code null} for all joined channels
+   * @param text the text of the announcement
+   */
+  public void announce(String channel, String text) {
+    checkArgument(!Strings.isNullOrEmpty(text), "Announcement can't be null or empty");
+
+    AnnouncementBuffer buffer = announcementBuffer;
+    if (buffer != null) {
+      buffer.announce(channel, text);
+      return;
+    }
+
+    if (!isConnected()) {
+      LOGGER.debug("Not connected, dropping announcement: {}", text);
+      return;
+    }
+    sendAnnouncement(channel, text);
+  }
+
+  /**
+   * Returns the output used to send messages and notices using as few lines as possible, either by
+   * sending the same text to several targets at once or by packing short lines together.
+   */
+  public BatchedOutput sendBatched() {
+    BatchedOutput output = batchedOutput;
+    return output != null ? output : createBatchedOutput();
+  }
+
+  @Override
+  public OutputRaw sendRaw() {
+    OutputRaw outputRaw = prioritizedOutputRaw;
+    return outputRaw != null ? outputRaw : super.sendRaw();
+  }
+
+  /**
+   * Returns whether the given user is op on any of the channels joined by the bot. This check is
+   * answered from the state of the channels kept by the bot, which is updated from the server
+   * before any event is dispatched to listeners.
+   */
+  public boolean isUserOpOnAnyJoinedChannel(User user) {
+    return !user.getChannelsOpIn().isEmpty();
   }
 
   /**
@@ -94,17 +551,46 @@ public class ExtendedPircBotX extends PircBotX {
     return reconnectStopped;
   }
 
+  @Override
+  protected void sendRawLineToServer(String line) {
+    int maxLength = getConfiguration().getMaxLineLength() - 2;
+    getWriteCoalescer().write(line.length() > maxLength ? line.substring(0, maxLength) : line);
+  }
+
+  @Override
+  protected void shutdown(boolean noReconnect) {
+    // Lines already sent must reach the server before the socket is closed
+    WriteCoalescer coalescer = writeCoalescer;
+    if (coalescer != null) {
+      coalescer.flush();
+    }
+
+    OutboundQueue queue = outboundQueue;
+    if (queue != null) {
+      // Lines were meant for the lost connection
+      queue.clear();
+    }
+
+    super.shutdown(noReconnect);
+
+    if (reconnectStopped) {
+      listenerWarmUp.shutdown();
+      if (coalescer != null) {
+        coalescer.shutdown();
+      }
+      if (queue != null) {
+        queue.shutdown();
+      }
+    }
+  }
+
   /**
    * Returns the trigger used to display the help.
    */
   public String getHelpTrigger() {
-    for (Listener<PircBotX> listener : getConfiguration().getListenerManager().getListeners()) {
-      if (listener instanceof HelpListener) {
-        return ((HelpListener) listener).getTriggerMessage();
-      }
-    }
+    HelpListener helpListener = listenerRegistry.getHelpListener();
     // No help listener, no help trigger
-    return null;
+    return helpListener != null ? helpListener.getTriggerMessage() : null;
   }
 
   /**
@@ -115,49 +601,92 @@ public class ExtendedPircBotX extends PircBotX {
    * @param user user that requested to display the help
    * @param inPrivate {@code true} if the help request was made in a private chat, {@code false} if
    *        it was made on a public channel
+   * @return the lines of help, rendered once and shared by all requests of the same kind
    */
   public List<String> buildHelp(User user, boolean inPrivate) {
-    List<String> help = new ArrayList<String>();
-
-    Map<String, String> helpMap = new TreeMap<String, String>();
+    HelpCache help = getHelpCache();
     if (inPrivate) {
-      // Private
-      boolean isUserOp = isUserOpOnAnyJoinedChannel(user);
-
-      for (Listener<PircBotX> listener : getConfiguration().getListenerManager().getListeners()) {
-        if (listener instanceof PrivateListener) {
-          PrivateListener privateListener = (PrivateListener) listener;
-          if (privateListener.isOpRequired() && !isUserOp) {
-            // Listener can only be displayed to ops
-            continue;
-          }
-
-          String trigger = privateListener.getPrivateTriggerMessage();
-          helpMap.put(trigger, buildHelpLine(trigger, privateListener));
-        }
-      }
-    } else {
-      // Public
-      for (Listener<PircBotX> listener : getConfiguration().getListenerManager().getListeners()) {
-        if (listener instanceof PublicListener) {
-          PublicListener publicListener = (PublicListener) listener;
-          String trigger = "!" + publicListener.getTriggerMessage();
-          helpMap.put(trigger, buildHelpLine(trigger, publicListener));
+      // Listeners that are op-only are only displayed to ops
+      return help.getPrivateHelp(isUserOpOnAnyJoinedChannel(user));
+    }
+    return help.getPublicHelp();
+  }
+
+  // internal helpers
+
+  /**
+   * Returns the listeners of this bot, classified by kind. The returned registry is never modified:
+   * a new one is built each time listeners are added or removed.
+   */
+  ListenerRegistry getListenerRegistry() {
+    return listenerRegistry;
+  }
+
+  /**
+   * Sends an announcement right away, to the given channel or to all joined channels if the channel
+   * is {@code null}.
+   */
+  void sendAnnouncement(String channel, String text) {
+    sendWithPriority(MessagePriority.ANNOUNCEMENT, () -> {
+      if (channel == null) {
+        List<String> channels = new ArrayList<String>();
+        for (Channel joinedChannel : getUserBot().getChannels()) {
+          channels.add(joinedChannel.getName());
         }
+        sendBatched().message(channels, text);
+      } else {
+        sendIRC().message(channel, text);
       }
+    });
+  }
+
+  /**
+   * Returns the warm-up of the listeners of this bot.
+   */
+  ListenerWarmUp getListenerWarmUp() {
+    return listenerWarmUp;
+  }
+
+  /**
+   * Discards the rendered help, so that it is rendered again on next request. Must be called when
+   * the listeners of the bot change.
+   */
+  void invalidateHelpCache() {
+    helpCache = null;
+  }
+
+  private synchronized WriteCoalescer createWriteCoalescer() {
+    if (writeCoalescer == null) {
+      writeCoalescer = new WriteCoalescer(this);
     }
-    help.addAll(new TreeMap<String, String>(helpMap).values());
+    return writeCoalescer;
+  }
 
+  private synchronized BatchedOutput createBatchedOutput() {
+    if (batchedOutput == null) {
+      batchedOutput = new BatchedOutput(this);
+    }
+    return batchedOutput;
+  }
+
+  private HelpCache getHelpCache() {
+    HelpCache help = helpCache;
+    if (help == null) {
+      // Rendered lazily since help texts may be set after the bot has been created
+      ListenerRegistry registry = listenerRegistry;
+      help = HelpCache.build(registry.getPublicListeners(), registry.getPrivateListeners());
+      helpCache = help;
+    }
     return help;
   }
 
-  // internal helpers
+  private void updateListenerRegistry() {
+    listenerRegistry =
+        ListenerRegistry.build(getConfiguration().getListenerManager().getListeners());
+    invalidateHelpCache();
+  }
 
-  private String buildHelpLine(String trigger, TriggerableListener listener) {
-    if (!Strings.isNullOrEmpty(listener.getHelpText())) {
-      // We suppose commands are never bigger than 20 characters
-      return Strings.padEnd(trigger, 20, ' ') + listener.getHelpText();
-    }
-    return trigger;
+  void setShutdownReport(ShutdownReport shutdownReport) {
+    this.shutdownReport = shutdownReport;
   }
 }
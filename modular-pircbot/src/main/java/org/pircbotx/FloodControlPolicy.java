@@ -0,0 +1,105 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how an {@link ExtendedPircBotX} paces the lines it sends when flood control is
+ * enabled.
+ * <p>
+ * Lines are sent following a token bucket: the bot can send a burst of lines at once, then one
+ * line each time the refill period has elapsed. Most IRC servers tolerate a burst of about 5 lines
+ * followed by one line every 2 seconds, which is what {@link #DEFAULT} uses.
+ * <p>
+ * Lines waiting to be sent are queued by {@link MessagePriority}, each class having its own bounded
+ * queue.
+ *
+ * @author Emmanuel Cron
+ */
+public final class FloodControlPolicy {
+  /**
+   * What to do with a line when the queue of its priority class is full.
+   *
+   * @author Emmanuel Cron
+   */
+  public enum OverflowPolicy {
+    /**
+     * The new line is dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * The oldest waiting line of the same class is dropped to make room for the new one.
+     */
+    DROP_OLDEST
+  }
+
+  /**
+   * A policy matching the flood limits of most IRC servers: a burst of 5 lines, then one line
+   * every 2 seconds, with up to 50 waiting lines per priority class, dropping the oldest lines and
+   * merging duplicates.
+   */
+  public static final FloodControlPolicy DEFAULT =
+      new FloodControlPolicy(5, 2, TimeUnit.SECONDS, 50, OverflowPolicy.DROP_OLDEST, true);
+
+  private final int burst;
+
+  private final long refillNanos;
+
+  private final int queueLimit;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final boolean mergeDuplicates;
+
+  /**
+   * Creates a new flood control policy.
+   *
+   * @param burst maximum number of lines sent at once after the bot has been quiet
+   * @param refillPeriod time after which one more line can be sent
+   * @param unit unit of the refill period
+   * @param queueLimit maximum number of lines waiting to be sent, per priority class
+   * @param overflowPolicy what to do with lines exceeding the queue limit
+   * @param mergeDuplicates whether a line that is identical to a line already waiting in the same
+   *        class is dropped
+   */
+  public FloodControlPolicy(int burst, long refillPeriod, TimeUnit unit, int queueLimit,
+      OverflowPolicy overflowPolicy, boolean mergeDuplicates) {
+    checkArgument(burst > 0, "Burst must be > 0");
+    checkArgument(refillPeriod > 0, "Refill period must be > 0");
+    checkArgument(queueLimit > 0, "Queue limit must be > 0");
+
+    this.burst = burst;
+    this.refillNanos = unit.toNanos(refillPeriod);
+    this.queueLimit = queueLimit;
+    this.overflowPolicy = checkNotNull(overflowPolicy, "No overflow policy specified");
+    this.mergeDuplicates = mergeDuplicates;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  public long getRefillNanos() {
+    return refillNanos;
+  }
+
+  public int getQueueLimit() {
+    return queueLimit;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public boolean isMergeDuplicates() {
+    return mergeDuplicates;
+  }
+
+  @Override
+  public String toString() {
+    return "FloodControlPolicy[burst=" + burst + ", refill=" + refillNanos + "ns, queueLimit="
+        + queueLimit + ", overflow=" + overflowPolicy + ", merge=" + mergeDuplicates + "]";
+  }
+}
@@ -0,0 +1,87 @@
+package org.pircbotx;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.pircbotx.listeners.PrivateListener;
+import org.pircbotx.listeners.PublicListener;
+import org.pircbotx.listeners.TriggerableListener;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The help of a bot, rendered once for each audience: users of public channels, normal users in
+ * private chats and ops in private chats. Lines are sorted by trigger.
+ *
+ * @author Emmanuel Cron
+ */
+final class HelpCache {
+  // We suppose commands are never bigger than 20 characters
+  private static final int TRIGGER_WIDTH = 20;
+
+  private final ImmutableList<String> publicHelp;
+
+  private final ImmutableList<String> privateHelp;
+
+  private final ImmutableList<String> privateOpHelp;
+
+  private HelpCache(ImmutableList<String> publicHelp, ImmutableList<String> privateHelp,
+      ImmutableList<String> privateOpHelp) {
+    this.publicHelp = publicHelp;
+    this.privateHelp = privateHelp;
+    this.privateOpHelp = privateOpHelp;
+  }
+
+  /**
+   * Renders the help of the given public and private listeners.
+   */
+  static HelpCache build(Iterable<PublicListener> publicListeners,
+      Iterable<PrivateListener> privateListeners) {
+    Map<String, String> publicHelp = new TreeMap<String, String>();
+    Map<String, String> privateHelp = new TreeMap<String, String>();
+    Map<String, String> privateOpHelp = new TreeMap<String, String>();
+
+    for (PublicListener publicListener : publicListeners) {
+      String trigger = "!" + publicListener.getTriggerMessage();
+      publicHelp.put(trigger, buildHelpLine(trigger, publicListener));
+    }
+    for (PrivateListener privateListener : privateListeners) {
+      String trigger = privateListener.getPrivateTriggerMessage();
+      String line = buildHelpLine(trigger, privateListener);
+      privateOpHelp.put(trigger, line);
+      if (!privateListener.isOpRequired()) {
+        privateHelp.put(trigger, line);
+      }
+    }
+
+    return new HelpCache(ImmutableList.copyOf(publicHelp.values()),
+        ImmutableList.copyOf(privateHelp.values()), ImmutableList.copyOf(privateOpHelp.values()));
+  }
+
+  /**
+   * Returns the help displayed on public channels.
+   */
+  ImmutableList<String> getPublicHelp() {
+    return publicHelp;
+  }
+
+  /**
+   * Returns the help displayed in private chats.
+   *
+   * @param op whether the user requesting help is op, in which case op-only listeners are also
+   *        listed
+   */
+  ImmutableList<String> getPrivateHelp(boolean op) {
+    return op ? privateOpHelp : privateHelp;
+  }
+
+  // internal helpers
+
+  private static String buildHelpLine(String trigger, TriggerableListener listener) {
+    if (!Strings.isNullOrEmpty(listener.getHelpText())) {
+      return Strings.padEnd(trigger, TRIGGER_WIDTH, ' ') + listener.getHelpText();
+    }
+    return trigger;
+  }
+}
@@ -0,0 +1,161 @@
+package org.pircbotx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pircbotx.listeners.TriggerableListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A bounded executor dedicated to the triggers of a single {@link TriggerableListener}, so that a
+ * slow listener cannot stall the processing of the other events of the bot. Triggers exceeding the
+ * capacity of the bulkhead are handled according to its {@link BulkheadPolicy}.
+ * <p>
+ * This class also exposes some counters that can be used to monitor the listener.
+ *
+ * @author Emmanuel Cron
+ */
+public final class ListenerBulkhead {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ListenerBulkhead.class);
+
+  private final String name;
+
+  private final BulkheadPolicy policy;
+
+  private final ThreadPoolExecutor executor;
+
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  ListenerBulkhead(TriggerableListener listener, BulkheadPolicy policy) {
+    this.name = listener.getClass().getSimpleName();
+    this.policy = policy;
+    this.executor =
+        new ThreadPoolExecutor(policy.getThreads(), policy.getThreads(), 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(policy.getQueueLimit()), new ThreadFactoryBuilder()
+                .setNameFormat("bulkhead-" + name + "-%d").setDaemon(true).build(),
+            new CountingRejectedExecutionHandler(createHandler(policy)));
+    // Idle listeners should not keep threads around
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Returns the policy used by this bulkhead.
+   */
+  public BulkheadPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Returns the number of triggers currently waiting for a thread.
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Returns the number of triggers currently being executed.
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * Returns the number of triggers that were rejected because the bulkhead was full since it was
+   * created. With the {@link BulkheadPolicy.RejectionPolicy#DISCARD_OLDEST} policy, this is the
+   * number of triggers that were dropped.
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * Returns the number of triggers that were executed since this bulkhead was created.
+   */
+  public long getCompletedCount() {
+    return executor.getCompletedTaskCount();
+  }
+
+  @Override
+  public String toString() {
+    return "ListenerBulkhead[" + name + ", queued=" + getQueueDepth() + ", active="
+        + getActiveCount() + ", rejected=" + getRejectedCount() + "]";
+  }
+
+  /**
+   * Executes the given trigger in this bulkhead.
+   *
+   * @return {@code false} if this bulkhead was shut down and did not take the trigger, whatever its
+   *         rejection policy; the trigger should then be given to another bulkhead
+   */
+  boolean execute(Runnable trigger) {
+    try {
+      executor.execute(() -> {
+        try {
+          trigger.run();
+        } catch (RuntimeException re) {
+          LOGGER.error("Trigger of listener " + name + " failed", re);
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException ree) {
+      // Only thrown once shut down, see CountingRejectedExecutionHandler
+      return false;
+    }
+  }
+
+  /**
+   * Stops accepting triggers; triggers already accepted are still executed.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Returns whether this bulkhead was shut down and no longer accepts triggers.
+   */
+  boolean isShutdown() {
+    return executor.isShutdown();
+  }
+
+  // internal helpers
+
+  private static RejectedExecutionHandler createHandler(BulkheadPolicy policy) {
+    switch (policy.getRejectionPolicy()) {
+      case DISCARD_OLDEST:
+        return new ThreadPoolExecutor.DiscardOldestPolicy();
+      case CALLER_RUNS:
+        return new ThreadPoolExecutor.CallerRunsPolicy();
+      case DISCARD:
+      default:
+        return new ThreadPoolExecutor.DiscardPolicy();
+    }
+  }
+
+  private class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+    private final RejectedExecutionHandler delegate;
+
+    CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        // Not full, replaced by another bulkhead: neither counted nor handled by the policy
+        throw new RejectedExecutionException("Bulkhead of listener " + name + " is shut down");
+      }
+
+      long rejected = rejectedCount.incrementAndGet();
+      LOGGER.debug("Bulkhead of listener {} is full, applying {} (rejected so far: {})",
+          new Object[] {name, policy.getRejectionPolicy(), rejected});
+      delegate.rejectedExecution(runnable, executor);
+    }
+  }
+}
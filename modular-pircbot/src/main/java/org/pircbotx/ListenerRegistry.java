@@ -0,0 +1,178 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.listeners.HelpListener;
+import org.pircbotx.listeners.PrivateListener;
+import org.pircbotx.listeners.PublicListener;
+import org.pircbotx.listeners.RunnableListener;
+import org.pircbotx.listeners.ScheduledListener;
+import org.pircbotx.listeners.StoppableListener;
+import org.pircbotx.listeners.WarmUpListener;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The listeners of a bot, classified once by kind: public, private, runnable, stoppable, scheduled
+ * and warm-up listeners, along with the help listener and the {@link CommandRouter} of their
+ * triggers.
+ * <p>
+ * A registry is immutable. When listeners are added or removed, the bot builds a new registry and
+ * swaps it with the previous one, so that reading it never needs any lock.
+ *
+ * @author Emmanuel Cron
+ */
+final class ListenerRegistry {
+  private final ImmutableList<Listener<PircBotX>> listeners;
+
+  private final ImmutableList<PublicListener> publicListeners;
+
+  private final ImmutableList<PrivateListener> privateListeners;
+
+  private final ImmutableList<RunnableListener> runnableListeners;
+
+  private final ImmutableList<StoppableListener> stoppableListeners;
+
+  private final ImmutableList<ScheduledListener> scheduledListeners;
+
+  private final ImmutableList<WarmUpListener> warmUpListeners;
+
+  private final HelpListener helpListener;
+
+  private final CommandRouter commandRouter;
+
+  private ListenerRegistry(ImmutableList<Listener<PircBotX>> listeners,
+      ImmutableList<PublicListener> publicListeners,
+      ImmutableList<PrivateListener> privateListeners,
+      ImmutableList<RunnableListener> runnableListeners,
+      ImmutableList<StoppableListener> stoppableListeners,
+      ImmutableList<ScheduledListener> scheduledListeners,
+      ImmutableList<WarmUpListener> warmUpListeners, HelpListener helpListener) {
+    this.listeners = listeners;
+    this.publicListeners = publicListeners;
+    this.privateListeners = privateListeners;
+    this.runnableListeners = runnableListeners;
+    this.stoppableListeners = stoppableListeners;
+    this.scheduledListeners = scheduledListeners;
+    this.warmUpListeners = warmUpListeners;
+    this.helpListener = helpListener;
+    this.commandRouter = CommandRouter.build(publicListeners, privateListeners);
+  }
+
+  /**
+   * Classifies the given listeners into a new registry.
+   *
+   * @throws IllegalStateException if a triggerable listener has no trigger
+   */
+  static ListenerRegistry build(Iterable<Listener<PircBotX>> listeners) {
+    ImmutableList.Builder<PublicListener> publicListeners = ImmutableList.builder();
+    ImmutableList.Builder<PrivateListener> privateListeners = ImmutableList.builder();
+    ImmutableList.Builder<RunnableListener> runnableListeners = ImmutableList.builder();
+    ImmutableList.Builder<StoppableListener> stoppableListeners = ImmutableList.builder();
+    ImmutableList.Builder<ScheduledListener> scheduledListeners = ImmutableList.builder();
+    ImmutableList.Builder<WarmUpListener> warmUpListeners = ImmutableList.builder();
+    HelpListener helpListener = null;
+
+    for (Listener<PircBotX> listener : listeners) {
+      checkTriggers(listener);
+
+      if (listener instanceof PublicListener) {
+        publicListeners.add((PublicListener) listener);
+      }
+      if (listener instanceof PrivateListener) {
+        privateListeners.add((PrivateListener) listener);
+      }
+      if (listener instanceof RunnableListener) {
+        runnableListeners.add((RunnableListener) listener);
+      }
+      if (listener instanceof StoppableListener) {
+        stoppableListeners.add((StoppableListener) listener);
+      }
+      if (listener instanceof ScheduledListener) {
+        scheduledListeners.add((ScheduledListener) listener);
+      }
+      if (listener instanceof WarmUpListener) {
+        warmUpListeners.add((WarmUpListener) listener);
+      }
+      if (listener instanceof HelpListener && helpListener == null) {
+        helpListener = (HelpListener) listener;
+      }
+    }
+
+    return new ListenerRegistry(ImmutableList.copyOf(listeners), publicListeners.build(),
+        privateListeners.build(), runnableListeners.build(), stoppableListeners.build(),
+        scheduledListeners.build(), warmUpListeners.build(), helpListener);
+  }
+
+  /**
+   * Checks that the given listener has the triggers required by its kind.
+   *
+   * @throws IllegalStateException if a triggerable listener has no trigger
+   */
+  static void checkTriggers(Listener<?> listener) {
+    if (listener instanceof PublicListener) {
+      PublicListener publicListener = (PublicListener) listener;
+      checkState(!Strings.isNullOrEmpty(publicListener.getTriggerMessage()),
+          "Public listener requires a trigger message: %s", listener.getClass().getSimpleName());
+    }
+    if (listener instanceof PrivateListener) {
+      PrivateListener privateListener = (PrivateListener) listener;
+      checkState(!Strings.isNullOrEmpty(privateListener.getPrivateTriggerMessage()),
+          "Private listener requires a trigger message: %s", listener.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Returns all the listeners of the bot, including the special listeners added by the bot itself.
+   */
+  ImmutableList<Listener<PircBotX>> getListeners() {
+    return listeners;
+  }
+
+  /**
+   * Returns the public listeners of the bot, used to route their triggers and render their help.
+   */
+  ImmutableList<PublicListener> getPublicListeners() {
+    return publicListeners;
+  }
+
+  /**
+   * Returns the private listeners of the bot, used to route their triggers and render their help.
+   */
+  ImmutableList<PrivateListener> getPrivateListeners() {
+    return privateListeners;
+  }
+
+  ImmutableList<RunnableListener> getRunnableListeners() {
+    return runnableListeners;
+  }
+
+  ImmutableList<StoppableListener> getStoppableListeners() {
+    return stoppableListeners;
+  }
+
+  ImmutableList<ScheduledListener> getScheduledListeners() {
+    return scheduledListeners;
+  }
+
+  ImmutableList<WarmUpListener> getWarmUpListeners() {
+    return warmUpListeners;
+  }
+
+  /**
+   * Returns the first help listener of the bot, or {@code null} if it has none.
+   */
+  HelpListener getHelpListener() {
+    return helpListener;
+  }
+
+  /**
+   * Returns the router of the triggers of the public and private listeners.
+   */
+  CommandRouter getCommandRouter() {
+    return commandRouter;
+  }
+}
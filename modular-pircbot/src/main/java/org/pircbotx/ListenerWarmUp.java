@@ -0,0 +1,129 @@
+package org.pircbotx;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.pircbotx.listeners.WarmUpListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up {@link WarmUpListener}s in parallel, in a fork-join pool of its own, and keeps track of
+ * the listeners that are ready.
+ *
+ * @author Emmanuel Cron
+ */
+final class ListenerWarmUp {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ListenerWarmUp.class);
+
+  private final Map<WarmUpListener, CompletableFuture<Void>> warmUps =
+      new ConcurrentHashMap<WarmUpListener, CompletableFuture<Void>>();
+
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  // Guarded by this
+  private ForkJoinPool pool;
+
+  private boolean started;
+
+  private boolean shutdown;
+
+  /**
+   * Sets how many listeners can be warmed up at the same time.
+   */
+  synchronized void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Returns whether the warm-up phase has started.
+   */
+  synchronized boolean isStarted() {
+    return started;
+  }
+
+  /**
+   * Starts warming up the given listeners, unless the warm-up phase has already started. Returns
+   * immediately.
+   */
+  synchronized void start(List<WarmUpListener> listeners) {
+    if (started) {
+      return;
+    }
+    started = true;
+
+    long start = System.nanoTime();
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[listeners.size()];
+    for (int i = 0; i < listeners.size(); i++) {
+      futures[i] = warmUp(listeners.get(i));
+    }
+    CompletableFuture.allOf(futures).thenRun(() -> LOGGER.info(
+        "{} listener(s) warmed up in {}ms", listeners.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+  }
+
+  /**
+   * Starts warming up a single listener, if it is not already warming up.
+   *
+   * @return completes when the listener is warmed up
+   */
+  synchronized CompletableFuture<Void> warmUp(WarmUpListener listener) {
+    CompletableFuture<Void> warmUp = warmUps.get(listener);
+    if (warmUp != null) {
+      return warmUp;
+    }
+    if (shutdown) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    warmUp = CompletableFuture.runAsync(() -> run(listener), pool);
+    warmUps.put(listener, warmUp);
+    return warmUp;
+  }
+
+  /**
+   * Returns the warm-up of the given listener, or {@code null} if it has not started yet.
+   */
+  CompletableFuture<Void> get(WarmUpListener listener) {
+    return warmUps.get(listener);
+  }
+
+  /**
+   * Forgets about a listener removed from the bot.
+   */
+  void remove(WarmUpListener listener) {
+    warmUps.remove(listener);
+  }
+
+  /**
+   * Shuts down the pool. Warm-ups in progress are completed, but no new warm-up is started.
+   */
+  synchronized void shutdown() {
+    shutdown = true;
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  // internal helpers
+
+  private static void run(WarmUpListener listener) {
+    long start = System.nanoTime();
+    try {
+      listener.warmUp();
+      LOGGER.info("Listener {} warmed up in {}ms", listener.getClass().getSimpleName(),
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } catch (RuntimeException re) {
+      // Listener will do without its data, deferred triggers must not wait forever
+      LOGGER.error("Listener " + listener.getClass().getSimpleName() + " failed to warm up after "
+          + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms", re);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package org.pircbotx;
+
+/**
+ * The priority classes of the lines sent by an {@link ExtendedPircBotX} when flood control is
+ * enabled. When lines are waiting to be sent, lines of a higher priority class are always sent
+ * first.
+ *
+ * @author Emmanuel Cron
+ * @see ExtendedPircBotX#setFloodControl(FloodControlPolicy)
+ */
+public enum MessagePriority {
+  /**
+   * Commands that act on channels and users, such as kicks and mode changes. Any line that is not
+   * a message or a notice falls in this class.
+   */
+  MODERATION,
+  /**
+   * Messages and notices answering users directly. This is the default class of messages and
+   * notices.
+   */
+  REPLY,
+  /**
+   * Messages and notices that nobody is waiting for, such as announcements and help. Use
+   * {@link ExtendedPircBotX#sendWithPriority(MessagePriority, Runnable)} to send lines in this
+   * class.
+   */
+  ANNOUNCEMENT
+}
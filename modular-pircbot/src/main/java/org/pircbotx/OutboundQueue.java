@@ -0,0 +1,307 @@
+package org.pircbotx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.pircbotx.FloodControlPolicy.OverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The queue of lines waiting to be sent by an {@link ExtendedPircBotX} on which flood control is
+ * enabled. Lines are sent by a dedicated thread, highest {@link MessagePriority} first, at the pace
+ * allowed by the {@link FloodControlPolicy} of the bot.
+ * <p>
+ * This class is exposed for monitoring purposes.
+ *
+ * @author Emmanuel Cron
+ */
+public final class OutboundQueue {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OutboundQueue.class);
+
+  private static final MessagePriority[] PRIORITIES = MessagePriority.values();
+
+  private final ExtendedPircBotX bot;
+
+  private final FloodControlPolicy policy;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition lineQueued = lock.newCondition();
+
+  private final ThreadLocal<MessagePriority> scopedPriority = new ThreadLocal<MessagePriority>();
+
+  // All fields below are guarded by the lock
+
+  private final List<ArrayDeque<String>> queues;
+
+  private final long[] droppedCounts = new long[PRIORITIES.length];
+
+  private final long[] mergedCounts = new long[PRIORITIES.length];
+
+  private long sentCount;
+
+  // Theoretical time at which the bucket is full again, as in the generic cell rate algorithm
+  private long bucketFullNanos = System.nanoTime();
+
+  private Thread writer;
+
+  private boolean stopped;
+
+  OutboundQueue(ExtendedPircBotX bot, FloodControlPolicy policy) {
+    this.bot = bot;
+    this.policy = policy;
+    this.queues = new ArrayList<ArrayDeque<String>>(PRIORITIES.length);
+    for (int i = 0; i < PRIORITIES.length; i++) {
+      queues.add(new ArrayDeque<String>());
+    }
+  }
+
+  /**
+   * Returns the policy used by this queue.
+   */
+  public FloodControlPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Returns the number of lines of the given priority class waiting to be sent.
+   */
+  public int getQueueDepth(MessagePriority priority) {
+    lock.lock();
+    try {
+      return queues.get(priority.ordinal()).size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the total number of lines waiting to be sent.
+   */
+  public int getQueueDepth() {
+    lock.lock();
+    try {
+      int depth = 0;
+      for (ArrayDeque<String> queue : queues) {
+        depth += queue.size();
+      }
+      return depth;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of lines of the given priority class that were dropped because their queue
+   * was full.
+   */
+  public long getDroppedCount(MessagePriority priority) {
+    lock.lock();
+    try {
+      return droppedCounts[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of lines of the given priority class that were merged with an identical line
+   * already waiting to be sent.
+   */
+  public long getMergedCount(MessagePriority priority) {
+    lock.lock();
+    try {
+      return mergedCounts[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of lines sent through this queue.
+   */
+  public long getSentCount() {
+    lock.lock();
+    try {
+      return sentCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("OutboundQueue[");
+    for (MessagePriority priority : PRIORITIES) {
+      builder.append(priority).append('=').append(getQueueDepth(priority)).append(", ");
+    }
+    return builder.append("sent=").append(getSentCount()).append(']').toString();
+  }
+
+  /**
+   * Queues the given line. Its priority class is the one of the current
+   * {@link ExtendedPircBotX#sendWithPriority(MessagePriority, Runnable)} call, if any, otherwise it
+   * is deduced from the command of the line.
+   */
+  void enqueue(String line) {
+    MessagePriority priority = scopedPriority.get();
+    if (priority == null) {
+      priority = isMessage(line) ? MessagePriority.REPLY : MessagePriority.MODERATION;
+    }
+
+    lock.lock();
+    try {
+      if (stopped) {
+        LOGGER.debug("Bot is shut down, dropping line: {}", line);
+        return;
+      }
+
+      int index = priority.ordinal();
+      ArrayDeque<String> queue = queues.get(index);
+      if (policy.isMergeDuplicates() && queue.contains(line)) {
+        // Queues are bounded, so this stays cheap
+        mergedCounts[index]++;
+        return;
+      }
+      if (queue.size() >= policy.getQueueLimit()) {
+        droppedCounts[index]++;
+        if (policy.getOverflowPolicy() == OverflowPolicy.DROP_NEWEST) {
+          LOGGER.debug("{} queue is full, dropping line: {}", priority, line);
+          return;
+        }
+        LOGGER.debug("{} queue is full, dropping line: {}", priority, queue.pollFirst());
+      }
+      queue.addLast(line);
+
+      if (writer == null) {
+        writer = new ThreadFactoryBuilder().setNameFormat("outbound-queue").setDaemon(true).build()
+            .newThread(this::writeLines);
+        writer.start();
+      }
+      lineQueued.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Runs the given sender so that all the lines it sends from the current thread are queued in the
+   * given priority class.
+   */
+  void runWithPriority(MessagePriority priority, Runnable sender) {
+    MessagePriority previous = scopedPriority.get();
+    scopedPriority.set(priority);
+    try {
+      sender.run();
+    } finally {
+      if (previous == null) {
+        scopedPriority.remove();
+      } else {
+        scopedPriority.set(previous);
+      }
+    }
+  }
+
+  /**
+   * Drops all the lines waiting to be sent, e.g. because the connection was lost.
+   */
+  void clear() {
+    lock.lock();
+    try {
+      for (ArrayDeque<String> queue : queues) {
+        queue.clear();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Drops all the lines waiting to be sent and stops the writer thread.
+   */
+  void shutdown() {
+    lock.lock();
+    try {
+      stopped = true;
+      for (ArrayDeque<String> queue : queues) {
+        queue.clear();
+      }
+      lineQueued.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // internal helpers
+
+  private void writeLines() {
+    while (true) {
+      String line;
+      lock.lock();
+      try {
+        line = takeLine();
+        if (line == null) {
+          // Stopped
+          return;
+        }
+        sentCount++;
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        // Paced already; logged and sent like any other line of the bot
+        bot.sendRaw().rawLineNow(line);
+      } catch (RuntimeException re) {
+        LOGGER.error("Could not send line: " + line, re);
+      }
+    }
+  }
+
+  // Must be called with the lock held
+  private String takeLine() throws InterruptedException {
+    long burstNanos = (policy.getBurst() - 1) * policy.getRefillNanos();
+    while (!stopped) {
+      ArrayDeque<String> queue = nextQueue();
+      if (queue == null) {
+        lineQueued.await();
+        continue;
+      }
+
+      long now = System.nanoTime();
+      long waitNanos = bucketFullNanos - burstNanos - now;
+      if (waitNanos > 0) {
+        // A line of higher priority may arrive in the meantime, so check the queues again after
+        lineQueued.awaitNanos(waitNanos);
+        continue;
+      }
+
+      bucketFullNanos = Math.max(bucketFullNanos, now) + policy.getRefillNanos();
+      return queue.pollFirst();
+    }
+    return null;
+  }
+
+  private ArrayDeque<String> nextQueue() {
+    for (ArrayDeque<String> queue : queues) {
+      if (!queue.isEmpty()) {
+        return queue;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isMessage(String line) {
+    return line.regionMatches(true, 0, "PRIVMSG ", 0, 8)
+        || line.regionMatches(true, 0, "NOTICE ", 0, 7);
+  }
+}
@@ -0,0 +1,38 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.pircbotx.output.OutputRaw;
+
+/**
+ * Raw output of an {@link ExtendedPircBotX} on which flood control is enabled. Lines are queued in
+ * the {@link OutboundQueue} of the bot instead of being sent after the configured message delay.
+ * Lines sent with {@link #rawLineNow(String)}, such as replies to server pings, still bypass the
+ * queue; the queue itself sends its lines with this method once they are due, so that they are
+ * logged as any other output of the bot.
+ *
+ * @author Emmanuel Cron
+ */
+class PrioritizedOutputRaw extends OutputRaw {
+  private final OutboundQueue queue;
+
+  PrioritizedOutputRaw(ExtendedPircBotX bot, OutboundQueue queue) {
+    // The queue does the pacing
+    super(bot, 0);
+    this.queue = queue;
+  }
+
+  @Override
+  public void rawLine(String line) {
+    checkNotNull(line, "Line cannot be null");
+    if (!bot.isConnected()) {
+      throw new RuntimeException("Not connected to server");
+    }
+    queue.enqueue(line);
+  }
+
+  @Override
+  public int getOutgoingQueueSize() {
+    return queue.getQueueDepth();
+  }
+}
@@ -0,0 +1,95 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+import org.pircbotx.listeners.TriggerableListener;
+
+/**
+ * Describes how often the triggers of a {@link TriggerableListener} can be executed when rate
+ * limiting is enabled on an {@link ExtendedPircBotX}. Triggers are counted over a sliding window,
+ * separately for each user, for each channel and for the listener as a whole; a trigger exceeding
+ * any of these limits is silently dropped.
+ *
+ * @author Emmanuel Cron
+ */
+public final class RateLimit {
+  /**
+   * What triggers are counted together.
+   *
+   * @author Emmanuel Cron
+   */
+  public enum Scope {
+    /**
+     * Triggers sent by the same user.
+     */
+    USER,
+    /**
+     * Triggers sent in the same channel. Triggers sent in private chats are not limited in this
+     * scope.
+     */
+    CHANNEL,
+    /**
+     * All the triggers of the listener.
+     */
+    LISTENER
+  }
+
+  private final int maxPerUser;
+
+  private final int maxPerChannel;
+
+  private final int maxPerListener;
+
+  private final long windowMillis;
+
+  /**
+   * Creates a new rate limit. A maximum of 0 means there is no limit in the corresponding scope.
+   *
+   * @param maxPerUser maximum number of triggers a single user can send during the window
+   * @param maxPerChannel maximum number of triggers that can be sent in a single channel during the
+   *        window
+   * @param maxPerListener maximum number of triggers the listener executes during the window
+   * @param window the duration of the sliding window
+   * @param unit the unit of the window
+   */
+  public RateLimit(int maxPerUser, int maxPerChannel, int maxPerListener, long window,
+      TimeUnit unit) {
+    checkArgument(maxPerUser >= 0, "Maximum per user must be >= 0");
+    checkArgument(maxPerChannel >= 0, "Maximum per channel must be >= 0");
+    checkArgument(maxPerListener >= 0, "Maximum per listener must be >= 0");
+    checkArgument(window > 0, "Window must be > 0");
+
+    this.maxPerUser = maxPerUser;
+    this.maxPerChannel = maxPerChannel;
+    this.maxPerListener = maxPerListener;
+    this.windowMillis = Math.max(1, unit.toMillis(window));
+  }
+
+  /**
+   * Returns the maximum number of triggers during the window in the given scope, or 0 if there is
+   * no limit.
+   */
+  public int getMax(Scope scope) {
+    switch (scope) {
+      case USER:
+        return maxPerUser;
+      case CHANNEL:
+        return maxPerChannel;
+      case LISTENER:
+      default:
+        return maxPerListener;
+    }
+  }
+
+  public long getWindowMillis() {
+    return windowMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "RateLimit[user=" + maxPerUser + ", channel=" + maxPerChannel + ", listener="
+        + maxPerListener + ", window=" + windowMillis + "ms]";
+  }
+}
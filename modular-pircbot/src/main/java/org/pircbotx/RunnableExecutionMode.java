@@ -0,0 +1,28 @@
+package org.pircbotx;
+
+import org.pircbotx.listeners.RunnableListener;
+
+/**
+ * The ways {@link RunnableListener}s can be executed by an {@link ExtendedPircBotX}.
+ *
+ * @author Emmanuel Cron
+ */
+public enum RunnableExecutionMode {
+  /**
+   * Each runnable listener runs in its own platform thread. This is the default mode.
+   */
+  PLATFORM_THREADS,
+  /**
+   * Runnable listeners run in a bounded pool of platform threads shared by all the listeners of the
+   * bot (see {@link ExtendedPircBotX#setSharedPoolThreads(int)}). Threads of listeners that have
+   * stopped are reused by listeners started later; listeners started while all threads are busy
+   * wait for one to be available, and are not started at all if too many are already waiting.
+   */
+  SHARED_POOL,
+  /**
+   * Each runnable listener runs in its own virtual thread. Listeners that mostly sleep or wait for
+   * I/O then cost almost nothing while idle, which makes this mode well suited to bots running many
+   * background modules.
+   */
+  VIRTUAL_THREADS
+}
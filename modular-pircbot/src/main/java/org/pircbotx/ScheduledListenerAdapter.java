@@ -0,0 +1,152 @@
+package org.pircbotx;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.listeners.Schedule;
+import org.pircbotx.listeners.ScheduledListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A special listener that schedules the scheduled listeners on the shared scheduler of the bot
+ * when it first connects to the server. The scheduler itself is shut down by the bot when it
+ * completely disconnects from the server.
+ * <p>
+ * Scheduled listeners added to the bot once it has connected are scheduled right away; listeners
+ * removed from the bot are not executed anymore.
+ *
+ * @author Emmanuel Cron
+ */
+class ScheduledListenerAdapter extends ListenerAdapter<ExtendedPircBotX> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledListenerAdapter.class);
+
+  private final Map<ScheduledListener, ScheduledExecution> executions =
+      new HashMap<ScheduledListener, ScheduledExecution>();
+
+  private boolean listenersScheduled;
+
+  @Override
+  public synchronized void onConnect(ConnectEvent<ExtendedPircBotX> event) {
+    if (listenersScheduled) {
+      return;
+    }
+
+    for (ScheduledListener scheduledListener : event.getBot().getListenerRegistry()
+        .getScheduledListeners()) {
+      launch(event.getBot(), scheduledListener);
+    }
+    listenersScheduled = true;
+  }
+
+  /**
+   * Schedules a listener added to the bot, if the other scheduled listeners have already been
+   * scheduled. Otherwise, it will be scheduled along with them.
+   */
+  synchronized void schedule(ExtendedPircBotX bot, ScheduledListener scheduledListener) {
+    if (listenersScheduled) {
+      launch(bot, scheduledListener);
+    }
+  }
+
+  /**
+   * Cancels the next executions of a listener removed from the bot. An execution in progress is
+   * not interrupted.
+   */
+  synchronized void cancel(ScheduledListener scheduledListener) {
+    ScheduledExecution execution = executions.remove(scheduledListener);
+    if (execution != null) {
+      LOGGER.info("Cancelling scheduled listener {}", scheduledListener);
+      execution.cancel();
+    }
+  }
+
+  @Override
+  public void onDisconnect(DisconnectEvent<ExtendedPircBotX> event) {
+    if (!event.getBot().isReconnectStopped()) {
+      // Not a requested quit
+      return;
+    }
+
+    LOGGER.info("Bot is shutting down, cancelling scheduled listeners");
+    event.getBot().getScheduler().shutdownNow();
+  }
+
+  // internal helpers
+
+  private void launch(ExtendedPircBotX bot, ScheduledListener scheduledListener) {
+    scheduledListener.setBot(bot);
+    Schedule schedule = scheduledListener.getSchedule();
+    LOGGER.info("Scheduling listener {} {}", scheduledListener, schedule);
+    ScheduledExecution execution =
+        new ScheduledExecution(bot.getScheduler(), scheduledListener, schedule);
+    executions.put(scheduledListener, execution);
+    execution.scheduleAt(schedule.firstExecutionMillis(System.currentTimeMillis()));
+  }
+
+  /**
+   * The executions of one scheduled listener. Each execution schedules the next one when it
+   * completes, so executions of a listener never overlap.
+   */
+  private static final class ScheduledExecution implements Runnable {
+    private final ScheduledExecutorService scheduler;
+
+    private final ScheduledListener listener;
+
+    private final Schedule schedule;
+
+    private volatile boolean cancelled;
+
+    private volatile ScheduledFuture<?> next;
+
+    ScheduledExecution(ScheduledExecutorService scheduler, ScheduledListener listener,
+        Schedule schedule) {
+      this.scheduler = scheduler;
+      this.listener = listener;
+      this.schedule = schedule;
+    }
+
+    @Override
+    public void run() {
+      if (cancelled) {
+        return;
+      }
+      try {
+        listener.onSchedule();
+      } catch (RuntimeException re) {
+        // Don't let one failure cancel all future executions
+        LOGGER.error("Execution of scheduled listener " + listener + " failed", re);
+      }
+      scheduleAt(schedule.nextExecutionMillis(System.currentTimeMillis()));
+    }
+
+    void scheduleAt(long executionMillis) {
+      if (cancelled || scheduler.isShutdown()) {
+        return;
+      }
+
+      long delay = Math.max(0L, executionMillis - System.currentTimeMillis());
+      try {
+        next = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException ree) {
+        // Bot shut down in the meantime
+        LOGGER.debug("Scheduler shut down, listener {} will not be executed anymore", listener);
+      }
+    }
+
+    void cancel() {
+      cancelled = true;
+      ScheduledFuture<?> future = next;
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+  }
+}
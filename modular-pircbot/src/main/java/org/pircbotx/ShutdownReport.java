@@ -0,0 +1,52 @@
+package org.pircbotx;
+
+import java.util.List;
+
+import org.pircbotx.listeners.RunnableListener;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Describes how the runnable listeners of an {@link ExtendedPircBotX} stopped when the bot was
+ * shut down.
+ *
+ * @author Emmanuel Cron
+ */
+public final class ShutdownReport {
+  private final long elapsedMillis;
+
+  private final List<RunnableListener> overrunListeners;
+
+  ShutdownReport(long elapsedMillis, List<RunnableListener> overrunListeners) {
+    this.elapsedMillis = elapsedMillis;
+    this.overrunListeners = ImmutableList.copyOf(overrunListeners);
+  }
+
+  /**
+   * Returns how long it took, in milliseconds, for the listeners to stop or for the shutdown
+   * deadline to be reached.
+   */
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /**
+   * Returns the listeners that were still running when the shutdown deadline was reached. These
+   * listeners have been interrupted.
+   */
+  public List<RunnableListener> getOverrunListeners() {
+    return overrunListeners;
+  }
+
+  /**
+   * Returns whether all the listeners stopped before the shutdown deadline.
+   */
+  public boolean isClean() {
+    return overrunListeners.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "ShutdownReport[elapsed=" + elapsedMillis + "ms, overrun=" + overrunListeners + "]";
+  }
+}
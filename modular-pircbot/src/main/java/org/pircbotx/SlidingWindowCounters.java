@@ -0,0 +1,195 @@
+package org.pircbotx;
+
+/**
+ * A fixed-size table of sliding window counters keyed by 64-bit hashes. Counters are stored in
+ * primitive arrays with open addressing, so the table never grows nor creates garbage: counters
+ * whose window has expired are reused, and when all the slots a key can use are taken, the least
+ * recently rolled counter is evicted. Slots can be pinned so that looking up other keys never
+ * evicts them, e.g. while checking several counters for the same hit.
+ * <p>
+ * Each counter keeps the number of hits of the current and previous fixed windows; the number of
+ * hits over the sliding window is estimated by weighting the previous window by the part of it
+ * that is still covered.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Emmanuel Cron
+ */
+final class SlidingWindowCounters {
+  // A key can only be stored in this many consecutive slots
+  private static final int MAX_PROBES = 8;
+
+  private static final long EMPTY = 0;
+
+  private static final int MAX_PINNED = 4;
+
+  private final int mask;
+
+  private final long[] keys;
+
+  private final long[] windowStarts;
+
+  private final long[] windowLengths;
+
+  private final int[] currentCounts;
+
+  private final int[] previousCounts;
+
+  private final int[] pinnedSlots = new int[MAX_PINNED];
+
+  private int pinnedCount;
+
+  private int size;
+
+  private long evictedCount;
+
+  /**
+   * Creates a new table.
+   *
+   * @param capacity maximum number of counters, rounded up to a power of two
+   */
+  SlidingWindowCounters(int capacity) {
+    int slots = Integer.highestOneBit(Math.max(capacity, MAX_PROBES) - 1) << 1;
+    this.mask = slots - 1;
+    this.keys = new long[slots];
+    this.windowStarts = new long[slots];
+    this.windowLengths = new long[slots];
+    this.currentCounts = new int[slots];
+    this.previousCounts = new int[slots];
+  }
+
+  /**
+   * Returns the slot of the counter of the given key, creating the counter if needed, with its
+   * windows rolled to the given time.
+   */
+  int slot(long key, long windowMillis, long nowMillis) {
+    if (key == EMPTY) {
+      // Reserved for empty slots
+      key = 1;
+    }
+
+    int home = (int) mix(key) & mask;
+    int free = -1;
+    int oldest = -1;
+    for (int i = 0; i < MAX_PROBES; i++) {
+      int index = (home + i) & mask;
+      if (keys[index] == key) {
+        roll(index, windowMillis, nowMillis);
+        return index;
+      }
+      if (isPinned(index)) {
+        continue;
+      }
+      if (free < 0 && isFree(index, nowMillis)) {
+        free = index;
+      }
+      if (oldest < 0 || windowStarts[index] < windowStarts[oldest]) {
+        oldest = index;
+      }
+    }
+
+    int candidate = free >= 0 ? free : oldest;
+    if (keys[candidate] == EMPTY) {
+      size++;
+    } else if (!isExpired(candidate, nowMillis)) {
+      evictedCount++;
+    }
+    keys[candidate] = key;
+    windowStarts[candidate] = nowMillis;
+    windowLengths[candidate] = windowMillis;
+    currentCounts[candidate] = 0;
+    previousCounts[candidate] = 0;
+    return candidate;
+  }
+
+  /**
+   * Pins the given slot: it is not reused for another key until {@link #unpinAll()} is called.
+   */
+  void pin(int slot) {
+    if (pinnedCount == MAX_PINNED) {
+      throw new IllegalStateException("Too many pinned slots");
+    }
+    pinnedSlots[pinnedCount++] = slot;
+  }
+
+  /**
+   * Unpins all the slots pinned with {@link #pin(int)}.
+   */
+  void unpinAll() {
+    pinnedCount = 0;
+  }
+
+  /**
+   * Returns the estimated number of hits of the counter in the given slot over the sliding window
+   * ending at the given time.
+   */
+  double count(int slot, long nowMillis) {
+    long window = windowLengths[slot];
+    long elapsed = nowMillis - windowStarts[slot];
+    double previousWeight = (double) Math.max(0, window - elapsed) / window;
+    return previousCounts[slot] * previousWeight + currentCounts[slot];
+  }
+
+  /**
+   * Adds a hit to the counter in the given slot.
+   */
+  void increment(int slot) {
+    if (currentCounts[slot] < Integer.MAX_VALUE) {
+      currentCounts[slot]++;
+    }
+  }
+
+  /**
+   * Returns the number of slots used, including counters that have expired but were not reused
+   * yet.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of live counters that were evicted to make room for other ones.
+   */
+  long getEvictedCount() {
+    return evictedCount;
+  }
+
+  // internal helpers
+
+  private void roll(int index, long windowMillis, long nowMillis) {
+    windowLengths[index] = windowMillis;
+    long elapsedWindows = (nowMillis - windowStarts[index]) / windowMillis;
+    if (elapsedWindows <= 0) {
+      return;
+    }
+
+    previousCounts[index] = elapsedWindows == 1 ? currentCounts[index] : 0;
+    currentCounts[index] = 0;
+    windowStarts[index] += elapsedWindows * windowMillis;
+  }
+
+  private boolean isPinned(int index) {
+    for (int i = 0; i < pinnedCount; i++) {
+      if (pinnedSlots[i] == index) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isFree(int index, long nowMillis) {
+    return keys[index] == EMPTY || isExpired(index, nowMillis);
+  }
+
+  private boolean isExpired(int index, long nowMillis) {
+    // Nothing left in both windows
+    return nowMillis - windowStarts[index] >= 2 * windowLengths[index];
+  }
+
+  private static long mix(long key) {
+    // Finalizer of SplitMix64, spreads similar keys over the table
+    key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+    key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+    return key ^ (key >>> 31);
+  }
+}
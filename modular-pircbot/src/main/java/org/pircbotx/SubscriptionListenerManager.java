@@ -0,0 +1,232 @@
+package org.pircbotx;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.Utils;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.managers.ThreadedListenerManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A {@link ThreadedListenerManager} that only hands an event to the listeners that care about it.
+ * <p>
+ * When a {@link ListenerAdapter} is added, the manager works out once which {@code on*} methods it
+ * overrides. Events are then dispatched through precomputed arrays of subscribers per event class,
+ * and each subscriber has its overridden methods called directly, without going through the
+ * {@code instanceof} chain of {@link ListenerAdapter#onEvent(Event)}. A listener that only handles
+ * kicks is therefore never bothered by messages.
+ * <p>
+ * Listeners that override {@link Listener#onEvent(Event)} themselves, or that don't extend
+ * {@link ListenerAdapter}, receive all events as usual.
+ * <p>
+ * To use it, give it to the {@link Configuration} of the bot:
+ *
+ * <pre>
+ * new Configuration.Builder&lt;PircBotX&gt;()
+ *     .setListenerManager(new SubscriptionListenerManager&lt;PircBotX&gt;())
+ * </pre>
+ *
+ * @author Emmanuel Cron
+ * @param <B> the type of bot
+ */
+public class SubscriptionListenerManager<B extends PircBotX> extends ThreadedListenerManager<B> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionListenerManager.class);
+
+  // Handlers overridden by each listener, null for listeners receiving all events; guarded by this
+  private final Map<Listener<B>, EventHandler[]> subscriptions =
+      new LinkedHashMap<Listener<B>, EventHandler[]>();
+
+  private final Map<Class<?>, Subscriber[]> dispatchTable =
+      new ConcurrentHashMap<Class<?>, Subscriber[]>();
+
+  /**
+   * Creates a new manager dispatching events in a cached thread pool.
+   */
+  public SubscriptionListenerManager() {
+    super();
+  }
+
+  /**
+   * Creates a new manager dispatching events in the given thread pool.
+   */
+  public SubscriptionListenerManager(ExecutorService pool) {
+    super(pool);
+  }
+
+  @Override
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  public synchronized boolean addListener(Listener listener) {
+    boolean added = super.addListener(listener);
+    if (added) {
+      subscriptions.put(listener, findOverriddenHandlers(listener));
+      // Subscribers will be computed again on next dispatch
+      dispatchTable.clear();
+    }
+    return added;
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public synchronized boolean removeListener(Listener listener) {
+    boolean removed = super.removeListener(listener);
+    if (removed) {
+      subscriptions.remove(listener);
+      dispatchTable.clear();
+    }
+    return removed;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void dispatchEvent(Event<B> event) {
+    Subscriber[] subscribers = dispatchTable.get(event.getClass());
+    if (subscribers == null) {
+      subscribers = buildSubscribers(event.getClass());
+    }
+
+    if (subscribers.length == 0) {
+      return;
+    }
+
+    List<ManagedFutureTask> tasks = new ArrayList<ManagedFutureTask>(subscribers.length);
+    for (Subscriber subscriber : subscribers) {
+      tasks.add(new ManagedFutureTask(subscriber.listener, event,
+          () -> subscriber.dispatch(event)));
+    }
+    execute(event, tasks);
+  }
+
+  /**
+   * Returns the listeners that receive events of the given class.
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  public ImmutableList<Listener<B>> getSubscribers(Class<? extends Event> eventClass) {
+    Subscriber[] subscribers = dispatchTable.get(eventClass);
+    if (subscribers == null) {
+      subscribers = buildSubscribers(eventClass);
+    }
+
+    ImmutableList.Builder<Listener<B>> listeners = ImmutableList.builder();
+    for (Subscriber subscriber : subscribers) {
+      listeners.add((Listener<B>) subscriber.listener);
+    }
+    return listeners.build();
+  }
+
+  /**
+   * Runs the tasks that hand an event to each of its subscribers, in the order of the list. By
+   * default, each task is run in the pool on its own.
+   */
+  void execute(Event<B> event, List<ManagedFutureTask> tasks) {
+    for (ManagedFutureTask task : tasks) {
+      pool.execute(task);
+    }
+  }
+
+  // internal helpers
+
+  private synchronized Subscriber[] buildSubscribers(Class<?> eventClass) {
+    Subscriber[] existing = dispatchTable.get(eventClass);
+    if (existing != null) {
+      // Built by another thread in the meantime
+      return existing;
+    }
+
+    List<Subscriber> subscribers = new ArrayList<Subscriber>();
+    for (Map.Entry<Listener<B>, EventHandler[]> subscription : subscriptions.entrySet()) {
+      if (subscription.getValue() == null) {
+        subscribers.add(new Subscriber(subscription.getKey(), null));
+        continue;
+      }
+
+      List<EventHandler> handlers = new ArrayList<EventHandler>();
+      for (EventHandler handler : subscription.getValue()) {
+        if (handler.handles(eventClass)) {
+          handlers.add(handler);
+        }
+      }
+      if (!handlers.isEmpty()) {
+        subscribers.add(new Subscriber(subscription.getKey(),
+            handlers.toArray(new EventHandler[handlers.size()])));
+      }
+    }
+
+    Subscriber[] built = subscribers.toArray(new Subscriber[subscribers.size()]);
+    dispatchTable.put(eventClass, built);
+    LOGGER.debug("{} listener(s) subscribed to {}", built.length, eventClass.getSimpleName());
+    return built;
+  }
+
+  private static EventHandler[] findOverriddenHandlers(Listener<?> listener) {
+    if (!(listener instanceof ListenerAdapter)) {
+      return null;
+    }
+    try {
+      if (listener.getClass().getMethod("onEvent", Event.class).getDeclaringClass()
+          != ListenerAdapter.class) {
+        // Listener dispatches events itself
+        return null;
+      }
+    } catch (NoSuchMethodException nsme) {
+      return null;
+    }
+
+    // Same order as ListenerAdapter.onEvent(): specific methods, then generic ones
+    List<EventHandler> handlers = new ArrayList<EventHandler>();
+    for (EventHandler handler : EventHandler.SPECIFIC_HANDLERS.values()) {
+      if (handler.isOverriddenBy(listener.getClass())) {
+        handlers.add(handler);
+      }
+    }
+    for (EventHandler handler : EventHandler.GENERIC_HANDLERS) {
+      if (handler.isOverriddenBy(listener.getClass())) {
+        handlers.add(handler);
+      }
+    }
+    return handlers.toArray(new EventHandler[handlers.size()]);
+  }
+
+  /**
+   * A listener subscribed to a class of events, with the handlers to call for this class.
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static final class Subscriber {
+    private final Listener listener;
+
+    // Null to call onEvent()
+    private final EventHandler[] handlers;
+
+    Subscriber(Listener<?> listener, EventHandler[] handlers) {
+      this.listener = listener;
+      this.handlers = handlers;
+    }
+
+    Void dispatch(Event<?> event) {
+      Utils.addBotToMDC(event.getBot());
+      try {
+        if (handlers == null) {
+          listener.onEvent(event);
+        } else {
+          for (EventHandler handler : handlers) {
+            handler.invoke((ListenerAdapter) listener, event);
+          }
+        }
+      } catch (Exception e) {
+        LOGGER.error("Exception encountered when executing event " + event + " on listener "
+            + listener, e);
+      }
+      return null;
+    }
+  }
+}
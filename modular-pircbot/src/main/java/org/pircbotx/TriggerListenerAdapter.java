@@ -1,67 +1,227 @@
 package org.pircbotx;
 
-import org.pircbotx.PircBotX;
-import org.pircbotx.hooks.Listener;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.pircbotx.CommandRouter.Route;
 import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.DisconnectEvent;
 import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.hooks.events.PrivateMessageEvent;
 import org.pircbotx.listeners.PrivateListener;
 import org.pircbotx.listeners.PublicListener;
+import org.pircbotx.listeners.TriggerableListener;
+import org.pircbotx.listeners.WarmUpListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A special listener that calls the trigger methods of {@link PublicListener}s and
  * {@link PrivateListener}s if their associated triggers are seen in a public or private chat.
+ * <p>
+ * Messages are routed by the {@link CommandRouter} of the {@link ListenerRegistry} of the bot, so
+ * messages that are not commands cost almost nothing. Arguments following the trigger are given to
+ * the listeners.
+ * <p>
+ * By default, triggers are executed by the thread dispatching the events. When bulkheads are
+ * enabled, each listener gets its own {@link ListenerBulkhead} instead, so that a slow listener
+ * cannot hold up the others.
+ * <p>
+ * When rate limits are set, triggers go through a {@link TriggerRateLimiter} first and triggers
+ * exceeding the limits are silently dropped.
+ * <p>
+ * Triggers of a {@link WarmUpListener} that is still warming up are deferred until it is ready. If
+ * the warm-up of the listener has not started yet, it is started right away.
  *
  * @author Emmanuel Cron
  */
 class TriggerListenerAdapter extends ListenerAdapter<ExtendedPircBotX> {
   private static final Logger LOGGER = LoggerFactory.getLogger(TriggerListenerAdapter.class);
 
+  private final TriggerRateLimiter rateLimiter;
+
+  private final Map<TriggerableListener, BulkheadPolicy> bulkheadPolicies =
+      new ConcurrentHashMap<TriggerableListener, BulkheadPolicy>();
+
+  private final Map<TriggerableListener, ListenerBulkhead> bulkheads =
+      new ConcurrentHashMap<TriggerableListener, ListenerBulkhead>();
+
+  private volatile BulkheadPolicy defaultBulkheadPolicy;
+
+  TriggerListenerAdapter(TriggerRateLimiter rateLimiter) {
+    this.rateLimiter = checkNotNull(rateLimiter);
+  }
+
+  /**
+   * Enables bulkheads for all listeners using the given policy, or disables them if the policy is
+   * {@code null}. Listeners having their own policy keep it.
+   */
+  void setDefaultBulkheadPolicy(BulkheadPolicy policy) {
+    this.defaultBulkheadPolicy = policy;
+  }
+
+  /**
+   * Sets the bulkhead policy of a single listener, overriding the default one.
+   */
+  void setBulkheadPolicy(TriggerableListener listener, BulkheadPolicy policy) {
+    bulkheadPolicies.put(checkNotNull(listener), checkNotNull(policy));
+    // Policy changed, next trigger will create a new bulkhead
+    ListenerBulkhead previous = bulkheads.remove(listener);
+    if (previous != null) {
+      previous.shutdown();
+    }
+  }
+
+  /**
+   * Returns the bulkhead of the given listener, or {@code null} if its triggers are not executed in
+   * a bulkhead (yet).
+   */
+  ListenerBulkhead getBulkhead(TriggerableListener listener) {
+    return bulkheads.get(listener);
+  }
+
+  /**
+   * Shuts down the bulkhead of the given listener, if any, and forgets its policy. Called when the
+   * listener is removed from the bot.
+   */
+  void removeBulkhead(TriggerableListener listener) {
+    bulkheadPolicies.remove(listener);
+    ListenerBulkhead bulkhead = bulkheads.remove(listener);
+    if (bulkhead != null) {
+      bulkhead.shutdown();
+    }
+  }
+
   @Override
   public void onMessage(MessageEvent<ExtendedPircBotX> event) {
-    for (Listener<PircBotX> listener : event.getBot().getConfiguration().getListenerManager()
-        .getListeners()) {
-      if (listener instanceof PublicListener) {
-        PublicListener publicListener = (PublicListener) listener;
-        String triggerMessage = "!" + publicListener.getTriggerMessage();
-        if (event.getMessage().equalsIgnoreCase(triggerMessage)) {
-          publicListener.onTriggerMessage(event);
-        }
+    Route<PublicListener> route = event.getBot().getListenerRegistry().getCommandRouter()
+        .routePublic(event.getMessage(), event.getBot().getNick());
+    if (route == null) {
+      return;
+    }
+
+    List<String> arguments = route.getArguments();
+    for (PublicListener publicListener : route.getListeners()) {
+      if (!rateLimiter.tryAcquire(publicListener, event.getUser(), event.getChannel())) {
+        continue;
       }
+
+      execute(event.getBot(), publicListener,
+          () -> publicListener.onTriggerMessage(event, arguments));
     }
   }
 
   @Override
   public void onPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event) {
+    Route<PrivateListener> route =
+        event.getBot().getListenerRegistry().getCommandRouter().routePrivate(event.getMessage());
+    if (route == null) {
+      return;
+    }
+
+    List<String> arguments = route.getArguments();
     Boolean isSenderOp = null;
+    for (PrivateListener privateListener : route.getListeners()) {
+      // Is op required?
+      if (privateListener.isOpRequired()) {
+        // Check if user is op only the first time
+        if (isSenderOp == null) {
+          isSenderOp = event.getBot().isUserOpOnAnyJoinedChannel(event.getUser());
+        }
 
-    for (Listener<PircBotX> listener : event.getBot().getConfiguration().getListenerManager()
-        .getListeners()) {
-      if (listener instanceof PrivateListener) {
-        PrivateListener privateListener = (PrivateListener) listener;
-
-        // Is message a trigger?
-        if (event.getMessage().equalsIgnoreCase(privateListener.getPrivateTriggerMessage())) {
-          // Is op required?
-          if (privateListener.isOpRequired()) {
-            // Check if user is op only the first time
-            if (isSenderOp == null) {
-              isSenderOp = event.getBot().isUserOpOnAnyJoinedChannel(event.getUser());
-            }
-
-            if (!isSenderOp) {
-              // Op required but user not op, skipping
-              LOGGER.info("User {} cannot trigger {} listener because he/she is not op", event
-                  .getUser().getNick(), listener.getClass());
-              continue;
-            }
-          }
-
-          privateListener.onTriggerPrivateMessage(event);
+        if (!isSenderOp) {
+          // Op required but user not op, skipping
+          LOGGER.info("User {} cannot trigger {} listener because he/she is not op", event
+              .getUser().getNick(), privateListener.getClass());
+          continue;
         }
       }
+
+      if (!rateLimiter.tryAcquire(privateListener, event.getUser(), null)) {
+        continue;
+      }
+
+      execute(event.getBot(), privateListener,
+          () -> privateListener.onTriggerPrivateMessage(event, arguments));
+    }
+  }
+
+  @Override
+  public void onDisconnect(DisconnectEvent<ExtendedPircBotX> event) {
+    if (!event.getBot().isReconnectStopped()) {
+      // Not a requested quit
+      return;
+    }
+
+    // Removed before being shut down, so that triggers never pick a shut down bulkhead
+    for (TriggerableListener listener : bulkheads.keySet()) {
+      ListenerBulkhead bulkhead = bulkheads.remove(listener);
+      if (bulkhead != null) {
+        bulkhead.shutdown();
+      }
+    }
+  }
+
+  // internal helpers
+
+  private void execute(ExtendedPircBotX bot, TriggerableListener listener, Runnable trigger) {
+    if (listener instanceof WarmUpListener) {
+      CompletableFuture<Void> warmUp = bot.getListenerWarmUp().warmUp((WarmUpListener) listener);
+      if (!warmUp.isDone()) {
+        // Listener is still loading its data
+        LOGGER.debug("Deferring trigger of {} until it is warmed up", listener.getClass()
+            .getSimpleName());
+        warmUp.thenRun(() -> execute(listener, trigger));
+        return;
+      }
+    }
+    execute(listener, trigger);
+  }
+
+  private void execute(TriggerableListener listener, Runnable trigger) {
+    BulkheadPolicy policy = bulkheadPolicies.get(listener);
+    if (policy == null) {
+      policy = defaultBulkheadPolicy;
+    }
+
+    if (policy == null) {
+      // No bulkhead, run it right away
+      trigger.run();
+      return;
+    }
+
+    ListenerBulkhead bulkhead = bulkheads.get(listener);
+    if (bulkhead == null || bulkhead.getPolicy() != policy) {
+      bulkhead = createBulkhead(listener, policy);
+    }
+    if (!bulkhead.execute(trigger)) {
+      // Replaced or removed since it was read, try again with the current policy
+      LOGGER.debug("Bulkhead of listener {} was shut down, retrying trigger", listener.getClass()
+          .getSimpleName());
+      execute(listener, trigger);
+    }
+  }
+
+  private synchronized ListenerBulkhead createBulkhead(TriggerableListener listener,
+      BulkheadPolicy policy) {
+    ListenerBulkhead bulkhead = bulkheads.get(listener);
+    if (bulkhead != null && bulkhead.getPolicy() == policy && !bulkhead.isShutdown()) {
+      // Created by another thread in the meantime
+      return bulkhead;
+    }
+
+    ListenerBulkhead newBulkhead = new ListenerBulkhead(listener, policy);
+    bulkheads.put(listener, newBulkhead);
+    if (bulkhead != null) {
+      // Default policy changed
+      bulkhead.shutdown();
     }
+    LOGGER.info("Triggers of listener {} now run in a bulkhead: {}", listener.getClass()
+        .getSimpleName(), policy);
+    return newBulkhead;
   }
 }
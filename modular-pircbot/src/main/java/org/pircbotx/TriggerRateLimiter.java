@@ -0,0 +1,222 @@
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pircbotx.Channel;
+import org.pircbotx.RateLimit.Scope;
+import org.pircbotx.User;
+import org.pircbotx.listeners.TriggerableListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AtomicLongMap;
+
+/**
+ * Limits how often the triggers of listeners are executed, following the {@link RateLimit} of each
+ * listener. Triggers exceeding a limit are silently dropped.
+ * <p>
+ * Counters are kept in a fixed-size table of sliding windows keyed by hashes of the user, channel
+ * and listener, so memory stays bounded whatever the number of users: counters of users that
+ * have been quiet for a while are reused, and the oldest counters are evicted when the table is
+ * crowded.
+ * <p>
+ * This class is exposed for monitoring purposes.
+ *
+ * @author Emmanuel Cron
+ */
+public final class TriggerRateLimiter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TriggerRateLimiter.class);
+
+  // Enough for tens of thousands of users, about 2 MB
+  private static final int CAPACITY = 1 << 16;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final SlidingWindowCounters counters = new SlidingWindowCounters(CAPACITY);
+
+  private final Map<TriggerableListener, RateLimit> limits =
+      new ConcurrentHashMap<TriggerableListener, RateLimit>();
+
+  // Unique per listener, unlike identity hash codes, so listeners never share counters
+  private final Map<TriggerableListener, Integer> listenerIds =
+      new ConcurrentHashMap<TriggerableListener, Integer>();
+
+  private final AtomicInteger nextListenerId = new AtomicInteger();
+
+  private volatile RateLimit defaultLimit;
+
+  private final AtomicLongMap<Scope> rejectedByScope = AtomicLongMap.create();
+
+  private final AtomicLongMap<TriggerableListener> rejectedByListener = AtomicLongMap.create();
+
+  TriggerRateLimiter() {
+    // Created by the bot
+  }
+
+  /**
+   * Returns the number of triggers dropped because they exceeded the limit of the given scope.
+   */
+  public long getRejectedCount(Scope scope) {
+    return rejectedByScope.get(scope);
+  }
+
+  /**
+   * Returns the number of triggers of the given listener that were dropped.
+   */
+  public long getRejectedCount(TriggerableListener listener) {
+    return rejectedByListener.get(listener);
+  }
+
+  /**
+   * Returns the total number of triggers that were dropped.
+   */
+  public long getRejectedCount() {
+    return rejectedByScope.sum();
+  }
+
+  /**
+   * Returns the number of counters currently stored.
+   */
+  public synchronized int getCounterCount() {
+    return counters.size();
+  }
+
+  /**
+   * Returns the number of counters that were evicted before they expired, to make room for other
+   * ones. A high number means the table is too crowded and limits are less accurate.
+   */
+  public synchronized long getEvictedCount() {
+    return counters.getEvictedCount();
+  }
+
+  @Override
+  public String toString() {
+    return "TriggerRateLimiter[rejected=" + rejectedByScope.asMap() + ", counters="
+        + getCounterCount() + ", evicted=" + getEvictedCount() + "]";
+  }
+
+  /**
+   * Sets the rate limit of all listeners, or disables rate limiting if the limit is {@code null}.
+   * Listeners having their own limit keep it.
+   */
+  void setDefaultLimit(RateLimit limit) {
+    this.defaultLimit = limit;
+  }
+
+  /**
+   * Sets the rate limit of a single listener, overriding the default one.
+   */
+  void setLimit(TriggerableListener listener, RateLimit limit) {
+    limits.put(checkNotNull(listener), checkNotNull(limit));
+  }
+
+  /**
+   * Returns the rate limit of the given listener, or {@code null} if it is not limited.
+   */
+  RateLimit getLimit(TriggerableListener listener) {
+    RateLimit limit = limits.get(listener);
+    return limit != null ? limit : defaultLimit;
+  }
+
+  /**
+   * Forgets the limit and the rejected triggers of the given listener. Called when the listener is
+   * removed from the bot; its counters expire on their own.
+   */
+  void removeListener(TriggerableListener listener) {
+    limits.remove(listener);
+    listenerIds.remove(listener);
+    rejectedByListener.remove(listener);
+  }
+
+  /**
+   * Counts a trigger of the given listener by the given user, if it is within the limits of the
+   * listener.
+   *
+   * @param channel the channel in which the trigger was sent, or {@code null} for a private chat
+   * @return {@code true} if the trigger can be executed, {@code false} if it must be dropped
+   */
+  boolean tryAcquire(TriggerableListener listener, User user, Channel channel) {
+    RateLimit limit = getLimit(listener);
+    if (limit == null) {
+      return true;
+    }
+
+    int listenerId = listenerIds.computeIfAbsent(listener, key -> nextListenerId.getAndIncrement());
+    long window = limit.getWindowMillis();
+    Scope rejectedScope = null;
+
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      int userSlot = -1;
+      int channelSlot = -1;
+      int listenerSlot = -1;
+
+      if (limit.getMax(Scope.USER) > 0) {
+        userSlot = counters.slot(hash(Scope.USER, listenerId, user.getNick()), window, now);
+        if (counters.count(userSlot, now) >= limit.getMax(Scope.USER)) {
+          rejectedScope = Scope.USER;
+        }
+        // Looking up the other counters must not evict this one
+        counters.pin(userSlot);
+      }
+      if (rejectedScope == null && channel != null && limit.getMax(Scope.CHANNEL) > 0) {
+        channelSlot =
+            counters.slot(hash(Scope.CHANNEL, listenerId, channel.getName()), window, now);
+        if (counters.count(channelSlot, now) >= limit.getMax(Scope.CHANNEL)) {
+          rejectedScope = Scope.CHANNEL;
+        }
+        counters.pin(channelSlot);
+      }
+      if (rejectedScope == null && limit.getMax(Scope.LISTENER) > 0) {
+        listenerSlot = counters.slot(hash(Scope.LISTENER, listenerId, ""), window, now);
+        if (counters.count(listenerSlot, now) >= limit.getMax(Scope.LISTENER)) {
+          rejectedScope = Scope.LISTENER;
+        }
+      }
+      counters.unpinAll();
+
+      if (rejectedScope == null) {
+        // Only accepted triggers count, so a user spamming is let through again once quiet
+        if (userSlot >= 0) {
+          counters.increment(userSlot);
+        }
+        if (channelSlot >= 0) {
+          counters.increment(channelSlot);
+        }
+        if (listenerSlot >= 0) {
+          counters.increment(listenerSlot);
+        }
+        return true;
+      }
+    }
+
+    rejectedByScope.incrementAndGet(rejectedScope);
+    rejectedByListener.incrementAndGet(listener);
+    LOGGER.debug("Dropping trigger of {} by {}: {} limit exceeded", new Object[] {
+        listener.getClass().getSimpleName(), user.getNick(), rejectedScope});
+    return false;
+  }
+
+  // internal helpers
+
+  private static long hash(Scope scope, int listenerId, String name) {
+    // FNV-1a, case-insensitive on the name
+    long hash = FNV_OFFSET_BASIS;
+    hash = (hash ^ scope.ordinal()) * FNV_PRIME;
+    for (int shift = 0; shift < 32; shift += 8) {
+      hash = (hash ^ ((listenerId >>> shift) & 0xff)) * FNV_PRIME;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      char c = Character.toLowerCase(name.charAt(i));
+      hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+      hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+    return hash;
+  }
+}
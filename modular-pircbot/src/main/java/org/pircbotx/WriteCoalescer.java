@@ -0,0 +1,311 @@
+package org.pircbotx;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Collects the lines sent by an {@link ExtendedPircBotX} during a short tick and writes them to the
+ * socket together, with a single write and flush. Under heavy load, this turns many small writes
+ * into a few bigger ones.
+ * <p>
+ * Coalescing happens after pacing: lines reach this layer once the message delay or the flood
+ * control of the bot allows them to be sent, so they are only delayed by at most one tick.
+ * <p>
+ * Coalescing is disabled by default: each line is then written and flushed immediately, and a
+ * line that cannot be written makes its sender fail, as with a plain {@link PircBotX}. When
+ * coalescing is enabled, lines are written in the background, so a failure to write a batch is
+ * thrown to the sender of the next line instead.
+ * <p>
+ * This class is exposed for monitoring purposes.
+ *
+ * @author Emmanuel Cron
+ */
+public final class WriteCoalescer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WriteCoalescer.class);
+
+  private static final String LINE_SEPARATOR = "\r\n";
+
+  private final ExtendedPircBotX bot;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition linePending = lock.newCondition();
+
+  // All fields below are guarded by the lock
+
+  private final StringBuilder buffer = new StringBuilder();
+
+  private int pendingLines;
+
+  private long firstPendingNanos;
+
+  private long tickNanos = TimeUnit.MILLISECONDS.toNanos(5);
+
+  private boolean enabled;
+
+  // Failure to write the last batch in the background, thrown to the sender of the next line
+  private IOException writeFailure;
+
+  private long writeCount;
+
+  private long lineCount;
+
+  private int maxBatchSize;
+
+  private Thread flusher;
+
+  private boolean stopped;
+
+  WriteCoalescer(ExtendedPircBotX bot) {
+    this.bot = bot;
+  }
+
+  /**
+   * Returns whether lines are coalesced, or written immediately.
+   */
+  public boolean isEnabled() {
+    lock.lock();
+    try {
+      return enabled;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the maximum time, in nanoseconds, that a line waits for other lines before being
+   * written.
+   */
+  public long getTickNanos() {
+    lock.lock();
+    try {
+      return tickNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of writes made to the socket.
+   */
+  public long getWriteCount() {
+    lock.lock();
+    try {
+      return writeCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of lines written to the socket.
+   */
+  public long getLineCount() {
+    lock.lock();
+    try {
+      return lineCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the average number of lines written at once.
+   */
+  public double getAverageBatchSize() {
+    lock.lock();
+    try {
+      return writeCount == 0 ? 0 : (double) lineCount / writeCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the maximum number of lines written at once.
+   */
+  public int getMaxBatchSize() {
+    lock.lock();
+    try {
+      return maxBatchSize;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "WriteCoalescer[enabled=" + isEnabled() + ", writes=" + getWriteCount() + ", lines="
+        + getLineCount() + ", maxBatch=" + getMaxBatchSize() + "]";
+  }
+
+  /**
+   * Enables or disables coalescing. Lines waiting to be written are written right away when
+   * coalescing is disabled.
+   */
+  void setEnabled(boolean enabled) {
+    lock.lock();
+    try {
+      this.enabled = enabled;
+      if (!enabled) {
+        flushPendingLines();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void setTickNanos(long tickNanos) {
+    lock.lock();
+    try {
+      this.tickNanos = tickNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the given line, either right away or with the other lines sent during the current
+   * tick. The line must already be truncated to the maximum line length.
+   */
+  void write(String line) {
+    lock.lock();
+    try {
+      IOException failure = writeFailure;
+      if (failure != null) {
+        writeFailure = null;
+        throw new RuntimeException("Exception encountered when writing to socket", failure);
+      }
+
+      if (!enabled || stopped) {
+        // Behave as a direct write
+        try {
+          flushBuffer();
+          writeBatch(line + LINE_SEPARATOR, 1);
+        } catch (IOException ioe) {
+          writeFailure = null;
+          throw new RuntimeException("Exception encountered when writing to socket", ioe);
+        }
+        return;
+      }
+
+      buffer.append(line).append(LINE_SEPARATOR);
+      pendingLines++;
+      if (pendingLines == 1) {
+        firstPendingNanos = System.nanoTime();
+        if (flusher == null) {
+          flusher = new ThreadFactoryBuilder().setNameFormat("write-coalescer").setDaemon(true)
+              .build().newThread(this::flushTicks);
+          flusher.start();
+        }
+        linePending.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the lines waiting for the end of the current tick right away, before the socket is
+   * closed. A failure to write them is logged and forgotten, since it only concerns this socket.
+   */
+  void flush() {
+    lock.lock();
+    try {
+      flushBuffer();
+    } catch (IOException ioe) {
+      LOGGER.warn("Could not write pending lines before disconnecting", ioe);
+    } finally {
+      writeFailure = null;
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the lines waiting for the end of the current tick and stops the flusher thread. Lines
+   * written afterwards are written immediately.
+   */
+  void shutdown() {
+    lock.lock();
+    try {
+      stopped = true;
+      flushPendingLines();
+      linePending.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // internal helpers
+
+  private void flushTicks() {
+    lock.lock();
+    try {
+      while (!stopped) {
+        if (pendingLines == 0) {
+          linePending.await();
+          continue;
+        }
+
+        // Give other lines a chance to join the batch
+        long waitNanos = firstPendingNanos + tickNanos - System.nanoTime();
+        if (waitNanos > 0) {
+          linePending.awaitNanos(waitNanos);
+          continue;
+        }
+        flushPendingLines();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Must be called with the lock held
+  private void flushPendingLines() {
+    try {
+      flushBuffer();
+    } catch (IOException ioe) {
+      // Their senders are gone, so the sender of the next line learns that the socket is broken
+      LOGGER.error("Could not write pending line(s) to socket", ioe);
+      writeFailure = ioe;
+    }
+  }
+
+  // Must be called with the lock held
+  private void flushBuffer() throws IOException {
+    if (pendingLines == 0) {
+      return;
+    }
+
+    int batchSize = pendingLines;
+    String batch = buffer.toString();
+    buffer.setLength(0);
+    pendingLines = 0;
+    writeBatch(batch, batchSize);
+  }
+
+  // Must be called with the lock held
+  private void writeBatch(String batch, int batchSize) throws IOException {
+    Writer writer = bot.outputWriter;
+    if (writer == null) {
+      throw new IOException("Not connected to server");
+    }
+
+    writer.write(batch);
+    writer.flush();
+
+    writeCount++;
+    lineCount += batchSize;
+    maxBatchSize = Math.max(maxBatchSize, batchSize);
+  }
+}
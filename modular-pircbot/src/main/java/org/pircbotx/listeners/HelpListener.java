@@ -2,12 +2,17 @@ package org.pircbotx.listeners;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.pircbotx.ExtendedPircBotX;
+import org.pircbotx.MessagePriority;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.hooks.events.PrivateMessageEvent;
 
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Strings;
 
 /**
@@ -17,6 +22,10 @@ import com.google.common.base.Strings;
  * The listener automatically detects which listeners the bot has and adds one line of description
  * for each of them that can be triggered. Additionally, it detects if the user requesting help is
  * an administrator, and hides any listener that is OP-only to normal users.
+ * <p>
+ * Help is sent as announcements, so that it never delays replies to other users when flood control
+ * is enabled on the bot. It can also be packed into as few lines as possible by calling
+ * {@link #setPackLines(boolean)}.
  *
  * @author Emmanuel Cron
  */
@@ -29,6 +38,8 @@ public final class HelpListener extends ListenerAdapter<PircBotX> implements Pub
 
   private String helpText;
 
+  private boolean packLines;
+
   /**
    * Creates a new help listener.
    *
@@ -58,6 +69,14 @@ public final class HelpListener extends ListenerAdapter<PircBotX> implements Pub
     return helpText;
   }
 
+  /**
+   * Sets whether the help is packed into as few lines as possible, separated by "{@code  | }",
+   * instead of being sent one line per listener. Help is not packed by default.
+   */
+  public void setPackLines(boolean packLines) {
+    this.packLines = packLines;
+  }
+
   @Override
   public String getTriggerMessage() {
     return trigger;
@@ -65,12 +84,19 @@ public final class HelpListener extends ListenerAdapter<PircBotX> implements Pub
 
   @Override
   public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
-    if (!Strings.isNullOrEmpty(helpIntro)) {
-      event.getUser().send().notice(helpIntro);
-    }
-    for (String line : event.getBot().buildHelp(event.getUser(), false)) {
-      event.getUser().send().notice(line);
-    }
+    List<String> help = event.getBot().buildHelp(event.getUser(), false);
+    event.getBot().sendWithPriority(MessagePriority.ANNOUNCEMENT, () -> {
+      if (packLines) {
+        event.getBot().sendBatched().packedNotice(event.getUser().getNick(), toPackedLines(help));
+        return;
+      }
+      if (!Strings.isNullOrEmpty(helpIntro)) {
+        event.getUser().send().notice(helpIntro);
+      }
+      for (String line : help) {
+        event.getUser().send().notice(line);
+      }
+    });
   }
 
   @Override
@@ -80,11 +106,32 @@ public final class HelpListener extends ListenerAdapter<PircBotX> implements Pub
 
   @Override
   public void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event) {
+    List<String> help = event.getBot().buildHelp(event.getUser(), true);
+    event.getBot().sendWithPriority(MessagePriority.ANNOUNCEMENT, () -> {
+      if (packLines) {
+        event.getBot().sendBatched().packedMessage(event.getUser().getNick(), toPackedLines(help));
+        return;
+      }
+      if (!Strings.isNullOrEmpty(helpIntro)) {
+        event.respond(helpIntro);
+      }
+      for (String line : help) {
+        event.respond(line);
+      }
+    });
+  }
+
+  // internal helpers
+
+  private List<String> toPackedLines(List<String> help) {
+    List<String> lines = new ArrayList<String>();
     if (!Strings.isNullOrEmpty(helpIntro)) {
-      event.respond(helpIntro);
+      lines.add(helpIntro);
     }
-    for (String line : event.getBot().buildHelp(event.getUser(), true)) {
-      event.respond(line);
+    for (String line : help) {
+      // Columns make no sense once lines are packed
+      lines.add(CharMatcher.WHITESPACE.trimAndCollapseFrom(line, ' '));
     }
+    return lines;
   }
 }
@@ -1,8 +1,12 @@
 package org.pircbotx.listeners;
 
+import java.util.List;
+
 import org.pircbotx.ExtendedPircBotX;
 import org.pircbotx.hooks.events.PrivateMessageEvent;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * A listener that can be activated in a private chat.
  *
@@ -14,6 +18,14 @@ public interface PrivateListener extends TriggerableListener {
    */
   String getPrivateTriggerMessage();
 
+  /**
+   * Returns other words that can be used instead of {@link #getPrivateTriggerMessage()} to trigger
+   * this listener in a private chat. There are none by default.
+   */
+  default List<String> getPrivateTriggerAliases() {
+    return ImmutableList.of();
+  }
+
   /**
    * This method is called when this listener has been triggered in a private chat by a user using
    * its trigger message.
@@ -22,6 +34,20 @@ public interface PrivateListener extends TriggerableListener {
    */
   void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event);
 
+  /**
+   * This method is called when this listener has been triggered in a private chat by a user using
+   * its trigger message, possibly followed by arguments. By default, arguments are ignored and
+   * {@link #onTriggerPrivateMessage(PrivateMessageEvent)} is called; listeners that do not override
+   * this method are then only triggered when the message is exactly their trigger.
+   *
+   * @param event the trigger event
+   * @param arguments the words following the trigger, if any; never {@code null}
+   */
+  default void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event,
+      List<String> arguments) {
+    onTriggerPrivateMessage(event);
+  }
+
   /**
    * Returns whether this listener can only be triggered by an OP or not.
    */
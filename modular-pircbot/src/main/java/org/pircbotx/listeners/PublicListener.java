@@ -1,8 +1,12 @@
 package org.pircbotx.listeners;
 
+import java.util.List;
+
 import org.pircbotx.ExtendedPircBotX;
 import org.pircbotx.hooks.events.MessageEvent;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * A listener that can be activated in a public channel.
  *
@@ -11,13 +15,22 @@ import org.pircbotx.hooks.events.MessageEvent;
 public interface PublicListener extends TriggerableListener {
   /**
    * Returns the word that a user has to say in a public channel to trigger this listener. Note that
-   * an exclamation mark will have to prefix this word for the bot to recognize it.
+   * an exclamation mark will have to prefix this word for the bot to recognize it, unless the
+   * command is addressed to the bot.
    * <p>
-   * For example, if this method returns "{@code help}", a user will have to say "{@code !help}" in
-   * a public channel to trigger this listener.
+   * For example, if this method returns "{@code help}", a user will have to say "{@code !help}" or
+   * "{@code <botname>: help}" in a public channel to trigger this listener.
    */
   String getTriggerMessage();
 
+  /**
+   * Returns other words that can be used instead of {@link #getTriggerMessage()} to trigger this
+   * listener in a public channel. There are none by default.
+   */
+  default List<String> getTriggerAliases() {
+    return ImmutableList.of();
+  }
+
   /**
    * This method is called when this listener has been activated in a public channel by a user using
    * its trigger message.
@@ -25,4 +38,17 @@ public interface PublicListener extends TriggerableListener {
    * @param event the trigger event
    */
   void onTriggerMessage(MessageEvent<ExtendedPircBotX> event);
+
+  /**
+   * This method is called when this listener has been activated in a public channel by a user using
+   * its trigger message, possibly followed by arguments. By default, arguments are ignored and
+   * {@link #onTriggerMessage(MessageEvent)} is called; listeners that do not override this method
+   * are then only triggered when nothing follows their trigger.
+   *
+   * @param event the trigger event
+   * @param arguments the words following the trigger, if any; never {@code null}
+   */
+  default void onTriggerMessage(MessageEvent<ExtendedPircBotX> event, List<String> arguments) {
+    onTriggerMessage(event);
+  }
 }
@@ -0,0 +1,261 @@
+package org.pircbotx.listeners;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+/**
+ * When a {@link ScheduledListener} should be executed. Two kinds of schedules are available:
+ * <ul>
+ * <li>{@link #every(long, TimeUnit)}: the listener is executed as soon as the bot connects, then
+ * again each time the given period has elapsed since the end of its last execution;</li>
+ * <li>{@link #cron(String)}: the listener is executed at the times described by a cron-like
+ * expression.</li>
+ * </ul>
+ *
+ * <h2>Cron expressions</h2>
+ * A cron expression is made of 5 fields separated by spaces: <tt>minute</tt> (0-59),
+ * <tt>hour</tt> (0-23), <tt>day of month</tt> (1-31), <tt>month</tt> (1-12) and
+ * <tt>day of week</tt> (0-7, both 0 and 7 being Sunday). Each field can be:
+ * <ul>
+ * <li>"<tt>*</tt>" to match any value;</li>
+ * <li>a single value, such as "<tt>5</tt>";</li>
+ * <li>a range of values, such as "<tt>1-5</tt>";</li>
+ * <li>a step, such as "<tt>*&#47;15</tt>" or "<tt>0-30/10</tt>";</li>
+ * <li>a comma-separated list of all the above, such as "<tt>0,30</tt>".</li>
+ * </ul>
+ * As in the Unix cron, if both the day of month and the day of week are restricted, a day matches
+ * when either of them matches.
+ * <p>
+ * Examples: "<tt>*&#47;5 * * * *</tt>" (every 5 minutes), "<tt>0 9 * * 1-5</tt>" (at 9:00 on
+ * weekdays), "<tt>30 0 1 * *</tt>" (at 0:30 on the first day of each month).
+ *
+ * @author Emmanuel Cron
+ */
+public abstract class Schedule {
+  Schedule() {
+    // Only the schedules below are supported
+  }
+
+  /**
+   * Creates a schedule that executes a listener right away, then each time the given period has
+   * elapsed since the end of its previous execution.
+   *
+   * @param period time to wait between two executions
+   * @param unit unit of the period
+   */
+  public static Schedule every(long period, TimeUnit unit) {
+    checkArgument(period > 0, "Schedule period must be > 0");
+    return new PeriodicSchedule(unit.toMillis(period));
+  }
+
+  /**
+   * Creates a schedule that executes a listener at the times described by the given cron-like
+   * expression, in the default time zone of the machine (see class description).
+   *
+   * @param expression the cron-like expression
+   *
+   * @throws IllegalArgumentException if the expression is invalid
+   */
+  public static Schedule cron(String expression) {
+    return cron(expression, ZoneId.systemDefault());
+  }
+
+  /**
+   * Creates a schedule that executes a listener at the times described by the given cron-like
+   * expression, in the given time zone (see class description).
+   *
+   * @param expression the cron-like expression
+   * @param zone the time zone in which the expression is evaluated
+   *
+   * @throws IllegalArgumentException if the expression is invalid
+   */
+  public static Schedule cron(String expression, ZoneId zone) {
+    checkArgument(!Strings.isNullOrEmpty(expression), "Cron expression can't be null or empty");
+    return new CronSchedule(expression, checkNotNull(zone));
+  }
+
+  /**
+   * Returns when a listener should be executed for the first time.
+   *
+   * @param nowMillis the current time, in milliseconds since the epoch
+   * @return the time of the first execution, in milliseconds since the epoch
+   */
+  public abstract long firstExecutionMillis(long nowMillis);
+
+  /**
+   * Returns when a listener should be executed after an execution has completed.
+   *
+   * @param completedMillis the time the last execution completed, in milliseconds since the epoch
+   * @return the time of the next execution, in milliseconds since the epoch
+   */
+  public abstract long nextExecutionMillis(long completedMillis);
+
+  private static final class PeriodicSchedule extends Schedule {
+    private final long periodMillis;
+
+    PeriodicSchedule(long periodMillis) {
+      this.periodMillis = periodMillis;
+    }
+
+    @Override
+    public long firstExecutionMillis(long nowMillis) {
+      return nowMillis;
+    }
+
+    @Override
+    public long nextExecutionMillis(long completedMillis) {
+      return completedMillis + periodMillis;
+    }
+
+    @Override
+    public String toString() {
+      return "every " + periodMillis + "ms";
+    }
+  }
+
+  private static final class CronSchedule extends Schedule {
+    // A cron expression always matches within a few years, unless it asks for February 30th
+    private static final int MAX_YEARS_SEARCHED = 5;
+
+    private final String expression;
+
+    private final ZoneId zone;
+
+    private final BitSet minutes;
+
+    private final BitSet hours;
+
+    private final BitSet daysOfMonth;
+
+    private final BitSet months;
+
+    private final BitSet daysOfWeek;
+
+    private final boolean anyDayOfMonth;
+
+    private final boolean anyDayOfWeek;
+
+    CronSchedule(String expression, ZoneId zone) {
+      List<String> fields = Splitter.on(' ').omitEmptyStrings().splitToList(expression.trim());
+      checkArgument(fields.size() == 5, "Cron expression must have 5 fields: %s", expression);
+
+      this.expression = expression;
+      this.zone = zone;
+      this.minutes = parseField(fields.get(0), 0, 59, expression);
+      this.hours = parseField(fields.get(1), 0, 23, expression);
+      this.daysOfMonth = parseField(fields.get(2), 1, 31, expression);
+      this.months = parseField(fields.get(3), 1, 12, expression);
+      this.daysOfWeek = parseField(fields.get(4), 0, 7, expression);
+      if (daysOfWeek.get(7)) {
+        // Both 0 and 7 are Sunday
+        daysOfWeek.set(0);
+      }
+      this.anyDayOfMonth = "*".equals(fields.get(2));
+      this.anyDayOfWeek = "*".equals(fields.get(4));
+    }
+
+    @Override
+    public long firstExecutionMillis(long nowMillis) {
+      return nextExecutionMillis(nowMillis);
+    }
+
+    @Override
+    public long nextExecutionMillis(long completedMillis) {
+      ZonedDateTime time =
+          Instant.ofEpochMilli(completedMillis).atZone(zone).truncatedTo(ChronoUnit.MINUTES)
+              .plusMinutes(1);
+      int maxYear = time.getYear() + MAX_YEARS_SEARCHED;
+
+      // Skip whole months, days and hours when they don't match
+      while (time.getYear() <= maxYear) {
+        if (!months.get(time.getMonthValue())) {
+          time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+        } else if (!matchesDay(time)) {
+          time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+        } else if (!hours.get(time.getHour())) {
+          time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        } else if (!minutes.get(time.getMinute())) {
+          time = time.plusMinutes(1);
+        } else {
+          return time.toInstant().toEpochMilli();
+        }
+      }
+      throw new IllegalStateException("Cron expression never matches: " + expression);
+    }
+
+    @Override
+    public String toString() {
+      return "cron '" + expression + "'";
+    }
+
+    private boolean matchesDay(ZonedDateTime time) {
+      boolean dayOfMonthMatches = daysOfMonth.get(time.getDayOfMonth());
+      // Sunday is 7 in java.time
+      DayOfWeek dayOfWeek = time.getDayOfWeek();
+      boolean dayOfWeekMatches = daysOfWeek.get(dayOfWeek.getValue() % 7);
+
+      if (!anyDayOfMonth && !anyDayOfWeek) {
+        return dayOfMonthMatches || dayOfWeekMatches;
+      }
+      return dayOfMonthMatches && dayOfWeekMatches;
+    }
+
+    private static BitSet parseField(String field, int min, int max, String expression) {
+      BitSet values = new BitSet(max + 1);
+      for (String part : Splitter.on(',').split(field)) {
+        int step = 1;
+        int slash = part.indexOf('/');
+        if (slash >= 0) {
+          step = parseValue(part.substring(slash + 1), 1, max, expression);
+          part = part.substring(0, slash);
+        }
+
+        int from;
+        int to;
+        if ("*".equals(part)) {
+          from = min;
+          to = max;
+        } else if (part.indexOf('-') > 0) {
+          int dash = part.indexOf('-');
+          from = parseValue(part.substring(0, dash), min, max, expression);
+          to = parseValue(part.substring(dash + 1), min, max, expression);
+          checkArgument(from <= to, "Invalid range in cron expression: %s", expression);
+        } else {
+          from = parseValue(part, min, max, expression);
+          // "5/10" means from 5 to the end, every 10
+          to = slash >= 0 ? max : from;
+        }
+
+        for (int value = from; value <= to; value += step) {
+          values.set(value);
+        }
+      }
+      return values;
+    }
+
+    private static int parseValue(String value, int min, int max, String expression) {
+      int parsed;
+      try {
+        parsed = Integer.parseInt(value);
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Invalid value '" + value + "' in cron expression: "
+            + expression, nfe);
+      }
+      checkArgument(parsed >= min && parsed <= max,
+          "Value %s out of range [%s-%s] in cron expression: %s", parsed, min, max, expression);
+      return parsed;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package org.pircbotx.listeners;
+
+import org.pircbotx.ExtendedPircBotX;
+import org.pircbotx.PircBotX;
+
+/**
+ * A scheduled listener. Scheduled listeners are executed periodically according to their
+ * {@link Schedule}, starting when the bot successfully connects to a server for the first time and
+ * until the bot is shut down (= disconnects and quits).
+ * <p>
+ * Unlike {@link RunnableListener}s, scheduled listeners don't own a thread: all of them share the
+ * scheduler of the {@link ExtendedPircBotX} and only use one of its threads while they are being
+ * executed. Executions should therefore be kept short; a listener is never executed twice at the
+ * same time.
+ *
+ * @author Emmanuel Cron
+ */
+public interface ScheduledListener {
+  /**
+   * Sets the bot that executes this scheduled listener. This method is called once, before the
+   * first execution of the listener.
+   */
+  void setBot(PircBotX bot);
+
+  /**
+   * Returns when this listener should be executed. This method is called once, when the listener is
+   * first scheduled.
+   */
+  Schedule getSchedule();
+
+  /**
+   * Executes the periodic work of this listener.
+   */
+  void onSchedule();
+}
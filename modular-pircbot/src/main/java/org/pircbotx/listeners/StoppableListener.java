@@ -9,8 +9,8 @@ package org.pircbotx.listeners;
 public interface StoppableListener {
   /**
    * When the bot is shut down, it requests all listeners implementing this interface to stop
-   * immediately. The module should do so rapidly (&lt; 500ms) since the bot will kill any reamining
-   * running thread after a finite amount of time.
+   * immediately. The module should do so rapidly (&lt; 500ms) since the bot will interrupt any
+   * remaining running listener once its shutdown timeout is reached.
    */
   public abstract void stop();
 }
@@ -0,0 +1,25 @@
+package org.pircbotx.listeners;
+
+import org.pircbotx.ExtendedPircBotX;
+
+/**
+ * A listener that needs to load or precompute some data, such as files or regular expressions,
+ * before it can do its work.
+ * <p>
+ * Instead of doing this work in their constructor, these listeners do it in {@link #warmUp()}. The
+ * {@link ExtendedPircBotX} warms all of them up in parallel while it connects to the server, and
+ * logs how long each of them took. Until its warm-up has completed, a listener should handle
+ * events as if it had no data; the triggers of a listener that is still warming up are deferred
+ * until it is done.
+ *
+ * @author Emmanuel Cron
+ */
+public interface WarmUpListener {
+  /**
+   * Loads the data needed by this listener. This method is called in a thread of the warm-up pool
+   * of the bot, and may be called at the same time as the event handling methods of the listener.
+   * It is called again each time the listener is removed from the bot and added back, so it must
+   * release or replace whatever a previous warm-up set up.
+   */
+  void warmUp();
+}
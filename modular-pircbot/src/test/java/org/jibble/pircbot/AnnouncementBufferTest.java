@@ -0,0 +1,93 @@
+package org.jibble.pircbot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pircbotx.AnnouncementBuffer;
+import org.pircbotx.AnnouncementBufferPolicy;
+import org.pircbotx.Configuration;
+import org.pircbotx.ExtendedPircBotX;
+import org.pircbotx.PircBotX;
+
+import com.google.common.collect.ImmutableList;
+
+public class AnnouncementBufferTest {
+  @Test
+  public void keepWhileDisconnected() throws IOException {
+    Path file = Files.createTempFile("announcements", ".txt");
+    try {
+      AnnouncementBufferPolicy policy =
+          new AnnouncementBufferPolicy(2, 1, TimeUnit.HOURS, 1, TimeUnit.SECONDS, file);
+
+      ExtendedPircBotX bot = createBot(policy);
+      bot.announce("first");
+      bot.announce("#Channel", "second");
+      bot.announce("#channel", "second");
+      bot.announce("third");
+
+      AnnouncementBuffer buffer = bot.getAnnouncementBuffer();
+      assertEquals(2, buffer.getSize());
+      assertEquals(1, buffer.getMergedCount());
+      assertEquals(1, buffer.getDroppedCount());
+
+      // Waiting announcements survive a restart
+      assertEquals(2, createBot(policy).getAnnouncementBuffer().getSize());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void deliverToJoinedChannelsWhileOthersWait() throws InterruptedException {
+    AnnouncementBufferPolicy policy =
+        new AnnouncementBufferPolicy(10, 1, TimeUnit.HOURS, 1, TimeUnit.SECONDS, null);
+    List<String> lines = new CopyOnWriteArrayList<String>();
+    Configuration.Builder<PircBotX> configuration = new Configuration.Builder<PircBotX>()
+        .setServer("some host", 1)
+        .setName("Test")
+        .setMessageDelay(0);
+    ExtendedPircBotX bot = new ExtendedPircBotX(configuration.buildConfiguration()) {
+      @Override
+      public boolean isConnected() {
+        return true;
+      }
+
+      @Override
+      protected void sendRawLineToServer(String line) {
+        lines.add(line);
+      }
+    };
+    bot.setAnnouncementBuffer(policy);
+    // Joined by the bot
+    bot.getUserChannelDao().getChannel("#joined");
+
+    bot.announce("#away", "first");
+    bot.announce("#joined", "second");
+
+    // Not held up by the announcement waiting for #away
+    AnnouncementBuffer buffer = bot.getAnnouncementBuffer();
+    assertEquals(1, buffer.getSize());
+    for (int i = 0; i < 100 && lines.isEmpty(); i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(ImmutableList.of("PRIVMSG #joined :second"), lines);
+  }
+
+  // internal helpers
+
+  private static ExtendedPircBotX createBot(AnnouncementBufferPolicy policy) {
+    Configuration.Builder<PircBotX> configuration = new Configuration.Builder<PircBotX>()
+        .setServer("some host", 1)
+        .setName("Test");
+    ExtendedPircBotX bot = new ExtendedPircBotX(configuration.buildConfiguration());
+    bot.setAnnouncementBuffer(policy);
+    return bot;
+  }
+}
@@ -0,0 +1,35 @@
+package org.jibble.pircbot;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.pircbotx.BatchedOutput;
+
+import com.google.common.collect.ImmutableList;
+
+public class BatchedOutputTest {
+  @Test
+  public void packShortLines() {
+    assertEquals(ImmutableList.of("a | bb", "ccc"),
+        BatchedOutput.pack(ImmutableList.of("a", "bb", "ccc"), " | ", 8));
+  }
+
+  @Test
+  public void packLongLine() {
+    assertEquals(ImmutableList.of("a", "one two", "three"),
+        BatchedOutput.pack(ImmutableList.of("a", "one two three"), " | ", 8));
+  }
+
+  @Test
+  public void splitOnSpaces() {
+    assertEquals(ImmutableList.of("hello", "world"), BatchedOutput.split("hello world", 8));
+  }
+
+  @Test
+  public void splitUtf8() {
+    // Each "é" is 2 bytes long, each "€" is 3 bytes long
+    assertEquals(ImmutableList.of("éé", "é€", "€"), BatchedOutput.split("ééé€€", 5));
+    // Surrogate pairs are 4 bytes long and never cut
+    assertEquals(ImmutableList.of("😀", "😀"), BatchedOutput.split("😀😀", 6));
+  }
+}
@@ -0,0 +1,82 @@
+package org.jibble.pircbot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pircbotx.Channel;
+import org.pircbotx.ChannelOrderedListenerManager;
+import org.pircbotx.Configuration;
+import org.pircbotx.PircBotX;
+import org.pircbotx.User;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+
+public class ChannelOrderedListenerManagerTest {
+  private static final int MESSAGES_PER_CHANNEL = 20;
+
+  private final List<String> calls = new CopyOnWriteArrayList<String>();
+
+  private final CountDownLatch done = new CountDownLatch(4 * MESSAGES_PER_CHANNEL + 1);
+
+  @Test
+  public void ordering() throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    ChannelOrderedListenerManager<PircBotX> manager =
+        new ChannelOrderedListenerManager<PircBotX>(pool);
+    manager.addListener(new ListenerAdapter<PircBotX>() {
+      @Override
+      public void onMessage(MessageEvent<PircBotX> event) throws InterruptedException {
+        // Give other lanes a chance to overtake if ordering was broken
+        Thread.sleep(1);
+        calls.add(event.getChannel().getName() + " " + event.getMessage());
+        done.countDown();
+      }
+
+      @Override
+      public void onConnect(ConnectEvent<PircBotX> event) {
+        calls.add("connect");
+        done.countDown();
+      }
+    });
+
+    PircBotX bot = new PircBotX(new Configuration.Builder<PircBotX>().setServer("some host", 1)
+        .setName("Test").setListenerManager(manager).buildConfiguration());
+    Channel first = bot.getUserChannelDao().getChannel("#first");
+    Channel second = bot.getUserChannelDao().getChannel("#second");
+    User user = bot.getUserChannelDao().getUser("someone");
+
+    for (int i = 0; i < 2 * MESSAGES_PER_CHANNEL; i++) {
+      if (i == MESSAGES_PER_CHANNEL) {
+        manager.dispatchEvent(new ConnectEvent<PircBotX>(bot));
+      }
+      manager.dispatchEvent(new MessageEvent<PircBotX>(bot, first, user, String.valueOf(i)));
+      manager.dispatchEvent(new MessageEvent<PircBotX>(bot, second, user, String.valueOf(i)));
+    }
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    pool.shutdown();
+
+    int connectIndex = calls.indexOf("connect");
+    assertEquals(2 * MESSAGES_PER_CHANNEL, connectIndex);
+    for (String channel : new String[] {"#first", "#second"}) {
+      int expected = 0;
+      for (int i = 0; i < calls.size(); i++) {
+        if (calls.get(i).startsWith(channel + " ")) {
+          assertEquals(channel + " " + expected, calls.get(i));
+          assertEquals(expected < MESSAGES_PER_CHANNEL, i < connectIndex);
+          expected++;
+        }
+      }
+      assertEquals(2 * MESSAGES_PER_CHANNEL, expected);
+    }
+  }
+}
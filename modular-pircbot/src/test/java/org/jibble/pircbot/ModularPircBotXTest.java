@@ -1,6 +1,8 @@
 package org.jibble.pircbot;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 
@@ -9,7 +11,10 @@ import org.pircbotx.Configuration;
 import org.pircbotx.ExtendedPircBotX;
 import org.pircbotx.PircBotX;
 import org.pircbotx.User;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.listeners.HelpListener;
+import org.pircbotx.listeners.PublicListener;
 
 public class ModularPircBotXTest {
   @Test
@@ -26,4 +31,41 @@ public class ModularPircBotXTest {
     assertEquals(1, help.size());
     assertEquals("!aide", help.get(0));
   }
+
+  @Test
+  public void addAndRemoveListener() {
+    Configuration.Builder<PircBotX> configuration = new Configuration.Builder<PircBotX>()
+        .setServer("some host", 1)
+        .setName("Test")
+        .addListener(new HelpListener("aide", "This is a test help message"));
+    ExtendedPircBotX bot = new ExtendedPircBotX(configuration.buildConfiguration());
+    User user = configuration.getBotFactory().createUser(bot, "TestUser");
+
+    NewsListener newsListener = new NewsListener();
+    assertTrue(bot.addListener(newsListener));
+    assertFalse(bot.addListener(newsListener));
+    assertEquals(2, bot.buildHelp(user, false).size());
+    assertEquals("!news", bot.buildHelp(user, false).get(1).trim());
+
+    assertTrue(bot.removeListener(newsListener));
+    assertFalse(bot.removeListener(newsListener));
+    assertEquals(1, bot.buildHelp(user, false).size());
+  }
+
+  private static class NewsListener extends ListenerAdapter<PircBotX> implements PublicListener {
+    @Override
+    public String getTriggerMessage() {
+      return "news";
+    }
+
+    @Override
+    public String getHelpText() {
+      return null;
+    }
+
+    @Override
+    public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+      // Not triggered here
+    }
+  }
 }
@@ -0,0 +1,98 @@
+package org.jibble.pircbot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.pircbotx.Configuration;
+import org.pircbotx.PircBotX;
+import org.pircbotx.SubscriptionListenerManager;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.hooks.events.KickEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.types.GenericMessageEvent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class SubscriptionListenerManagerTest {
+  private final List<String> calls = new ArrayList<String>();
+
+  private final ListenerAdapter<PircBotX> connectListener = new ListenerAdapter<PircBotX>() {
+    @Override
+    public void onConnect(ConnectEvent<PircBotX> event) {
+      calls.add("onConnect");
+    }
+  };
+
+  private final ListenerAdapter<PircBotX> kickListener = new ListenerAdapter<PircBotX>() {
+    @Override
+    public void onKick(KickEvent<PircBotX> event) {
+      calls.add("onKick");
+    }
+  };
+
+  private final ListenerAdapter<PircBotX> messageListener = new ListenerAdapter<PircBotX>() {
+    @Override
+    public void onMessage(MessageEvent<PircBotX> event) {
+      calls.add("onMessage");
+    }
+
+    @Override
+    public void onGenericMessage(GenericMessageEvent<PircBotX> event) {
+      calls.add("onGenericMessage");
+    }
+  };
+
+  private final ListenerAdapter<PircBotX> allListener = new ListenerAdapter<PircBotX>() {
+    @Override
+    public void onEvent(Event<PircBotX> event) {
+      calls.add("onEvent");
+    }
+  };
+
+  @Test
+  public void subscribers() {
+    SubscriptionListenerManager<PircBotX> manager = createManager();
+
+    assertEquals(ImmutableList.of(connectListener, allListener),
+        manager.getSubscribers(ConnectEvent.class));
+    assertEquals(ImmutableList.of(kickListener, allListener),
+        manager.getSubscribers(KickEvent.class));
+    assertEquals(ImmutableList.of(messageListener, allListener),
+        manager.getSubscribers(MessageEvent.class));
+  }
+
+  @Test
+  public void dispatch() {
+    SubscriptionListenerManager<PircBotX> manager = createManager();
+    PircBotX bot = new PircBotX(new Configuration.Builder<PircBotX>().setServer("some host", 1)
+        .setName("Test").setListenerManager(manager).buildConfiguration());
+
+    manager.dispatchEvent(new ConnectEvent<PircBotX>(bot));
+    assertEquals(ImmutableList.of("onConnect", "onEvent"), calls);
+  }
+
+  @Test
+  public void removeListener() {
+    SubscriptionListenerManager<PircBotX> manager = createManager();
+    manager.getSubscribers(KickEvent.class);
+    manager.removeListener(kickListener);
+
+    assertEquals(ImmutableList.of(allListener), manager.getSubscribers(KickEvent.class));
+  }
+
+  private SubscriptionListenerManager<PircBotX> createManager() {
+    SubscriptionListenerManager<PircBotX> manager =
+        new SubscriptionListenerManager<PircBotX>(MoreExecutors.sameThreadExecutor());
+    manager.addListener(connectListener);
+    manager.addListener(kickListener);
+    manager.addListener(messageListener);
+    manager.addListener(allListener);
+    return manager;
+  }
+}
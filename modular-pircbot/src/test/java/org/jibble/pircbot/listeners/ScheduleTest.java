@@ -0,0 +1,56 @@
+package org.jibble.pircbot.listeners;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pircbotx.listeners.Schedule;
+
+public class ScheduleTest {
+  @Test
+  public void every() {
+    Schedule schedule = Schedule.every(30, TimeUnit.SECONDS);
+    assertEquals(1000L, schedule.firstExecutionMillis(1000L));
+    assertEquals(31000L, schedule.nextExecutionMillis(1000L));
+  }
+
+  @Test
+  public void cronSteps() {
+    Schedule schedule = Schedule.cron("*/15 * * * *", ZoneOffset.UTC);
+    assertEquals(millis(2014, 3, 10, 12, 15), schedule.nextExecutionMillis(millis(2014, 3, 10, 12,
+        0)));
+    assertEquals(millis(2014, 3, 10, 13, 0), schedule.nextExecutionMillis(millis(2014, 3, 10, 12,
+        50)));
+  }
+
+  @Test
+  public void cronWeekdays() {
+    // Saturday 2014-03-08 -> Monday 2014-03-10 at 9:00
+    Schedule schedule = Schedule.cron("0 9 * * 1-5", ZoneOffset.UTC);
+    assertEquals(millis(2014, 3, 10, 9, 0), schedule.nextExecutionMillis(millis(2014, 3, 8, 10,
+        0)));
+  }
+
+  @Test
+  public void cronDayOfMonthOrDayOfWeek() {
+    // 1st of the month or Sunday, whichever comes first
+    Schedule schedule = Schedule.cron("30 0 1 * 0", ZoneOffset.UTC);
+    assertEquals(millis(2014, 3, 9, 0, 30), schedule.nextExecutionMillis(millis(2014, 3, 3, 0,
+        0)));
+    assertEquals(millis(2014, 4, 1, 0, 30), schedule.nextExecutionMillis(millis(2014, 3, 30, 1,
+        0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cronInvalid() {
+    Schedule.cron("61 * * * *");
+  }
+
+  private static long millis(int year, int month, int day, int hour, int minute) {
+    return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, ZoneOffset.UTC).toInstant()
+        .toEpochMilli();
+  }
+}
@@ -0,0 +1,168 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.pircbotx.CommandRouter.Route;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.pircbotx.listeners.PrivateListener;
+import org.pircbotx.listeners.PublicListener;
+
+import com.google.common.collect.ImmutableList;
+
+public class CommandRouterTest {
+  private final CommandListener news = new CommandListener("news", "n");
+
+  private final CommandListener newsToday = new CommandListener("news today");
+
+  private final ExactListener help = new ExactListener("help");
+
+  private final CommandRouter router = CommandRouter.build(
+      ImmutableList.<PublicListener>of(news, newsToday, help),
+      ImmutableList.<PrivateListener>of(news, newsToday, help));
+
+  @Test
+  public void routePrefixedCommands() {
+    assertRoute(router.routePublic("!news", "MyBot"), news);
+    assertRoute(router.routePublic("!NEWS 5", "MyBot"), news, "5");
+    assertNull(router.routePublic("news", "MyBot"));
+    assertNull(router.routePublic("!", "MyBot"));
+    // Triggers end on a word boundary
+    assertNull(router.routePublic("!newsletter", "MyBot"));
+    assertNull(router.routePublic("!weather", "MyBot"));
+  }
+
+  @Test
+  public void routeAddressedCommands() {
+    assertRoute(router.routePublic("MyBot: news 5", "MyBot"), news, "5");
+    assertRoute(router.routePublic("mybot, news", "MyBot"), news);
+    assertRoute(router.routePublic("MyBot:   !news", "MyBot"), news);
+    assertNull(router.routePublic("MyBot news", "MyBot"));
+    assertNull(router.routePublic("OtherBot: news", "MyBot"));
+    assertNull(router.routePublic("MyBot: news", null));
+  }
+
+  @Test
+  public void routeAliases() {
+    assertRoute(router.routePublic("!n 3", "MyBot"), news, "3");
+    assertRoute(router.routePrivate("N"), news);
+  }
+
+  @Test
+  public void routeLongestTrigger() {
+    assertRoute(router.routePublic("!news today sports", "MyBot"), newsToday, "sports");
+    assertRoute(router.routePublic("!news tomorrow", "MyBot"), news, "tomorrow");
+    assertRoute(router.routePrivate("news  today"), news, "today");
+  }
+
+  @Test
+  public void splitQuotedArguments() {
+    assertRoute(router.routePublic("!news \"two words\" one", "MyBot"), news, "two words",
+        "one");
+    assertRoute(router.routePublic("!news a\"b c\"d \"\"", "MyBot"), news, "ab cd", "");
+    assertEquals(ImmutableList.of("unterminated quote"),
+        CommandRouter.tokenize("\"unterminated quote", 0));
+  }
+
+  @Test
+  public void routeExactPublicTriggers() {
+    assertRoute(router.routePublic("!help", "MyBot"), help);
+    assertRoute(router.routePublic("MyBot: HELP", "MyBot"), help);
+    // Listeners ignoring arguments are not triggered by sentences starting with their trigger
+    assertNull(router.routePublic("!help me", "MyBot"));
+    assertNull(router.routePublic("MyBot: help is coming", "MyBot"));
+    assertNull(router.routePublic("!help ", "MyBot"));
+  }
+
+  @Test
+  public void routeExactPrivateTriggers() {
+    assertRoute(router.routePrivate("help"), help);
+    assertRoute(router.routePrivate("HELP"), help);
+    assertNull(router.routePrivate("help me"));
+    assertNull(router.routePrivate(" help"));
+    assertNull(router.routePrivate("help "));
+    // Listeners handling arguments are still triggered with them
+    assertRoute(router.routePrivate("  news 5 "), news, "5");
+  }
+
+  // internal helpers
+
+  private static void assertRoute(Route<?> route, Object listener, String... arguments) {
+    assertEquals(ImmutableList.of(listener), route.getListeners());
+    assertEquals(ImmutableList.copyOf(arguments), route.getArguments());
+  }
+
+  private static class ExactListener extends ListenerAdapter<PircBotX> implements PublicListener,
+      PrivateListener {
+    private final String trigger;
+
+    ExactListener(String trigger) {
+      this.trigger = trigger;
+    }
+
+    @Override
+    public String getTriggerMessage() {
+      return trigger;
+    }
+
+    @Override
+    public String getPrivateTriggerMessage() {
+      return trigger;
+    }
+
+    @Override
+    public String getHelpText() {
+      return null;
+    }
+
+    @Override
+    public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+      // nothing to do
+    }
+
+    @Override
+    public void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event) {
+      // nothing to do
+    }
+
+    @Override
+    public boolean isOpRequired() {
+      return false;
+    }
+  }
+
+  private static class CommandListener extends ExactListener {
+    private final List<String> aliases;
+
+    CommandListener(String trigger, String... aliases) {
+      super(trigger);
+      this.aliases = ImmutableList.copyOf(aliases);
+    }
+
+    @Override
+    public List<String> getTriggerAliases() {
+      return aliases;
+    }
+
+    @Override
+    public List<String> getPrivateTriggerAliases() {
+      return aliases;
+    }
+
+    @Override
+    public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event, List<String> arguments) {
+      // nothing to do
+    }
+
+    @Override
+    public void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event,
+        List<String> arguments) {
+      // nothing to do
+    }
+  }
+}
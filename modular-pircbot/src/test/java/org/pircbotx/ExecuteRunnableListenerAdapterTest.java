@@ -0,0 +1,94 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.pircbotx.listeners.RunnableListener;
+
+import com.google.common.collect.ImmutableList;
+
+public class ExecuteRunnableListenerAdapterTest {
+  @Test
+  public void reportListenersOverrunningShutdown() throws InterruptedException {
+    ExtendedPircBotX bot = new ExtendedPircBotX(new Configuration.Builder<PircBotX>()
+        .setServer("some host", 1)
+        .setName("Test")
+        .buildConfiguration());
+    WaitingListener stoppingListener = new WaitingListener();
+    WaitingListener stuckListener = new WaitingListener();
+    bot.addListener(stoppingListener);
+    bot.addListener(stuckListener);
+
+    ExecuteRunnableListenerAdapter adapter = new ExecuteRunnableListenerAdapter();
+    adapter.onConnect(new ConnectEvent<ExtendedPircBotX>(bot));
+    assertTrue(stoppingListener.started.await(1, TimeUnit.SECONDS));
+    assertTrue(stuckListener.started.await(1, TimeUnit.SECONDS));
+
+    // Only the first one listens to stop requests
+    stoppingListener.stop();
+    ShutdownReport report = adapter.awaitListeners(200);
+
+    assertFalse(report.isClean());
+    assertEquals(ImmutableList.of(stuckListener), report.getOverrunListeners());
+    assertTrue(report.getElapsedMillis() >= 200);
+    assertTrue(stuckListener.interrupted.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void reportCleanShutdown() throws InterruptedException {
+    ExtendedPircBotX bot = new ExtendedPircBotX(new Configuration.Builder<PircBotX>()
+        .setServer("some host", 1)
+        .setName("Test")
+        .buildConfiguration());
+    WaitingListener listener = new WaitingListener();
+    bot.addListener(listener);
+
+    ExecuteRunnableListenerAdapter adapter = new ExecuteRunnableListenerAdapter();
+    adapter.onConnect(new ConnectEvent<ExtendedPircBotX>(bot));
+    assertTrue(listener.started.await(1, TimeUnit.SECONDS));
+    listener.stop();
+
+    ShutdownReport report = adapter.awaitListeners(5000);
+    assertTrue(report.isClean());
+    assertTrue(report.getElapsedMillis() < 5000);
+  }
+
+  /**
+   * Waits until stopped or interrupted.
+   */
+  private static class WaitingListener extends ListenerAdapter<PircBotX>
+      implements RunnableListener {
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    @Override
+    public void setBot(PircBotX bot) {
+      // Not needed
+    }
+
+    @Override
+    public void run() {
+      started.countDown();
+      try {
+        stopped.await();
+      } catch (InterruptedException ie) {
+        interrupted.countDown();
+      }
+    }
+
+    @Override
+    public void stop() {
+      stopped.countDown();
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ExtendedPircBotXTest {
+  @Test
+  public void checkOpsFromChannelState() {
+    Configuration.Builder<PircBotX> configuration = new Configuration.Builder<PircBotX>()
+        .setServer("some host", 1)
+        .setName("Test");
+    ExtendedPircBotX bot = new ExtendedPircBotX(configuration.buildConfiguration());
+    UserChannelDao<User, Channel> dao = bot.getUserChannelDao();
+    User user = configuration.getBotFactory().createUser(bot, "TestUser");
+    Channel channel = configuration.getBotFactory().createChannel(bot, "#test");
+
+    dao.addUserToChannel(user, channel);
+    assertFalse(bot.isUserOpOnAnyJoinedChannel(user));
+
+    dao.addUserToLevel(UserLevel.OP, user, channel);
+    assertTrue(bot.isUserOpOnAnyJoinedChannel(user));
+
+    // Deopped
+    dao.removeUserFromLevel(UserLevel.OP, user, channel);
+    assertFalse(bot.isUserOpOnAnyJoinedChannel(user));
+  }
+}
@@ -0,0 +1,84 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.pircbotx.listeners.PrivateListener;
+import org.pircbotx.listeners.PublicListener;
+
+import com.google.common.collect.ImmutableList;
+
+public class HelpCacheTest {
+  private final CommandListener news = new CommandListener("news", "Shows the news", false);
+
+  private final CommandListener kick = new CommandListener("kick", null, true);
+
+  private final CommandListener help = new CommandListener("help", "Shows this help", false);
+
+  private final HelpCache helpCache = HelpCache.build(ImmutableList.of(news, help),
+      ImmutableList.of(news, kick, help));
+
+  @Test
+  public void renderPublicHelp() {
+    assertEquals(ImmutableList.of(
+        "!help               Shows this help",
+        "!news               Shows the news"), helpCache.getPublicHelp());
+  }
+
+  @Test
+  public void hideOpListenersFromOtherUsers() {
+    assertEquals(ImmutableList.of(
+        "help                Shows this help",
+        "news                Shows the news"), helpCache.getPrivateHelp(false));
+    assertEquals(ImmutableList.of(
+        "help                Shows this help",
+        "kick",
+        "news                Shows the news"), helpCache.getPrivateHelp(true));
+  }
+
+  private static class CommandListener implements PublicListener, PrivateListener {
+    private final String trigger;
+
+    private final String helpText;
+
+    private final boolean opRequired;
+
+    CommandListener(String trigger, String helpText, boolean opRequired) {
+      this.trigger = trigger;
+      this.helpText = helpText;
+      this.opRequired = opRequired;
+    }
+
+    @Override
+    public String getTriggerMessage() {
+      return trigger;
+    }
+
+    @Override
+    public String getPrivateTriggerMessage() {
+      return trigger;
+    }
+
+    @Override
+    public String getHelpText() {
+      return helpText;
+    }
+
+    @Override
+    public boolean isOpRequired() {
+      return opRequired;
+    }
+
+    @Override
+    public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+      // Not triggered here
+    }
+
+    @Override
+    public void onTriggerPrivateMessage(PrivateMessageEvent<ExtendedPircBotX> event) {
+      // Not triggered here
+    }
+  }
+}
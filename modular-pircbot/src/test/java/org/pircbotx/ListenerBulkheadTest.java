@@ -0,0 +1,63 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.pircbotx.BulkheadPolicy.RejectionPolicy;
+import org.pircbotx.listeners.TriggerableListener;
+
+public class ListenerBulkheadTest {
+  private final TriggerableListener listener = () -> null;
+
+  @Test
+  public void runFullTriggersInCaller() throws InterruptedException {
+    ListenerBulkhead bulkhead =
+        new ListenerBulkhead(listener, new BulkheadPolicy(1, 1, RejectionPolicy.CALLER_RUNS));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger runs = new AtomicInteger();
+
+    assertTrue(bulkhead.execute(() -> {
+      started.countDown();
+      awaitQuietly(release);
+    }));
+    started.await();
+    assertTrue(bulkhead.execute(runs::incrementAndGet));
+    assertEquals(0, runs.get());
+
+    // Queue is full, run right away by this thread
+    assertTrue(bulkhead.execute(runs::incrementAndGet));
+    assertEquals(1, runs.get());
+    assertEquals(1, bulkhead.getRejectedCount());
+    release.countDown();
+    bulkhead.shutdown();
+  }
+
+  @Test
+  public void rejectOnceShutDown() {
+    ListenerBulkhead bulkhead =
+        new ListenerBulkhead(listener, new BulkheadPolicy(1, 1, RejectionPolicy.CALLER_RUNS));
+    AtomicInteger runs = new AtomicInteger();
+    bulkhead.shutdown();
+
+    // Not run in the caller and not counted as full, so that it can be given to another bulkhead
+    assertFalse(bulkhead.execute(runs::incrementAndGet));
+    assertEquals(0, runs.get());
+    assertEquals(0, bulkhead.getRejectedCount());
+  }
+
+  // internal helpers
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pircbotx.FloodControlPolicy.OverflowPolicy;
+import org.pircbotx.output.OutputRaw;
+
+import com.google.common.collect.ImmutableList;
+
+public class OutboundQueueTest {
+  @Test
+  public void paceAfterBurst() throws InterruptedException {
+    RecordingBot bot = new RecordingBot();
+    OutboundQueue queue = createQueue(bot, 3, 100, 10, OverflowPolicy.DROP_OLDEST, true);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      queue.enqueue("PRIVMSG #channel :line " + i);
+    }
+    List<Long> sentNanos = bot.awaitLines(5);
+    queue.shutdown();
+
+    // The burst is sent at once, then one line per refill period
+    assertTrue(elapsedMillis(start, sentNanos.get(2)) < 80);
+    assertTrue(elapsedMillis(start, sentNanos.get(3)) >= 90);
+    assertTrue(elapsedMillis(start, sentNanos.get(4)) >= 190);
+    assertEquals(5, queue.getSentCount());
+  }
+
+  @Test
+  public void sendByPriority() throws InterruptedException {
+    RecordingBot bot = new RecordingBot();
+    OutboundQueue queue = createQueue(bot, 1, 100, 10, OverflowPolicy.DROP_OLDEST, true);
+
+    queue.enqueue("JOIN #channel");
+    queue.runWithPriority(MessagePriority.ANNOUNCEMENT,
+        () -> queue.enqueue("PRIVMSG #channel :news"));
+    queue.enqueue("PRIVMSG #channel :reply");
+    queue.enqueue("KICK #channel someone");
+    bot.awaitLines(4);
+    queue.shutdown();
+
+    assertEquals(ImmutableList.of("JOIN #channel", "KICK #channel someone",
+        "PRIVMSG #channel :reply", "PRIVMSG #channel :news"), bot.getLines());
+    // Sent through the raw output of the bot, which logs them
+    assertEquals(bot.getLines(), bot.getOutputLines());
+  }
+
+  @Test
+  public void dropOldestAndMerge() throws InterruptedException {
+    RecordingBot bot = new RecordingBot();
+    OutboundQueue queue = createQueue(bot, 1, 200, 2, OverflowPolicy.DROP_OLDEST, true);
+
+    queue.enqueue("PRIVMSG #channel :a");
+    bot.awaitLines(1);
+    for (String text : new String[] {"b", "c", "d", "d"}) {
+      queue.enqueue("PRIVMSG #channel :" + text);
+    }
+    assertEquals(2, queue.getQueueDepth(MessagePriority.REPLY));
+    assertEquals(1, queue.getDroppedCount(MessagePriority.REPLY));
+    assertEquals(1, queue.getMergedCount(MessagePriority.REPLY));
+
+    bot.awaitLines(3);
+    queue.shutdown();
+    assertEquals(ImmutableList.of("PRIVMSG #channel :a", "PRIVMSG #channel :c",
+        "PRIVMSG #channel :d"), bot.getLines());
+  }
+
+  @Test
+  public void dropNewest() throws InterruptedException {
+    RecordingBot bot = new RecordingBot();
+    OutboundQueue queue = createQueue(bot, 1, 200, 2, OverflowPolicy.DROP_NEWEST, false);
+
+    queue.enqueue("PRIVMSG #channel :a");
+    bot.awaitLines(1);
+    for (String text : new String[] {"b", "b", "c"}) {
+      queue.enqueue("PRIVMSG #channel :" + text);
+    }
+    assertEquals(1, queue.getDroppedCount(MessagePriority.REPLY));
+    assertEquals(0, queue.getMergedCount(MessagePriority.REPLY));
+
+    bot.awaitLines(3);
+    queue.shutdown();
+    assertEquals(ImmutableList.of("PRIVMSG #channel :a", "PRIVMSG #channel :b",
+        "PRIVMSG #channel :b"), bot.getLines());
+  }
+
+  // internal helpers
+
+  private static OutboundQueue createQueue(ExtendedPircBotX bot, int burst, long refillMillis,
+      int queueLimit, OverflowPolicy overflowPolicy, boolean mergeDuplicates) {
+    return new OutboundQueue(bot, new FloodControlPolicy(burst, refillMillis,
+        TimeUnit.MILLISECONDS, queueLimit, overflowPolicy, mergeDuplicates));
+  }
+
+  private static long elapsedMillis(long startNanos, long endNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+  }
+
+  private static class RecordingBot extends ExtendedPircBotX {
+    private final List<String> outputLines = new ArrayList<String>();
+
+    private final List<String> lines = new ArrayList<String>();
+
+    private final List<Long> sentNanos = new ArrayList<Long>();
+
+    RecordingBot() {
+      super(new Configuration.Builder<PircBotX>()
+          .setServer("some host", 1)
+          .setName("Test")
+          .buildConfiguration());
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public OutputRaw sendRaw() {
+      return new OutputRaw(this) {
+        @Override
+        public void rawLineNow(String line) {
+          synchronized (RecordingBot.this) {
+            outputLines.add(line);
+          }
+          super.rawLineNow(line);
+        }
+      };
+    }
+
+    @Override
+    protected synchronized void sendRawLineToServer(String line) {
+      lines.add(line);
+      sentNanos.add(System.nanoTime());
+      notifyAll();
+    }
+
+    synchronized List<String> getLines() {
+      return new ArrayList<String>(lines);
+    }
+
+    synchronized List<String> getOutputLines() {
+      return new ArrayList<String>(outputLines);
+    }
+
+    synchronized List<Long> awaitLines(int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 5000;
+      while (lines.size() < count && System.currentTimeMillis() < deadline) {
+        wait(100);
+      }
+      assertEquals(count, lines.size());
+      return new ArrayList<Long>(sentNanos);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SlidingWindowCountersTest {
+  @Test
+  public void weightPreviousWindow() {
+    SlidingWindowCounters counters = new SlidingWindowCounters(16);
+    int slot = counters.slot(42, 1000, 0);
+    for (int i = 0; i < 4; i++) {
+      counters.increment(slot);
+    }
+    assertEquals(4, counters.count(slot, 0), 0);
+
+    // Half of the previous window is still covered
+    assertEquals(slot, counters.slot(42, 1000, 1500));
+    assertEquals(2, counters.count(slot, 1500), 0);
+    counters.increment(slot);
+    assertEquals(3, counters.count(slot, 1500), 0);
+
+    // Previous window is empty
+    counters.slot(42, 1000, 2500);
+    assertEquals(0.5, counters.count(slot, 2500), 0);
+  }
+
+  @Test
+  public void reuseExpiredBeforeEvicting() {
+    // Every key can use all the slots of such a small table
+    SlidingWindowCounters counters = new SlidingWindowCounters(8);
+    for (int key = 1; key <= 8; key++) {
+      counters.increment(counters.slot(key, 1000, 0));
+    }
+    assertEquals(8, counters.size());
+
+    for (int key = 9; key <= 16; key++) {
+      counters.slot(key, 1000, 2000);
+    }
+    assertEquals(8, counters.size());
+    assertEquals(0, counters.getEvictedCount());
+
+    counters.slot(17, 1000, 2000);
+    assertEquals(1, counters.getEvictedCount());
+  }
+
+  @Test
+  public void keepPinnedSlots() {
+    SlidingWindowCounters counters = new SlidingWindowCounters(8);
+    int pinned = counters.slot(1, 1000, 0);
+    counters.increment(pinned);
+    counters.pin(pinned);
+    int unpinned = counters.slot(2, 1000, 0);
+    counters.increment(unpinned);
+
+    // Oldest counters are evicted first, except the pinned one
+    for (int key = 3; key <= 20; key++) {
+      counters.slot(key, 1000, key);
+    }
+    counters.unpinAll();
+    assertEquals(pinned, counters.slot(1, 1000, 21));
+    assertEquals(1, counters.count(pinned, 21), 0);
+    assertEquals(0, counters.count(counters.slot(2, 1000, 21), 21), 0);
+    assertTrue(counters.getEvictedCount() > 0);
+  }
+}
@@ -0,0 +1,138 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.listeners.PublicListener;
+import org.pircbotx.listeners.WarmUpListener;
+
+public class TriggerListenerAdapterTest {
+  private Configuration.Builder<PircBotX> configuration;
+
+  private ExtendedPircBotX bot;
+
+  private TriggerListenerAdapter adapter;
+
+  @Before
+  public void setUp() {
+    configuration = new Configuration.Builder<PircBotX>()
+        .setServer("some host", 1)
+        .setName("Test");
+    bot = new ExtendedPircBotX(configuration.buildConfiguration());
+    adapter = new TriggerListenerAdapter(new TriggerRateLimiter());
+  }
+
+  @Test
+  public void triggerPublicListeners() {
+    NewsListener newsListener = new NewsListener();
+    bot.addListener(newsListener);
+
+    adapter.onMessage(createMessage("!news"));
+    adapter.onMessage(createMessage("!NEWS"));
+    assertEquals(2, newsListener.triggers.get());
+
+    // Not commands
+    adapter.onMessage(createMessage("news"));
+    adapter.onMessage(createMessage("!weather"));
+    assertEquals(2, newsListener.triggers.get());
+  }
+
+  @Test
+  public void deferTriggersUntilWarmedUp() throws InterruptedException {
+    CountDownLatch loaded = new CountDownLatch(1);
+    LoadingListener loadingListener = new LoadingListener(() -> awaitQuietly(loaded));
+    bot.addListener(loadingListener);
+
+    adapter.onMessage(createMessage("!news"));
+    assertEquals(1, loadingListener.triggered.getCount());
+
+    loaded.countDown();
+    assertTrue(loadingListener.triggered.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void triggerListenersFailingToWarmUp() throws InterruptedException {
+    LoadingListener loadingListener = new LoadingListener(() -> {
+      throw new IllegalStateException("Could not load news");
+    });
+    bot.addListener(loadingListener);
+
+    // Triggered without its data rather than never
+    adapter.onMessage(createMessage("!news"));
+    assertTrue(loadingListener.triggered.await(1, TimeUnit.SECONDS));
+  }
+
+  // internal helpers
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private MessageEvent<ExtendedPircBotX> createMessage(String message) {
+    return new MessageEvent<ExtendedPircBotX>(bot,
+        configuration.getBotFactory().createChannel(bot, "#test"),
+        configuration.getBotFactory().createUser(bot, "TestUser"), message);
+  }
+
+  private static class NewsListener extends ListenerAdapter<PircBotX> implements PublicListener {
+    private final AtomicInteger triggers = new AtomicInteger();
+
+    @Override
+    public String getTriggerMessage() {
+      return "news";
+    }
+
+    @Override
+    public String getHelpText() {
+      return null;
+    }
+
+    @Override
+    public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+      triggers.incrementAndGet();
+    }
+  }
+
+  private static class LoadingListener extends ListenerAdapter<PircBotX>
+      implements PublicListener, WarmUpListener {
+    private final Runnable load;
+
+    private final CountDownLatch triggered = new CountDownLatch(1);
+
+    LoadingListener(Runnable load) {
+      this.load = load;
+    }
+
+    @Override
+    public String getTriggerMessage() {
+      return "news";
+    }
+
+    @Override
+    public String getHelpText() {
+      return null;
+    }
+
+    @Override
+    public void warmUp() {
+      load.run();
+    }
+
+    @Override
+    public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+      triggered.countDown();
+    }
+  }
+}
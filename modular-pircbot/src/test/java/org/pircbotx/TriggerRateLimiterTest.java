@@ -0,0 +1,99 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pircbotx.RateLimit.Scope;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.listeners.PublicListener;
+
+public class TriggerRateLimiterTest {
+  private final Configuration.Builder<PircBotX> configuration =
+      new Configuration.Builder<PircBotX>().setServer("some host", 1).setName("Test");
+
+  private final ExtendedPircBotX bot = new ExtendedPircBotX(configuration.buildConfiguration());
+
+  private final User alice = configuration.getBotFactory().createUser(bot, "Alice");
+
+  private final User bob = configuration.getBotFactory().createUser(bot, "Bob");
+
+  private final User carol = configuration.getBotFactory().createUser(bot, "Carol");
+
+  private final Channel channel = configuration.getBotFactory().createChannel(bot, "#channel");
+
+  @Test
+  public void limitEachScope() {
+    TriggerRateLimiter limiter = new TriggerRateLimiter();
+    NewsListener listener = new NewsListener();
+    limiter.setLimit(listener, new RateLimit(2, 3, 4, 1, TimeUnit.HOURS));
+
+    assertTrue(limiter.tryAcquire(listener, alice, channel));
+    assertTrue(limiter.tryAcquire(listener, alice, channel));
+    assertFalse(limiter.tryAcquire(listener, alice, channel));
+    assertTrue(limiter.tryAcquire(listener, bob, channel));
+    assertFalse(limiter.tryAcquire(listener, bob, channel));
+    // Private chats have no channel limit
+    assertTrue(limiter.tryAcquire(listener, carol, null));
+    assertFalse(limiter.tryAcquire(listener, carol, null));
+
+    assertEquals(1, limiter.getRejectedCount(Scope.USER));
+    assertEquals(1, limiter.getRejectedCount(Scope.CHANNEL));
+    assertEquals(1, limiter.getRejectedCount(Scope.LISTENER));
+    assertEquals(3, limiter.getRejectedCount(listener));
+    assertEquals(3, limiter.getRejectedCount());
+  }
+
+  @Test
+  public void countListenersSeparately() {
+    TriggerRateLimiter limiter = new TriggerRateLimiter();
+    limiter.setDefaultLimit(new RateLimit(1, 0, 0, 1, TimeUnit.HOURS));
+    NewsListener news = new NewsListener();
+    NewsListener otherNews = new NewsListener();
+
+    assertTrue(limiter.tryAcquire(news, alice, channel));
+    assertTrue(limiter.tryAcquire(otherNews, alice, channel));
+    assertFalse(limiter.tryAcquire(news, alice, channel));
+    assertEquals(1, limiter.getRejectedCount(news));
+    assertEquals(0, limiter.getRejectedCount(otherNews));
+  }
+
+  @Test
+  public void forgetRemovedListener() {
+    TriggerRateLimiter limiter = new TriggerRateLimiter();
+    NewsListener listener = new NewsListener();
+    limiter.setLimit(listener, new RateLimit(1, 0, 0, 1, TimeUnit.HOURS));
+    limiter.tryAcquire(listener, alice, channel);
+    limiter.tryAcquire(listener, alice, channel);
+    assertEquals(1, limiter.getRejectedCount(listener));
+
+    limiter.removeListener(listener);
+    assertEquals(0, limiter.getRejectedCount(listener));
+    assertNull(limiter.getLimit(listener));
+    assertEquals(1, limiter.getRejectedCount());
+  }
+
+  // internal helpers
+
+  private static class NewsListener extends ListenerAdapter<PircBotX> implements PublicListener {
+    @Override
+    public String getTriggerMessage() {
+      return "news";
+    }
+
+    @Override
+    public String getHelpText() {
+      return null;
+    }
+
+    @Override
+    public void onTriggerMessage(MessageEvent<ExtendedPircBotX> event) {
+      // Not triggered here
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package org.pircbotx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class WriteCoalescerTest {
+  private final ExtendedPircBotX bot = new ExtendedPircBotX(new Configuration.Builder<PircBotX>()
+      .setServer("some host", 1)
+      .setName("Test")
+      .buildConfiguration());
+
+  private final ByteArrayOutputStream socket = new ByteArrayOutputStream();
+
+  @Test
+  public void writeImmediatelyByDefault() {
+    bot.outputWriter = new OutputStreamWriter(socket, StandardCharsets.UTF_8);
+    WriteCoalescer coalescer = new WriteCoalescer(bot);
+    assertFalse(coalescer.isEnabled());
+
+    coalescer.write("PING one");
+    assertEquals("PING one\r\n", written());
+    coalescer.write("PING two");
+    assertEquals(2, coalescer.getWriteCount());
+  }
+
+  @Test
+  public void throwToSenderWhenDisabled() {
+    bot.outputWriter = new OutputStreamWriter(new BrokenSocket(), StandardCharsets.UTF_8);
+    WriteCoalescer coalescer = new WriteCoalescer(bot);
+    try {
+      coalescer.write("PING one");
+      fail("Write to a broken socket did not fail");
+    } catch (RuntimeException re) {
+      assertEquals(IOException.class, re.getCause().getClass());
+    }
+  }
+
+  @Test
+  public void coalesceLinesOfATick() throws InterruptedException {
+    bot.outputWriter = new OutputStreamWriter(socket, StandardCharsets.UTF_8);
+    WriteCoalescer coalescer = new WriteCoalescer(bot);
+    coalescer.setTickNanos(TimeUnit.MILLISECONDS.toNanos(50));
+    coalescer.setEnabled(true);
+
+    coalescer.write("PING one");
+    coalescer.write("PING two");
+    coalescer.write("PING three");
+    assertEquals("", written());
+    awaitWrites(coalescer, 1);
+    assertEquals("PING one\r\nPING two\r\nPING three\r\n", written());
+    assertEquals(3, coalescer.getMaxBatchSize());
+
+    // Disabling writes waiting lines right away
+    coalescer.write("PING four");
+    coalescer.setEnabled(false);
+    assertEquals(2, coalescer.getWriteCount());
+    coalescer.shutdown();
+  }
+
+  @Test
+  public void throwBatchFailureToNextSender() throws InterruptedException {
+    bot.outputWriter = new OutputStreamWriter(new BrokenSocket(), StandardCharsets.UTF_8);
+    WriteCoalescer coalescer = new WriteCoalescer(bot);
+    coalescer.setTickNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    coalescer.setEnabled(true);
+
+    coalescer.write("PING one");
+    Thread.sleep(100);
+    try {
+      coalescer.write("PING two");
+      fail("Failure of the previous batch was not reported");
+    } catch (RuntimeException re) {
+      assertEquals(IOException.class, re.getCause().getClass());
+    }
+
+    // Reported once
+    bot.outputWriter = new OutputStreamWriter(socket, StandardCharsets.UTF_8);
+    coalescer.write("PING three");
+    awaitWrites(coalescer, 1);
+    assertEquals("PING three\r\n", written());
+    coalescer.shutdown();
+  }
+
+  // internal helpers
+
+  private String written() {
+    return new String(socket.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void awaitWrites(WriteCoalescer coalescer, long count)
+      throws InterruptedException {
+    for (int i = 0; i < 500 && coalescer.getWriteCount() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, coalescer.getWriteCount());
+  }
+
+  private static class BrokenSocket extends OutputStream {
+    @Override
+    public void write(int b) throws IOException {
+      throw new IOException("Broken pipe");
+    }
+  }
+}